@@ -20,8 +20,11 @@
 package io.rockscript;
 
 import io.rockscript.api.commands.DeployScriptVersionCommand;
+import io.rockscript.api.commands.SaveScriptVersionCommand;
 import io.rockscript.api.model.ParseError;
 import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.EngineScriptCodec;
+import io.rockscript.engine.impl.Parse;
 import io.rockscript.http.client.ClientRequest;
 import io.rockscript.http.client.ClientResponse;
 import io.rockscript.util.Io;
@@ -38,6 +41,7 @@ public class Deploy extends ClientCommand {
   public static final String DEFAULT_NAME_REGEX = ".*\\.rs(t)?";
 
   protected boolean recursive = false;
+  protected boolean compile = false;
   protected String namePattern = DEFAULT_NAME_REGEX;
   protected Pattern compiledNamePattern;
   protected int deployCountSuccessful = 0;
@@ -69,6 +73,11 @@ public class Deploy extends ClientCommand {
       "Default is " +DEFAULT_NAME_REGEX+" "+
       "Ignored if a file is specified. " +
       "See also https://docs.oracle.com/javase/tutorial/essential/regex/index.html ");
+    options.addOption("c",
+      "Compile the scripts locally and upload them precompiled " +
+      "so that the server doesn't have to parse them. " +
+      "Only used by servers that are configured with trustCompiledScripts. " +
+      "Default is not compiled.");
     return options;
   }
 
@@ -76,6 +85,7 @@ public class Deploy extends ClientCommand {
   protected void parse(CommandLine commandLine) {
     super.parse(commandLine);
     this.recursive = commandLine.hasOption("r");
+    this.compile = commandLine.hasOption("c");
     // namePattern is already initialized with the default so
     // that Deploy also can be used programmatically.
     this.namePattern = commandLine.getOptionValue("n", DEFAULT_NAME_REGEX);
@@ -126,13 +136,22 @@ public class Deploy extends ClientCommand {
         scriptName = scriptPath.substring(dirPath.length());
       }
 
+      SaveScriptVersionCommand command = new DeployScriptVersionCommand()
+        .scriptName(scriptName)
+        .scriptText(scriptText);
+      if (compile) {
+        // scripts with errors are uploaded without compiled
+        // form so that the server reports the parse errors
+        Parse parse = Parse.parse(scriptText, null);
+        if (!parse.hasErrors()) {
+          command.compiledScript(EngineScriptCodec.encode(parse.getEngineScript(), scriptText));
+        }
+      }
+
       ClientRequest request = createHttp()
         .newPost(server + "/command")
         .headerContentTypeApplicationJson()
-        .bodyJson(new DeployScriptVersionCommand()
-          .scriptName(scriptName)
-          .scriptText(scriptText)
-        );
+        .bodyJson(command);
 
       log(request);
 
@@ -185,6 +204,17 @@ public class Deploy extends ClientCommand {
     return this;
   }
 
+  public boolean getCompile() {
+    return this.compile;
+  }
+  public void setCompile(boolean compile) {
+    this.compile = compile;
+  }
+  public Deploy compile() {
+    this.compile = true;
+    return this;
+  }
+
   public String getNamePattern() {
     return this.namePattern;
   }
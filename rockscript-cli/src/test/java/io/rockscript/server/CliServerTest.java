@@ -36,7 +36,7 @@ public class CliServerTest extends AbstractServerTest {
       .execute();
 
     new Deploy()
-      .parseArgs("deploy", "-s", "http://localhost:"+PORT, "-r", "-n", ".*resources\\/testscripts.*", "..")
+      .parseArgs("deploy", "-s", "http://localhost:"+PORT, "-r", "-c", "-n", ".*resources\\/testscripts.*", "..")
       .execute();
 
     new Start()
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.server;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.BulkCommandHandler.BulkCommandResult;
+import io.rockscript.api.Command;
+import io.rockscript.api.commands.DeployScriptVersionCommand;
+import io.rockscript.api.commands.EndServiceFunctionCommand;
+import io.rockscript.api.commands.ScriptExecutionResponse;
+import io.rockscript.api.commands.ServiceFunctionFailureCommand;
+import io.rockscript.api.commands.StartScriptExecutionCommand;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.AdmissionControl.AdmissionLimit;
+import io.rockscript.engine.impl.ContinuationReference;
+import io.rockscript.test.SimpleImportProvider;
+import io.rockscript.test.engine.TestEngineProvider;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class BulkCommandServerTest extends AbstractServerTest {
+
+  @Override
+  protected TestEngineProvider getEngineProvider() {
+    return new TestEngineProvider() {
+      @Override
+      public Engine createEngine() {
+        // a group of commands is admitted once, so groups larger
+        // than the script limit are not rejected
+        return new Configuration()
+          .configureTest()
+          .configureScriptLimit(new AdmissionLimit(1, 0))
+          .configureAdmissionQueueTimeout(Duration.ofMillis(10))
+          .build()
+          .start();
+      }
+    };
+  }
+
+  @Override
+  public void setUp() {
+    super.setUp();
+    SimpleImportProvider.setUp();
+  }
+
+  @Test
+  public void testBulkStartsAndCallbacks() {
+    Gson gson = engine.getGson();
+    ScriptVersion scriptVersion = newPost("/command")
+      .bodyJson(new DeployScriptVersionCommand()
+        .scriptText(
+          "var simple = system.import('rockscript.io/simple'); \n" +
+          "simple.wait();"))
+      .execute()
+      .assertStatusOk()
+      .getBodyAs(ScriptVersion.class);
+
+    // json array of starts
+    List<Command> startCommands = new ArrayList<>();
+    for (int i=0; i<3; i++) {
+      startCommands.add(new StartScriptExecutionCommand().scriptVersionId(scriptVersion.getId()));
+    }
+    List<BulkCommandResult> startResults = newPost("/commands")
+      .body("[" + startCommands.stream().map(command->gson.toJson(command, Command.class)).collect(Collectors.joining(",")) + "]")
+      .execute()
+      .assertStatusOk()
+      .getBodyAs(new TypeToken<List<BulkCommandResult>>(){}.getType());
+
+    assertEquals(3, startResults.size());
+    List<String> scriptExecutionIds = new ArrayList<>();
+    for (int i=0; i<3; i++) {
+      BulkCommandResult startResult = startResults.get(i);
+      assertEquals(i, startResult.getIndex());
+      assertEquals(200, startResult.getStatus());
+      scriptExecutionIds.add((String) ((Map<String,Object>)startResult.getResponse()).get("scriptExecutionId"));
+    }
+
+    // newline delimited callbacks, the first execution gets a failure and an end
+    // which are applied under one lock.  The last line is not a valid command.
+    StringBuilder ndjson = new StringBuilder();
+    ContinuationReference firstContinuationReference = SimpleImportProvider.removeFirstContinuationReference(scriptExecutionIds.get(0));
+    ndjson.append(gson.toJson(new ServiceFunctionFailureCommand()
+      .continuationReference(firstContinuationReference)
+      .error("temporary failure"), Command.class)).append("\n");
+    for (String scriptExecutionId: scriptExecutionIds) {
+      ContinuationReference continuationReference = scriptExecutionId.equals(scriptExecutionIds.get(0))
+        ? firstContinuationReference
+        : SimpleImportProvider.removeFirstContinuationReference(scriptExecutionId);
+      ndjson.append(gson.toJson(new EndServiceFunctionCommand()
+        .continuationReference(continuationReference), Command.class)).append("\n");
+    }
+    ndjson.append("{\"endFunction\": {\"executionId\": \"e1\"}}\n");
+
+    String body = newPost("/commands")
+      .body(ndjson.toString())
+      .execute()
+      .assertStatusOk()
+      .getBody();
+
+    List<BulkCommandResult> callbackResults = new BufferedReader(new StringReader(body))
+      .lines()
+      .map(line->gson.fromJson(line, BulkCommandResult.class))
+      .collect(Collectors.toList());
+    assertEquals(5, callbackResults.size());
+    for (int i=0; i<4; i++) {
+      assertEquals(200, callbackResults.get(i).getStatus());
+    }
+    assertEquals(400, callbackResults.get(4).getStatus());
+    assertNotNull(callbackResults.get(4).getError());
+
+    for (String scriptExecutionId: scriptExecutionIds) {
+      assertTrue(engine.getScriptExecutionStore().isEnded(scriptExecutionId));
+    }
+  }
+
+  @Test
+  public void testFailingCommandInTheMiddleOfAGroup() {
+    Gson gson = engine.getGson();
+    ScriptVersion scriptVersion = newPost("/command")
+      .bodyJson(new DeployScriptVersionCommand()
+        .scriptText(
+          "var simple = system.import('rockscript.io/simple'); \n" +
+          "simple.wait();"))
+      .execute()
+      .assertStatusOk()
+      .getBodyAs(ScriptVersion.class);
+    String scriptExecutionId = newPost("/command")
+      .bodyJson(new StartScriptExecutionCommand().scriptVersionId(scriptVersion.getId()))
+      .execute()
+      .assertStatusOk()
+      .getBodyAs(ScriptExecutionResponse.class)
+      .getScriptExecutionId();
+
+    // the three commands apply to the same script execution, so they are grouped.
+    // The middle one refers to an execution that doesn't exist.
+    ContinuationReference continuationReference = SimpleImportProvider.removeFirstContinuationReference(scriptExecutionId);
+    String ndjson =
+      gson.toJson(new ServiceFunctionFailureCommand()
+        .continuationReference(continuationReference)
+        .error("temporary failure"), Command.class) + "\n" +
+      gson.toJson(new EndServiceFunctionCommand()
+        .continuationReference(new ContinuationReference(scriptExecutionId, "e999")), Command.class) + "\n" +
+      gson.toJson(new EndServiceFunctionCommand()
+        .continuationReference(continuationReference), Command.class) + "\n";
+
+    String body = newPost("/commands")
+      .body(ndjson)
+      .execute()
+      .assertStatusOk()
+      .getBody();
+
+    List<BulkCommandResult> results = new BufferedReader(new StringReader(body))
+      .lines()
+      .map(line->gson.fromJson(line, BulkCommandResult.class))
+      .collect(Collectors.toList());
+    assertEquals(3, results.size());
+    assertEquals(200, results.get(0).getStatus());
+    assertEquals(500, results.get(1).getStatus());
+    assertNotNull(results.get(1).getError());
+    assertEquals(200, results.get(2).getStatus());
+
+    // the command after the failing one was applied
+    assertTrue(engine.getScriptExecutionStore().isEnded(scriptExecutionId));
+  }
+}
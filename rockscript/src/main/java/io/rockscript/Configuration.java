@@ -28,14 +28,28 @@ import com.google.gson.stream.JsonWriter;
 import io.rockscript.api.*;
 import io.rockscript.api.commands.*;
 import io.rockscript.api.events.*;
+import io.rockscript.api.model.EventRetention;
 import io.rockscript.api.queries.*;
 import io.rockscript.engine.ImportObjectSerializer;
 import io.rockscript.engine.PingHandler;
 import io.rockscript.engine.ServiceFunctionSerializer;
+import io.rockscript.engine.blob.BlobStore;
+import io.rockscript.engine.blob.FileBlobStore;
+import io.rockscript.engine.blob.InMemoryBlobStore;
+import io.rockscript.engine.blob.PayloadOffloader;
 import io.rockscript.engine.impl.*;
+import io.rockscript.engine.impl.EventListener;
+import io.rockscript.engine.impl.AdmissionControl.AdmissionLimit;
+import io.rockscript.engine.impl.OutboundLimiter.ConcurrencyLimit;
+import io.rockscript.engine.impl.OutboundLimiter.RateLimit;
+import io.rockscript.engine.impl.RemoteServiceFunctionBatcher.BatchSettings;
+import io.rockscript.engine.job.DecorrelatedJitterRetryPolicy;
+import io.rockscript.engine.job.ExponentialRetryPolicy;
+import io.rockscript.engine.job.FixedRetryPolicy;
 import io.rockscript.engine.job.InMemoryJobExecutor;
 import io.rockscript.engine.job.InMemoryJobStore;
 import io.rockscript.engine.job.JobService;
+import io.rockscript.engine.job.RetryPolicy;
 import io.rockscript.examples.ExamplesHandler;
 import io.rockscript.examples.ExamplesLoader;
 import io.rockscript.gson.PolymorphicTypeAdapterFactory;
@@ -45,10 +59,14 @@ import io.rockscript.service.ImportObject;
 import io.rockscript.service.ImportProvider;
 import io.rockscript.service.ImportResolver;
 import io.rockscript.service.ServiceFunction;
+import io.rockscript.service.cache.CacheService;
 import io.rockscript.service.http.HttpService;
+import io.rockscript.service.task.ExternalTaskService;
 import io.rockscript.test.TestJobExecutor;
 
+import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
@@ -60,12 +78,60 @@ public class Configuration {
   public static final String CFG_KEY_ENGINE = "engine";
   public static final String CFG_VALUE_ENGINE_TEST = "test";
   public static final String CFG_KEY_EXAMPLES = "examples";
+  public static final String CFG_KEY_VIRTUAL_THREADS = "virtualThreads";
+  public static final String CFG_KEY_TRUST_COMPILED_SCRIPTS = "trustCompiledScripts";
+  public static final String CFG_KEY_EVENT_RETENTION = "eventRetention";
+  public static final String CFG_KEY_EVENT_SAMPLE_RATE = "eventSampleRate";
+  public static final String CFG_KEY_RETENTION_TIME_TO_LIVE = "retentionTimeToLive";
+  public static final String CFG_KEY_ARCHIVE_DIRECTORY = "archiveDirectory";
+  public static final String CFG_KEY_BLOB_DIRECTORY = "blobDirectory";
+  public static final String CFG_KEY_PAYLOAD_OFFLOAD_THRESHOLD = "payloadOffloadThreshold";
+  public static final String CFG_KEY_LOCK_LEASE_DURATION = "lockLeaseDuration";
+  public static final String CFG_KEY_RECOVERY_PARALLELISM = "recoveryParallelism";
+  /** prefix for the command type, eg commandLimit.startScript=100/1000 */
+  public static final String CFG_KEY_COMMAND_LIMIT_PREFIX = "commandLimit.";
+  public static final String CFG_KEY_SCRIPT_LIMIT = "scriptLimit";
+  public static final String CFG_KEY_ADMISSION_QUEUE_TIMEOUT = "admissionQueueTimeout";
+  public static final String CFG_KEY_ADMISSION_RETRY_AFTER = "admissionRetryAfter";
+  public static final String CFG_KEY_OUTBOUND_CONCURRENCY_LIMIT = "outboundConcurrencyLimit";
+  /** followed by the host or service name, eg rateLimit.api.example.com=10/20 */
+  public static final String CFG_KEY_RATE_LIMIT_PREFIX = "rateLimit.";
+  public static final String CFG_KEY_CIRCUIT_BREAKER_FAILURE_THRESHOLD = "circuitBreakerFailureThreshold";
+  public static final String CFG_KEY_CIRCUIT_BREAKER_OPEN_DURATION = "circuitBreakerOpenDuration";
+  /** followed by the remote service url and optionally the function name,
+   * eg remoteBatch.localhost:4000/addresses/validate=10/50 */
+  public static final String CFG_KEY_REMOTE_BATCH_PREFIX = "remoteBatch.";
+  public static final String CFG_KEY_EXTERNAL_TASK_MAX_ASYNC_RESPONSE_TIMEOUT = "externalTaskMaxAsyncResponseTimeout";
 
   boolean test = false;
   boolean examples = false;
+  boolean virtualThreads = false;
+  boolean trustCompiledScripts = false;
+  EventRetention eventRetention = EventRetention.FULL;
+  double eventSampleRate = 0.1;
+  Duration retentionTimeToLive;
+  Map<String,Duration> scriptRetentionTimeToLives = new LinkedHashMap<>();
+  File archiveDirectory;
+  Duration compactionInterval = Duration.ofMinutes(1);
+  File blobDirectory;
+  long engineScriptCacheMaxWeight = EngineScriptCache.DEFAULT_MAX_WEIGHT;
+  int payloadOffloadThreshold = PayloadOffloader.DEFAULT_THRESHOLD;
+  Duration lockLeaseDuration = LockServiceImpl.DEFAULT_LOCK_LEASE_DURATION;
+  int recoveryParallelism = Runtime.getRuntime().availableProcessors();
+  Map<String,AdmissionLimit> commandLimits = new LinkedHashMap<>();
+  AdmissionLimit scriptLimit;
+  Duration admissionQueueTimeout = AdmissionControl.DEFAULT_QUEUE_TIMEOUT;
+  Duration admissionRetryAfter = AdmissionControl.DEFAULT_RETRY_AFTER;
+  ConcurrencyLimit outboundConcurrencyLimit = ConcurrencyLimit.DEFAULT;
+  Map<String,RateLimit> rateLimits = new LinkedHashMap<>();
+  Map<String,BatchSettings> remoteBatchSettings = new LinkedHashMap<>();
+  int circuitBreakerFailureThreshold = CircuitBreakers.DEFAULT_FAILURE_THRESHOLD;
+  Duration circuitBreakerOpenDuration = CircuitBreakers.DEFAULT_OPEN_DURATION;
+  Duration externalTaskMaxAsyncResponseTimeout = ExternalTaskService.DEFAULT_MAX_ASYNC_RESPONSE_TIMEOUT;
   protected List<Query> queries = new ArrayList<>();
   protected List<Command> commands = new ArrayList<>();
   protected List<EngineListener> engineListeners = new ArrayList<>();
+  protected List<EventListener> eventListeners = new ArrayList<>();
   protected List<EnginePlugin> enginePlugins = new ArrayList<>();
   protected List<RequestHandler> requestHandlers = new ArrayList<>();
   protected List<ImportProvider> importProviders = new ArrayList<>();
@@ -81,6 +147,85 @@ public class Configuration {
     if (configurationProperties.containsKey(CFG_KEY_EXAMPLES)) {
       configureExamples();
     }
+    if (configurationProperties.containsKey(CFG_KEY_VIRTUAL_THREADS)) {
+      configureVirtualThreads();
+    }
+    if (configurationProperties.containsKey(CFG_KEY_TRUST_COMPILED_SCRIPTS)) {
+      configureTrustCompiledScripts();
+    }
+    String eventRetention = configurationProperties.get(CFG_KEY_EVENT_RETENTION);
+    if (eventRetention!=null) {
+      configureEventRetention(EventRetention.valueOf(eventRetention));
+    }
+    String eventSampleRate = configurationProperties.get(CFG_KEY_EVENT_SAMPLE_RATE);
+    if (eventSampleRate!=null) {
+      configureEventSampleRate(Double.parseDouble(eventSampleRate));
+    }
+    String retentionTimeToLive = configurationProperties.get(CFG_KEY_RETENTION_TIME_TO_LIVE);
+    if (retentionTimeToLive!=null) {
+      configureRetentionTimeToLive(Duration.parse(retentionTimeToLive));
+    }
+    String archiveDirectory = configurationProperties.get(CFG_KEY_ARCHIVE_DIRECTORY);
+    if (archiveDirectory!=null) {
+      configureArchiveDirectory(new File(archiveDirectory));
+    }
+    String blobDirectory = configurationProperties.get(CFG_KEY_BLOB_DIRECTORY);
+    if (blobDirectory!=null) {
+      configureBlobDirectory(new File(blobDirectory));
+    }
+    String payloadOffloadThreshold = configurationProperties.get(CFG_KEY_PAYLOAD_OFFLOAD_THRESHOLD);
+    if (payloadOffloadThreshold!=null) {
+      configurePayloadOffloadThreshold(Integer.parseInt(payloadOffloadThreshold));
+    }
+    String lockLeaseDuration = configurationProperties.get(CFG_KEY_LOCK_LEASE_DURATION);
+    if (lockLeaseDuration!=null) {
+      configureLockLeaseDuration(Duration.parse(lockLeaseDuration));
+    }
+    String recoveryParallelism = configurationProperties.get(CFG_KEY_RECOVERY_PARALLELISM);
+    if (recoveryParallelism!=null) {
+      configureRecoveryParallelism(Integer.parseInt(recoveryParallelism));
+    }
+    configurationProperties.forEach((key, value)->{
+      if (key.startsWith(CFG_KEY_COMMAND_LIMIT_PREFIX) && value!=null) {
+        configureCommandLimit(key.substring(CFG_KEY_COMMAND_LIMIT_PREFIX.length()), AdmissionLimit.parse(value));
+      }
+    });
+    String scriptLimit = configurationProperties.get(CFG_KEY_SCRIPT_LIMIT);
+    if (scriptLimit!=null) {
+      configureScriptLimit(AdmissionLimit.parse(scriptLimit));
+    }
+    String admissionQueueTimeout = configurationProperties.get(CFG_KEY_ADMISSION_QUEUE_TIMEOUT);
+    if (admissionQueueTimeout!=null) {
+      configureAdmissionQueueTimeout(Duration.parse(admissionQueueTimeout));
+    }
+    String admissionRetryAfter = configurationProperties.get(CFG_KEY_ADMISSION_RETRY_AFTER);
+    if (admissionRetryAfter!=null) {
+      configureAdmissionRetryAfter(Duration.parse(admissionRetryAfter));
+    }
+    String outboundConcurrencyLimit = configurationProperties.get(CFG_KEY_OUTBOUND_CONCURRENCY_LIMIT);
+    if (outboundConcurrencyLimit!=null) {
+      configureOutboundConcurrencyLimit("none".equals(outboundConcurrencyLimit) ? null : ConcurrencyLimit.parse(outboundConcurrencyLimit));
+    }
+    configurationProperties.forEach((key, value)->{
+      if (key.startsWith(CFG_KEY_RATE_LIMIT_PREFIX) && value!=null) {
+        configureRateLimit(key.substring(CFG_KEY_RATE_LIMIT_PREFIX.length()), RateLimit.parse(value));
+      }
+      if (key.startsWith(CFG_KEY_REMOTE_BATCH_PREFIX) && value!=null) {
+        configureRemoteBatch(key.substring(CFG_KEY_REMOTE_BATCH_PREFIX.length()), BatchSettings.parse(value));
+      }
+    });
+    String circuitBreakerFailureThreshold = configurationProperties.get(CFG_KEY_CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+    if (circuitBreakerFailureThreshold!=null) {
+      configureCircuitBreakerFailureThreshold(Integer.parseInt(circuitBreakerFailureThreshold));
+    }
+    String circuitBreakerOpenDuration = configurationProperties.get(CFG_KEY_CIRCUIT_BREAKER_OPEN_DURATION);
+    if (circuitBreakerOpenDuration!=null) {
+      configureCircuitBreakerOpenDuration(Duration.parse(circuitBreakerOpenDuration));
+    }
+    String externalTaskMaxAsyncResponseTimeout = configurationProperties.get(CFG_KEY_EXTERNAL_TASK_MAX_ASYNC_RESPONSE_TIMEOUT);
+    if (externalTaskMaxAsyncResponseTimeout!=null) {
+      configureExternalTaskMaxAsyncResponseTimeout(Duration.parse(externalTaskMaxAsyncResponseTimeout));
+    }
     return this;
   }
 
@@ -125,6 +270,7 @@ public class Configuration {
     addQuery(new ScriptExecutionQuery());
     addQuery(new ScriptExecutionsQuery());
     addQuery(new EventsQuery());
+    addQuery(new OutboundLimitsQuery());
   }
 
   /** can be used by plugins to add queries */
@@ -139,7 +285,10 @@ public class Configuration {
     addCommand(new DeployScriptVersionCommand());
     addCommand(new StartScriptExecutionCommand());
     addCommand(new EndServiceFunctionCommand());
+    addCommand(new ServiceFunctionFailureCommand());
     addCommand(new RunTestsCommand());
+    addCommand(new FetchAndLockCommand());
+    addCommand(new CompleteExternalTasksCommand());
   }
 
   /** can be used by plugins to add commands */
@@ -158,6 +307,13 @@ public class Configuration {
     return this;
   }
 
+  /** in-memory {@link EventListener}s receive all events, also the
+   * ones that are not stored because of the {@link EventRetention} */
+  public Configuration addEventListener(EventListener eventListener) {
+    eventListeners.add(eventListener);
+    return this;
+  }
+
   public void initializeEnginePlugins() {
     ServiceLoader<EnginePlugin> pluginLoader = ServiceLoader.load(EnginePlugin.class);
     for (EnginePlugin plugin : pluginLoader) {
@@ -172,6 +328,7 @@ public class Configuration {
 
   protected void initializeRequestHandlers() {
     addRequestHandler(new CommandHandler());
+    addRequestHandler(new BulkCommandHandler());
     addRequestHandler(new QueryHandler());
     addRequestHandler(new PingHandler());
     addRequestHandler(new FileHandler());
@@ -184,6 +341,7 @@ public class Configuration {
 
   protected void initializeImportProviders() {
     addImportProvider(new HttpService());
+    addImportProvider(new CacheService());
   }
 
   public Configuration addImportProvider(ImportProvider importProvider) {
@@ -201,6 +359,162 @@ public class Configuration {
     return this;
   }
 
+  /** runs engine work and blocking service function I/O each on a virtual-thread-per-task
+   * executor.  Requires Java 21 at runtime, on older runtimes a thread per task is used. */
+  public Configuration configureVirtualThreads() {
+    this.virtualThreads = true;
+    return this;
+  }
+
+  /** uses the compiled scripts that clients deploy instead of parsing the script text.
+   * Only for deployments where all clients that deploy scripts are trusted: the
+   * server can't verify that a compiled script is the result of parsing the text. */
+  public Configuration configureTrustCompiledScripts() {
+    this.trustCompiledScripts = true;
+    return this;
+  }
+
+  /** engine-wide default, see {@link io.rockscript.api.commands.SaveScriptVersionCommand#eventRetention(EventRetention)}
+   * for overriding it per script version. */
+  public Configuration configureEventRetention(EventRetention eventRetention) {
+    this.eventRetention = eventRetention;
+    return this;
+  }
+
+  /** fraction between 0 and 1 of the {@link EventRetention#SAMPLED}
+   * script executions for which the audit events are stored. */
+  public Configuration configureEventSampleRate(double eventSampleRate) {
+    this.eventSampleRate = eventSampleRate;
+    return this;
+  }
+
+  /** ended script executions are compacted into a {@link ScriptExecutionSummary}
+   * when this time to live has passed after their end. By default they are never compacted. */
+  public Configuration configureRetentionTimeToLive(Duration retentionTimeToLive) {
+    this.retentionTimeToLive = retentionTimeToLive;
+    return this;
+  }
+
+  /** overrides the {@link #configureRetentionTimeToLive(Duration)} for the given script name */
+  public Configuration configureScriptRetentionTimeToLive(String scriptName, Duration retentionTimeToLive) {
+    this.scriptRetentionTimeToLives.put(scriptName, retentionTimeToLive);
+    return this;
+  }
+
+  /** if configured, the events of compacted script executions are written to this directory */
+  public Configuration configureArchiveDirectory(File archiveDirectory) {
+    this.archiveDirectory = archiveDirectory;
+    return this;
+  }
+
+  /** how often the {@link RetentionManager} checks for expired script executions.
+   * Not used in test configurations: tests invoke {@link RetentionManager#compact()} */
+  public Configuration configureCompactionInterval(Duration compactionInterval) {
+    this.compactionInterval = compactionInterval;
+    return this;
+  }
+
+  /** directory of the {@link FileBlobStore} in which large payloads are stored.
+   * Defaults to a rockscript-blobs directory in the system temp directory.
+   * Test configurations keep the blobs in memory unless a directory is configured. */
+  public Configuration configureBlobDirectory(File blobDirectory) {
+    this.blobDirectory = blobDirectory;
+    return this;
+  }
+
+  /** service function args and results with a json size above this
+   * number of bytes are stored in the blob store, see {@link PayloadOffloader} */
+  public Configuration configurePayloadOffloadThreshold(int payloadOffloadThreshold) {
+    this.payloadOffloadThreshold = payloadOffloadThreshold;
+    return this;
+  }
+
+  /** max total length of the script texts of the parsed scripts that are
+   * kept in memory.  Least recently used scripts are parsed again when needed. */
+  public Configuration configureEngineScriptCacheMaxWeight(long engineScriptCacheMaxWeight) {
+    this.engineScriptCacheMaxWeight = engineScriptCacheMaxWeight;
+    return this;
+  }
+
+  /** A lock held longer than this is considered to be held by a crashed
+   * owner and its script execution is recovered by the crash recovery. */
+  public Configuration configureLockLeaseDuration(Duration lockLeaseDuration) {
+    this.lockLeaseDuration = lockLeaseDuration;
+    return this;
+  }
+
+  /** max number of threads that replay crashed script executions
+   * in parallel, defaults to the number of available processors. */
+  public Configuration configureRecoveryParallelism(int recoveryParallelism) {
+    this.recoveryParallelism = recoveryParallelism;
+    return this;
+  }
+
+  /** limits the concurrent and the queued commands of the given type, eg startScript.
+   * Commands over the limit are rejected with status 429. */
+  public Configuration configureCommandLimit(String commandType, AdmissionLimit commandLimit) {
+    this.commandLimits.put(commandType, commandLimit);
+    return this;
+  }
+
+  /** limits the concurrent and the queued commands for each script separately */
+  public Configuration configureScriptLimit(AdmissionLimit scriptLimit) {
+    this.scriptLimit = scriptLimit;
+    return this;
+  }
+
+  /** max time that a command waits for a slot when a limit is reached */
+  public Configuration configureAdmissionQueueTimeout(Duration admissionQueueTimeout) {
+    this.admissionQueueTimeout = admissionQueueTimeout;
+    return this;
+  }
+
+  /** time that clients are asked to wait in the Retry-After header of rejected commands */
+  public Configuration configureAdmissionRetryAfter(Duration admissionRetryAfter) {
+    this.admissionRetryAfter = admissionRetryAfter;
+    return this;
+  }
+
+  /** bounds of the adaptive concurrency limit of outbound service calls per host
+   * or service name, see {@link OutboundLimiter}.  null disables the limit. */
+  public Configuration configureOutboundConcurrencyLimit(ConcurrencyLimit outboundConcurrencyLimit) {
+    this.outboundConcurrencyLimit = outboundConcurrencyLimit;
+    return this;
+  }
+
+  /** token bucket rate limit for the outbound service calls to a host or service name */
+  public Configuration configureRateLimit(String target, RateLimit rateLimit) {
+    this.rateLimits.put(target, rateLimit);
+    return this;
+  }
+
+  /** opts in to batching of the remote service function invocations of an endpoint,
+   * see {@link RemoteServiceFunctionBatcher} */
+  public Configuration configureRemoteBatch(String endpoint, BatchSettings batchSettings) {
+    this.remoteBatchSettings.put(endpoint, batchSettings);
+    return this;
+  }
+
+  /** consecutive failed calls to a host or service name that open its circuit breaker,
+   * see {@link CircuitBreakers}.  0 disables the circuit breakers. */
+  public Configuration configureCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+    this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    return this;
+  }
+
+  /** time after which an open circuit breaker lets a probe call through */
+  public Configuration configureCircuitBreakerOpenDuration(Duration circuitBreakerOpenDuration) {
+    this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+    return this;
+  }
+
+  /** upper bound for the time that a fetchAndLock request of an external task
+   * worker waits for tasks, as the waiting request holds a server thread. */
+  public Configuration configureExternalTaskMaxAsyncResponseTimeout(Duration externalTaskMaxAsyncResponseTimeout) {
+    this.externalTaskMaxAsyncResponseTimeout = externalTaskMaxAsyncResponseTimeout;
+    return this;
+  }
+
   // build ////////////////////////////////////////////////////////////////////////////////////////////////
 
   public Engine build() {
@@ -224,30 +538,62 @@ public class Configuration {
 
     if (isTest()) {
       engine.executor = MonitoringExecutor.createTest(engine.engineLogStore);
+      engine.ioExecutor = engine.executor;
       engine.jobExecutor = new TestJobExecutor(engine);
     } else {
-      engine.executor = MonitoringExecutor.createDefault(engine.engineLogStore);
+      if (isVirtualThreads()) {
+        engine.executor = MonitoringExecutor.createVirtualThreads(engine.engineLogStore, "rockscript-cpu-");
+        engine.ioExecutor = MonitoringExecutor.createVirtualThreads(engine.engineLogStore, "rockscript-io-");
+      } else {
+        engine.executor = MonitoringExecutor.createDefault(engine.engineLogStore);
+        engine.ioExecutor = MonitoringExecutor.createIo(engine.engineLogStore);
+      }
       engine.jobExecutor = new InMemoryJobExecutor(engine);
     }
 
     engine.eventDispatcher = createEventDispatcher(engine);
-    engine.scriptExecutionStore = new ScriptExecutionStore(engine);
-    engine.scriptStore = new ScriptStore(engine);
+    engine.scriptExecutionStore = new ScriptExecutionStore(engine)
+      .recoveryParallelism(recoveryParallelism);
+    engine.retentionManager = new RetentionManager(engine)
+      .defaultTimeToLive(retentionTimeToLive)
+      .archiveDirectory(archiveDirectory)
+      .compactionInterval(isTest() ? null : compactionInterval);
+    scriptRetentionTimeToLives.forEach(engine.retentionManager::scriptTimeToLive);
+    engine.scriptStore = new ScriptStore(engine)
+      .engineScriptCacheMaxWeight(engineScriptCacheMaxWeight);
     engine.scriptParser = new ScriptParser(engine);
     engine.jobIdGenerator = new TestIdGenerator(engine, "j");
     engine.scriptIdGenerator = new TestIdGenerator(engine, "s");
     engine.scriptVersionIdGenerator = new TestIdGenerator(engine, "sv");
     engine.scriptExecutionIdGenerator = new TestIdGenerator(engine, "se");
-    engine.lockService = new LockServiceImpl(engine);
+    engine.lockService = new LockServiceImpl(engine)
+      .lockLeaseDuration(lockLeaseDuration);
     engine.lockOperationExecutor = new LockOperationExecutorImpl(engine);
+    engine.admissionControl = new AdmissionControl(engine)
+      .queueTimeout(admissionQueueTimeout)
+      .retryAfter(admissionRetryAfter)
+      .scriptLimit(scriptLimit);
+    commandLimits.forEach(engine.admissionControl::commandLimit);
+    engine.outboundLimiter = new OutboundLimiter(engine)
+      .concurrencyLimit(outboundConcurrencyLimit);
+    rateLimits.forEach(engine.outboundLimiter::rateLimit);
+    engine.circuitBreakers = new CircuitBreakers(engine)
+      .failureThreshold(circuitBreakerFailureThreshold)
+      .openDuration(circuitBreakerOpenDuration);
+    engine.remoteServiceFunctionBatcher = new RemoteServiceFunctionBatcher(engine);
+    remoteBatchSettings.forEach(engine.remoteServiceFunctionBatcher::batchSettings);
     engine.jobService = new JobService(engine);
     engine.jobStore = new InMemoryJobStore(engine);
     engine.converter = new Converter(engine);
     engine.context = new HashMap<>();
+    engine.eventRetention = eventRetention;
+    engine.eventSampleRate = eventSampleRate;
+    engine.trustCompiledScripts = trustCompiledScripts;
 
     engine.commands = commands;
     engine.queries = queries;
     engine.engineListeners = engineListeners;
+    engine.eventListeners = eventListeners;
     engine.requestHandlers = requestHandlers;
 
     // Initialize AbstractRequestHandlers
@@ -259,8 +605,14 @@ public class Configuration {
 
     // Requires plugins to be initialized
     engine.gson = buildGson();
+    engine.eventCodec = new EventCodec(engine.gson);
+    engine.blobStore = createBlobStore();
+    engine.payloadOffloader = new PayloadOffloader(engine, engine.blobStore, payloadOffloadThreshold);
     engine.httpClient = new HttpClient(engine.gson);
-    engine.importResolver = new ImportResolver(engine, importProviders);
+    engine.externalTaskService = new ExternalTaskService()
+      .maxAsyncResponseTimeout(externalTaskMaxAsyncResponseTimeout);
+    engine.importResolver = new ImportResolver(engine, importProviders)
+      .add(engine.externalTaskService);
 
     engine.scanMemberFieldsForEngineListeners();
     engine.throwIfNotProperlyInitialized();
@@ -271,6 +623,15 @@ public class Configuration {
     return new Engine();
   }
 
+  protected BlobStore createBlobStore() {
+    if (blobDirectory!=null) {
+      return new FileBlobStore(blobDirectory);
+    } else if (isTest()) {
+      return new InMemoryBlobStore();
+    }
+    return new FileBlobStore(new File(System.getProperty("java.io.tmpdir"), "rockscript-blobs"));
+  }
+
   protected EventDispatcher createEventDispatcher(Engine engine) {
     return new EventDispatcher(engine);
   }
@@ -280,7 +641,9 @@ public class Configuration {
       .registerTypeAdapterFactory(createCommandTypeAdapterFactory())
       .registerTypeAdapterFactory(createQueryTypeAdapterFactory())
       .registerTypeAdapterFactory(createEventJsonTypeAdapterFactory())
+      .registerTypeAdapterFactory(createRetryPolicyTypeAdapterFactory())
       .registerTypeAdapter(Instant.class, new InstantTypeAdapter())
+      .registerTypeAdapterFactory(new EncodedPayload.EncodedPayloadTypeAdapterFactory())
       .registerTypeHierarchyAdapter(ServiceFunction.class, new ServiceFunctionSerializer())
       .registerTypeHierarchyAdapter(ImportObject.class, new ImportObjectSerializer())
       .setPrettyPrinting()
@@ -320,6 +683,15 @@ public class Configuration {
       ;
   }
 
+  protected static PolymorphicTypeAdapterFactory createRetryPolicyTypeAdapterFactory() {
+    return new PolymorphicTypeAdapterFactory()
+      .typeName(new TypeToken<RetryPolicy>(){},                   "retryPolicy") // abstract type 'retryPolicy' should not be used, but is specified because required by PolymorphicTypeAdapterFactory
+      .typeName(new TypeToken<FixedRetryPolicy>(){},              "fixed")
+      .typeName(new TypeToken<ExponentialRetryPolicy>(){},        "exponential")
+      .typeName(new TypeToken<DecorrelatedJitterRetryPolicy>(){}, "decorrelatedJitter")
+      ;
+  }
+
   static class InstantTypeAdapter extends TypeAdapter<Instant> {
     static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME
       .withZone(ZoneId.of("UTC"));
@@ -350,6 +722,14 @@ public class Configuration {
     return examples;
   }
 
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  public boolean isTrustCompiledScripts() {
+    return trustCompiledScripts;
+  }
+
   public List<ImportProvider> getImportProviders() {
     return importProviders;
   }
@@ -366,6 +746,26 @@ public class Configuration {
     return engineListeners;
   }
 
+  public List<EventListener> getEventListeners() {
+    return eventListeners;
+  }
+
+  public EventRetention getEventRetention() {
+    return eventRetention;
+  }
+
+  public double getEventSampleRate() {
+    return eventSampleRate;
+  }
+
+  public File getBlobDirectory() {
+    return blobDirectory;
+  }
+
+  public int getPayloadOffloadThreshold() {
+    return payloadOffloadThreshold;
+  }
+
   public List<EnginePlugin> getEnginePlugins() {
     return enginePlugins;
   }
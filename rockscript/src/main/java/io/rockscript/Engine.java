@@ -29,11 +29,17 @@ import com.google.gson.stream.JsonWriter;
 import io.rockscript.api.AbstractRequestHandler;
 import io.rockscript.api.Command;
 import io.rockscript.api.Query;
+import io.rockscript.api.commands.StartScriptExecutionCommand;
 import io.rockscript.api.events.*;
+import io.rockscript.api.model.EventRetention;
+import io.rockscript.api.model.ScriptExecution;
 import io.rockscript.engine.EngineException;
 import io.rockscript.engine.ImportObjectSerializer;
 import io.rockscript.engine.ServiceFunctionSerializer;
+import io.rockscript.engine.blob.BlobStore;
+import io.rockscript.engine.blob.PayloadOffloader;
 import io.rockscript.engine.impl.*;
+import io.rockscript.engine.impl.EventListener;
 import io.rockscript.engine.job.*;
 import io.rockscript.examples.ExamplesHandler;
 import io.rockscript.examples.ExamplesLoader;
@@ -42,6 +48,7 @@ import io.rockscript.http.client.HttpClient;
 import io.rockscript.http.servlet.RequestHandler;
 import io.rockscript.service.ImportObject;
 import io.rockscript.service.ImportResolver;
+import io.rockscript.service.task.ExternalTaskService;
 import io.rockscript.service.ServiceFunction;
 import io.rockscript.test.TestJobExecutor;
 import org.slf4j.Logger;
@@ -57,6 +64,7 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 
 @SuppressWarnings("unchecked")
@@ -79,6 +87,7 @@ public class Engine {
   protected ScriptStore scriptStore;
   protected EngineLogStore engineLogStore;
   protected ScriptExecutionStore scriptExecutionStore;
+  protected RetentionManager retentionManager;
   protected ScriptParser scriptParser;
   protected LockOperationExecutor lockOperationExecutor;
   protected LockService lockService;
@@ -87,14 +96,27 @@ public class Engine {
   protected JobExecutor jobExecutor;
   protected ImportResolver importResolver;
   protected Executor executor;
+  protected Executor ioExecutor;
+  protected AdmissionControl admissionControl;
+  protected OutboundLimiter outboundLimiter;
+  protected CircuitBreakers circuitBreakers;
+  protected RemoteServiceFunctionBatcher remoteServiceFunctionBatcher;
+  protected ExternalTaskService externalTaskService;
   protected Gson gson;
+  protected EventCodec eventCodec;
+  protected BlobStore blobStore;
+  protected PayloadOffloader payloadOffloader;
   protected HttpClient httpClient;
   protected Converter converter;
   protected Map<Object,Object> context;
+  protected EventRetention eventRetention;
+  protected double eventSampleRate;
+  protected boolean trustCompiledScripts;
 
   protected List<Command> commands;
   protected List<Query> queries;
   protected List<EngineListener> engineListeners;
+  protected List<EventListener> eventListeners;
   protected List<RequestHandler> requestHandlers;
 
   public Engine() {
@@ -163,6 +185,7 @@ public class Engine {
   public Engine start() {
     if (!started) {
       started = true;
+      Parse.warmUp();
       engineListeners.forEach(listener->listener.engineStarts(this));
     }
     return this;
@@ -179,6 +202,22 @@ public class Engine {
     return started;
   }
 
+  /** Starts a script execution without running the script on the calling thread.
+   * @return a future that completes with the state of the script execution
+   * when it waits or ends for the first time. */
+  public CompletableFuture<ScriptExecution> startScriptExecutionAsync(StartScriptExecutionCommand startScriptExecutionCommand) {
+    return startScriptExecutionCommand
+      .executeAsync(this)
+      .thenApply(engineScriptExecution->engineScriptExecution.toScriptExecution());
+  }
+
+  /** @return a future that completes with the final state of the script execution when it ends. */
+  public CompletableFuture<ScriptExecution> whenScriptExecutionEnded(String scriptExecutionId) {
+    return scriptExecutionStore
+      .whenEnded(scriptExecutionId)
+      .thenApply(engineScriptExecution->engineScriptExecution.toScriptExecution());
+  }
+
   public Map<Object, Object> getContext() {
     return context;
   }
@@ -207,6 +246,10 @@ public class Engine {
     return scriptExecutionStore;
   }
 
+  public RetentionManager getRetentionManager() {
+    return retentionManager;
+  }
+
   public ScriptStore getScriptStore() {
     return scriptStore;
   }
@@ -223,10 +266,48 @@ public class Engine {
     return gson;
   }
 
+  public EventCodec getEventCodec() {
+    return eventCodec;
+  }
+
+  public BlobStore getBlobStore() {
+    return blobStore;
+  }
+
+  public PayloadOffloader getPayloadOffloader() {
+    return payloadOffloader;
+  }
+
+  /** executor for short, cpu bound engine work */
   public Executor getExecutor() {
     return executor;
   }
 
+  /** executor for work that blocks on I/O like outgoing http requests */
+  public Executor getIoExecutor() {
+    return ioExecutor;
+  }
+
+  public AdmissionControl getAdmissionControl() {
+    return admissionControl;
+  }
+
+  public OutboundLimiter getOutboundLimiter() {
+    return outboundLimiter;
+  }
+
+  public CircuitBreakers getCircuitBreakers() {
+    return circuitBreakers;
+  }
+
+  public RemoteServiceFunctionBatcher getRemoteServiceFunctionBatcher() {
+    return remoteServiceFunctionBatcher;
+  }
+
+  public ExternalTaskService getExternalTaskService() {
+    return externalTaskService;
+  }
+
   public HttpClient getHttpClient() {
     return httpClient;
   }
@@ -266,4 +347,25 @@ public class Engine {
   public Converter getConverter() {
     return converter;
   }
+
+  /** engine default, can be overridden per script version */
+  public EventRetention getEventRetention() {
+    return eventRetention;
+  }
+
+  /** fraction of {@link EventRetention#SAMPLED} script executions that store audit events */
+  public double getEventSampleRate() {
+    return eventSampleRate;
+  }
+
+  /** true if the compiled scripts that clients deploy are used without parsing the script text */
+  public boolean isTrustCompiledScripts() {
+    return trustCompiledScripts;
+  }
+
+  /** in-memory listeners that receive all events,
+   * including the ones that are not stored */
+  public List<EventListener> getEventListeners() {
+    return eventListeners;
+  }
 }
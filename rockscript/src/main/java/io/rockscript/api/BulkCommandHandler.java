@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import io.rockscript.api.commands.EndServiceFunctionCommand;
+import io.rockscript.api.commands.ScriptExecutionResponse;
+import io.rockscript.api.commands.ServiceFunctionFailureCommand;
+import io.rockscript.engine.impl.AdmissionControl;
+import io.rockscript.engine.impl.EngineScriptExecution;
+import io.rockscript.engine.impl.LockOperation;
+import io.rockscript.engine.impl.LockOperationGroup;
+import io.rockscript.http.Http;
+import io.rockscript.http.servlet.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/** Executes a stream of commands in a single request.  The body is either
+ * a json array of commands or newline delimited json with a command per line.
+ * The response contains a {@link BulkCommandResult} for each command, in the
+ * same order and in the same format as the request.
+ *
+ * Commands are parsed and executed in batches of {@link #batchSize(int)} while
+ * the body is streamed.  Within a batch, the end function and function failure
+ * commands of the same script execution are applied under a single lock. */
+public class BulkCommandHandler extends AbstractRequestHandler {
+
+  static Logger log = LoggerFactory.getLogger(BulkCommandHandler.class);
+
+  public static final int DEFAULT_BATCH_SIZE = 500;
+
+  int batchSize = DEFAULT_BATCH_SIZE;
+
+  public BulkCommandHandler() {
+    super(POST, "/commands");
+  }
+
+  public BulkCommandHandler batchSize(int batchSize) {
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  @Override
+  public void handle(ServerRequest request, ServerResponse response) {
+    Gson gson = engine.getGson();
+    JsonReader jsonReader = new JsonReader(request.getBodyReader());
+    // lenient reading allows for the multiple top level values of newline delimited json
+    jsonReader.setLenient(true);
+    boolean jsonArray;
+    try {
+      JsonToken firstToken = jsonReader.peek();
+      if (firstToken==JsonToken.END_DOCUMENT) {
+        throw new BadRequestException("No commands were provided in the body");
+      }
+      jsonArray = firstToken==JsonToken.BEGIN_ARRAY;
+      if (jsonArray) {
+        jsonReader.beginArray();
+      }
+    } catch (IOException e) {
+      throw new BadRequestException("Couldn't read the commands: "+e.getMessage(), e);
+    }
+
+    response
+      .status(200)
+      .headerContentType(jsonArray ? Http.ContentTypes.APPLICATION_JSON : Http.ContentTypes.APPLICATION_NDJSON);
+    int commandCount = 0;
+    try (Writer writer = response.bodyWriter(null)) {
+      if (jsonArray) {
+        writer.write('[');
+      }
+      boolean readingCommands = true;
+      while (readingCommands) {
+        List<Command> commands = new ArrayList<>();
+        List<BulkCommandResult> results = new ArrayList<>();
+        try {
+          while (commands.size()<batchSize && hasNextCommand(jsonReader, jsonArray)) {
+            BulkCommandResult result = new BulkCommandResult(commandCount++);
+            Command command = gson.fromJson(jsonReader, Command.class);
+            if (command==null) {
+              result.error(new BadRequestException("No valid command"));
+            }
+            commands.add(command);
+            results.add(result);
+          }
+          readingCommands = commands.size()==batchSize;
+        } catch (IOException | JsonParseException e) {
+          // the position in the stream is lost, so the commands after this one can't be read
+          log.debug("Couldn't read command "+commandCount+": "+e.getMessage(), e);
+          commands.add(null);
+          results.add(new BulkCommandResult(commandCount++).error(new BadRequestException("Couldn't read command: "+e.getMessage())));
+          readingCommands = false;
+        }
+
+        executeCommands(commands, results);
+
+        for (BulkCommandResult result: results) {
+          if (jsonArray && result.index>0) {
+            writer.write(',');
+          }
+          // a new json writer per result as the engine's gson might be configured for pretty printing
+          gson.toJson(result, BulkCommandResult.class, new JsonWriter(writer));
+          if (!jsonArray) {
+            writer.write('\n');
+          }
+        }
+        writer.flush();
+      }
+      if (jsonArray) {
+        writer.write(']');
+      }
+    } catch (IOException e) {
+      log.debug("Couldn't write the command results: "+e.getMessage(), e);
+    }
+    response.setBodyLog("..."+commandCount+" command results...");
+  }
+
+  private boolean hasNextCommand(JsonReader jsonReader, boolean jsonArray) throws IOException {
+    return jsonArray
+      ? jsonReader.hasNext()
+      : jsonReader.peek()!=JsonToken.END_DOCUMENT;
+  }
+
+  void executeCommands(List<Command> commands, List<BulkCommandResult> results) {
+    Map<String,List<Integer>> commandIndexesByScriptExecutionId = new HashMap<>();
+    for (int i=0; i<commands.size(); i++) {
+      String scriptExecutionId = getGroupableScriptExecutionId(commands.get(i));
+      if (scriptExecutionId!=null) {
+        commandIndexesByScriptExecutionId
+          .computeIfAbsent(scriptExecutionId, id->new ArrayList<>())
+          .add(i);
+      }
+    }
+    for (int i=0; i<commands.size(); i++) {
+      Command command = commands.get(i);
+      if (command!=null) {
+        String scriptExecutionId = getGroupableScriptExecutionId(command);
+        if (scriptExecutionId==null) {
+          executeCommand(command, results.get(i));
+        } else {
+          // the group is executed at the position of its first command
+          List<Integer> commandIndexes = commandIndexesByScriptExecutionId.remove(scriptExecutionId);
+          if (commandIndexes!=null) {
+            executeCommandGroup(scriptExecutionId, commandIndexes, commands, results);
+          }
+        }
+      }
+    }
+  }
+
+  private String getGroupableScriptExecutionId(Command command) {
+    if (command instanceof EndServiceFunctionCommand) {
+      return ((EndServiceFunctionCommand)command).getScriptExecutionId();
+    }
+    if (command instanceof ServiceFunctionFailureCommand) {
+      return ((ServiceFunctionFailureCommand)command).getScriptExecutionId();
+    }
+    return null;
+  }
+
+  private void executeCommand(Command command, BulkCommandResult result) {
+    try {
+      result.response(engine.getAdmissionControl().execute(command));
+    } catch (Exception e) {
+      result.error(e);
+    }
+  }
+
+  private void executeCommandGroup(String scriptExecutionId, List<Integer> commandIndexes, List<Command> commands, List<BulkCommandResult> results) {
+    if (commandIndexes.size()==1) {
+      int index = commandIndexes.get(0);
+      executeCommand(commands.get(index), results.get(index));
+      return;
+    }
+    List<LockOperation> lockOperations = new ArrayList<>();
+    List<Integer> groupedIndexes = new ArrayList<>();
+    for (Integer index: commandIndexes) {
+      Command command = commands.get(index);
+      try {
+        LockOperation lockOperation = command instanceof EndServiceFunctionCommand
+          ? ((EndServiceFunctionCommand)command).createLockOperation()
+          : ((ServiceFunctionFailureCommand)command).createLockOperation();
+        lockOperations.add(lockOperation);
+        groupedIndexes.add(index);
+      } catch (Exception e) {
+        results.get(index).error(e);
+      }
+    }
+    if (lockOperations.isEmpty()) {
+      return;
+    }
+    // the group is executed under a single lock, so it's admitted
+    // once, as its first command, and not once per command
+    Command firstCommand = commands.get(groupedIndexes.get(0));
+    try (AdmissionControl.Admission admission = engine.getAdmissionControl().admit(firstCommand)) {
+      LockOperationGroup lockOperationGroup = new LockOperationGroup(scriptExecutionId, lockOperations);
+      EngineScriptExecution engineScriptExecution = engine
+        .getLockOperationExecutor()
+        .executeInLock(lockOperationGroup);
+      for (int i=0; i<groupedIndexes.size(); i++) {
+        int index = groupedIndexes.get(i);
+        Exception failure = lockOperationGroup.getFailure(lockOperations.get(i));
+        if (failure!=null) {
+          results.get(index).error(failure);
+        } else if (commands.get(index) instanceof EndServiceFunctionCommand) {
+          results.get(index).response(engineScriptExecution!=null
+            ? new ScriptExecutionResponse(engineScriptExecution)
+            : new ScriptExecutionResponse(scriptExecutionId));
+        } else {
+          results.get(index).response(null);
+        }
+      }
+    } catch (Exception e) {
+      groupedIndexes.forEach(index->results.get(index).error(e));
+    }
+  }
+
+  /** Outcome of a single command in the response of the {@link BulkCommandHandler}. */
+  public static class BulkCommandResult {
+
+    int index;
+    int status;
+    Object response;
+    String error;
+
+    /** constructor for Gson serialization */
+    BulkCommandResult() {
+    }
+
+    BulkCommandResult(int index) {
+      this.index = index;
+    }
+
+    BulkCommandResult response(Object response) {
+      this.status = 200;
+      this.response = response;
+      return this;
+    }
+
+    BulkCommandResult error(Exception exception) {
+      if (exception instanceof HttpException) {
+        this.status = ((HttpException)exception).getStatusCode();
+        this.error = exception.getMessage();
+      } else {
+        log.debug("Couldn't execute command "+index+": "+exception.getMessage(), exception);
+        this.status = 500;
+        this.error = "See the server logs for more details";
+      }
+      return this;
+    }
+
+    /** position of the command in the request */
+    public int getIndex() {
+      return index;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    /** the response of the command, serialized as a
+     * json object, or null if the command failed */
+    public Object getResponse() {
+      return response;
+    }
+
+    public String getError() {
+      return error;
+    }
+  }
+}
@@ -41,7 +41,7 @@ public class CommandHandler extends AbstractRequestHandler {
       Gson gson = engine.getGson();
       Command command = gson.fromJson(jsonBodyString, Command.class);
       BadRequestException.throwIfNull(command, "No valid command was provided in the body: "+jsonBodyString);
-      Object commandResponse = command.execute(engine);
+      Object commandResponse = engine.getAdmissionControl().execute(command);
       response.bodyJson(commandResponse);
       response.status(200);
     } catch (HttpException e) {
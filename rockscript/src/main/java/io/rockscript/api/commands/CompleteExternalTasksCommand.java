@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.api.commands;
+
+import io.rockscript.Engine;
+import io.rockscript.api.Command;
+import io.rockscript.engine.impl.LockOperation;
+import io.rockscript.engine.impl.LockOperationEnd;
+import io.rockscript.engine.impl.LockOperationFailure;
+import io.rockscript.engine.impl.LockOperationGroup;
+import io.rockscript.http.servlet.BadRequestException;
+import io.rockscript.service.task.ExternalTask;
+import io.rockscript.service.task.ExternalTaskService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Completes a batch of {@link ExternalTask}s that are locked by the worker
+ * with a result or with an error.  The completions of the same script
+ * execution are applied under a single lock.  A completion that is rejected,
+ * eg because the lock of the worker expired, or that fails when it's applied
+ * to the script execution, is reported in the errors of the response and
+ * doesn't prevent the other completions of the batch. */
+public class CompleteExternalTasksCommand implements Command<CompleteExternalTasksResponse> {
+
+  transient static Logger log = LoggerFactory.getLogger(CompleteExternalTasksCommand.class);
+
+  protected String workerId;
+  protected List<ExternalTaskCompletion> completions;
+
+  @Override
+  public String getType() {
+    return "completeExternalTasks";
+  }
+
+  @Override
+  public CompleteExternalTasksResponse execute(Engine engine) {
+    BadRequestException.throwIfNull(workerId, "workerId is a mandatory field");
+    BadRequestException.throwIfNull(completions, "completions is a mandatory field");
+
+    CompleteExternalTasksResponse response = new CompleteExternalTasksResponse();
+    ExternalTaskService externalTaskService = engine.getExternalTaskService();
+    Map<String,List<LockOperation>> lockOperationsByScriptExecutionId = new LinkedHashMap<>();
+    Map<String,List<String>> taskIdsByScriptExecutionId = new LinkedHashMap<>();
+    for (ExternalTaskCompletion completion: completions) {
+      try {
+        BadRequestException.throwIfNull(completion.taskId, "taskId is a mandatory field");
+        ExternalTask externalTask = externalTaskService.complete(workerId, completion.taskId);
+        LockOperation lockOperation = completion.error!=null
+          ? new LockOperationFailure(externalTask.getContinuationReference(), completion.error, completion.retryTime)
+          : new LockOperationEnd(externalTask.getContinuationReference(), completion.result);
+        lockOperationsByScriptExecutionId
+          .computeIfAbsent(externalTask.getScriptExecutionId(), id->new ArrayList<>())
+          .add(lockOperation);
+        taskIdsByScriptExecutionId
+          .computeIfAbsent(externalTask.getScriptExecutionId(), id->new ArrayList<>())
+          .add(completion.taskId);
+      } catch (BadRequestException e) {
+        response.errors.put(completion.taskId, e.getMessage());
+      }
+    }
+
+    lockOperationsByScriptExecutionId.forEach((scriptExecutionId, lockOperations) -> {
+      List<String> taskIds = taskIdsByScriptExecutionId.get(scriptExecutionId);
+      LockOperation lockOperation = lockOperations.size()==1
+        ? lockOperations.get(0)
+        : new LockOperationGroup(scriptExecutionId, lockOperations);
+      engine
+        .getLockOperationExecutor()
+        .executeInLock(lockOperation);
+      for (int i=0; i<taskIds.size(); i++) {
+        // the lock operation executor doesn't throw, it records the failure in the operation
+        Exception failure = lockOperation instanceof LockOperationGroup
+          ? ((LockOperationGroup)lockOperation).getFailure(lockOperations.get(i))
+          : lockOperation.getFailure();
+        if (failure==null) {
+          response.completedTaskIds.add(taskIds.get(i));
+        } else {
+          log.debug("Couldn't complete external task "+taskIds.get(i)+": "+failure.getMessage(), failure);
+          response.errors.put(taskIds.get(i), failure.getMessage()!=null ? failure.getMessage() : failure.toString());
+        }
+      }
+    });
+    return response;
+  }
+
+  public String getWorkerId() {
+    return this.workerId;
+  }
+  public void setWorkerId(String workerId) {
+    this.workerId = workerId;
+  }
+  public CompleteExternalTasksCommand workerId(String workerId) {
+    this.workerId = workerId;
+    return this;
+  }
+
+  public List<ExternalTaskCompletion> getCompletions() {
+    return this.completions;
+  }
+  public void setCompletions(List<ExternalTaskCompletion> completions) {
+    this.completions = completions;
+  }
+
+  public CompleteExternalTasksCommand complete(String taskId, Object result) {
+    return completion(new ExternalTaskCompletion(taskId, result, null, null));
+  }
+
+  public CompleteExternalTasksCommand fail(String taskId, String error, Instant retryTime) {
+    return completion(new ExternalTaskCompletion(taskId, null, error, retryTime));
+  }
+
+  CompleteExternalTasksCommand completion(ExternalTaskCompletion completion) {
+    if (completions==null) {
+      completions = new ArrayList<>();
+    }
+    completions.add(completion);
+    return this;
+  }
+
+  /** The result or the error of one external task.  With an error, the
+   * retryTime schedules a retry of the service function, which adds a new
+   * external task at that time. */
+  public static class ExternalTaskCompletion {
+
+    String taskId;
+    Object result;
+    String error;
+    Instant retryTime;
+
+    /** for gson */
+    ExternalTaskCompletion() {
+    }
+
+    public ExternalTaskCompletion(String taskId, Object result, String error, Instant retryTime) {
+      this.taskId = taskId;
+      this.result = result;
+      this.error = error;
+      this.retryTime = retryTime;
+    }
+
+    public String getTaskId() {
+      return taskId;
+    }
+
+    public Object getResult() {
+      return result;
+    }
+
+    public String getError() {
+      return error;
+    }
+
+    public Instant getRetryTime() {
+      return retryTime;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.api.commands;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CompleteExternalTasksResponse {
+
+  List<String> completedTaskIds = new ArrayList<>();
+  /** error messages by taskId for the completions that were rejected */
+  Map<String,String> errors = new LinkedHashMap<>();
+
+  public List<String> getCompletedTaskIds() {
+    return completedTaskIds;
+  }
+
+  public Map<String,String> getErrors() {
+    return errors;
+  }
+}
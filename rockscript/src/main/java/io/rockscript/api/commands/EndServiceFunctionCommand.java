@@ -39,13 +39,11 @@ public class EndServiceFunctionCommand implements Command<ScriptExecutionRespons
 
   @Override
   public ScriptExecutionResponse execute(Engine engine) {
-    BadRequestException.throwIfNull(scriptExecutionId, "scriptExecutionId is a mandatory field");
-    BadRequestException.throwIfNull(scriptExecutionId, "executionId is a mandatory field");
+    LockOperationEnd lockOperationEnd = createLockOperation();
     try {
-      ContinuationReference continuationReference = new ContinuationReference(scriptExecutionId, executionId);
       EngineScriptExecution engineScriptExecution = engine
           .getLockOperationExecutor()
-          .executeInLock(new LockOperationEnd(continuationReference, result));
+          .executeInLock(lockOperationEnd);
 
       return new ScriptExecutionResponse(engineScriptExecution);
 
@@ -54,6 +52,14 @@ public class EndServiceFunctionCommand implements Command<ScriptExecutionRespons
     }
   }
 
+  /** the lock operation that this command executes, which can also
+   * be grouped with other lock operations on the same script execution */
+  public LockOperationEnd createLockOperation() {
+    BadRequestException.throwIfNull(scriptExecutionId, "scriptExecutionId is a mandatory field");
+    BadRequestException.throwIfNull(executionId, "executionId is a mandatory field");
+    return new LockOperationEnd(new ContinuationReference(scriptExecutionId, executionId), result);
+  }
+
   public EndServiceFunctionCommand continuationReference(ContinuationReference continuationReference) {
     this.scriptExecutionId = continuationReference.getScriptExecutionId();
     this.executionId = continuationReference.getExecutionId();
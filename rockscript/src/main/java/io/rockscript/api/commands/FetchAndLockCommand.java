@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.api.commands;
+
+import io.rockscript.Engine;
+import io.rockscript.api.Command;
+import io.rockscript.http.servlet.BadRequestException;
+import io.rockscript.service.task.ExternalTask;
+
+import java.time.Duration;
+import java.util.List;
+
+/** Locks available {@link ExternalTask}s of the given topics for a worker,
+ * see {@link io.rockscript.service.task.ExternalTaskService}.
+ * With an asyncResponseTimeout, the command long polls: the response
+ * is sent as soon as tasks are added or when the timeout passes. */
+public class FetchAndLockCommand implements Command<List<ExternalTask>> {
+
+  public static final int DEFAULT_MAX_TASKS = 10;
+
+  protected String workerId;
+  protected List<String> topics;
+  protected Integer maxTasks;
+  /** milliseconds */
+  protected Long lockDuration;
+  /** milliseconds */
+  protected Long asyncResponseTimeout;
+
+  @Override
+  public String getType() {
+    return "fetchAndLock";
+  }
+
+  @Override
+  public List<ExternalTask> execute(Engine engine) {
+    BadRequestException.throwIfNull(workerId, "workerId is a mandatory field");
+    if (topics==null || topics.isEmpty()) {
+      throw new BadRequestException("topics is a mandatory field");
+    }
+    return engine
+      .getExternalTaskService()
+      .fetchAndLock(
+        workerId,
+        topics,
+        maxTasks!=null ? maxTasks : DEFAULT_MAX_TASKS,
+        lockDuration!=null ? Duration.ofMillis(lockDuration) : null,
+        asyncResponseTimeout!=null ? Duration.ofMillis(asyncResponseTimeout) : null);
+  }
+
+  public String getWorkerId() {
+    return this.workerId;
+  }
+  public void setWorkerId(String workerId) {
+    this.workerId = workerId;
+  }
+  public FetchAndLockCommand workerId(String workerId) {
+    this.workerId = workerId;
+    return this;
+  }
+
+  public List<String> getTopics() {
+    return this.topics;
+  }
+  public void setTopics(List<String> topics) {
+    this.topics = topics;
+  }
+  public FetchAndLockCommand topics(List<String> topics) {
+    this.topics = topics;
+    return this;
+  }
+
+  public Integer getMaxTasks() {
+    return this.maxTasks;
+  }
+  public void setMaxTasks(Integer maxTasks) {
+    this.maxTasks = maxTasks;
+  }
+  public FetchAndLockCommand maxTasks(Integer maxTasks) {
+    this.maxTasks = maxTasks;
+    return this;
+  }
+
+  public Long getLockDuration() {
+    return this.lockDuration;
+  }
+  public void setLockDuration(Long lockDuration) {
+    this.lockDuration = lockDuration;
+  }
+  public FetchAndLockCommand lockDuration(Long lockDuration) {
+    this.lockDuration = lockDuration;
+    return this;
+  }
+
+  public Long getAsyncResponseTimeout() {
+    return this.asyncResponseTimeout;
+  }
+  public void setAsyncResponseTimeout(Long asyncResponseTimeout) {
+    this.asyncResponseTimeout = asyncResponseTimeout;
+  }
+  public FetchAndLockCommand asyncResponseTimeout(Long asyncResponseTimeout) {
+    this.asyncResponseTimeout = asyncResponseTimeout;
+    return this;
+  }
+}
@@ -3,6 +3,7 @@ package io.rockscript.api.commands;
 import io.rockscript.Engine;
 import io.rockscript.api.Command;
 import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.engine.impl.ScriptExecutionRecovery;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -14,15 +15,21 @@ public class RecoverExecutionsCommand implements Command<RecoverExecutionsRespon
     return "recoverExecutions";
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public RecoverExecutionsResponse execute(Engine engine) {
-    List<ScriptExecution> recoveredScriptExecutions = (List) engine
+    ScriptExecutionRecovery recovery = engine
       .getScriptExecutionStore()
-      .recoverCrashedScriptExecutions()
+      .recoverCrashedScriptExecutions();
+    List<ScriptExecution> recoveredScriptExecutions = recovery
+      .getRecoveredScriptExecutions()
       .stream()
       .map(ese->ese.toScriptExecution())
       .collect(Collectors.toList());
-    return new RecoverExecutionsResponse(recoveredScriptExecutions);
+    RecoverExecutionsResponse response = new RecoverExecutionsResponse(recoveredScriptExecutions);
+    response.openScriptExecutions = recovery.getOpenScriptExecutionCount();
+    response.lockedScriptExecutions = recovery.getLockedCount();
+    response.failures = recovery.getFailures();
+    response.durationMillis = recovery.getDuration().toMillis();
+    return response;
   }
 }
@@ -3,10 +3,18 @@ package io.rockscript.api.commands;
 import io.rockscript.api.model.ScriptExecution;
 
 import java.util.List;
+import java.util.Map;
 
 public class RecoverExecutionsResponse {
 
   public List<ScriptExecution> scriptExecutions;
+  /** number of script executions that didn't end with an unlocking event */
+  public int openScriptExecutions;
+  /** number of open script executions that were skipped because their lock didn't expire */
+  public int lockedScriptExecutions;
+  /** error messages by script execution id of the script executions that couldn't be recovered */
+  public Map<String,String> failures;
+  public long durationMillis;
 
   public RecoverExecutionsResponse() {
   }
@@ -18,4 +26,20 @@ public class RecoverExecutionsResponse {
   public List<ScriptExecution> getScriptExecutions() {
     return scriptExecutions;
   }
+
+  public int getOpenScriptExecutions() {
+    return openScriptExecutions;
+  }
+
+  public int getLockedScriptExecutions() {
+    return lockedScriptExecutions;
+  }
+
+  public Map<String,String> getFailures() {
+    return failures;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
 }
@@ -22,13 +22,20 @@ package io.rockscript.api.commands;
 import io.rockscript.Engine;
 import io.rockscript.api.Command;
 import io.rockscript.api.events.ScriptVersionSavedEvent;
+import io.rockscript.api.model.EventRetention;
 import io.rockscript.api.model.Script;
 import io.rockscript.api.model.ScriptVersion;
 import io.rockscript.engine.EngineException;
+import io.rockscript.engine.impl.EngineScript;
+import io.rockscript.engine.impl.EngineScriptCodec;
 import io.rockscript.engine.impl.Parse;
 import io.rockscript.engine.impl.ScriptStore;
 import io.rockscript.http.servlet.BadRequestException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Base64;
 import java.util.List;
 
 /** Saves a new script version, but does not make it the active one.
@@ -49,9 +56,13 @@ import java.util.List;
  */
 public class SaveScriptVersionCommand implements Command<ScriptVersion> {
 
+  transient static Logger log = LoggerFactory.getLogger(SaveScriptVersionCommand.class);
+
   protected String scriptId;
   protected String scriptName;
   protected String scriptText;
+  protected EventRetention eventRetention;
+  protected String compiledScript;
 
   @Override
   public String getType() {
@@ -60,10 +71,17 @@ public class SaveScriptVersionCommand implements Command<ScriptVersion> {
 
   @Override
   public ScriptVersion execute(Engine engine) {
-    Parse parse = engine.getScriptParser().parseScriptText(scriptText);
-
     ScriptStore scriptStore = engine.getScriptStore();
 
+    // a script text that was deployed before doesn't have to be parsed again
+    EngineScript engineScript = scriptStore.findEngineScriptByText(scriptText);
+    if (engineScript==null) {
+      engineScript = decodeCompiledScript(engine);
+    }
+    Parse parse = engineScript==null
+                  ? engine.getScriptParser().parseScriptText(scriptText)
+                  : null;
+
     if (scriptId!=null) {
       Script script = scriptStore.findScriptById(scriptId);
       BadRequestException.throwIfNull(script, "Script %s does not exist", scriptId);
@@ -81,18 +99,46 @@ public class SaveScriptVersionCommand implements Command<ScriptVersion> {
     scriptVersion.setScriptId(scriptId);
     scriptVersion.setScriptName(scriptName);
     scriptVersion.setText(scriptText);
-    scriptVersion.setErrors(parse.getErrors());
+    if (parse!=null) {
+      scriptVersion.setErrors(parse.getErrors());
+      engineScript = parse.getEngineScript();
+    }
+    if (engineScript!=null) {
+      scriptVersion.setCompiledScript(EngineScriptCodec.encode(engineScript, scriptText));
+    }
     scriptVersion.setActive(getActivate() ? Boolean.TRUE : null);
+    scriptVersion.setEventRetention(eventRetention);
 
     engine
       .getEventDispatcher()
       .dispatch(new ScriptVersionSavedEvent(scriptVersion));
 
-    scriptStore.addParsedScriptAstToCache(parse, scriptVersion);
+    if (engineScript!=null) {
+      engineScript.setScriptVersion(scriptVersion);
+      scriptStore.addParsedScriptAstToCache(scriptVersionId, engineScript);
+    }
 
     return scriptVersion;
   }
 
+  /** a valid precompiled script means the script text doesn't have to be parsed.
+   * As the server can't verify that the compiled script matches the text, it's
+   * only used if the engine is configured to trust compiled scripts. */
+  private EngineScript decodeCompiledScript(Engine engine) {
+    if (compiledScript!=null && !engine.isTrustCompiledScripts()) {
+      log.debug("Ignoring compiled script, the engine is not configured to trust compiled scripts");
+      return null;
+    }
+    if (compiledScript!=null && scriptText!=null) {
+      try {
+        return EngineScriptCodec.decode(Base64.getDecoder().decode(compiledScript), scriptText, engine);
+      } catch (RuntimeException e) {
+        log.debug("Ignoring compiled script: "+e.getMessage());
+      }
+    }
+    return null;
+  }
+
   protected boolean getActivate() {
     return false;
   }
@@ -120,4 +166,29 @@ public class SaveScriptVersionCommand implements Command<ScriptVersion> {
     this.scriptText = scriptText;
     return this;
   }
+
+  public EventRetention getEventRetention() {
+    return this.eventRetention;
+  }
+  public void setEventRetention(EventRetention eventRetention) {
+    this.eventRetention = eventRetention;
+  }
+  /** (Optional) overrides the engine default event retention for executions of this script version */
+  public SaveScriptVersionCommand eventRetention(EventRetention eventRetention) {
+    this.eventRetention = eventRetention;
+    return this;
+  }
+
+  public String getCompiledScript() {
+    return this.compiledScript;
+  }
+  public void setCompiledScript(String compiledScript) {
+    this.compiledScript = compiledScript;
+  }
+  /** (Optional) base64 encoded {@link EngineScriptCodec} form of the script text
+   * so that the server doesn't have to parse it.  Ignored if it doesn't match the script text. */
+  public SaveScriptVersionCommand compiledScript(byte[] compiledScript) {
+    this.compiledScript = compiledScript!=null ? Base64.getEncoder().encodeToString(compiledScript) : null;
+    return this;
+  }
 }
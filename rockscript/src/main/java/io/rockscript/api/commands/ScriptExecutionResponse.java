@@ -35,8 +35,14 @@ public class ScriptExecutionResponse {
     this.scriptExecutionId = engineScriptExecution.getId();
   }
 
+  /** for asynchronous starts that didn't wait for the script execution */
+  public ScriptExecutionResponse(String scriptExecutionId) {
+    this.scriptExecutionId = scriptExecutionId;
+  }
+
+  /** @return null if the script execution was started asynchronously and the response didn't wait for it */
   public ScriptExecution getScriptExecution() {
-    return engineScriptExecution.toScriptExecution();
+    return engineScriptExecution!=null ? engineScriptExecution.toScriptExecution() : null;
   }
 
   public EngineScriptExecution getEngineScriptExecution() {
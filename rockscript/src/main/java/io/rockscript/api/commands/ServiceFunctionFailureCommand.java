@@ -42,14 +42,11 @@ public class ServiceFunctionFailureCommand implements Command<Void> {
 
   @Override
   public Void execute(Engine engine) {
-    BadRequestException.throwIfNull(scriptExecutionId, "scriptExecutionId is a mandatory field");
-    BadRequestException.throwIfNull(scriptExecutionId, "executionId is a mandatory field");
+    LockOperationFailure lockOperationFailure = createLockOperation();
     try {
-      ContinuationReference continuationReference = new ContinuationReference(scriptExecutionId, executionId);
-
       engine
         .getLockOperationExecutor()
-        .executeInLock(new LockOperationFailure(continuationReference, error, retryTime));
+        .executeInLock(lockOperationFailure);
 
       return null;
 
@@ -58,6 +55,14 @@ public class ServiceFunctionFailureCommand implements Command<Void> {
     }
   }
 
+  /** the lock operation that this command executes, which can also
+   * be grouped with other lock operations on the same script execution */
+  public LockOperationFailure createLockOperation() {
+    BadRequestException.throwIfNull(scriptExecutionId, "scriptExecutionId is a mandatory field");
+    BadRequestException.throwIfNull(executionId, "executionId is a mandatory field");
+    return new LockOperationFailure(new ContinuationReference(scriptExecutionId, executionId), error, retryTime);
+  }
+
   public ServiceFunctionFailureCommand continuationReference(ContinuationReference continuationReference) {
     this.scriptExecutionId = continuationReference.getScriptExecutionId();
     this.executionId = continuationReference.getExecutionId();
@@ -19,14 +19,20 @@ import io.rockscript.Engine;
 import io.rockscript.api.Command;
 import io.rockscript.api.model.Script;
 import io.rockscript.engine.EngineException;
+import io.rockscript.engine.impl.AdmissionControl.Admission;
 import io.rockscript.engine.impl.EngineScript;
 import io.rockscript.engine.impl.EngineScriptExecution;
+import io.rockscript.engine.impl.LockOperationExecutor;
 import io.rockscript.engine.impl.LockOperationStart;
 import io.rockscript.engine.impl.ScriptStore;
 import io.rockscript.http.servlet.BadRequestException;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /** AsyncHttpRequest to start a new script execution.
  * StartScriptExecutionCommand's are serializable with Gson */
@@ -36,6 +42,11 @@ public class StartScriptExecutionCommand implements Command<ScriptExecutionRespo
   protected String scriptName;
   protected String scriptVersionId;
   protected Object input;
+  protected Boolean async;
+  protected Long waitMillis;
+  protected Boolean waitForEnd;
+  /** admission of an asynchronous start, it's released when the script execution stops running */
+  protected transient Admission admission;
 
   @Override
   public String getType() {
@@ -44,6 +55,49 @@ public class StartScriptExecutionCommand implements Command<ScriptExecutionRespo
 
   @Override
   public ScriptExecutionResponse execute(Engine engine) {
+    LockOperationStart lockOperationStart = createLockOperationStart(engine);
+    LockOperationExecutor lockOperationExecutor = engine.getLockOperationExecutor();
+    if (!Boolean.TRUE.equals(async)) {
+      EngineScriptExecution engineScriptExecution = lockOperationExecutor.executeInLock(lockOperationStart);
+      return new ScriptExecutionResponse(engineScriptExecution);
+    }
+
+    String scriptExecutionId = lockOperationStart.getScriptExecutionId();
+    CompletableFuture<EngineScriptExecution> startFuture = lockOperationExecutor.executeInLockAsync(lockOperationStart);
+    if (admission!=null) {
+      // the script runs on the engine executor after this returns
+      admission.closeWhenComplete(startFuture);
+    }
+    if (waitMillis==null) {
+      // the script execution is running on another thread so only the id is returned
+      return new ScriptExecutionResponse(scriptExecutionId);
+    }
+    CompletableFuture<EngineScriptExecution> future = Boolean.TRUE.equals(waitForEnd)
+      ? engine.getScriptExecutionStore().whenEnded(scriptExecutionId)
+      : startFuture;
+    try {
+      return new ScriptExecutionResponse(future.get(waitMillis, TimeUnit.MILLISECONDS));
+    } catch (TimeoutException e) {
+      return new ScriptExecutionResponse(scriptExecutionId);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new ScriptExecutionResponse(scriptExecutionId);
+    } catch (ExecutionException e) {
+      throw new EngineException("Couldn't start script execution "+scriptExecutionId+": "+e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  /** Persists the {@link io.rockscript.api.events.ScriptStartedEvent} on the calling
+   * thread and runs the script execution on the engine executor, ignoring
+   * {@link #async(Boolean)} and {@link #waitMillis(Long)}.
+   * @return a future that completes when the script execution waits or ends for the first time. */
+  public CompletableFuture<EngineScriptExecution> executeAsync(Engine engine) {
+    return engine
+      .getLockOperationExecutor()
+      .executeInLockAsync(createLockOperationStart(engine));
+  }
+
+  private LockOperationStart createLockOperationStart(Engine engine) {
     if (scriptVersionId==null) {
       ScriptStore scriptStore = engine.getScriptStore();
       Script script = null;
@@ -74,11 +128,7 @@ public class StartScriptExecutionCommand implements Command<ScriptExecutionRespo
     EngineScriptExecution scriptExecution = new EngineScriptExecution(scriptExecutionId, engine, engineScript);
     scriptExecution.setInput(input);
 
-    EngineScriptExecution engineScriptExecution = engine
-      .getLockOperationExecutor()
-      .executeInLock(new LockOperationStart(scriptExecution, input));
-
-    return new ScriptExecutionResponse(engineScriptExecution);
+    return new LockOperationStart(scriptExecution, input);
   }
 
   public String getScriptId() {
@@ -132,6 +182,53 @@ public class StartScriptExecutionCommand implements Command<ScriptExecutionRespo
     return this;
   }
 
+  public Boolean getAsync() {
+    return this.async;
+  }
+  public void setAsync(Boolean async) {
+    this.async = async;
+  }
+  /** (Optional) when true, the command returns as soon as the script execution
+   * is started and the script is executed on the engine executor.  Unless
+   * {@link #waitMillis(Long)} is specified, the response only contains the
+   * script execution id. */
+  public StartScriptExecutionCommand async(Boolean async) {
+    this.async = async;
+    return this;
+  }
+
+  public Long getWaitMillis() {
+    return this.waitMillis;
+  }
+  public void setWaitMillis(Long waitMillis) {
+    this.waitMillis = waitMillis;
+  }
+  /** (Optional, only for {@link #async(Boolean) async} starts) max time to wait
+   * for the script execution to wait or end for the first time.  When the time
+   * passes, the response only contains the script execution id. */
+  public StartScriptExecutionCommand waitMillis(Long waitMillis) {
+    this.waitMillis = waitMillis;
+    return this;
+  }
+
+  public Boolean getWaitForEnd() {
+    return this.waitForEnd;
+  }
+  public void setWaitForEnd(Boolean waitForEnd) {
+    this.waitForEnd = waitForEnd;
+  }
+  /** (Optional, only in combination with {@link #waitMillis(Long)}) when true,
+   * waits for the script execution to end instead of for its first wait. */
+  public StartScriptExecutionCommand waitForEnd(Boolean waitForEnd) {
+    this.waitForEnd = waitForEnd;
+    return this;
+  }
+
+  /** set by the {@link io.rockscript.engine.impl.AdmissionControl} before the command is executed */
+  public void setAdmission(Admission admission) {
+    this.admission = admission;
+  }
+
   public StartScriptExecutionCommand inputProperty(String propertyName, Object propertyValue) {
     if (input==null) {
       input = new LinkedHashMap<String,Object>();
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.api.events;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/** Event payload (args, input, value or result) as it was
+ * read by the {@link EventCodec}: the raw json bytes are only
+ * parsed when the event property is accessed for the first time. */
+public class EncodedPayload {
+
+  byte[] bytes;
+  int offset;
+  int length;
+  Gson gson;
+
+  EncodedPayload(byte[] bytes, int offset, int length, Gson gson) {
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+    this.gson = gson;
+  }
+
+  public Object decode() {
+    InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(bytes, offset, length), StandardCharsets.UTF_8);
+    return gson.fromJson(reader, Object.class);
+  }
+
+  public String getJson() {
+    return new String(bytes, offset, length, StandardCharsets.UTF_8);
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  /** replaces an {@link EncodedPayload} with its decoded value */
+  static Object decode(Object payload) {
+    return payload instanceof EncodedPayload
+           ? ((EncodedPayload)payload).decode()
+           : payload;
+  }
+
+  @Override
+  public String toString() {
+    return getJson();
+  }
+
+  /** creates the {@link EncodedPayloadTypeAdapter} with the gson
+   * that decodes the payloads that it reads. */
+  public static class EncodedPayloadTypeAdapterFactory implements TypeAdapterFactory {
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      return type.getRawType()==EncodedPayload.class
+             ? (TypeAdapter<T>) new EncodedPayloadTypeAdapter(gson)
+             : null;
+    }
+  }
+
+  /** writes the raw json so that events that were never accessed
+   * are serialized to the external json format without being parsed.
+   * Reading keeps the compact json of the value, which is only
+   * parsed when the payload is decoded. */
+  public static class EncodedPayloadTypeAdapter extends TypeAdapter<EncodedPayload> {
+    Gson gson;
+    public EncodedPayloadTypeAdapter(Gson gson) {
+      this.gson = gson;
+    }
+    @Override
+    public void write(JsonWriter out, EncodedPayload value) throws IOException {
+      if (value!=null) {
+        out.jsonValue(value.getJson());
+      } else {
+        out.nullValue();
+      }
+    }
+    @Override
+    public EncodedPayload read(JsonReader in) throws IOException {
+      if (in.peek()==JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      JsonElement json = gson.getAdapter(JsonElement.class).read(in);
+      byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+      return new EncodedPayload(bytes, 0, bytes.length, gson);
+    }
+  }
+}
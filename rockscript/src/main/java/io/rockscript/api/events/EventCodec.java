@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.api.events;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import io.rockscript.api.model.EventRetention;
+import io.rockscript.engine.EngineException;
+import io.rockscript.engine.blob.BlobReference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Compact binary storage format for {@link ExecutionEvent}s.
+ *
+ * Json remains the external format of the API.  This codec is
+ * for keeping events in stores and archives.
+ *
+ * Layout: a version byte, the number of events, and then per event
+ * a type byte followed by the fields.  Times are varint encoded
+ * deltas with the previous event.  Execution ids like "e12" are
+ * encoded as varints.  Ids and names are written once and
+ * referenced by their dictionary index after that.  Payloads
+ * (input, args, value and result) are written as compact json
+ * and only parsed when they're accessed after decoding,
+ * see {@link EncodedPayload}.  Offloaded payloads are written
+ * as their {@link BlobReference}.
+ *
+ * Version 2 writes execution ids as n+2 instead of 2n+2, adds the
+ * event retention and audit sampling of {@link ScriptStartedEvent}s
+ * and adds blob references to the payloads.  Version 1 bytes
+ * are still decoded. */
+public class EventCodec {
+
+  public static final byte VERSION = 2;
+  static final byte VERSION_1 = 1;
+
+  static final byte SCRIPT_STARTED = 1;
+  static final byte SCRIPT_ENDED = 2;
+  static final byte SERVICE_FUNCTION_STARTED = 3;
+  static final byte SERVICE_FUNCTION_RETRIED = 4;
+  static final byte SERVICE_FUNCTION_ENDED = 5;
+  static final byte SERVICE_FUNCTION_FAILED = 6;
+  static final byte SERVICE_FUNCTION_WAITED = 7;
+  static final byte SERVICE_FUNCTION_UPDATE = 8;
+  static final byte VARIABLE_CREATED = 9;
+  static final byte SCRIPT_EXECUTION_ERROR = 10;
+
+  Gson gson;
+
+  public EventCodec(Gson gson) {
+    this.gson = gson;
+  }
+
+  public byte[] encode(List<? extends ExecutionEvent> events) {
+    Encoder encoder = new Encoder();
+    encoder.out.write(VERSION);
+    encoder.writeVarint(events.size());
+    for (ExecutionEvent event: events) {
+      encoder.writeEvent(event);
+    }
+    return encoder.out.toByteArray();
+  }
+
+  public List<ExecutionEvent> decode(byte[] bytes) {
+    byte version = bytes[0];
+    if (version!=VERSION && version!=VERSION_1) {
+      throw new EngineException("Unsupported event codec version "+version);
+    }
+    Decoder decoder = new Decoder(bytes, version);
+    decoder.position = 1;
+    int count = decoder.readVarint();
+    List<ExecutionEvent> events = new ArrayList<>(count);
+    for (int i=0; i<count; i++) {
+      events.add(decoder.readEvent());
+    }
+    return events;
+  }
+
+  class Encoder {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Map<String,Integer> dictionary = new HashMap<>();
+    long previousMillis = 0;
+
+    void writeEvent(ExecutionEvent event) {
+      Class<?> type = event.getClass();
+      if (type==ScriptStartedEvent.class) {
+        ScriptStartedEvent e = (ScriptStartedEvent) event;
+        writeHeader(SCRIPT_STARTED, e);
+        writeName(e.scriptId);
+        writeName(e.scriptVersionId);
+        writeName(e.scriptName);
+        writeInteger(e.scriptVersion);
+        writePayload(e.input);
+        writeInteger(e.eventRetention!=null ? e.eventRetention.ordinal() : null);
+        writeBoolean(e.auditSampled);
+      } else if (type==ScriptEndedEvent.class) {
+        writeHeader(SCRIPT_ENDED, event);
+      } else if (type==ServiceFunctionStartedEvent.class || type==ServiceFunctionRetriedEvent.class) {
+        ServiceFunctionStartedEvent e = (ServiceFunctionStartedEvent) event;
+        writeHeader(type==ServiceFunctionStartedEvent.class ? SERVICE_FUNCTION_STARTED : SERVICE_FUNCTION_RETRIED, e);
+        writeName(e.serviceName);
+        writeName(e.functionName);
+        writePayload(e.args);
+      } else if (type==ServiceFunctionEndedEvent.class) {
+        ServiceFunctionEndedEvent e = (ServiceFunctionEndedEvent) event;
+        writeHeader(SERVICE_FUNCTION_ENDED, e);
+        writePayload(e.result);
+      } else if (type==ServiceFunctionFailedEvent.class) {
+        ServiceFunctionFailedEvent e = (ServiceFunctionFailedEvent) event;
+        writeHeader(SERVICE_FUNCTION_FAILED, e);
+        writeName(e.scriptVersionId);
+        writeString(e.error);
+        writeTime(e.retryTime);
+      } else if (type==ServiceFunctionWaitedEvent.class) {
+        writeHeader(SERVICE_FUNCTION_WAITED, event);
+      } else if (type==ServiceFunctionUpdateEvent.class) {
+        ServiceFunctionUpdateEvent e = (ServiceFunctionUpdateEvent) event;
+        writeHeader(SERVICE_FUNCTION_UPDATE, e);
+        writeName(e.serviceName);
+        writeName(e.functionName);
+        writeName(e.level);
+        writeString(e.message);
+      } else if (type==VariableCreatedEvent.class) {
+        VariableCreatedEvent e = (VariableCreatedEvent) event;
+        writeHeader(VARIABLE_CREATED, e);
+        writeName(e.variableName);
+        writePayload(e.value);
+      } else if (type==ScriptExecutionErrorEvent.class) {
+        ScriptExecutionErrorEvent e = (ScriptExecutionErrorEvent) event;
+        writeHeader(SCRIPT_EXECUTION_ERROR, e);
+        writeName(e.scriptVersionId);
+        writeString(e.error);
+      } else {
+        throw new EngineException("Event type "+type.getName()+" is not supported by the "+EventCodec.class.getSimpleName());
+      }
+    }
+
+    void writeHeader(byte typeCode, ExecutionEvent event) {
+      out.write(typeCode);
+      writeTime(event.time);
+      writeName(event.scriptExecutionId);
+      writeExecutionId(event.executionId);
+      writeInteger(event.line);
+    }
+
+    /** 0 means null, otherwise the zigzag encoded millis delta
+     * with the previous time followed by the nanos within the milli */
+    void writeTime(Instant time) {
+      if (time==null) {
+        writeVarint(0);
+      } else {
+        long millis = time.toEpochMilli();
+        writeVarint(1);
+        writeVarlong(zigzag(millis - previousMillis));
+        writeVarint(time.getNano() % 1000000);
+        previousMillis = millis;
+      }
+    }
+
+    /** internal execution ids "e"+n are written as n+2,
+     * other ids as 1 followed by the dictionary encoded name */
+    void writeExecutionId(String executionId) {
+      if (executionId==null) {
+        writeVarint(0);
+      } else if (isInternalExecutionId(executionId)) {
+        writeVarlong(Long.parseLong(executionId.substring(1)) + 2L);
+      } else {
+        writeVarint(1);
+        writeName(executionId);
+      }
+    }
+
+    /** 0 means null, 1 means a new name follows and
+     * n>1 refers to dictionary entry n-2 */
+    void writeName(String name) {
+      if (name==null) {
+        writeVarint(0);
+      } else {
+        Integer index = dictionary.get(name);
+        if (index!=null) {
+          writeVarint(index + 2);
+        } else {
+          dictionary.put(name, dictionary.size());
+          writeVarint(1);
+          writeBytes(name.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+    }
+
+    /** 0 means null, n means a string of n-1 bytes follows */
+    void writeString(String text) {
+      if (text==null) {
+        writeVarint(0);
+      } else {
+        writeBytes(text.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    void writeInteger(Integer value) {
+      writeVarint(value!=null ? value + 1 : 0);
+    }
+
+    void writeBoolean(Boolean value) {
+      writeVarint(value!=null ? (value ? 2 : 1) : 0);
+    }
+
+    /** 0 means null, 1 means a {@link BlobReference} and
+     * otherwise it's the length+2 of the json bytes */
+    void writePayload(Object payload) {
+      if (payload==null) {
+        writeVarint(0);
+      } else if (payload instanceof BlobReference) {
+        BlobReference blobReference = (BlobReference) payload;
+        writeVarint(1);
+        writeName(blobReference.getBlobId());
+        writeVarlong(blobReference.getSize());
+      } else if (payload instanceof EncodedPayload) {
+        EncodedPayload encodedPayload = (EncodedPayload) payload;
+        writeVarint(encodedPayload.length + 2);
+        out.write(encodedPayload.bytes, encodedPayload.offset, encodedPayload.length);
+      } else {
+        // a plain JsonWriter doesn't apply the pretty printing configured in the engine gson
+        StringWriter json = new StringWriter();
+        gson.toJson(payload, payload.getClass(), new JsonWriter(json));
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length + 2);
+        out.write(bytes, 0, bytes.length);
+      }
+    }
+
+    void writeBytes(byte[] bytes) {
+      writeVarint(bytes.length + 1);
+      out.write(bytes, 0, bytes.length);
+    }
+
+    void writeVarint(int value) {
+      writeVarlong(value & 0xFFFFFFFFL);
+    }
+
+    void writeVarlong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        out.write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.write((int) value);
+    }
+  }
+
+  class Decoder {
+
+    byte[] bytes;
+    byte version;
+    int position = 0;
+    List<String> dictionary = new ArrayList<>();
+    long previousMillis = 0;
+
+    Decoder(byte[] bytes, byte version) {
+      this.bytes = bytes;
+      this.version = version;
+    }
+
+    ExecutionEvent readEvent() {
+      byte typeCode = bytes[position++];
+      switch (typeCode) {
+        case SCRIPT_STARTED: {
+          ScriptStartedEvent e = readHeader(new ScriptStartedEvent());
+          e.scriptId = readName();
+          e.scriptVersionId = readName();
+          e.scriptName = readName();
+          e.scriptVersion = readInteger();
+          e.input = readPayload();
+          if (version==VERSION_1) {
+            return e;
+          }
+          Integer eventRetention = readInteger();
+          e.eventRetention = eventRetention!=null ? EventRetention.values()[eventRetention] : null;
+          e.auditSampled = readBoolean();
+          return e;
+        }
+        case SCRIPT_ENDED:
+          return readHeader(new ScriptEndedEvent());
+        case SERVICE_FUNCTION_STARTED:
+        case SERVICE_FUNCTION_RETRIED: {
+          ServiceFunctionStartedEvent e = readHeader(typeCode==SERVICE_FUNCTION_STARTED
+                                                     ? new ServiceFunctionStartedEvent()
+                                                     : new ServiceFunctionRetriedEvent());
+          e.serviceName = readName();
+          e.functionName = readName();
+          e.args = readPayload();
+          return e;
+        }
+        case SERVICE_FUNCTION_ENDED: {
+          ServiceFunctionEndedEvent e = readHeader(new ServiceFunctionEndedEvent());
+          e.result = readPayload();
+          return e;
+        }
+        case SERVICE_FUNCTION_FAILED: {
+          ServiceFunctionFailedEvent e = readHeader(new ServiceFunctionFailedEvent());
+          e.scriptVersionId = readName();
+          e.error = readString();
+          e.retryTime = readTime();
+          return e;
+        }
+        case SERVICE_FUNCTION_WAITED:
+          return readHeader(new ServiceFunctionWaitedEvent());
+        case SERVICE_FUNCTION_UPDATE: {
+          ServiceFunctionUpdateEvent e = readHeader(new ServiceFunctionUpdateEvent());
+          e.serviceName = readName();
+          e.functionName = readName();
+          e.level = readName();
+          e.message = readString();
+          return e;
+        }
+        case VARIABLE_CREATED: {
+          VariableCreatedEvent e = readHeader(new VariableCreatedEvent());
+          e.variableName = readName();
+          e.value = readPayload();
+          return e;
+        }
+        case SCRIPT_EXECUTION_ERROR: {
+          ScriptExecutionErrorEvent e = readHeader(new ScriptExecutionErrorEvent());
+          e.scriptVersionId = readName();
+          e.error = readString();
+          return e;
+        }
+        default:
+          throw new EngineException("Unknown event type code "+typeCode+" at position "+(position-1));
+      }
+    }
+
+    <E extends ExecutionEvent> E readHeader(E event) {
+      event.time = readTime();
+      event.scriptExecutionId = readName();
+      event.executionId = readExecutionId();
+      event.line = readInteger();
+      return event;
+    }
+
+    Instant readTime() {
+      if (readVarint()==0) {
+        return null;
+      }
+      long millis = previousMillis + unzigzag(readVarlong());
+      int nanoOfMilli = readVarint();
+      previousMillis = millis;
+      return Instant.ofEpochMilli(millis).plusNanos(nanoOfMilli);
+    }
+
+    String readExecutionId() {
+      long code = readVarlong();
+      if (code==0) {
+        return null;
+      } else if (code==1) {
+        return readName();
+      }
+      if (version==VERSION_1) {
+        return "e"+Long.toString((code-2)/2);
+      }
+      return "e"+Long.toString(code-2);
+    }
+
+    String readName() {
+      int code = readVarint();
+      if (code==0) {
+        return null;
+      } else if (code==1) {
+        String name = readUtf8();
+        dictionary.add(name);
+        return name;
+      }
+      return dictionary.get(code-2);
+    }
+
+    String readString() {
+      int length = readVarint();
+      if (length==0) {
+        return null;
+      }
+      String text = new String(bytes, position, length-1, StandardCharsets.UTF_8);
+      position += length-1;
+      return text;
+    }
+
+    String readUtf8() {
+      int length = readVarint() - 1;
+      String text = new String(bytes, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return text;
+    }
+
+    Integer readInteger() {
+      int value = readVarint();
+      return value!=0 ? value-1 : null;
+    }
+
+    Boolean readBoolean() {
+      int value = readVarint();
+      return value!=0 ? value==2 : null;
+    }
+
+    Object readPayload() {
+      int length = readVarint();
+      if (length==0) {
+        return null;
+      }
+      if (version==VERSION_1) {
+        EncodedPayload payload = new EncodedPayload(bytes, position, length-1, gson);
+        position += length-1;
+        return payload;
+      }
+      if (length==1) {
+        String blobId = readName();
+        return new BlobReference(blobId, readVarlong());
+      }
+      EncodedPayload payload = new EncodedPayload(bytes, position, length-2, gson);
+      position += length-2;
+      return payload;
+    }
+
+    int readVarint() {
+      return (int) readVarlong();
+    }
+
+    long readVarlong() {
+      long value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = bytes[position++];
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+  }
+
+  static boolean isInternalExecutionId(String executionId) {
+    int length = executionId.length();
+    if (length<2 || length>18 || executionId.charAt(0)!='e') {
+      return false;
+    }
+    // leading zeros would not survive the round trip
+    if (executionId.charAt(1)=='0' && length>2) {
+      return false;
+    }
+    for (int i=1; i<length; i++) {
+      char c = executionId.charAt(i);
+      if (c<'0' || c>'9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
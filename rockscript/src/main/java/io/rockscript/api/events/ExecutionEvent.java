@@ -32,6 +32,8 @@ public abstract class ExecutionEvent<T extends Execution> implements Event {
   protected String scriptExecutionId;
   protected String executionId;
   protected Integer line;
+  /** set when the event is created, not serialized. See {@link #isStored()} */
+  protected transient boolean auditRetained = true;
 
   /** for Gson serialzation */
   ExecutionEvent() {
@@ -40,6 +42,7 @@ public abstract class ExecutionEvent<T extends Execution> implements Event {
   public ExecutionEvent(T execution) {
     this.time = Time.now();
     this.scriptExecutionId = execution.getScriptExecution().getId();
+    this.auditRetained = execution.getScriptExecution().isAuditRetained();
     if (! (execution instanceof EngineScriptExecution)) {
       this.executionId = execution.getId();
       this.line = execution.getElement().getLocation().getLine();
@@ -61,6 +64,19 @@ public abstract class ExecutionEvent<T extends Execution> implements Event {
     return false;
   }
 
+  /** Is this event only there for auditing?  Audit events are not needed for
+   * replay, locking or recovery and hence they may be dropped according
+   * to the {@link io.rockscript.api.model.EventRetention} */
+  public boolean isAudit() {
+    return !isReplay() && !isUnlocking() && !isRecoverable();
+  }
+
+  /** Should this event be passed to the store?  Only false for audit
+   * events of script executions that don't retain them. */
+  public boolean isStored() {
+    return auditRetained || !isAudit();
+  }
+
   public Instant getTime() {
     return time;
   }
@@ -34,7 +34,7 @@ public class ScriptEndedEvent extends ExecutableEvent<EngineScriptExecution> {
 
   @Override
   public void execute(EngineScriptExecution execution) {
-    execution.setEnd(time);
+    execution.endExecute(time);
   }
 
   @Override
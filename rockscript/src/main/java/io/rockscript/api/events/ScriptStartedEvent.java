@@ -19,7 +19,9 @@
  */
 package io.rockscript.api.events;
 
+import io.rockscript.api.model.EventRetention;
 import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.blob.BlobReference;
 import io.rockscript.engine.impl.EngineScriptExecution;
 
 public class ScriptStartedEvent extends ExecutableEvent<EngineScriptExecution> {
@@ -29,6 +31,9 @@ public class ScriptStartedEvent extends ExecutableEvent<EngineScriptExecution> {
   String scriptName;
   Integer scriptVersion;
   Object input;
+  EventRetention eventRetention;
+  /** only set for {@link EventRetention#SAMPLED} */
+  Boolean auditSampled;
 
   /** constructor for gson serialization */
   ScriptStartedEvent() {
@@ -36,6 +41,14 @@ public class ScriptStartedEvent extends ExecutableEvent<EngineScriptExecution> {
 
   @Override
   public void execute(EngineScriptExecution execution) {
+    if (eventRetention!=null) {
+      execution.setEventRetention(eventRetention);
+      execution.setAuditRetained(eventRetention==EventRetention.FULL || Boolean.TRUE.equals(auditSampled));
+    }
+    Object input = getInput();
+    if (input instanceof BlobReference) {
+      input = ((BlobReference)input).createUnresolvedCopy();
+    }
     execution.setInput(input);
     execution.setStart(time);
     execution.startExecute();
@@ -52,7 +65,26 @@ public class ScriptStartedEvent extends ExecutableEvent<EngineScriptExecution> {
     this.scriptId = scriptVersion.getScriptId();
     this.scriptName = scriptVersion.getScriptName();
     this.scriptVersion = scriptVersion.getVersion();
-    this.input = input;
+    this.input = scriptExecution
+      .getEngine()
+      .getPayloadOffloader()
+      .offload(input);
+    this.eventRetention = scriptExecution.getEventRetention();
+    if (eventRetention==EventRetention.SAMPLED) {
+      this.auditSampled = scriptExecution.isAuditRetained();
+    }
+  }
+
+  public String getScriptId() {
+    return scriptId;
+  }
+
+  public String getScriptName() {
+    return scriptName;
+  }
+
+  public Integer getScriptVersion() {
+    return scriptVersion;
   }
 
   public String getScriptVersionId() {
@@ -63,7 +95,17 @@ public class ScriptStartedEvent extends ExecutableEvent<EngineScriptExecution> {
     return scriptExecutionId;
   }
 
+  /** the retention that the script execution ran under */
+  public EventRetention getEventRetention() {
+    return eventRetention;
+  }
+
+  public Boolean getAuditSampled() {
+    return auditSampled;
+  }
+
   public Object getInput() {
+    input = EncodedPayload.decode(input);
     return input;
   }
 
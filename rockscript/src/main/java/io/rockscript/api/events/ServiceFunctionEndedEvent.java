@@ -20,6 +20,7 @@
 
 package io.rockscript.api.events;
 
+import io.rockscript.engine.blob.BlobReference;
 import io.rockscript.engine.impl.ArgumentsExpressionExecution;
 
 public class ServiceFunctionEndedEvent extends ExecutableEvent<ArgumentsExpressionExecution> {
@@ -37,9 +38,19 @@ public class ServiceFunctionEndedEvent extends ExecutableEvent<ArgumentsExpressi
 
   @Override
   public void execute(ArgumentsExpressionExecution execution) {
+    Object result = getResult();
+    if (result instanceof BlobReference) {
+      // each execution resolves and updates its own copy of the payload
+      result = ((BlobReference)result).createUnresolvedCopy();
+    }
     execution.endFunctionExecute(result);
   }
 
+  public Object getResult() {
+    result = EncodedPayload.decode(result);
+    return result;
+  }
+
   @Override
   public boolean isReplay() {
     return true;
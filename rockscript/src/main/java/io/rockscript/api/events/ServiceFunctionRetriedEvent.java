@@ -23,6 +23,10 @@ import io.rockscript.engine.impl.ArgumentsExpressionExecution;
 
 public class ServiceFunctionRetriedEvent extends ServiceFunctionStartedEvent {
 
+  /** constructor for gson serialization */
+  ServiceFunctionRetriedEvent() {
+  }
+
   public ServiceFunctionRetriedEvent(ArgumentsExpressionExecution execution) {
     super(execution);
   }
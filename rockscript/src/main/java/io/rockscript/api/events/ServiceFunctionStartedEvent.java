@@ -21,6 +21,7 @@
 package io.rockscript.api.events;
 
 import io.rockscript.engine.impl.ArgumentsExpressionExecution;
+import io.rockscript.engine.impl.ScriptValues;
 import io.rockscript.service.ServiceFunction;
 import io.rockscript.engine.EngineException;
 
@@ -75,6 +76,23 @@ public class ServiceFunctionStartedEvent extends ExecutableEvent<ArgumentsExpres
         }
       }
     }
+    this.args = argumentsExpressionExecution
+      .getEngine()
+      .getPayloadOffloader()
+      .offload(ScriptValues.toPersistentValue(this.args));
+  }
+
+  public String getServiceName() {
+    return serviceName;
+  }
+
+  public String getFunctionName() {
+    return functionName;
+  }
+
+  public Object getArgs() {
+    args = EncodedPayload.decode(args);
+    return args;
   }
 
   @Override
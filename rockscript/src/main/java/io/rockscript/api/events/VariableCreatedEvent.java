@@ -20,6 +20,7 @@
 
 package io.rockscript.api.events;
 
+import io.rockscript.engine.impl.ScriptValues;
 import io.rockscript.engine.impl.VariableDeclarationExecution;
 
 public class VariableCreatedEvent extends ExecutionEvent<VariableDeclarationExecution> {
@@ -34,7 +35,17 @@ public class VariableCreatedEvent extends ExecutionEvent<VariableDeclarationExec
   public VariableCreatedEvent(VariableDeclarationExecution execution, Object value) {
     super(execution);
     this.variableName = execution.getElement().getVariableName();
-    this.value = value;
+    // later updates by the script don't affect the snapshot
+    this.value = ScriptValues.snapshot(value);
+  }
+
+  public String getVariableName() {
+    return variableName;
+  }
+
+  public Object getValue() {
+    value = EncodedPayload.decode(value);
+    return value;
   }
 
   @Override
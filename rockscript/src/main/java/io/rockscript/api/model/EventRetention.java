@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.api.model;
+
+/** Determines which execution events are stored.
+ *
+ * Events that are needed for replay, locking or recovery are always
+ * stored.  The other events, like {@link io.rockscript.api.events.VariableCreatedEvent}
+ * are only there for auditing. See {@link io.rockscript.api.events.ExecutionEvent#isAudit()}.
+ *
+ * Can be configured engine-wide with
+ * {@link io.rockscript.Configuration#configureEventRetention(EventRetention)}
+ * and per script with
+ * {@link io.rockscript.api.commands.SaveScriptVersionCommand#eventRetention(EventRetention)} */
+public enum EventRetention {
+
+  /** all events are stored */
+  FULL,
+
+  /** audit events are not stored */
+  REPLAY_ONLY,
+
+  /** audit events are only stored for a fraction of the script executions.
+   * See {@link io.rockscript.Configuration#configureEventSampleRate(double)} */
+  SAMPLED
+}
@@ -34,6 +34,7 @@ public class ScriptExecution {
   List<ServiceFunctionContinuation> serviceFunctionContinuations;
   Instant start;
   Instant end;
+  EventRetention eventRetention;
 
   public ScriptExecution() {
   }
@@ -42,6 +43,7 @@ public class ScriptExecution {
     this.id = engineScriptExecution.getId();
     this.start = engineScriptExecution.getStart();
     this.end = engineScriptExecution.getEnded();
+    this.eventRetention = engineScriptExecution.getEventRetention();
     scanVariables(engineScriptExecution.getVariables());
     scan(engineScriptExecution.getChildren());
   }
@@ -128,4 +130,13 @@ public class ScriptExecution {
   public void setEnd(Instant end) {
     this.end = end;
   }
+
+  /** the event retention this script execution ran under */
+  public EventRetention getEventRetention() {
+    return eventRetention;
+  }
+
+  public void setEventRetention(EventRetention eventRetention) {
+    this.eventRetention = eventRetention;
+  }
 }
@@ -29,6 +29,10 @@ public class ScriptVersion {
   protected String text;
   protected Boolean active;
   protected List<ParseError> errors;
+  protected EventRetention eventRetention;
+  /** binary form of the parsed script, see {@link io.rockscript.engine.impl.EngineScriptCodec}.
+   * Kept with the script version, but not part of its json. */
+  protected transient byte[] compiledScript;
 
   public ScriptVersion() {
   }
@@ -42,6 +46,8 @@ public class ScriptVersion {
       this.version = other.version;
       this.active = other.active;
       this.errors = other.errors;
+      this.eventRetention = other.eventRetention;
+      this.compiledScript = other.compiledScript;
     }
   }
 
@@ -100,6 +106,23 @@ public class ScriptVersion {
     this.errors = errors;
   }
 
+  /** null means the engine default event retention applies */
+  public EventRetention getEventRetention() {
+    return eventRetention;
+  }
+
+  public void setEventRetention(EventRetention eventRetention) {
+    this.eventRetention = eventRetention;
+  }
+
+  public byte[] getCompiledScript() {
+    return compiledScript;
+  }
+
+  public void setCompiledScript(byte[] compiledScript) {
+    this.compiledScript = compiledScript;
+  }
+
   public boolean hasErrors() {
     return errors!=null && !errors.isEmpty();
   }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.api.queries;
+
+import io.rockscript.Engine;
+import io.rockscript.api.Query;
+import io.rockscript.engine.impl.OutboundLimiter;
+import io.rockscript.engine.impl.OutboundLimiter.TargetMetrics;
+
+import java.util.Map;
+
+/** Query for the state of the {@link OutboundLimiter} per host or service name */
+public class OutboundLimitsQuery implements Query<Map<String,TargetMetrics>> {
+
+  @Override
+  public String getName() {
+    return "outboundLimits";
+  }
+
+  @Override
+  public Map<String,TargetMetrics> execute(Engine engine) {
+    return engine
+      .getOutboundLimiter()
+      .getMetrics();
+  }
+}
@@ -78,4 +78,15 @@ public class ScriptExecutionQuery implements Query<ScriptExecutionQuery.ScriptEx
         events,
         scriptVersion);
   }
+
+  public String getId() {
+    return this.id;
+  }
+  public void setId(String id) {
+    this.id = id;
+  }
+  public ScriptExecutionQuery id(String id) {
+    this.id = id;
+    return this;
+  }
 }
@@ -25,8 +25,10 @@ import io.rockscript.api.Query;
 import io.rockscript.api.events.ExecutionEvent;
 import io.rockscript.api.events.ScriptEndedEvent;
 import io.rockscript.api.events.ScriptStartedEvent;
+import io.rockscript.api.model.EventRetention;
 import io.rockscript.api.model.ScriptVersion;
 import io.rockscript.engine.impl.ScriptExecutionStore;
+import io.rockscript.engine.impl.ScriptExecutionSummary;
 
 import java.time.Instant;
 import java.util.*;
@@ -45,6 +47,7 @@ public class ScriptExecutionsQuery implements Query<Collection<ScriptExecutionsQ
     public Integer scriptVersion;
     public Instant start;
     public Instant end;
+    public EventRetention eventRetention;
     public ScriptExecution(){
     }
     public ScriptExecution(String scriptExecutionId, List<ExecutionEvent> scriptExecutionEvents, Map<String, ScriptVersion> scriptVersionsById) {
@@ -59,6 +62,7 @@ public class ScriptExecutionsQuery implements Query<Collection<ScriptExecutionsQ
           this.scriptName = scriptVersion.getScriptName();
           this.scriptShortName = getScriptShortName(scriptVersion.getScriptName());
           this.scriptVersion = scriptVersion.getVersion();
+          this.eventRetention = scriptStartedEvent.getEventRetention();
 
         } else if (event instanceof ScriptEndedEvent) {
           this.end = event.getTime();
@@ -66,6 +70,16 @@ public class ScriptExecutionsQuery implements Query<Collection<ScriptExecutionsQ
       });
     }
 
+    public ScriptExecution(ScriptExecutionSummary summary) {
+      this.id = summary.getId();
+      this.scriptName = summary.getScriptName();
+      this.scriptShortName = summary.getScriptName()!=null ? getScriptShortName(summary.getScriptName()) : null;
+      this.scriptVersion = summary.getScriptVersion();
+      this.start = summary.getStart();
+      this.end = summary.getEnd();
+      this.eventRetention = summary.getEventRetention();
+    }
+
     private static String getScriptShortName(String name) {
       int lastSlashIndex = name.lastIndexOf('/');
       if (lastSlashIndex>=0 && name.length()>lastSlashIndex+1) {
@@ -93,8 +107,14 @@ public class ScriptExecutionsQuery implements Query<Collection<ScriptExecutionsQ
     scriptExecutionStore
       .findAllScriptExecutionIds()
       .forEach(scriptExecutionId->{
-        List<ExecutionEvent> scriptExecutionEvents = scriptExecutionStore.findEventsByScriptExecutionId(scriptExecutionId);
-        scriptExecutions.add(new ScriptExecution(scriptExecutionId, scriptExecutionEvents, scriptVersionsById));
+        // compacted script executions are listed from their summary so that the archived events aren't loaded
+        ScriptExecutionSummary summary = scriptExecutionStore.findScriptExecutionSummary(scriptExecutionId);
+        if (summary!=null) {
+          scriptExecutions.add(new ScriptExecution(summary));
+        } else {
+          List<ExecutionEvent> scriptExecutionEvents = scriptExecutionStore.findEventsByScriptExecutionId(scriptExecutionId);
+          scriptExecutions.add(new ScriptExecution(scriptExecutionId, scriptExecutionEvents, scriptVersionsById));
+        }
       });
 
     return scriptExecutions;
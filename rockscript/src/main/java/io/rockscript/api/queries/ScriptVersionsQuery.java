@@ -39,10 +39,7 @@ public class ScriptVersionsQuery implements Query<List<ScriptVersion>> {
   @Override
   public List<ScriptVersion> execute(Engine engine) {
     BadRequestException.throwIfNull(scriptId, "Query parameter scriptId is not specified");
-    Script script = engine.getScriptStore().getScripts().stream()
-      .filter(s -> scriptId.equals(s.getId()))
-      .findFirst()
-      .orElse(null);
+    Script script = engine.getScriptStore().findScriptById(scriptId);
     BadRequestException.throwIfNull(script, "Script %s not found", scriptId);
     return script.getScriptVersions();
   }
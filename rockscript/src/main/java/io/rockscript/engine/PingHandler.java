@@ -21,6 +21,7 @@ package io.rockscript.engine;
 
 import io.rockscript.Engine;
 import io.rockscript.api.AbstractRequestHandler;
+import io.rockscript.engine.impl.AdmissionControl;
 import io.rockscript.http.servlet.ServerRequest;
 import io.rockscript.http.servlet.ServerResponse;
 import org.slf4j.Logger;
@@ -36,6 +37,16 @@ public class PingHandler extends AbstractRequestHandler {
 
   @Override
   public void handle(ServerRequest request, ServerResponse response) {
+    AdmissionControl admissionControl = engine.getAdmissionControl();
+    if (admissionControl!=null && admissionControl.isOverloaded()) {
+      // load balancers take the 503 as a signal to send traffic to other nodes
+      response
+        .headerContentTypeTextPlain()
+        .header("Retry-After", Long.toString(Math.max(1, admissionControl.getRetryAfter().getSeconds())))
+        .bodyString("overloaded\n")
+        .status(503);
+      return;
+    }
     response
       .headerContentTypeTextPlain()
       .bodyString("pong\n")
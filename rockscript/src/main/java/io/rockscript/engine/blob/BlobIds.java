@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.blob;
+
+import io.rockscript.engine.EngineException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Blob ids are the hex encoded SHA-256 hash of the content. */
+public class BlobIds {
+
+  static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  public static String createBlobId(byte[] content) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+      char[] hex = new char[hash.length*2];
+      for (int i=0; i<hash.length; i++) {
+        hex[2*i] = HEX[(hash[i]>>4) & 0xF];
+        hex[2*i+1] = HEX[hash[i] & 0xF];
+      }
+      return new String(hex);
+    } catch (NoSuchAlgorithmException e) {
+      throw new EngineException("SHA-256 is not available", e);
+    }
+  }
+
+  public static boolean isValidBlobId(String blobId) {
+    if (blobId==null || blobId.length()!=64) {
+      return false;
+    }
+    for (int i=0; i<blobId.length(); i++) {
+      char c = blobId.charAt(i);
+      if (!((c>='0' && c<='9') || (c>='a' && c<='f'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.blob;
+
+/** Replaces a large payload in events and script variables.
+ * The payload itself is kept once in the {@link BlobStore}.
+ *
+ * The resolved value is cached in the reference so that
+ * scripts can read and update it like a normal object.
+ * That's why each script execution has to work on its
+ * own reference, see {@link #createUnresolvedCopy()}. */
+public class BlobReference {
+
+  String blobId;
+  long size;
+  transient Object value;
+  transient boolean resolved;
+
+  /** constructor for gson serialization */
+  BlobReference() {
+  }
+
+  public BlobReference(String blobId, long size) {
+    this.blobId = blobId;
+    this.size = size;
+  }
+
+  /** a new reference to the same blob that still has to be resolved */
+  public BlobReference createUnresolvedCopy() {
+    return new BlobReference(blobId, size);
+  }
+
+  public String getBlobId() {
+    return blobId;
+  }
+
+  /** number of bytes of the json of the payload */
+  public long getSize() {
+    return size;
+  }
+
+  public boolean isResolved() {
+    return resolved;
+  }
+
+  void setValue(Object value) {
+    this.value = value;
+    this.resolved = true;
+  }
+
+  Object getValue() {
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return "blob:"+blobId+"("+size+" bytes)";
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.blob;
+
+/** Content addressed storage for large payloads.
+ * Storing the same content twice returns the same blob id
+ * and doesn't store the content again. See {@link PayloadOffloader} */
+public interface BlobStore {
+
+  /** @return the blob id, which is derived from the content */
+  String put(byte[] content);
+
+  /** @return the content or null if the blob doesn't exist */
+  byte[] get(String blobId);
+
+  boolean contains(String blobId);
+}
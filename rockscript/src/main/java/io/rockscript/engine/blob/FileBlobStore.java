@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.blob;
+
+import io.rockscript.engine.EngineException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+
+/** Stores each blob in a file named after its blob id.
+ * The first 2 characters of the blob id are used as a
+ * sub directory to keep directory listings small. */
+public class FileBlobStore implements BlobStore {
+
+  File directory;
+
+  public FileBlobStore(File directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public String put(byte[] content) {
+    String blobId = BlobIds.createBlobId(content);
+    Path blobPath = getBlobPath(blobId);
+    if (!Files.exists(blobPath)) {
+      try {
+        Files.createDirectories(blobPath.getParent());
+        // write to a temporary file first so that readers never see a partial blob
+        Path tempPath = Files.createTempFile(blobPath.getParent(), blobId, ".tmp");
+        Files.write(tempPath, content);
+        try {
+          Files.move(tempPath, blobPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+          // another thread stored the same content concurrently
+          Files.deleteIfExists(tempPath);
+        }
+      } catch (IOException e) {
+        throw new EngineException("Couldn't store blob "+blobId+" in "+directory+": "+e.getMessage(), e);
+      }
+    }
+    return blobId;
+  }
+
+  @Override
+  public byte[] get(String blobId) {
+    Path blobPath = getBlobPath(blobId);
+    if (!Files.exists(blobPath)) {
+      return null;
+    }
+    try {
+      return Files.readAllBytes(blobPath);
+    } catch (IOException e) {
+      throw new EngineException("Couldn't read blob "+blobId+" from "+directory+": "+e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public boolean contains(String blobId) {
+    return Files.exists(getBlobPath(blobId));
+  }
+
+  protected Path getBlobPath(String blobId) {
+    if (!BlobIds.isValidBlobId(blobId)) {
+      throw new EngineException("Invalid blob id "+blobId);
+    }
+    return directory.toPath()
+      .resolve(blobId.substring(0, 2))
+      .resolve(blobId);
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+}
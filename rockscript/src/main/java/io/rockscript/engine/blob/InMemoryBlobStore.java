@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.blob;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Used in test configurations */
+public class InMemoryBlobStore implements BlobStore {
+
+  Map<String,byte[]> blobs = new ConcurrentHashMap<>();
+
+  @Override
+  public String put(byte[] content) {
+    String blobId = BlobIds.createBlobId(content);
+    blobs.putIfAbsent(blobId, content);
+    return blobId;
+  }
+
+  @Override
+  public byte[] get(String blobId) {
+    return blobs.get(blobId);
+  }
+
+  @Override
+  public boolean contains(String blobId) {
+    return blobs.containsKey(blobId);
+  }
+
+  public int size() {
+    return blobs.size();
+  }
+
+  public void reset() {
+    blobs.clear();
+  }
+}
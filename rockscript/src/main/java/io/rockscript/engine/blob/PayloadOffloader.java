@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.blob;
+
+import com.google.gson.Gson;
+import io.rockscript.Engine;
+import io.rockscript.engine.EngineException;
+import io.rockscript.engine.impl.ScriptValues;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/** Replaces payloads above the threshold with a {@link BlobReference}
+ * so that events only contain the reference.  Identical payloads
+ * are stored only once because the {@link BlobStore} is content addressed.
+ *
+ * References are resolved lazily: only when a script accesses
+ * a property of the payload, see {@link #resolve(Object)}. */
+public class PayloadOffloader {
+
+  public static final int DEFAULT_THRESHOLD = 64*1024;
+
+  Gson gson;
+  BlobStore blobStore;
+  int threshold;
+
+  public PayloadOffloader(Engine engine, BlobStore blobStore, int threshold) {
+    this.gson = engine.getGson();
+    this.blobStore = blobStore;
+    this.threshold = threshold;
+  }
+
+  /** @return a {@link BlobReference} if the json of the payload is larger
+   * than the threshold, the payload itself otherwise. */
+  public Object offload(Object payload) {
+    if (payload==null
+        || payload instanceof BlobReference
+        || estimateSize(payload, threshold)<=threshold) {
+      return payload;
+    }
+    byte[] json = gson.toJson(payload).getBytes(StandardCharsets.UTF_8);
+    if (json.length<=threshold) {
+      return payload;
+    }
+    String blobId = blobStore.put(json);
+    return new BlobReference(blobId, json.length);
+  }
+
+  /** @return the payload if the value is a {@link BlobReference}, the value itself otherwise */
+  public Object resolve(Object value) {
+    if (!(value instanceof BlobReference)) {
+      return value;
+    }
+    BlobReference blobReference = (BlobReference) value;
+    if (!blobReference.isResolved()) {
+      byte[] json = blobStore.get(blobReference.getBlobId());
+      if (json==null) {
+        throw new EngineException("Blob "+blobReference.getBlobId()+" doesn't exist");
+      }
+      Object payload = gson.fromJson(new String(json, StandardCharsets.UTF_8), Object.class);
+      blobReference.setValue(ScriptValues.toScriptValue(payload));
+    }
+    return blobReference.getValue();
+  }
+
+  /** cheap approximation of the json size that stops as soon as the limit is passed.
+   * Only json-like values (maps, lists and primitives) are offloaded. */
+  static long estimateSize(Object value, long limit) {
+    if (value==null || value instanceof Boolean || value instanceof Number) {
+      return 8;
+    } else if (value instanceof CharSequence) {
+      return ((CharSequence)value).length() + 2;
+    } else if (value instanceof Map) {
+      long size = 2;
+      for (Map.Entry<?,?> entry: ((Map<?,?>)value).entrySet()) {
+        size += String.valueOf(entry.getKey()).length() + 4;
+        size += estimateSize(entry.getValue(), limit-size);
+        if (size>limit) {
+          return size;
+        }
+      }
+      return size;
+    } else if (value instanceof Collection) {
+      long size = 2;
+      for (Object element: (Collection<?>)value) {
+        size += estimateSize(element, limit-size) + 1;
+        if (size>limit) {
+          return size;
+        }
+      }
+      return size;
+    }
+    return 8;
+  }
+
+  public BlobStore getBlobStore() {
+    return blobStore;
+  }
+
+  public int getThreshold() {
+    return threshold;
+  }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.Engine;
+import io.rockscript.api.Command;
+import io.rockscript.api.commands.EndServiceFunctionCommand;
+import io.rockscript.api.commands.ServiceFunctionFailureCommand;
+import io.rockscript.api.commands.StartScriptExecutionCommand;
+import io.rockscript.api.model.Script;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.http.servlet.TooManyRequestsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Limits the number of commands that execute concurrently and the number of
+ * commands that wait to be executed, per command type and per script.
+ * Commands over the limits are rejected with a {@link TooManyRequestsException}
+ * so that the clients back off instead of piling up work in the engine.
+ * Without configured limits, all commands are admitted. */
+public class AdmissionControl {
+
+  static Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+  public static final Duration DEFAULT_QUEUE_TIMEOUT = Duration.ofSeconds(5);
+  public static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+  /** admission that holds no limits, returned when no limits apply */
+  static final Admission UNLIMITED = new Admission(new ArrayList<>());
+
+  Engine engine;
+  /** maps command types to their limit */
+  Map<String,Bulkhead> commandBulkheads = new ConcurrentHashMap<>();
+  /** limit that applies to each script separately, null means scripts are not limited */
+  AdmissionLimit scriptLimit;
+  /** maps script ids to the bulkheads created with the {@link #scriptLimit} */
+  Map<String,Bulkhead> scriptBulkheads = new ConcurrentHashMap<>();
+  Duration queueTimeout = DEFAULT_QUEUE_TIMEOUT;
+  Duration retryAfter = DEFAULT_RETRY_AFTER;
+  volatile Instant lastRejectionTime;
+  AtomicLong rejectedCount = new AtomicLong();
+
+  public AdmissionControl(Engine engine) {
+    this.engine = engine;
+  }
+
+  public AdmissionControl commandLimit(String commandType, AdmissionLimit admissionLimit) {
+    commandBulkheads.put(commandType, new Bulkhead(commandType, admissionLimit));
+    return this;
+  }
+
+  public AdmissionControl scriptLimit(AdmissionLimit scriptLimit) {
+    this.scriptLimit = scriptLimit;
+    return this;
+  }
+
+  /** max time that a command waits for a free slot */
+  public AdmissionControl queueTimeout(Duration queueTimeout) {
+    this.queueTimeout = queueTimeout;
+    return this;
+  }
+
+  /** time that rejected clients are asked to wait before they retry */
+  public AdmissionControl retryAfter(Duration retryAfter) {
+    this.retryAfter = retryAfter;
+    return this;
+  }
+
+  /** Waits for a free slot of every limit that applies to the command.
+   * The returned admission must be closed when the command is executed.
+   * @throws TooManyRequestsException if a limit's queue is full or
+   * if no slot became free within the queue timeout. */
+  public Admission admit(Command command) {
+    List<Bulkhead> bulkheads = new ArrayList<>(2);
+    Bulkhead commandBulkhead = commandBulkheads.get(command.getType());
+    if (commandBulkhead!=null) {
+      bulkheads.add(commandBulkhead);
+    }
+    if (scriptLimit!=null) {
+      String scriptId = findScriptId(command);
+      if (scriptId!=null) {
+        bulkheads.add(scriptBulkheads.computeIfAbsent(scriptId, id->new Bulkhead("script "+id, scriptLimit)));
+      }
+    }
+    if (bulkheads.isEmpty()) {
+      return UNLIMITED;
+    }
+    Admission admission = new Admission(new ArrayList<>(bulkheads.size()));
+    for (Bulkhead bulkhead: bulkheads) {
+      if (!bulkhead.enter(queueTimeout)) {
+        admission.close();
+        reject(bulkhead);
+      }
+      admission.bulkheads.add(bulkhead);
+    }
+    return admission;
+  }
+
+  /** Executes the command within its admission, see {@link #admit(Command)}.
+   * Asynchronous script starts keep their admission until the script execution
+   * stops running on the engine executor, so that the limits also protect the
+   * executor and not only the request threads. */
+  public <T> T execute(Command<T> command) {
+    try (Admission admission = admit(command)) {
+      if (command instanceof StartScriptExecutionCommand) {
+        ((StartScriptExecutionCommand)command).setAdmission(admission);
+      }
+      return command.execute(engine);
+    }
+  }
+
+  private void reject(Bulkhead bulkhead) {
+    lastRejectionTime = Time.now();
+    rejectedCount.incrementAndGet();
+    log.debug("Rejecting command: "+bulkhead+" is at capacity");
+    throw new TooManyRequestsException(bulkhead.name+" is at capacity", retryAfter);
+  }
+
+  /** the script to which a command applies or null if it's not known */
+  String findScriptId(Command command) {
+    try {
+      if (command instanceof StartScriptExecutionCommand) {
+        StartScriptExecutionCommand startCommand = (StartScriptExecutionCommand) command;
+        if (startCommand.getScriptId()!=null) {
+          return startCommand.getScriptId();
+        }
+        ScriptStore scriptStore = engine.getScriptStore();
+        if (startCommand.getScriptVersionId()!=null) {
+          EngineScript engineScript = scriptStore.findScriptAstByScriptVersionId(startCommand.getScriptVersionId());
+          ScriptVersion scriptVersion = engineScript!=null ? engineScript.getScriptVersion() : null;
+          return scriptVersion!=null ? scriptVersion.getScriptId() : null;
+        }
+        if (startCommand.getScriptName()!=null) {
+          Script script = scriptStore.findScriptByNameEnd(startCommand.getScriptName());
+          return script!=null ? script.getId() : null;
+        }
+      } else if (command instanceof EndServiceFunctionCommand) {
+        return engine.getScriptExecutionStore().findScriptId(((EndServiceFunctionCommand)command).getScriptExecutionId());
+      } else if (command instanceof ServiceFunctionFailureCommand) {
+        return engine.getScriptExecutionStore().findScriptId(((ServiceFunctionFailureCommand)command).getScriptExecutionId());
+      }
+    } catch (Exception e) {
+      // the command itself will report what's wrong with it
+      log.debug("Couldn't find the script of command "+command.getType()+": "+e.getMessage());
+    }
+    return null;
+  }
+
+  /** Load shedding signal: true if a command was rejected within the retry
+   * after period or if the queue of a limit is at least half full. */
+  public boolean isOverloaded() {
+    Instant lastRejectionTime = this.lastRejectionTime;
+    if (lastRejectionTime!=null && Time.now().isBefore(lastRejectionTime.plus(retryAfter))) {
+      return true;
+    }
+    return commandBulkheads.values().stream().anyMatch(Bulkhead::isSaturated)
+           || scriptBulkheads.values().stream().anyMatch(Bulkhead::isSaturated);
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+
+  /** Max number of concurrently executing commands and max number
+   * of commands waiting for one of them to finish. */
+  public static class AdmissionLimit {
+
+    int maxConcurrent;
+    int maxQueued;
+
+    public AdmissionLimit(int maxConcurrent, int maxQueued) {
+      this.maxConcurrent = maxConcurrent;
+      this.maxQueued = maxQueued;
+    }
+
+    /** parses maxConcurrent/maxQueued like eg 100/1000 */
+    public static AdmissionLimit parse(String text) {
+      int slashIndex = text.indexOf('/');
+      return slashIndex!=-1
+        ? new AdmissionLimit(Integer.parseInt(text.substring(0, slashIndex).trim()), Integer.parseInt(text.substring(slashIndex+1).trim()))
+        : new AdmissionLimit(Integer.parseInt(text.trim()), 0);
+    }
+
+    public int getMaxConcurrent() {
+      return maxConcurrent;
+    }
+
+    public int getMaxQueued() {
+      return maxQueued;
+    }
+
+    @Override
+    public String toString() {
+      return maxConcurrent+"/"+maxQueued;
+    }
+  }
+
+  static class Bulkhead {
+
+    String name;
+    AdmissionLimit limit;
+    Semaphore slots;
+    AtomicInteger queued = new AtomicInteger();
+
+    Bulkhead(String name, AdmissionLimit limit) {
+      this.name = name;
+      this.limit = limit;
+      this.slots = new Semaphore(limit.maxConcurrent);
+    }
+
+    boolean enter(Duration queueTimeout) {
+      if (slots.tryAcquire()) {
+        return true;
+      }
+      if (queued.incrementAndGet()>limit.maxQueued) {
+        queued.decrementAndGet();
+        return false;
+      }
+      try {
+        return slots.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        queued.decrementAndGet();
+      }
+    }
+
+    void exit() {
+      slots.release();
+    }
+
+    boolean isSaturated() {
+      int queuedCount = queued.get();
+      return limit.maxQueued>0
+             ? queuedCount*2>=limit.maxQueued
+             : slots.availablePermits()==0;
+    }
+
+    @Override
+    public String toString() {
+      return name+" ["+limit+"]";
+    }
+  }
+
+  /** Holds the slots of a command until it's closed. */
+  public static class Admission implements AutoCloseable {
+
+    List<Bulkhead> bulkheads;
+    /** set when the slots are released by {@link #closeWhenComplete(CompletableFuture)} */
+    boolean deferred;
+
+    Admission(List<Bulkhead> bulkheads) {
+      this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public void close() {
+      if (!deferred) {
+        release();
+      }
+    }
+
+    /** keeps the slots until the future completes, after which {@link #close()} has no effect */
+    public void closeWhenComplete(CompletableFuture<?> future) {
+      if (this!=UNLIMITED) {
+        deferred = true;
+        future.whenComplete((result, exception)->release());
+      }
+    }
+
+    synchronized void release() {
+      for (int i=bulkheads.size()-1; i>=0; i--) {
+        bulkheads.remove(i).exit();
+      }
+    }
+  }
+}
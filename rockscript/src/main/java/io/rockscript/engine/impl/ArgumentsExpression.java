@@ -15,6 +15,8 @@
  */
 package io.rockscript.engine.impl;
 
+import io.rockscript.service.ImportResolver;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +24,9 @@ public class ArgumentsExpression extends SingleExpression {
 
   SingleExpression functionExpression;
   List<SingleExpression> argumentExpressions;
+  /** the url if this is a system.import with a string literal, see {@link #getStaticImportObject(ImportResolver)} */
+  String staticImportUrl;
+  volatile StaticImport staticImport;
 
   public ArgumentsExpression(Integer index, Location location) {
     super(index, location);
@@ -48,6 +53,58 @@ public class ArgumentsExpression extends SingleExpression {
     this.argumentExpressions = argumentExpressions;
   }
 
+  public String getStaticImportUrl() {
+    return staticImportUrl;
+  }
+
+  /** sets the {@link #getStaticImportUrl() static import url} from the function and
+   * argument expressions, both when the script is parsed and when it's decoded */
+  void initializeStaticImportUrl() {
+    staticImportUrl = findStaticImportUrl();
+  }
+
+  /** @return the url of <code>system.import('...')</code> with a string literal
+   * or null if this arguments expression is not such a static import */
+  private String findStaticImportUrl() {
+    if (functionExpression instanceof MemberDotExpression
+        && argumentExpressions!=null
+        && argumentExpressions.size()==1
+        && argumentExpressions.get(0) instanceof Literal) {
+      MemberDotExpression memberDotExpression = (MemberDotExpression) functionExpression;
+      SingleExpression baseExpression = memberDotExpression.getBaseExpression();
+      Object url = ((Literal)argumentExpressions.get(0)).getValue();
+      if ("import".equals(memberDotExpression.getPropertyName())
+          && baseExpression instanceof IdentifierExpression
+          && "system".equals(((IdentifierExpression)baseExpression).getIdentifier())
+          && url instanceof String) {
+        return (String) url;
+      }
+    }
+    return null;
+  }
+
+  /** The import object of a static import is resolved when the script is parsed
+   * and is reused by all executions and replays, until import providers are
+   * added to the resolver. */
+  public Object getStaticImportObject(ImportResolver importResolver) {
+    StaticImport resolved = this.staticImport;
+    if (resolved==null || resolved.resolverVersion!=importResolver.getVersion()) {
+      int resolverVersion = importResolver.getVersion();
+      resolved = new StaticImport(importResolver.get(staticImportUrl), resolverVersion);
+      this.staticImport = resolved;
+    }
+    return resolved.importObject;
+  }
+
+  static class StaticImport {
+    Object importObject;
+    int resolverVersion;
+    StaticImport(Object importObject, int resolverVersion) {
+      this.importObject = importObject;
+      this.resolverVersion = resolverVersion;
+    }
+  }
+
   @Override
   protected List<? extends ScriptElement> getChildren() {
     List<ScriptElement> children = new ArrayList<>();
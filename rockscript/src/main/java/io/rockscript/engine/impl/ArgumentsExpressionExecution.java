@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ArgumentsExpressionExecution extends Execution<ArgumentsExpression> {
@@ -59,7 +60,7 @@ public class ArgumentsExpressionExecution extends Execution<ArgumentsExpression>
     } else {
       Execution functionExpressionExecution = children.get(0);
       this.serviceFunction = (ServiceFunction) functionExpressionExecution.getResult();
-      this.args = collectResultsFromChildren().subList(1, children.size());
+      this.args = resolveArgs(collectResultsFromChildren().subList(1, children.size()));
 
       // TODO create separate mechanism for non-service functions
       if (serviceFunction instanceof SystemImportServiceFunction
@@ -71,11 +72,26 @@ public class ArgumentsExpressionExecution extends Execution<ArgumentsExpression>
     }
   }
 
+  /** service functions get the content of offloaded payloads, not the references */
+  private List<Object> resolveArgs(List<Object> args) {
+    List<Object> resolvedArgs = new ArrayList<>(args.size());
+    for (Object arg: args) {
+      resolvedArgs.add(resolve(arg));
+    }
+    return resolvedArgs;
+  }
+
   private void invokeSystemFunction() {
     // import functions have to be re-executed when the events
     // are applied because they can return functions
-    ServiceFunctionOutput output = startFunctionInvoke();
-    Object importedObject = output.getResult();
+    Object importedObject;
+    if (serviceFunction instanceof SystemImportServiceFunction
+        && element.getStaticImportUrl()!=null) {
+      importedObject = element.getStaticImportObject(getEngine().getImportResolver());
+    } else {
+      ServiceFunctionOutput output = startFunctionInvoke();
+      importedObject = output.getResult();
+    }
     // dispatch(new ObjectImportedEvent(this, importedObject));
     endFunctionExecute(importedObject);
   }
@@ -127,13 +143,14 @@ public class ArgumentsExpressionExecution extends Execution<ArgumentsExpression>
   }
 
   public void endFunction(Object result) {
-    dispatchAndExecute(new ServiceFunctionEndedEvent(this, result));
+    Object payload = getEngine().getPayloadOffloader().offload(result);
+    dispatchAndExecute(new ServiceFunctionEndedEvent(this, payload));
     // Continues at this.endFunctionExecute()
   }
 
   // Continuation from endFunction -> ServiceFunctionEndedEvent
   public void endFunctionExecute(Object result) {
-    setResult(result);
+    setResult(ScriptValues.toScriptValue(result));
     ended = true;
     end();
   }
@@ -20,7 +20,6 @@
 
 package io.rockscript.engine.impl;
 
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +32,7 @@ public class ArrayLiteralExpressionExecution extends BlockExecution<ArrayLiteral
 
   @Override
   protected void end() {
-    List<Object> array = new ArrayList<>();
+    ScriptArray array = new ScriptArray();
     if (children!=null) {
       for (int i=0; i<children.size(); i++) {
         Object value = children.get(i).getResult();
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.Engine;
+import io.rockscript.engine.job.CircuitBreakerProbeJobHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Circuit breakers per host or service name, the same targets as the
+ * {@link OutboundLimiter}.
+ *
+ * A breaker opens after a number of consecutive failed calls.  While it is
+ * open, calls fail fast without network I/O: the service function is parked
+ * in the breaker's wait list instead of being invoked.  Failed calls that would
+ * schedule a retry job are parked as well.  So one probe job per breaker replaces
+ * the retry jobs of all the parked service functions.
+ *
+ * When the probe job fires, the breaker is half open and one parked service
+ * function is released.  When it succeeds, the breaker closes and each successful
+ * call releases two more parked service functions, so the recovering downstream
+ * gets a gradually increasing load.  When the probe fails, the breaker opens again. */
+public class CircuitBreakers {
+
+  static Logger log = LoggerFactory.getLogger(CircuitBreakers.class);
+
+  public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+  public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+  /** number of parked service functions that each successful call releases */
+  static final int RELEASE_PER_SUCCESS = 2;
+
+  Engine engine;
+  /** consecutive failures that open a breaker, 0 disables the circuit breakers */
+  int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+  Duration openDuration = DEFAULT_OPEN_DURATION;
+  Map<String,CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+  public CircuitBreakers(Engine engine) {
+    this.engine = engine;
+  }
+
+  public CircuitBreakers failureThreshold(int failureThreshold) {
+    this.failureThreshold = failureThreshold;
+    return this;
+  }
+
+  public CircuitBreakers openDuration(Duration openDuration) {
+    this.openDuration = openDuration;
+    return this;
+  }
+
+  /** @return the breaker for the target or null if circuit breakers are disabled */
+  public CircuitBreaker get(String target) {
+    if (failureThreshold<=0) {
+      return null;
+    }
+    return circuitBreakers.computeIfAbsent(target, CircuitBreaker::new);
+  }
+
+  /** invoked by the {@link CircuitBreakerProbeJobHandler} */
+  public void probe(String target) {
+    CircuitBreaker circuitBreaker = circuitBreakers.get(target);
+    if (circuitBreaker!=null) {
+      circuitBreaker.probe();
+    }
+  }
+
+  public Map<String,CircuitBreaker> getCircuitBreakers() {
+    return new TreeMap<>(circuitBreakers);
+  }
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  public class CircuitBreaker {
+
+    String target;
+    ReentrantLock lock = new ReentrantLock();
+    State state = State.CLOSED;
+    int consecutiveFailures;
+    Instant openUntil;
+    boolean probeInFlight;
+    Queue<ContinuationReference> parked = new ArrayDeque<>();
+
+    CircuitBreaker(String target) {
+      this.target = target;
+    }
+
+    /** @return false if the call must not be made.  The caller is
+     * expected to {@link #park(ContinuationReference)} the service function. */
+    public boolean allowRequest() {
+      lock.lock();
+      try {
+        if (state==State.OPEN && !Time.now().isBefore(openUntil)) {
+          state = State.HALF_OPEN;
+        }
+        if (state==State.HALF_OPEN) {
+          if (probeInFlight) {
+            return false;
+          }
+          probeInFlight = true;
+          return true;
+        }
+        return state==State.CLOSED;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void park(ContinuationReference continuationReference) {
+      lock.lock();
+      try {
+        log.debug("Parking ["+continuationReference.getScriptExecutionId()+"|"+continuationReference.getExecutionId()+"] while circuit breaker "+target+" is "+state);
+        parked.add(continuationReference);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /** Parks the service function if the breaker is not closed.
+     * @return true if the service function was parked and no retry must be scheduled */
+    public boolean parkInsteadOfRetry(ContinuationReference continuationReference) {
+      lock.lock();
+      try {
+        if (state==State.CLOSED) {
+          return false;
+        }
+        park(continuationReference);
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void onSuccess() {
+      List<ContinuationReference> released = new ArrayList<>(RELEASE_PER_SUCCESS);
+      lock.lock();
+      try {
+        consecutiveFailures = 0;
+        if (state!=State.CLOSED) {
+          log.debug("Closing circuit breaker "+target);
+          state = State.CLOSED;
+          probeInFlight = false;
+        }
+        while (released.size()<RELEASE_PER_SUCCESS && !parked.isEmpty()) {
+          released.add(parked.poll());
+        }
+      } finally {
+        lock.unlock();
+      }
+      released.forEach(this::release);
+    }
+
+    public void onFailure() {
+      boolean opened = false;
+      lock.lock();
+      try {
+        consecutiveFailures++;
+        if (state==State.HALF_OPEN
+            || (state==State.CLOSED && consecutiveFailures>=failureThreshold)) {
+          log.debug("Opening circuit breaker "+target+" after "+consecutiveFailures+" failures");
+          state = State.OPEN;
+          openUntil = Time.now().plus(openDuration);
+          probeInFlight = false;
+          opened = true;
+        }
+      } finally {
+        lock.unlock();
+      }
+      if (opened) {
+        engine
+          .getJobService()
+          .schedule(new CircuitBreakerProbeJobHandler(target), openUntil);
+      }
+    }
+
+    /** turns the breaker half open and retries one parked service function as the probe */
+    void probe() {
+      ContinuationReference probe;
+      lock.lock();
+      try {
+        if (state!=State.OPEN) {
+          return;
+        }
+        state = State.HALF_OPEN;
+        probeInFlight = false;
+        probe = parked.poll();
+      } finally {
+        lock.unlock();
+      }
+      if (probe!=null) {
+        release(probe);
+      }
+    }
+
+    /** restarts the parked service function without counting it as a failed attempt */
+    void release(ContinuationReference continuationReference) {
+      engine.getExecutor().execute(()->engine
+        .getLockOperationExecutor()
+        .executeInLock(new LockOperationRelease(continuationReference)));
+    }
+
+    public String getTarget() {
+      return target;
+    }
+
+    public State getState() {
+      return state;
+    }
+
+    public int getConsecutiveFailures() {
+      return consecutiveFailures;
+    }
+
+    public Instant getOpenUntil() {
+      return openUntil;
+    }
+
+    public int getParkedCount() {
+      lock.lock();
+      try {
+        return parked.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
@@ -17,10 +17,13 @@ package io.rockscript.engine.impl;
 
 import io.rockscript.api.model.ScriptVersion;
 import io.rockscript.Engine;
+import io.rockscript.service.ImportResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /** The Abstract Syntax Tree (AST) of a script version. */
@@ -30,12 +33,25 @@ public class EngineScript extends SourceElements {
 
   ScriptVersion scriptVersion;
   Engine engine;
-  List<ScriptElement> elements;
+  /** all script elements, indexed by {@link ScriptElement#getIndex()} */
+  ScriptElement[] elements;
 
   public EngineScript(Integer index, Location location) {
     super(index, location);
   }
 
+  /** Shares the syntax tree of the other engine script, which was
+   * parsed from the same script text, so that a script version with
+   * a text that is already deployed doesn't need a tree of its own. */
+  public EngineScript(EngineScript other) {
+    super(other.index, other.location);
+    this.scriptText = other.scriptText;
+    this.sourceElements = other.sourceElements;
+    this.engine = other.engine;
+    this.elements = other.elements.clone();
+    this.elements[0] = this;
+  }
+
   @Override
   public Execution createExecution(Execution parent) {
     throw new RuntimeException("Use EngineScript.start(...) instead");
@@ -50,41 +66,67 @@ public class EngineScript extends SourceElements {
   }
 
   public ScriptElement findScriptElement(int executableIndex) {
-    return elements.get(executableIndex);
+    return elements[executableIndex];
   }
 
   public void initializeScriptElements(String scriptText) {
-    elements = new ArrayList<>();
-    addScriptElement(this, scriptText);
-    initializeScriptElements(getChildren(), scriptText);
+    List<ScriptElement> elements = new ArrayList<>();
+    addScriptElement(elements, this, scriptText);
+    initializeScriptElements(elements, getChildren(), scriptText);
+    this.elements = elements.toArray(new ScriptElement[elements.size()]);
   }
 
-  void initializeScriptElements(List<? extends ScriptElement> children, String scriptText) {
+  void initializeScriptElements(List<ScriptElement> elements, List<? extends ScriptElement> children, String scriptText) {
     if (children!=null) {
       for (ScriptElement child: children) {
         if (child!=null) {
-          addScriptElement(child, scriptText);
-          initializeScriptElements(child.getChildren(), scriptText);
+          addScriptElement(elements, child, scriptText);
+          initializeScriptElements(elements, child.getChildren(), scriptText);
         }
       }
     }
   }
 
-  void addScriptElement(ScriptElement scriptElement, String scriptText) {
+  void addScriptElement(List<ScriptElement> elements, ScriptElement scriptElement, String scriptText) {
     int executableIndex = elements.size();
     scriptElement.setIndex(executableIndex);
     elements.add(scriptElement);
+    // the element text is only created when it's used, see ScriptElement.getText()
+    scriptElement.setScriptText(scriptText);
+  }
+
+  /** the text between start and end with each whitespace character
+   * replaced by a space, same as the regex \s but without compiling
+   * a pattern for every script element. */
+  static String toSingleLine(String scriptText, int start, int end) {
+    char[] chars = new char[end-start];
+    scriptText.getChars(start, end, chars, 0);
+    for (int i=0; i<chars.length; i++) {
+      switch (chars[i]) {
+        case '\t': case '\n': case '\u000B': case '\f': case '\r':
+          chars[i] = ' ';
+      }
+    }
+    return new String(chars);
+  }
 
-    Location location = scriptElement.getLocation();
-    int start = location.getStart();
-    int end = location.getEnd()+1;
-    String scriptPiece = scriptText.substring(start, end).replaceAll("\\s", " ");
-    // log.debug(scriptElement.getIndex()+" - "+scriptElement.getClass().getSimpleName()+" - "+scriptPiece);
-    scriptElement.setText(scriptPiece);
+  /** resolves the <code>system.import('...')</code>s with a string
+   * literal once instead of in every execution and replay */
+  public void resolveStaticImports() {
+    ImportResolver importResolver = engine!=null ? engine.getImportResolver() : null;
+    if (importResolver==null) {
+      return;
+    }
+    for (ScriptElement element: elements) {
+      if (element instanceof ArgumentsExpression
+          && ((ArgumentsExpression)element).getStaticImportUrl()!=null) {
+        ((ArgumentsExpression)element).getStaticImportObject(importResolver);
+      }
+    }
   }
 
   public List<ScriptElement> getElements() {
-    return elements;
+    return Collections.unmodifiableList(Arrays.asList(elements));
   }
 
   public ScriptVersion getScriptVersion() {
@@ -0,0 +1,134 @@
+/*
+ * Copyright ©2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.engine.EngineException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/** Least recently used cache of parsed {@link EngineScript}s by script version id.
+ *
+ * The weight of an entry is the length of its script text
+ * and the least recently used entries are evicted when the total
+ * weight exceeds the max weight.  When multiple threads miss on the
+ * same script version at the same time, only one of them parses. */
+public class EngineScriptCache {
+
+  public static final long DEFAULT_MAX_WEIGHT = 16*1024*1024;
+
+  long maxWeight;
+  long weight;
+  /** access ordered, guarded by this */
+  LinkedHashMap<String,EngineScript> engineScripts = new LinkedHashMap<>(16, 0.75f, true);
+  Map<String,CompletableFuture<EngineScript>> loads = new ConcurrentHashMap<>();
+
+  public EngineScriptCache(long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+
+  public synchronized EngineScript get(String scriptVersionId) {
+    return engineScripts.get(scriptVersionId);
+  }
+
+  public synchronized void put(String scriptVersionId, EngineScript engineScript) {
+    EngineScript previous = engineScripts.put(scriptVersionId, engineScript);
+    if (previous!=null) {
+      weight -= getWeight(previous);
+    }
+    weight += getWeight(engineScript);
+    Iterator<EngineScript> leastRecentlyUsed = engineScripts.values().iterator();
+    // the entry that was just added is always kept
+    while (weight>maxWeight && engineScripts.size()>1) {
+      EngineScript evicted = leastRecentlyUsed.next();
+      leastRecentlyUsed.remove();
+      weight -= getWeight(evicted);
+    }
+  }
+
+  /** @return the cached engine script or the result of the loader,
+   * which is only invoked by one thread per script version id.
+   * Null results are not cached. */
+  public EngineScript get(String scriptVersionId, Function<String,EngineScript> loader) {
+    EngineScript engineScript = get(scriptVersionId);
+    if (engineScript!=null) {
+      return engineScript;
+    }
+    CompletableFuture<EngineScript> load = new CompletableFuture<>();
+    CompletableFuture<EngineScript> existingLoad = loads.putIfAbsent(scriptVersionId, load);
+    if (existingLoad!=null) {
+      return join(existingLoad);
+    }
+    try {
+      // another thread might have completed a load just before this one was registered
+      engineScript = get(scriptVersionId);
+      if (engineScript==null) {
+        engineScript = loader.apply(scriptVersionId);
+        if (engineScript!=null) {
+          put(scriptVersionId, engineScript);
+        }
+      }
+      load.complete(engineScript);
+      return engineScript;
+    } catch (RuntimeException e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      loads.remove(scriptVersionId, load);
+    }
+  }
+
+  public synchronized void clear() {
+    engineScripts.clear();
+    weight = 0;
+  }
+
+  public synchronized int size() {
+    return engineScripts.size();
+  }
+
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  static long getWeight(EngineScript engineScript) {
+    String text = engineScript.getScriptVersion()!=null
+                  ? engineScript.getScriptVersion().getText()
+                  : null;
+    return text!=null ? Math.max(1, text.length()) : 1;
+  }
+
+  static EngineScript join(CompletableFuture<EngineScript> load) {
+    try {
+      return load.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new EngineException("Interrupted while waiting for the script to be parsed", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : new EngineException(cause.getMessage(), cause);
+    }
+  }
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.Engine;
+import io.rockscript.engine.EngineException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Binary form of a parsed {@link EngineScript} so that
+ * scripts can be loaded without the ANTLR lexer and parser.
+ *
+ * Layout: a version byte, the length and SHA-256 digest of the
+ * script text so that a compiled script is never used with
+ * another text, and then the abstract syntax tree depth first: per
+ * element a type byte, its {@link Location} and its fields.
+ * Element indexes and texts are derived from the locations
+ * and the script text when the script is decoded, exactly
+ * like after parsing.
+ *
+ * The digest only guards against mixing up compiled scripts and
+ * texts.  Whoever produces the compiled script decides what runs,
+ * so the server only accepts compiled scripts from clients if it's
+ * configured to trust them, see
+ * {@link io.rockscript.Configuration#configureTrustCompiledScripts()}. */
+public class EngineScriptCodec {
+
+  /** version 2 replaced the CRC32 of the script text with a SHA-256 digest */
+  public static final byte VERSION = 2;
+
+  static final int DIGEST_LENGTH = 32;
+
+  static final byte NULL = 0;
+  static final byte SOURCE_ELEMENTS = 1;
+  static final byte BLOCK = 2;
+  static final byte ARGUMENTS = 3;
+  static final byte ARITHMATIC = 4;
+  static final byte ARRAY_LITERAL = 5;
+  static final byte ASSIGNMENT = 6;
+  static final byte COMPARATOR = 7;
+  static final byte EQUALITY = 8;
+  static final byte EXPRESSION_STATEMENT = 9;
+  static final byte FOR = 10;
+  static final byte IDENTIFIER = 11;
+  static final byte IF = 12;
+  static final byte LITERAL = 13;
+  static final byte LOGICAL = 14;
+  static final byte MEMBER_DOT = 15;
+  static final byte MEMBER_INDEX = 16;
+  static final byte OBJECT_LITERAL = 17;
+  static final byte PARENTHESIZED = 18;
+  static final byte SINGLE_EXPRESSION_LIST = 19;
+  static final byte UNARY_ARITHMATIC = 20;
+  static final byte VARIABLE_DECLARATION = 21;
+  static final byte VARIABLE_DECLARATION_LIST = 22;
+
+  static final byte LITERAL_NULL = 0;
+  static final byte LITERAL_STRING = 1;
+  static final byte LITERAL_NUMBER = 2;
+  static final byte LITERAL_TRUE = 3;
+  static final byte LITERAL_FALSE = 4;
+  static final byte LITERAL_UNDEFINED = 5;
+  static final byte LITERAL_NAN = 6;
+  static final byte LITERAL_INFINITY = 7;
+
+  public static byte[] encode(EngineScript engineScript, String scriptText) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Encoder encoder = new Encoder(new DataOutputStream(bytes));
+      encoder.out.writeByte(VERSION);
+      encoder.out.writeInt(scriptText.length());
+      encoder.out.write(digest(scriptText));
+      encoder.writeLocation(engineScript.getLocation());
+      encoder.writeElements(engineScript.getSourceElements());
+      encoder.out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new EngineException("Couldn't encode script: "+e.getMessage(), e);
+    }
+  }
+
+  /** @throws EngineException if the compiled script has another
+   * version or doesn't match the script text */
+  public static EngineScript decode(byte[] compiledScript, String scriptText, Engine engine) {
+    try {
+      Decoder decoder = new Decoder(new DataInputStream(new ByteArrayInputStream(compiledScript)));
+      byte version = decoder.in.readByte();
+      if (version!=VERSION) {
+        throw new EngineException("Unsupported compiled script version "+version);
+      }
+      int textLength = decoder.in.readInt();
+      byte[] textDigest = new byte[DIGEST_LENGTH];
+      decoder.in.readFully(textDigest);
+      if (textLength!=scriptText.length()
+          || !MessageDigest.isEqual(textDigest, digest(scriptText))) {
+        throw new EngineException("Compiled script doesn't match the script text");
+      }
+      EngineScript engineScript = new EngineScript(null, decoder.readLocation());
+      engineScript.setSourceElements(decoder.readElements());
+      engineScript.setEngine(engine);
+      engineScript.initializeScriptElements(scriptText);
+      engineScript.resolveStaticImports();
+      return engineScript;
+    } catch (IOException | RuntimeException e) {
+      if (e instanceof EngineException) {
+        throw (EngineException) e;
+      }
+      throw new EngineException("Invalid compiled script: "+e.getMessage(), e);
+    }
+  }
+
+  static byte[] digest(String scriptText) {
+    try {
+      return MessageDigest
+        .getInstance("SHA-256")
+        .digest(scriptText.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new EngineException("SHA-256 is not available: "+e.getMessage(), e);
+    }
+  }
+
+  static class Encoder {
+
+    DataOutputStream out;
+
+    Encoder(DataOutputStream out) {
+      this.out = out;
+    }
+
+    void writeElements(List<? extends ScriptElement> elements) throws IOException {
+      if (elements==null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(elements.size());
+        for (ScriptElement element: elements) {
+          writeElement(element);
+        }
+      }
+    }
+
+    void writeElement(ScriptElement element) throws IOException {
+      if (element==null) {
+        out.writeByte(NULL);
+        return;
+      }
+      out.writeByte(getType(element));
+      writeLocation(element.getLocation());
+      if (element instanceof SourceElements) {
+        writeElements(((SourceElements) element).sourceElements);
+      } else if (element instanceof Block) {
+        writeElement(((Block) element).sourceElements);
+      } else if (element instanceof ArgumentsExpression) {
+        ArgumentsExpression e = (ArgumentsExpression) element;
+        writeElement(e.functionExpression);
+        writeElements(e.argumentExpressions);
+      } else if (element instanceof ArithmaticExpression) {
+        ArithmaticExpression e = (ArithmaticExpression) element;
+        writeString(e.operation);
+        writeElement(e.left);
+        writeElement(e.right);
+      } else if (element instanceof ArrayLiteralExpression) {
+        writeElements(((ArrayLiteralExpression) element).elements);
+      } else if (element instanceof AssignmentExpression) {
+        AssignmentExpression e = (AssignmentExpression) element;
+        writeString(e.operator);
+        writeElement(e.left);
+        writeElement(e.right);
+      } else if (element instanceof ComparatorExpression) {
+        ComparatorExpression e = (ComparatorExpression) element;
+        writeString(e.comparator);
+        writeElement(e.left);
+        writeElement(e.right);
+      } else if (element instanceof EqualityExpression) {
+        EqualityExpression e = (EqualityExpression) element;
+        writeString(e.comparator);
+        writeElement(e.left);
+        writeElement(e.right);
+      } else if (element instanceof ExpressionStatement) {
+        writeElements(((ExpressionStatement) element).singleExpressions);
+      } else if (element instanceof ForStatement) {
+        ForStatement e = (ForStatement) element;
+        writeElement(e.variableDeclarations);
+        writeElement(e.whileConditions);
+        writeElement(e.increments);
+        writeElement(e.iterativeStatement);
+      } else if (element instanceof IdentifierExpression) {
+        writeString(((IdentifierExpression) element).identifier);
+      } else if (element instanceof IfStatement) {
+        IfStatement e = (IfStatement) element;
+        writeElement(e.conditionExpression);
+        writeElement(e.thenStatement);
+        writeElement(e.elseStatement);
+      } else if (element instanceof Literal) {
+        writeLiteralValue(((Literal) element).value);
+      } else if (element instanceof LogicalExpression) {
+        LogicalExpression e = (LogicalExpression) element;
+        writeString(e.operator);
+        writeElement(e.left);
+        writeElement(e.right);
+      } else if (element instanceof MemberDotExpression) {
+        MemberDotExpression e = (MemberDotExpression) element;
+        writeElement(e.baseExpression);
+        writeString(e.propertyName);
+      } else if (element instanceof MemberIndexExpression) {
+        MemberIndexExpression e = (MemberIndexExpression) element;
+        writeElement(e.baseExpression);
+        writeElements(e.expressionSequence);
+      } else if (element instanceof ObjectLiteralExpression) {
+        ObjectLiteralExpression e = (ObjectLiteralExpression) element;
+        out.writeInt(e.propertyNames.size());
+        for (String propertyName: e.propertyNames) {
+          writeString(propertyName);
+        }
+        writeElements(e.valueExpressions);
+      } else if (element instanceof ParenthesizedExpression) {
+        writeElements(((ParenthesizedExpression) element).expressions);
+      } else if (element instanceof SingleExpressionList) {
+        writeElements(((SingleExpressionList) element).expressions);
+      } else if (element instanceof UnaryArithmaticExpression) {
+        UnaryArithmaticExpression e = (UnaryArithmaticExpression) element;
+        writeElement(e.expression);
+        writeString(e.resultCapture);
+        writeString(e.operator);
+      } else if (element instanceof VariableDeclaration) {
+        VariableDeclaration e = (VariableDeclaration) element;
+        writeString(e.variableName);
+        writeElement(e.initialiser);
+      } else if (element instanceof VariableDeclarationList) {
+        writeElements(((VariableDeclarationList) element).variableDeclarations);
+      }
+    }
+
+    byte getType(ScriptElement element) {
+      if (element instanceof SourceElements) return SOURCE_ELEMENTS;
+      if (element instanceof Block) return BLOCK;
+      if (element instanceof ArgumentsExpression) return ARGUMENTS;
+      if (element instanceof ArithmaticExpression) return ARITHMATIC;
+      if (element instanceof ArrayLiteralExpression) return ARRAY_LITERAL;
+      if (element instanceof AssignmentExpression) return ASSIGNMENT;
+      if (element instanceof ComparatorExpression) return COMPARATOR;
+      if (element instanceof EqualityExpression) return EQUALITY;
+      if (element instanceof ExpressionStatement) return EXPRESSION_STATEMENT;
+      if (element instanceof ForStatement) return FOR;
+      if (element instanceof IdentifierExpression) return IDENTIFIER;
+      if (element instanceof IfStatement) return IF;
+      if (element instanceof Literal) return LITERAL;
+      if (element instanceof LogicalExpression) return LOGICAL;
+      if (element instanceof MemberDotExpression) return MEMBER_DOT;
+      if (element instanceof MemberIndexExpression) return MEMBER_INDEX;
+      if (element instanceof ObjectLiteralExpression) return OBJECT_LITERAL;
+      if (element instanceof ParenthesizedExpression) return PARENTHESIZED;
+      if (element instanceof SingleExpressionList) return SINGLE_EXPRESSION_LIST;
+      if (element instanceof UnaryArithmaticExpression) return UNARY_ARITHMATIC;
+      if (element instanceof VariableDeclaration) return VARIABLE_DECLARATION;
+      if (element instanceof VariableDeclarationList) return VARIABLE_DECLARATION_LIST;
+      throw new EngineException("Can't compile script element "+element.getClass().getName());
+    }
+
+    void writeLiteralValue(Object value) throws IOException {
+      if (value==null) {
+        out.writeByte(LITERAL_NULL);
+      } else if (value instanceof String) {
+        out.writeByte(LITERAL_STRING);
+        writeString((String) value);
+      } else if (value instanceof Number) {
+        out.writeByte(LITERAL_NUMBER);
+        out.writeDouble(((Number) value).doubleValue());
+      } else if (value instanceof Boolean) {
+        out.writeByte((Boolean) value ? LITERAL_TRUE : LITERAL_FALSE);
+      } else if (value==Literal.UNDEFINED) {
+        out.writeByte(LITERAL_UNDEFINED);
+      } else if (value==Literal.NAN) {
+        out.writeByte(LITERAL_NAN);
+      } else if (value==Literal.INFINITY) {
+        out.writeByte(LITERAL_INFINITY);
+      } else {
+        throw new EngineException("Can't compile literal "+value);
+      }
+    }
+
+    void writeLocation(Location location) throws IOException {
+      out.writeInt(location.getLine());
+      out.writeInt(location.getStart());
+      out.writeInt(location.getEnd());
+    }
+
+    void writeString(String text) throws IOException {
+      if (text==null) {
+        out.writeInt(-1);
+      } else {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+
+  static class Decoder {
+
+    DataInputStream in;
+
+    Decoder(DataInputStream in) {
+      this.in = in;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends ScriptElement> List<T> readElements() throws IOException {
+      int size = in.readInt();
+      if (size==-1) {
+        return null;
+      }
+      List<T> elements = new ArrayList<>(size);
+      for (int i=0; i<size; i++) {
+        elements.add((T) readElement());
+      }
+      return elements;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends ScriptElement> T readElement() throws IOException {
+      byte type = in.readByte();
+      if (type==NULL) {
+        return null;
+      }
+      Location location = readLocation();
+      switch (type) {
+        case SOURCE_ELEMENTS: {
+          SourceElements e = new SourceElements(null, location);
+          e.sourceElements = readElements();
+          return (T) e;
+        }
+        case BLOCK: {
+          Block e = new Block(null, location);
+          e.sourceElements = readElement();
+          return (T) e;
+        }
+        case ARGUMENTS: {
+          ArgumentsExpression e = new ArgumentsExpression(null, location);
+          e.functionExpression = readElement();
+          e.argumentExpressions = readElements();
+          e.initializeStaticImportUrl();
+          return (T) e;
+        }
+        case ARITHMATIC: {
+          String operation = readOperator();
+          return (T) new ArithmaticExpression(null, location, operation, readElement(), readElement());
+        }
+        case ARRAY_LITERAL: {
+          ArrayLiteralExpression e = new ArrayLiteralExpression(null, location);
+          e.elements = readElements();
+          return (T) e;
+        }
+        case ASSIGNMENT: {
+          String operator = readOperator();
+          return (T) new AssignmentExpression(null, location, operator, readElement(), readElement());
+        }
+        case COMPARATOR: {
+          String comparator = readOperator();
+          SingleExpression left = readElement();
+          return (T) new ComparatorExpression(null, location, left, readElement(), comparator);
+        }
+        case EQUALITY: {
+          String comparator = readOperator();
+          SingleExpression left = readElement();
+          return (T) new EqualityExpression(null, location, left, readElement(), comparator);
+        }
+        case EXPRESSION_STATEMENT: {
+          ExpressionStatement e = new ExpressionStatement(null, location);
+          e.singleExpressions = readElements();
+          return (T) e;
+        }
+        case FOR: {
+          VariableDeclarationList variableDeclarations = readElement();
+          SingleExpressionList whileConditions = readElement();
+          SingleExpressionList increments = readElement();
+          return (T) new ForStatement(null, location, variableDeclarations, whileConditions, increments, readElement());
+        }
+        case IDENTIFIER: {
+          IdentifierExpression e = new IdentifierExpression(null, location);
+          e.identifier = readString();
+          return (T) e;
+        }
+        case IF: {
+          SingleExpression conditionExpression = readElement();
+          Statement thenStatement = readElement();
+          return (T) new IfStatement(null, location, conditionExpression, thenStatement, readElement());
+        }
+        case LITERAL: {
+          Literal e = new Literal(null, location);
+          e.value = readLiteralValue();
+          return (T) e;
+        }
+        case LOGICAL: {
+          String operator = readOperator();
+          SingleExpression left = readElement();
+          return (T) new LogicalExpression(null, location, left, readElement(), operator);
+        }
+        case MEMBER_DOT: {
+          MemberDotExpression e = new MemberDotExpression(null, location);
+          e.baseExpression = readElement();
+          e.propertyName = readString();
+          return (T) e;
+        }
+        case MEMBER_INDEX: {
+          MemberIndexExpression e = new MemberIndexExpression(null, location);
+          e.baseExpression = readElement();
+          e.expressionSequence = readElements();
+          return (T) e;
+        }
+        case OBJECT_LITERAL: {
+          ObjectLiteralExpression e = new ObjectLiteralExpression(null, location);
+          int size = in.readInt();
+          for (int i=0; i<size; i++) {
+            e.propertyNames.add(readString());
+          }
+          e.valueExpressions = readElements();
+          return (T) e;
+        }
+        case PARENTHESIZED: {
+          List<SingleExpression> expressions = readElements();
+          return (T) new ParenthesizedExpression(null, location, expressions);
+        }
+        case SINGLE_EXPRESSION_LIST: {
+          List<SingleExpression> expressions = readElements();
+          return (T) new SingleExpressionList(null, location, expressions);
+        }
+        case UNARY_ARITHMATIC: {
+          SingleExpression expression = readElement();
+          String resultCapture = readOperator();
+          return (T) new UnaryArithmaticExpression(null, location, expression, resultCapture, readOperator());
+        }
+        case VARIABLE_DECLARATION: {
+          VariableDeclaration e = new VariableDeclaration(null, location);
+          e.variableName = readString();
+          e.initialiser = readElement();
+          return (T) e;
+        }
+        case VARIABLE_DECLARATION_LIST: {
+          VariableDeclarationList e = new VariableDeclarationList(null, location);
+          e.variableDeclarations = readElements();
+          return (T) e;
+        }
+      }
+      throw new EngineException("Unknown script element type "+type);
+    }
+
+    Object readLiteralValue() throws IOException {
+      byte kind = in.readByte();
+      switch (kind) {
+        case LITERAL_NULL: return null;
+        case LITERAL_STRING: return readString();
+        case LITERAL_NUMBER: return in.readDouble();
+        case LITERAL_TRUE: return Boolean.TRUE;
+        case LITERAL_FALSE: return Boolean.FALSE;
+        case LITERAL_UNDEFINED: return Literal.UNDEFINED;
+        case LITERAL_NAN: return Literal.NAN;
+        case LITERAL_INFINITY: return Literal.INFINITY;
+      }
+      throw new EngineException("Unknown literal kind "+kind);
+    }
+
+    Location readLocation() throws IOException {
+      int line = in.readInt();
+      int start = in.readInt();
+      return new Location(line, start, in.readInt());
+    }
+
+    String readString() throws IOException {
+      int length = in.readInt();
+      if (length==-1) {
+        return null;
+      }
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** executions compare operators by identity with the
+     * constants that the parser uses, so they are interned. */
+    String readOperator() throws IOException {
+      String operator = readString();
+      return operator!=null ? operator.intern() : null;
+    }
+  }
+}
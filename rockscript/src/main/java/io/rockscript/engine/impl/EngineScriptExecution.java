@@ -18,13 +18,16 @@ package io.rockscript.engine.impl;
 import io.rockscript.Engine;
 import io.rockscript.api.events.*;
 import io.rockscript.engine.EngineException;
+import io.rockscript.api.model.EventRetention;
 import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
 
 /** The runtime state of a engineScript execution. */
 public class EngineScriptExecution extends BlockExecution<EngineScript> {
@@ -36,15 +39,33 @@ public class EngineScriptExecution extends BlockExecution<EngineScript> {
   ExecutionMode executionMode;
   Instant start;
   Instant end;
+  EventRetention eventRetention;
+  boolean auditRetained;
   Queue<Operation> work = new LinkedList<Operation>();
+  /** the lock under which this script execution runs, null when it's only read */
+  Lock lock;
 
   public EngineScriptExecution(String scriptExecutionId, Engine engine, EngineScript engineScript) {
     super(scriptExecutionId, engineScript, null);
     this.eventDispatcher = engine.getEventDispatcher();
     this.executionMode = ExecutionMode.EXECUTING;
+    initializeEventRetention(engine, engineScript);
     initializeSystemVariable(engine);
   }
 
+  /** For new executions, this decides the retention.  When replaying, the
+   * retention recorded in the {@link ScriptStartedEvent} overwrites this. */
+  private void initializeEventRetention(Engine engine, EngineScript engineScript) {
+    ScriptVersion scriptVersion = engineScript!=null ? engineScript.getScriptVersion() : null;
+    EventRetention scriptEventRetention = scriptVersion!=null ? scriptVersion.getEventRetention() : null;
+    this.eventRetention = scriptEventRetention!=null ? scriptEventRetention : engine.getEventRetention();
+    if (eventRetention==EventRetention.SAMPLED) {
+      this.auditRetained = ThreadLocalRandom.current().nextDouble() < engine.getEventSampleRate();
+    } else {
+      this.auditRetained = eventRetention!=EventRetention.REPLAY_ONLY;
+    }
+  }
+
   private void initializeSystemVariable(Engine engine) {
     JsonObject systemJsonObject = new JsonObject();
     systemJsonObject.put("import", new SystemImportServiceFunction(engine));
@@ -54,7 +75,7 @@ public class EngineScriptExecution extends BlockExecution<EngineScript> {
 
   public void setInput(Object input) {
     JsonObject systemJsonObject = (JsonObject) getVariable("system").getValue();
-    systemJsonObject.put("input", input);
+    systemJsonObject.put("input", ScriptValues.toScriptValue(input));
   }
 
   public void doWork() {
@@ -68,9 +89,22 @@ public class EngineScriptExecution extends BlockExecution<EngineScript> {
     work.add(operation);
   }
 
+  /** events are only dispatched while the lock is held, a lock owner of which the
+   * lease expired and was taken over fails instead of writing events. */
+  public void setLock(Lock lock) {
+    this.lock = lock;
+  }
+
+  public Lock getLock() {
+    return lock;
+  }
+
   @Override
   protected void dispatch(ExecutionEvent event) {
     if (!isReplaying()) {
+      if (lock!=null) {
+        lock.throwIfRevoked();
+      }
       eventDispatcher.dispatch(event);
     }
   }
@@ -165,6 +199,14 @@ public class EngineScriptExecution extends BlockExecution<EngineScript> {
     return end;
   }
 
+  // Continuation from end() -> ScriptEndedEvent
+  public void endExecute(Instant end) {
+    setEnd(end);
+    if (!isReplaying()) {
+      getEngine().getScriptExecutionStore().scriptExecutionEnded(this);
+    }
+  }
+
   public void setEnd(Instant end) {
     this.end = end;
   }
@@ -177,6 +219,23 @@ public class EngineScriptExecution extends BlockExecution<EngineScript> {
     return start;
   }
 
+  public EventRetention getEventRetention() {
+    return eventRetention;
+  }
+
+  public void setEventRetention(EventRetention eventRetention) {
+    this.eventRetention = eventRetention;
+  }
+
+  /** false if the audit events of this script execution are not stored */
+  public boolean isAuditRetained() {
+    return auditRetained;
+  }
+
+  public void setAuditRetained(boolean auditRetained) {
+    this.auditRetained = auditRetained;
+  }
+
   public ScriptExecution toScriptExecution() {
     return new ScriptExecution(this);
   }
@@ -24,7 +24,6 @@ import io.rockscript.engine.EngineException;
 import java.util.List;
 import java.util.Map;
 
-import static com.sun.jmx.snmp.EnumRowStatus.isValidValue;
 import static io.rockscript.engine.impl.Converter.*;
 
 public class EqualityExpressionExecution extends Execution<EqualityExpression> {
@@ -21,6 +21,8 @@ import io.rockscript.api.events.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 public class EventDispatcher {
 
   static final Logger log = LoggerFactory.getLogger(EventDispatcher.class);
@@ -34,12 +36,25 @@ public class EventDispatcher {
   public void dispatch(Event event) {
     // Could eventually be dispatched to 3 distinct queues
     if (event instanceof ExecutionEvent) {
-      engine.getScriptExecutionStore().handle(event);
+      // audit events are skipped according to the event retention
+      if (((ExecutionEvent)event).isStored()) {
+        engine.getScriptExecutionStore().handle(event);
+      }
     } else if (event instanceof JobEvent){
       engine.getJobStore().handle((JobEvent)event);
       engine.getJobExecutor().handle((JobEvent)event);
     } else if (event instanceof ScriptEvent){
       engine.getScriptStore().handle((ScriptEvent)event);
     }
+    dispatchToEventListeners(event);
+  }
+
+  protected void dispatchToEventListeners(Event event) {
+    List<EventListener> eventListeners = engine.getEventListeners();
+    if (eventListeners!=null) {
+      for (EventListener eventListener: eventListeners) {
+        eventListener.handle(event);
+      }
+    }
   }
 }
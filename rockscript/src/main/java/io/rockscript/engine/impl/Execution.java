@@ -98,6 +98,12 @@ public abstract class Execution<T extends ScriptElement> {
     return args;
   }
 
+  /** large payloads are kept as a {@link io.rockscript.engine.blob.BlobReference}
+   * until the script needs their content */
+  protected Object resolve(Object value) {
+    return getEngine().getPayloadOffloader().resolve(value);
+  }
+
   protected void end() {
     parent.childEnded(this);
   }
@@ -25,6 +25,12 @@ public class Location {
   private int start;
   private int end;
 
+  public Location(int line, int start, int end) {
+    this.line = line;
+    this.start = start;
+    this.end = end;
+  }
+
   public Location(ParserRuleContext parserRuleContext) {
     Token start = parserRuleContext.getStart();
     this.start = start.getStartIndex();
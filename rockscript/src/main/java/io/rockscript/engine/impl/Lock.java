@@ -18,16 +18,28 @@ package io.rockscript.engine.impl;
 
 import io.rockscript.engine.EngineException;
 
+import java.time.Duration;
 import java.time.Instant;
 
 public class Lock {
 
   Instant createTime;
+  /** null means the lease never expires */
+  volatile Instant expireTime;
+  Duration leaseDuration;
+  /** set when the crash recovery took over the script execution after the lease expired */
+  volatile boolean revoked;
   String scriptExecutionId;
 
   public Lock(String scriptExecutionId) {
+    this(scriptExecutionId, null);
+  }
+
+  public Lock(String scriptExecutionId, Duration leaseDuration) {
     this.scriptExecutionId = EngineException.throwIfNull(scriptExecutionId);
     this.createTime = Time.now();
+    this.leaseDuration = leaseDuration;
+    this.expireTime = leaseDuration!=null ? createTime.plus(leaseDuration) : null;
   }
 
   public String getScriptExecutionId() {
@@ -37,5 +49,54 @@ public class Lock {
   public Instant getCreateTime() {
     return createTime;
   }
-}
 
+  public Instant getExpireTime() {
+    return expireTime;
+  }
+
+  /** An expired lock is held by a lock owner that crashed or failed,
+   * so the script execution can be taken over by the crash recovery,
+   * see {@link LockService#acquireExpiredLock(String)}. */
+  public boolean isExpired(Instant now) {
+    Instant expireTime = this.expireTime;
+    return expireTime!=null && !now.isBefore(expireTime);
+  }
+
+  /** ends the lease, invoked by a lock owner that fails
+   * while the script execution is in an inconsistent state */
+  public void expire() {
+    this.expireTime = createTime;
+  }
+
+  /** extends the lease of a lock owner that is still running.  Leases that
+   * expired or were revoked are not renewed as the script execution might
+   * already be taken over. */
+  public synchronized void renew(Instant now) {
+    Instant expireTime = this.expireTime;
+    if (!revoked && expireTime!=null && now.isBefore(expireTime)) {
+      this.expireTime = now.plus(leaseDuration);
+    }
+  }
+
+  /** invoked when another lock owner takes over the script execution, after
+   * which this lock owner is not allowed to dispatch events or to unlock.
+   * Checked in the same step as the renewal so that a lease can't be
+   * renewed after it's taken over.
+   * @return true if the lease expired and is now revoked. */
+  synchronized boolean revokeIfExpired(Instant now) {
+    if (isExpired(now)) {
+      this.revoked = true;
+    }
+    return revoked;
+  }
+
+  public boolean isRevoked() {
+    return revoked;
+  }
+
+  public void throwIfRevoked() {
+    if (revoked) {
+      throw new EngineException("Lock of script execution "+scriptExecutionId+" was taken over after its lease expired");
+    }
+  }
+}
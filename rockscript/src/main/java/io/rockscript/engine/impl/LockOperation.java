@@ -24,6 +24,8 @@ import io.rockscript.Engine;
 public abstract class LockOperation implements LockReleaseListener {
 
   protected String scriptExecutionId;
+  /** set by the {@link LockOperationExecutor} when this operation failed */
+  protected Exception failure;
 
   public LockOperation(String scriptExecutionId) {
     this.scriptExecutionId = scriptExecutionId;
@@ -31,14 +33,35 @@ public abstract class LockOperation implements LockReleaseListener {
 
   public abstract EngineScriptExecution getLockedScriptExecution(Engine engine);
 
-  public abstract void execute(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution);
+  /** applies this operation to the script execution, the work that results
+   * from it is only performed by {@link EngineScriptExecution#doWork()}. */
+  public abstract void apply(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution);
+
+  public void execute(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution) {
+    apply(engine, lock, lockedScriptExecution);
+    lockedScriptExecution.doWork();
+  }
 
   public String getScriptExecutionId() {
     return scriptExecutionId;
   }
 
+  /** the exception that made this operation fail or null if it didn't fail (yet).
+   * Operations that were queued for a locked script execution are only
+   * applied later, in which case this is null when the caller gets control back. */
+  public Exception getFailure() {
+    return failure;
+  }
+
+  public void setFailure(Exception failure) {
+    this.failure = failure;
+  }
+
+  /** Operations that were queued for a locked script execution are only applied.
+   * The {@link LockServiceImpl} performs the work of all operations that were
+   * queued for the same script execution at once. */
   @Override
   public void releasingLock(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution) {
-    execute(engine, lock, lockedScriptExecution);
+    apply(engine, lock, lockedScriptExecution);
   }
 }
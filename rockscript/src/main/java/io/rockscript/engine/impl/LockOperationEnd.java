@@ -32,8 +32,7 @@ public class LockOperationEnd extends LockOperationExecution<ArgumentsExpression
   }
 
   @Override
-  public void execute(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution, ArgumentsExpressionExecution execution) {
+  public void apply(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution, ArgumentsExpressionExecution execution) {
     execution.endFunction(result);
-    lockedScriptExecution.doWork();
   }
 }
@@ -38,11 +38,11 @@ public abstract class LockOperationExecution<T extends Execution> extends LockOp
 
   @SuppressWarnings("unchecked")
   @Override
-  public void execute(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution) {
+  public void apply(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution) {
     Execution execution = lockedScriptExecution.findExecutionRecursive(executionId);
     EngineException.throwIfNull(execution, "Execution %s not found in script execution %s", executionId, lockedScriptExecution.getId());
-    execute(engine, lock, lockedScriptExecution, (T) execution);
+    apply(engine, lock, lockedScriptExecution, (T) execution);
   }
 
-  public abstract void execute(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution, T execution);
+  public abstract void apply(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution, T execution);
 }
@@ -17,6 +17,7 @@
 package io.rockscript.engine.impl;
 
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 
 /** Performs engineScript execution and ensures that only 1 scriptService
  * is executing a EngineScriptExecution at any given time.
@@ -27,4 +28,11 @@ public interface LockOperationExecutor {
 
   EngineScriptExecution executeInLock(LockOperation lockOperation);
 
+  /** Applies the lock operation on the calling thread, so that its events are
+   * dispatched when this method returns, and performs the resulting work on
+   * the engine executor.  The future completes when the lock is released.
+   * If the script execution is locked, the operation is queued like with
+   * {@link #executeInLock(LockOperation)} and the future completes with null. */
+  CompletableFuture<EngineScriptExecution> executeInLockAsync(LockOperation lockOperation);
+
 }
@@ -22,6 +22,8 @@ import io.rockscript.http.servlet.InternalServerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+
 
 /** A simple, fast, single-node lockService. */
 public class LockOperationExecutorImpl implements LockOperationExecutor {
@@ -43,24 +45,67 @@ public class LockOperationExecutorImpl implements LockOperationExecutor {
   public EngineScriptExecution executeInLock(LockOperation lockOperation) {
     EngineScriptExecution lockedScriptExecution = null;
     String scriptExecutionId = lockOperation.getScriptExecutionId();
-    Lock lock = lockService.acquireLock(scriptExecutionId);
+    Lock lock = lockService.acquireLockOrAddUnlockListener(scriptExecutionId, lockOperation);
     if (lock!=null) {
       lockedScriptExecution = lockOperation.getLockedScriptExecution(engine);
       InternalServerException.throwIfNull(lockedScriptExecution, "Bug: LockOperation's should always return a locked script execution or throw a BadRequestException. scriptExecutionId=%s", scriptExecutionId);
+      lockedScriptExecution.setLock(lock);
       try {
         lockOperation.execute(engine, lock, lockedScriptExecution);
         lockService.releaseLock(lock, lockedScriptExecution);
       } catch (Exception e) {
-        log.debug("Exception while executing script: " + e.getMessage(), e);
-        Execution execution = getExecution(e, lockedScriptExecution);
-        lockedScriptExecution.dispatch(new ScriptExecutionErrorEvent(execution, e.getMessage()));
+        lockOperation.setFailure(e);
+        handleException(e, lock, lockedScriptExecution);
       }
-    } else {
-      lockService.addUnlockListener(scriptExecutionId, lockOperation);
     }
     return lockedScriptExecution;
   }
 
+  @Override
+  public CompletableFuture<EngineScriptExecution> executeInLockAsync(LockOperation lockOperation) {
+    String scriptExecutionId = lockOperation.getScriptExecutionId();
+    Lock lock = lockService.acquireLockOrAddUnlockListener(scriptExecutionId, lockOperation);
+    if (lock==null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    EngineScriptExecution lockedScriptExecution = lockOperation.getLockedScriptExecution(engine);
+    InternalServerException.throwIfNull(lockedScriptExecution, "Bug: LockOperation's should always return a locked script execution or throw a BadRequestException. scriptExecutionId=%s", scriptExecutionId);
+    lockedScriptExecution.setLock(lock);
+    try {
+      lockOperation.apply(engine, lock, lockedScriptExecution);
+    } catch (Exception e) {
+      lockOperation.setFailure(e);
+      handleException(e, lock, lockedScriptExecution);
+      return CompletableFuture.completedFuture(lockedScriptExecution);
+    }
+    CompletableFuture<EngineScriptExecution> future = new CompletableFuture<>();
+    engine.getExecutor().execute(()->{
+      try {
+        lockedScriptExecution.doWork();
+        lockService.releaseLock(lock, lockedScriptExecution);
+      } catch (Exception e) {
+        lockOperation.setFailure(e);
+        handleException(e, lock, lockedScriptExecution);
+      }
+      future.complete(lockedScriptExecution);
+    });
+    return future;
+  }
+
+  private void handleException(Exception e, Lock lock, EngineScriptExecution lockedScriptExecution) {
+    log.debug("Exception while executing script: " + e.getMessage(), e);
+    if (lock.isRevoked()) {
+      // the lease expired and the script execution was taken over, so this
+      // stale lock owner doesn't write events and leaves the lock to the new owner
+      return;
+    }
+    // the lock is not released as the script execution might be inconsistent,
+    // ending the lease lets the crash recovery take over the script execution
+    lock.expire();
+    Execution execution = getExecution(e, lockedScriptExecution);
+    lockedScriptExecution.dispatch(new ScriptExecutionErrorEvent(execution, e.getMessage()));
+  }
+
   private Execution getExecution(Throwable exception, EngineScriptExecution scriptExecution) {
     Execution execution = exception instanceof EngineException ? ((EngineException)exception).getExecution() : null;
     return execution!=null ? execution : scriptExecution;
@@ -36,7 +36,7 @@ public class LockOperationFailure extends LockOperationExecution<ArgumentsExpres
   }
 
   @Override
-  public void execute(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution, ArgumentsExpressionExecution execution) {
+  public void apply(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution, ArgumentsExpressionExecution execution) {
     execution.handleServiceFunctionError(error, retryTime);
   }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.Engine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/** Applies a number of lock operations on the same script execution
+ * under a single lock, performing the resulting work once.  An operation
+ * that fails doesn't prevent the others from being applied, its exception
+ * is recorded in {@link LockOperation#getFailure()}. */
+public class LockOperationGroup extends LockOperation {
+
+  static Logger log = LoggerFactory.getLogger(LockOperationGroup.class);
+
+  List<LockOperation> lockOperations;
+
+  public LockOperationGroup(String scriptExecutionId, List<LockOperation> lockOperations) {
+    super(scriptExecutionId);
+    this.lockOperations = lockOperations;
+  }
+
+  @Override
+  public EngineScriptExecution getLockedScriptExecution(Engine engine) {
+    return lockOperations.get(0).getLockedScriptExecution(engine);
+  }
+
+  @Override
+  public void apply(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution) {
+    for (LockOperation lockOperation: lockOperations) {
+      try {
+        lockOperation.apply(engine, lock, lockedScriptExecution);
+      } catch (Exception e) {
+        log.debug("Exception while applying grouped operation on script execution "+scriptExecutionId+": "+e.getMessage(), e);
+        lockOperation.setFailure(e);
+      }
+    }
+  }
+
+  public List<LockOperation> getLockOperations() {
+    return lockOperations;
+  }
+
+  /** the failure of the given operation of this group or, if it didn't
+   * fail itself, the failure of the group as a whole */
+  public Exception getFailure(LockOperation lockOperation) {
+    return lockOperation.getFailure()!=null ? lockOperation.getFailure() : failure;
+  }
+}
@@ -30,8 +30,7 @@ public class LockOperationRetry extends LockOperationExecution<ArgumentsExpressi
   }
 
   @Override
-  public void execute(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution, ArgumentsExpressionExecution execution) {
+  public void apply(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution, ArgumentsExpressionExecution execution) {
     execution.retry();
-    lockedScriptExecution.doWork();
   }
 }
@@ -38,8 +38,7 @@ public class LockOperationStart extends LockOperation {
   }
 
   @Override
-  public void execute(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution) {
+  public void apply(Engine engine, Lock lock, EngineScriptExecution lockedScriptExecution) {
     lockedScriptExecution.start(input);
-    lockedScriptExecution.doWork();
   }
 }
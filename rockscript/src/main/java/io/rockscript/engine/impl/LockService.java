@@ -23,7 +23,17 @@ public interface LockService {
 
   Lock acquireLock(String scriptExecutionId);
 
+  /** Acquires the lock if the script execution is not locked or if
+   * its lock expired, for recovering crashed script executions.
+   * @return null if the script execution is locked and the lock didn't expire. */
+  Lock acquireExpiredLock(String scriptExecutionId);
+
   void releaseLock(Lock lock, EngineScriptExecution lockedScriptExecution);
 
   void addUnlockListener(String scriptExecutionId, LockReleaseListener lockReleaseListener);
+
+  /** Acquires the lock or, if the script execution is locked, adds the listener
+   * in the same step so that a concurrent release can't miss it.
+   * @return null if the listener was added. */
+  Lock acquireLockOrAddUnlockListener(String scriptExecutionId, LockReleaseListener lockReleaseListener);
 }
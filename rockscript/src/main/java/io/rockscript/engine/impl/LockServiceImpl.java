@@ -20,71 +20,236 @@
 package io.rockscript.engine.impl;
 
 import io.rockscript.Engine;
+import io.rockscript.api.events.ScriptExecutionErrorEvent;
 import io.rockscript.engine.EngineException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 public class LockServiceImpl implements LockService {
 
+  static Logger log = LoggerFactory.getLogger(LockServiceImpl.class);
+
+  public static final Duration DEFAULT_LOCK_LEASE_DURATION = Duration.ofMinutes(5);
+
   /** maps scriptExecutionIds to locks */
   Map<String, Lock> locks = Collections.synchronizedMap(new HashMap<>());
   /** maps script execution ids to listeners for that script execution to be unlocked */
   Map<String, List<LockReleaseListener>> unlockListeners = Collections.synchronizedMap(new HashMap<>());
 
+  /** guards {@link #locks} and {@link #unlockListeners} together.  A ReentrantLock
+   * instead of synchronized so that virtual threads don't pin their carrier thread. */
+  ReentrantLock mutex = new ReentrantLock();
   Engine engine;
+  Duration lockLeaseDuration = DEFAULT_LOCK_LEASE_DURATION;
+  /** guarded by {@link #mutex} */
+  ScheduledExecutorService leaseRenewalScheduler;
 
   public LockServiceImpl(Engine engine) {
     this.engine = engine;
   }
 
+  /** Locks that are held longer than the lease duration are considered
+   * to be held by a crashed lock owner.  null means locks never expire. */
+  public LockServiceImpl lockLeaseDuration(Duration lockLeaseDuration) {
+    this.lockLeaseDuration = lockLeaseDuration;
+    return this;
+  }
+
+  public Duration getLockLeaseDuration() {
+    return lockLeaseDuration;
+  }
+
   @Override
-  public synchronized Lock acquireLock(String scriptExecutionId) {
-    Lock lock = locks.get(scriptExecutionId);
-    if (lock==null) {
-      lock = new Lock(scriptExecutionId);
-      locks.put(scriptExecutionId, lock);
-      return lock;
+  public Lock acquireLock(String scriptExecutionId) {
+    mutex.lock();
+    try {
+      Lock lock = locks.get(scriptExecutionId);
+      if (lock==null) {
+        lock = new Lock(scriptExecutionId, lockLeaseDuration);
+        locks.put(scriptExecutionId, lock);
+        scheduleLeaseRenewal();
+        return lock;
+      }
+      return null;
+    } finally {
+      mutex.unlock();
     }
-    return null;
   }
 
   @Override
-  public synchronized void releaseLock(Lock lock, EngineScriptExecution lockedScriptExecution) {
+  public Lock acquireExpiredLock(String scriptExecutionId) {
+    mutex.lock();
+    try {
+      Lock lock = locks.get(scriptExecutionId);
+      if (lock==null || lock.revokeIfExpired(Time.now())) {
+        lock = new Lock(scriptExecutionId, lockLeaseDuration);
+        locks.put(scriptExecutionId, lock);
+        scheduleLeaseRenewal();
+        return lock;
+      }
+      return null;
+    } finally {
+      mutex.unlock();
+    }
+  }
+
+  /** Releases the lock if no listeners were added while it was held.  Otherwise the
+   * lock is kept and the listeners are run in batch on the engine executor: the
+   * script execution is loaded at most once, all queued listeners are applied to it
+   * and the resulting work is performed once.  Listeners that are added in the
+   * meantime are taken in the next batch on the same script execution. */
+  @Override
+  public void releaseLock(Lock lock, EngineScriptExecution lockedScriptExecution) {
     EngineException.throwIfNull(lock, "Bug: lock is not supposed to be null");
-    String scriptExecutionId = lock.getScriptExecutionId();
-    LockReleaseListener nextLockReleaseListener = removeNextUnlockListener(scriptExecutionId);
-    if (nextLockReleaseListener!=null) {
-      nextLockReleaseListener.releasingLock(engine, lock, lockedScriptExecution);
-      releaseLock(lock, lockedScriptExecution);
+    List<LockReleaseListener> lockReleaseListeners = removeUnlockListenersOrLock(lock);
+    if (lockReleaseListeners!=null) {
+      Thread releasingThread = Thread.currentThread();
+      engine.getExecutor().execute(()->{
+        // on another thread, the releasing caller might already be reading its script execution
+        EngineScriptExecution scriptExecution = Thread.currentThread()==releasingThread ? lockedScriptExecution : null;
+        runUnlockListeners(lock, scriptExecution, lockReleaseListeners);
+      });
+    }
+  }
 
-    } else {
-      locks.remove(scriptExecutionId);
+  /** @return the listeners that were waiting for the lock or null if the lock was released.
+   * @throws EngineException if the lock was taken over after its lease expired.  The
+   * listeners and the lock then belong to the new lock owner. */
+  private List<LockReleaseListener> removeUnlockListenersOrLock(Lock lock) {
+    mutex.lock();
+    try {
+      String scriptExecutionId = lock.getScriptExecutionId();
+      if (locks.get(scriptExecutionId)!=lock) {
+        lock.throwIfRevoked();
+        throw new EngineException("Bug: lock of script execution "+scriptExecutionId+" is released twice");
+      }
+      List<LockReleaseListener> lockReleaseListeners = unlockListeners.remove(scriptExecutionId);
+      if (lockReleaseListeners==null || lockReleaseListeners.isEmpty()) {
+        locks.remove(scriptExecutionId, lock);
+        return null;
+      }
+      return lockReleaseListeners;
+    } finally {
+      mutex.unlock();
     }
   }
 
-  private LockReleaseListener removeNextUnlockListener(String scriptExecutionId) {
-    List<LockReleaseListener> scriptExecutionLockReleaseListeners = this.unlockListeners.get(scriptExecutionId);
-    if (scriptExecutionLockReleaseListeners!=null && !this.unlockListeners.isEmpty()) {
+  void runUnlockListeners(Lock lock, EngineScriptExecution lockedScriptExecution, List<LockReleaseListener> lockReleaseListeners) {
+    String scriptExecutionId = lock.getScriptExecutionId();
+    while (lockReleaseListeners!=null) {
+      int applied = 0;
       try {
-        return scriptExecutionLockReleaseListeners.remove(0);
-      } catch (IndexOutOfBoundsException e) {
-        return null;
+        if (lockedScriptExecution==null) {
+          lockedScriptExecution = engine.getScriptExecutionStore().findScriptExecutionById(scriptExecutionId);
+        }
+        lockedScriptExecution.setLock(lock);
+        for (LockReleaseListener lockReleaseListener: lockReleaseListeners) {
+          lockReleaseListener.releasingLock(engine, lock, lockedScriptExecution);
+          applied++;
+        }
+        lockedScriptExecution.doWork();
+        lockReleaseListeners = removeUnlockListenersOrLock(lock);
+      } catch (Exception e) {
+        log.debug("Exception while running the unlock listeners of script execution "+scriptExecutionId+": "+e.getMessage(), e);
+        // like in the LockOperationExecutorImpl, the lock is not released, but the failing listener and
+        // the ones that were not yet applied remain queued for the crash recovery, which runs them when
+        // it releases the lock
+        restoreUnlockListeners(scriptExecutionId, lockReleaseListeners.subList(applied, lockReleaseListeners.size()));
+        if (lock.isRevoked()) {
+          // the script execution was taken over, the new lock owner continues without the events of this one
+          return;
+        }
+        lock.expire();
+        if (lockedScriptExecution!=null) {
+          lockedScriptExecution.dispatch(new ScriptExecutionErrorEvent(lockedScriptExecution, e.getMessage()));
+        }
+        return;
+      }
+    }
+  }
+
+  private void restoreUnlockListeners(String scriptExecutionId, List<LockReleaseListener> lockReleaseListeners) {
+    mutex.lock();
+    try {
+      if (!lockReleaseListeners.isEmpty()) {
+        unlockListeners
+          .computeIfAbsent(scriptExecutionId, id->new ArrayList<>())
+          .addAll(0, lockReleaseListeners);
       }
+    } finally {
+      mutex.unlock();
     }
-    return null;
   }
 
   @Override
-  public synchronized void addUnlockListener(String scriptExecutionId, LockReleaseListener lockReleaseListener) {
-    unlockListeners
-      .computeIfAbsent(scriptExecutionId, id->new ArrayList<>())
-      .add(lockReleaseListener);
+  public void addUnlockListener(String scriptExecutionId, LockReleaseListener lockReleaseListener) {
+    mutex.lock();
+    try {
+      unlockListeners
+        .computeIfAbsent(scriptExecutionId, id->new ArrayList<>())
+        .add(lockReleaseListener);
+    } finally {
+      mutex.unlock();
+    }
   }
 
-  public synchronized List<Lock> getLocks() {
-    return new ArrayList<>(locks.values());
+  @Override
+  public Lock acquireLockOrAddUnlockListener(String scriptExecutionId, LockReleaseListener lockReleaseListener) {
+    mutex.lock();
+    try {
+      Lock lock = acquireLock(scriptExecutionId);
+      if (lock==null) {
+        addUnlockListener(scriptExecutionId, lockReleaseListener);
+      }
+      return lock;
+    } finally {
+      mutex.unlock();
+    }
+  }
+
+  /** Extends the leases of the locks that are held, so that operations that run longer
+   * than the lease duration are not taken over while their lock owner is still running.
+   * Locks that failed or expired are not renewed, see {@link Lock#renew(Instant)}. */
+  public void renewLeases() {
+    Instant now = Time.now();
+    getLocks().forEach(lock->lock.renew(now));
+  }
+
+  /** renews the leases at a third of the lease duration, started with the first lock */
+  private void scheduleLeaseRenewal() {
+    if (leaseRenewalScheduler==null && lockLeaseDuration!=null) {
+      long renewalMillis = Math.max(1, lockLeaseDuration.toMillis()/3);
+      leaseRenewalScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rockscript-lock-renewal");
+        thread.setDaemon(true);
+        return thread;
+      });
+      leaseRenewalScheduler.scheduleAtFixedRate(()->{
+        try {
+          renewLeases();
+        } catch (Exception e) {
+          log.error("Couldn't renew lock leases: "+e.getMessage(), e);
+        }
+      }, renewalMillis, renewalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public List<Lock> getLocks() {
+    mutex.lock();
+    try {
+      return new ArrayList<>(locks.values());
+    } finally {
+      mutex.unlock();
+    }
   }
 
   public List<Lock> getLocksOlderThan(Instant time) {
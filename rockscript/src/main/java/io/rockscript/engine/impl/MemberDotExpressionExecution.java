@@ -44,7 +44,7 @@ public class MemberDotExpressionExecution extends Execution<MemberDotExpression>
 
   @Override
   public void childEnded(Execution child) {
-    this.target = children.get(0).getResult();
+    this.target = resolve(children.get(0).getResult());
     this.identifier = getElement().getPropertyName();
     setResult(getFieldValue(target, identifier));
     end();
@@ -43,14 +43,14 @@ public class MemberIndexExpressionExecution extends Execution<MemberIndexExpress
       ScriptElement indexExpression = indexExpressions.get(indexIndex);
       startChild(indexExpression);
     } else {
-      target = children.get(0).getResult();
+      target = resolve(children.get(0).getResult());
       Object result = target;
       List<Object> indices = collectResultsFromChildren()
         .subList(1, children.size());
       for (int i=0; i<indices.size() && target!=null; i++) {
         target = result;
         index = indices.get(i);
-        result = getFieldValue(result, index);
+        result = getFieldValue(resolve(result), index);
       }
       setResult(result);
       end();
@@ -20,20 +20,79 @@
 package io.rockscript.engine.impl;
 
 import io.rockscript.test.TestExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Wraps all commands that are executed so that if an exception
  * happens comes out of the commands, it is logged in the
  * {@link EngineLogStore} */
 public class MonitoringExecutor implements Executor {
 
+  static Logger log = LoggerFactory.getLogger(MonitoringExecutor.class);
+
   EngineLogStore engineLogStore;
   Executor executor;
 
+  /** for cpu bound engine work: a pool with a thread per processor */
   public static MonitoringExecutor createDefault(EngineLogStore engineLogStore) {
-    return new MonitoringExecutor(engineLogStore, Executors.newWorkStealingPool());
+    AtomicLong threadCount = new AtomicLong();
+    ForkJoinPool forkJoinPool = new ForkJoinPool(
+      Runtime.getRuntime().availableProcessors(),
+      pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("rockscript-cpu-"+threadCount.incrementAndGet());
+        return thread;
+      },
+      null,
+      true);
+    return new MonitoringExecutor(engineLogStore, forkJoinPool);
+  }
+
+  /** for work that blocks on I/O: threads are created as needed so
+   * that slow services can't starve the cpu bound engine work. */
+  public static MonitoringExecutor createIo(EngineLogStore engineLogStore) {
+    return new MonitoringExecutor(engineLogStore, Executors.newCachedThreadPool(createDaemonThreadFactory("rockscript-io-")));
+  }
+
+  /** a virtual thread per task on Java 21 and later.  The engine is compiled
+   * for Java 8 so the virtual thread API is looked up reflectively.  On older
+   * runtimes this falls back to a platform thread per task. */
+  public static MonitoringExecutor createVirtualThreads(EngineLogStore engineLogStore, String threadNamePrefix) {
+    ExecutorService executorService;
+    try {
+      Object threadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> threadBuilderClass = Class.forName("java.lang.Thread$Builder");
+      threadBuilder = threadBuilderClass
+        .getMethod("name", String.class, long.class)
+        .invoke(threadBuilder, threadNamePrefix, 1L);
+      ThreadFactory threadFactory = (ThreadFactory) threadBuilderClass
+        .getMethod("factory")
+        .invoke(threadBuilder);
+      executorService = (ExecutorService) Executors.class
+        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+        .invoke(null, threadFactory);
+    } catch (ReflectiveOperationException e) {
+      log.warn("Virtual threads are not available on Java "+System.getProperty("java.version")+", using a thread per task instead");
+      executorService = Executors.newCachedThreadPool(createDaemonThreadFactory(threadNamePrefix));
+    }
+    return new MonitoringExecutor(engineLogStore, executorService);
+  }
+
+  static ThreadFactory createDaemonThreadFactory(String threadNamePrefix) {
+    AtomicLong threadCount = new AtomicLong();
+    return runnable -> {
+      Thread thread = new Thread(runnable, threadNamePrefix+threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
   }
 
   public static MonitoringExecutor createTest(EngineLogStore engineLogStore) {
@@ -26,7 +26,7 @@ public class ObjectLiteralExpressionExecution extends BlockExecution<ObjectLiter
 
   @Override
   protected void end() {
-    Map<String,Object> properties = new LinkedHashMap<>();
+    ScriptObject properties = new ScriptObject();
     if (children!=null) {
       List<String> propertyNames = element.getPropertyNames();
       for (int i=0; i<children.size(); i++) {
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.Engine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/** Limits the outbound service calls per target.  The target is the host
+ * for http service requests and the service name for remote service functions.
+ *
+ * Each target has an adaptive concurrency limit (AIMD): the limit grows by
+ * about one for each limit's worth of successful calls and shrinks with the
+ * backoff ratio on each failed call.  So when a downstream slows down
+ * or fails, fewer calls are sent to it.  Optionally a target also has a
+ * token bucket rate limit.
+ *
+ * Calls over the limits wait in a queue per target.  The script execution
+ * lock is not held while waiting because service functions submit their
+ * calls after they return a waiting output. */
+public class OutboundLimiter {
+
+  static Logger log = LoggerFactory.getLogger(OutboundLimiter.class);
+
+  Engine engine;
+  /** null means that the concurrency is not limited */
+  ConcurrencyLimit concurrencyLimit = ConcurrencyLimit.DEFAULT;
+  /** maps targets to their rate limit */
+  Map<String,RateLimit> rateLimits = new ConcurrentHashMap<>();
+  Map<String,Target> targets = new ConcurrentHashMap<>();
+  /** wakes up targets that wait for tokens, created when needed */
+  volatile ScheduledExecutorService scheduler;
+
+  public OutboundLimiter(Engine engine) {
+    this.engine = engine;
+  }
+
+  public OutboundLimiter concurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+    this.concurrencyLimit = concurrencyLimit;
+    return this;
+  }
+
+  public OutboundLimiter rateLimit(String target, RateLimit rateLimit) {
+    rateLimits.put(target, rateLimit);
+    return this;
+  }
+
+  /** Runs the call on the engine's I/O executor as soon as the limits of the
+   * target allow it.  The call must release the given permit exactly once
+   * when the outcome of the outbound call is known. */
+  public void execute(String target, Consumer<Permit> call) {
+    targets
+      .computeIfAbsent(target, this::createTarget)
+      .submit(call);
+  }
+
+  Target createTarget(String target) {
+    return new Target(target, concurrencyLimit, rateLimits.get(target));
+  }
+
+  /** a snapshot of the limiter state per target */
+  public Map<String,TargetMetrics> getMetrics() {
+    Map<String,TargetMetrics> metrics = new TreeMap<>();
+    targets.forEach((name, target)->metrics.put(name, target.getMetrics()));
+    return metrics;
+  }
+
+  ScheduledExecutorService getScheduler() {
+    if (scheduler==null) {
+      synchronized (this) {
+        if (scheduler==null) {
+          scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rockscript-outbound-limiter");
+            thread.setDaemon(true);
+            return thread;
+          });
+        }
+      }
+    }
+    return scheduler;
+  }
+
+  /** Handed to a call when it starts.  Releasing it reports the outcome
+   * to the adaptive limit and lets the next queued call start. */
+  public class Permit {
+    Target target;
+    long startNanos = System.nanoTime();
+    boolean released;
+
+    Permit(Target target) {
+      this.target = target;
+    }
+
+    /** @param success false if the downstream failed or signalled overload */
+    public void release(boolean success) {
+      if (!released) {
+        released = true;
+        target.release(success, System.nanoTime()-startNanos);
+      }
+    }
+  }
+
+  class Target {
+    String name;
+    ReentrantLock lock = new ReentrantLock();
+    Queue<Consumer<Permit>> queue = new ArrayDeque<>();
+    ConcurrencyLimit concurrencyLimit;
+    double limit;
+    int inFlight;
+    RateLimit rateLimit;
+    double tokens;
+    long refillNanos = System.nanoTime();
+    boolean wakeUpScheduled;
+    long successCount;
+    long failureCount;
+    long latencyNanos;
+
+    Target(String name, ConcurrencyLimit concurrencyLimit, RateLimit rateLimit) {
+      this.name = name;
+      this.concurrencyLimit = concurrencyLimit;
+      this.limit = concurrencyLimit!=null ? concurrencyLimit.initialLimit : 0;
+      this.rateLimit = rateLimit;
+      this.tokens = rateLimit!=null ? rateLimit.burst : 0;
+    }
+
+    void submit(Consumer<Permit> call) {
+      lock.lock();
+      try {
+        queue.add(call);
+      } finally {
+        lock.unlock();
+      }
+      drain();
+    }
+
+    void release(boolean success, long nanos) {
+      lock.lock();
+      try {
+        inFlight--;
+        latencyNanos = nanos;
+        if (success) {
+          successCount++;
+          // only grow when the limit is actually used, otherwise an idle target
+          // would grow a limit that was never tested against the downstream
+          if (concurrencyLimit!=null && inFlight*2>=limit) {
+            limit = Math.min(concurrencyLimit.maxLimit, limit + 1/limit);
+          }
+        } else {
+          failureCount++;
+          if (concurrencyLimit!=null) {
+            limit = Math.max(concurrencyLimit.minLimit, limit*concurrencyLimit.backoffRatio);
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+      drain();
+    }
+
+    /** starts the queued calls that the limits allow, the calls
+     * themselves are executed outside the target lock */
+    void drain() {
+      Consumer<Permit> call = poll();
+      while (call!=null) {
+        Consumer<Permit> startedCall = call;
+        Permit permit = new Permit(this);
+        engine.getIoExecutor().execute(() -> {
+          try {
+            startedCall.accept(permit);
+          } catch (RuntimeException e) {
+            permit.release(false);
+            throw e;
+          }
+        });
+        call = poll();
+      }
+    }
+
+    /** @return the next call that can start or null */
+    Consumer<Permit> poll() {
+      lock.lock();
+      try {
+        if (queue.isEmpty()) {
+          return null;
+        }
+        if (concurrencyLimit!=null && inFlight>=(int)limit) {
+          // a release will drain the queue
+          return null;
+        }
+        if (rateLimit!=null) {
+          refill();
+          if (tokens<1) {
+            scheduleWakeUp();
+            return null;
+          }
+          tokens--;
+        }
+        inFlight++;
+        return queue.poll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void refill() {
+      long now = System.nanoTime();
+      tokens = Math.min(rateLimit.burst, tokens + (now-refillNanos)*rateLimit.permitsPerSecond/1e9);
+      refillNanos = now;
+    }
+
+    void scheduleWakeUp() {
+      if (!wakeUpScheduled) {
+        wakeUpScheduled = true;
+        long waitNanos = (long) Math.ceil((1-tokens)*1e9/rateLimit.permitsPerSecond);
+        getScheduler().schedule(() -> {
+          lock.lock();
+          try {
+            wakeUpScheduled = false;
+          } finally {
+            lock.unlock();
+          }
+          drain();
+        }, waitNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    TargetMetrics getMetrics() {
+      lock.lock();
+      try {
+        TargetMetrics metrics = new TargetMetrics();
+        metrics.limit = concurrencyLimit!=null ? (int) limit : null;
+        metrics.inFlight = inFlight;
+        metrics.queued = queue.size();
+        if (rateLimit!=null) {
+          refill();
+          metrics.tokens = tokens;
+        }
+        metrics.successCount = successCount;
+        metrics.failureCount = failureCount;
+        metrics.lastLatencyMillis = latencyNanos/1000000;
+        return metrics;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  public static class TargetMetrics {
+    /** current adaptive concurrency limit, null if the concurrency is not limited */
+    Integer limit;
+    int inFlight;
+    int queued;
+    /** available rate limit tokens, null if the target is not rate limited */
+    Double tokens;
+    long successCount;
+    long failureCount;
+    long lastLatencyMillis;
+
+    public Integer getLimit() {
+      return limit;
+    }
+    public int getInFlight() {
+      return inFlight;
+    }
+    public int getQueued() {
+      return queued;
+    }
+    public Double getTokens() {
+      return tokens;
+    }
+    public long getSuccessCount() {
+      return successCount;
+    }
+    public long getFailureCount() {
+      return failureCount;
+    }
+    public long getLastLatencyMillis() {
+      return lastLatencyMillis;
+    }
+  }
+
+  /** Bounds of the adaptive concurrency limit of each target. */
+  public static class ConcurrencyLimit {
+
+    public static final ConcurrencyLimit DEFAULT = new ConcurrencyLimit(20, 1, 200);
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    int initialLimit;
+    int minLimit;
+    int maxLimit;
+    double backoffRatio = DEFAULT_BACKOFF_RATIO;
+
+    public ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+      this.initialLimit = initialLimit;
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+    }
+
+    /** multiplier of the limit after a failed call */
+    public ConcurrencyLimit backoffRatio(double backoffRatio) {
+      this.backoffRatio = backoffRatio;
+      return this;
+    }
+
+    /** parses initialLimit/minLimit/maxLimit like eg 20/1/200 */
+    public static ConcurrencyLimit parse(String text) {
+      String[] limits = text.split("/");
+      if (limits.length!=3) {
+        throw new IllegalArgumentException("Expected initialLimit/minLimit/maxLimit, but was "+text);
+      }
+      return new ConcurrencyLimit(
+        Integer.parseInt(limits[0].trim()),
+        Integer.parseInt(limits[1].trim()),
+        Integer.parseInt(limits[2].trim()));
+    }
+
+    @Override
+    public String toString() {
+      return initialLimit+"/"+minLimit+"/"+maxLimit;
+    }
+  }
+
+  /** Token bucket: permitsPerSecond tokens are added up to burst tokens
+   * and each call takes one token. */
+  public static class RateLimit {
+
+    double permitsPerSecond;
+    int burst;
+
+    public RateLimit(double permitsPerSecond, int burst) {
+      this.permitsPerSecond = permitsPerSecond;
+      this.burst = Math.max(1, burst);
+    }
+
+    /** parses permitsPerSecond/burst like eg 10/20.  Without burst, the
+     * burst is one second worth of permits. */
+    public static RateLimit parse(String text) {
+      int slashIndex = text.indexOf('/');
+      if (slashIndex!=-1) {
+        return new RateLimit(Double.parseDouble(text.substring(0, slashIndex).trim()), Integer.parseInt(text.substring(slashIndex+1).trim()));
+      }
+      double permitsPerSecond = Double.parseDouble(text.trim());
+      return new RateLimit(permitsPerSecond, (int) Math.ceil(permitsPerSecond));
+    }
+
+    @Override
+    public String toString() {
+      return permitsPerSecond+"/"+burst;
+    }
+  }
+}
@@ -21,12 +21,15 @@ import io.rockscript.engine.antlr.ECMAScriptLexer;
 import io.rockscript.engine.antlr.ECMAScriptParser;
 import io.rockscript.engine.antlr.ECMAScriptParser.*;
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import static io.rockscript.engine.impl.LogicalExpressionExecution.*;
@@ -128,6 +131,7 @@ public class Parse {
     if (!parse.hasErrors()) {
       EngineScript engineScript = parse.getEngineScript();
       engineScript.setEngine(engine);
+      engineScript.resolveStaticImports();
     }
     return parse;
   }
@@ -142,15 +146,36 @@ public class Parse {
     }
   }
 
+  /** Script that covers the common statements and expressions.
+   * It is parsed once in {@link #warmUp()} so that the DFA cache
+   * that ANTLR shares between all parser instances already holds
+   * the usual predictions before the first script is deployed. */
+  static final String WARM_UP_SCRIPT =
+    "var http = system.import('rockscript.io/http'); \n" +
+    "var response = http.get({url: 'http://localhost/' + system.input.id, headers: {Accept: 'application/json'}}); \n" +
+    "var items = [response.body.items[0], {a: 1, b: 'two', c: [true, false, null]}]; \n" +
+    "var total = 0; \n" +
+    "for (var i = 0; i < items.length; i++) { \n" +
+    "  if (i == 1 && items[i].a >= 1 || !(total !== 1)) { total = total + items[i].a * 2; } else { total = total - 1; } \n" +
+    "} \n" +
+    "total++; \n" +
+    "--total; \n" +
+    "var text = 'total: ' + (total / 2 - 1) + '!'; \n";
+
+  static final AtomicBoolean warmedUp = new AtomicBoolean();
+
+  /** Parses {@link #WARM_UP_SCRIPT} the first time it's invoked */
+  public static void warmUp() {
+    if (warmedUp.compareAndSet(false, true)) {
+      new Parse().parseScript(WARM_UP_SCRIPT);
+    }
+  }
+
   private void parseScript(String scriptText) {
     ErrorListener errorListener = new ErrorListener();
-    ECMAScriptLexer l = new ECMAScriptLexer(new ANTLRInputStream(scriptText));
-    l.removeErrorListener(ConsoleErrorListener.INSTANCE);
+    ECMAScriptLexer l = createLexer(scriptText);
     l.addErrorListener(errorListener);
-    ECMAScriptParser p = new ECMAScriptParser(new CommonTokenStream(l));
-    p.removeErrorListener(ConsoleErrorListener.INSTANCE);
-    p.addErrorListener(errorListener);
-    ProgramContext programContext = p.program();
+    ProgramContext programContext = parseProgram(new CommonTokenStream(l), errorListener);
 
     this.engineScript = new EngineScript(null, createLocation(programContext));
     SourceElementsContext sourceElementsContext = programContext.sourceElements();
@@ -163,6 +188,39 @@ public class Parse {
     }
   }
 
+  /** @return a lexer that uses the {@link ScriptLexerATNSimulator} and
+   * that doesn't report errors on the console */
+  public static ECMAScriptLexer createLexer(String scriptText) {
+    ECMAScriptLexer l = new ECMAScriptLexer(new ANTLRInputStream(scriptText));
+    l.setInterpreter(new ScriptLexerATNSimulator(l));
+    l.removeErrorListener(ConsoleErrorListener.INSTANCE);
+    return l;
+  }
+
+  /** Parses in two stages.  First with SLL prediction, which is
+   * much cheaper but can't handle all grammar ambiguities, and
+   * a BailErrorStrategy that stops at the first syntax error.
+   * Only if that fails, the tokens are parsed again with full LL
+   * prediction and the default error reporting and recovery.
+   * The lexer runs only once, the second stage reuses the tokens.
+   * Syntax errors are only reported to the errorListener by the second stage. */
+  public static ProgramContext parseProgram(TokenStream tokens, ANTLRErrorListener errorListener) {
+    ECMAScriptParser p = new ECMAScriptParser(tokens);
+    p.removeErrorListener(ConsoleErrorListener.INSTANCE);
+    p.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    p.setErrorHandler(new BailErrorStrategy());
+    try {
+      return p.program();
+    } catch (ParseCancellationException e) {
+      log.debug("SLL parsing failed, parsing again with LL");
+      p.reset();
+      p.addErrorListener(errorListener);
+      p.getInterpreter().setPredictionMode(PredictionMode.LL);
+      p.setErrorHandler(new DefaultErrorStrategy());
+      return p.program();
+    }
+  }
+
   private List<SourceElement> parseSourceElements(SourceElementsContext sourceElementsContext) {
     List<SourceElement> sourceElements = new ArrayList<>();
     if (sourceElementsContext!=null) {
@@ -642,6 +700,7 @@ public class Parse {
     SingleExpressionContext functionExpressionContext = argumentsExpressionContext.singleExpression();
     SingleExpression functionExpression = parseSingleExpression(functionExpressionContext);
     argumentsExpression.setFunctionExpression(functionExpression);
+    argumentsExpression.initializeStaticImportUrl();
     return argumentsExpression;
   }
 
@@ -16,16 +16,28 @@
 package io.rockscript.engine.impl;
 
 import com.google.gson.Gson;
+import io.rockscript.Engine;
+import io.rockscript.api.commands.ServiceFunctionFailureCommand;
+import io.rockscript.engine.impl.CircuitBreakers.CircuitBreaker;
+import io.rockscript.engine.impl.OutboundLimiter.Permit;
+import io.rockscript.engine.impl.RemoteServiceFunctionBatcher.BatchSettings;
 import io.rockscript.service.AbstractServiceFunction;
 import io.rockscript.service.ServiceFunctionInput;
 import io.rockscript.service.ServiceFunctionOutput;
 import io.rockscript.engine.EngineException;
+import io.rockscript.http.Http;
 import io.rockscript.http.client.ClientRequest;
 import io.rockscript.http.client.ClientResponse;
+import io.rockscript.http.client.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static io.rockscript.http.Http.ContentTypes.APPLICATION_JSON;
 import static io.rockscript.http.Http.Headers.CONTENT_TYPE;
@@ -34,6 +46,9 @@ public class RemoteServiceFunction extends AbstractServiceFunction {
 
   static Logger log = LoggerFactory.getLogger(RemoteServiceFunction.class);
 
+  /** delay before the functions of a batch that couldn't be sent are retried */
+  public static final Duration BATCH_SEND_RETRY_DELAY = Duration.ofSeconds(5);
+
   String url;
 
   public RemoteServiceFunction(String url, String functionName) {
@@ -52,42 +67,192 @@ public class RemoteServiceFunction extends AbstractServiceFunction {
     return null;
   }
 
+  /** The remote function is invoked on the engine's I/O executor so that
+   * a slow remote service doesn't hold the script execution lock and the
+   * thread that started the script.  By the time the function is invoked,
+   * the {@link io.rockscript.api.events.ServiceFunctionStartedEvent} is
+   * already dispatched.  A synchronous result of the remote service is
+   * applied with a {@link LockOperationEnd} when the lock is released.
+   *
+   * If batching is configured for this function, the invocation is added
+   * to a batch of the {@link RemoteServiceFunctionBatcher} instead. */
   @Override
   public ServiceFunctionOutput invoke(ServiceFunctionInput input) {
     Gson gson = input.getGson();
     String inputJson = gson.toJson(input);
 
     ContinuationReference continuationReference = input.getContinuationReference();
-    String logPrefix = "["+continuationReference.getScriptExecutionId()+"|"+continuationReference.getExecutionId()+"]";
 
-    ClientRequest request = input.getHttp()
+    Engine engine = input.getEngine();
+    CircuitBreaker circuitBreaker = engine.getCircuitBreakers().get(serviceName);
+    if (circuitBreaker!=null && !circuitBreaker.allowRequest()) {
+      // Fail fast: the service is down, the breaker retries this function when the service recovers
+      circuitBreaker.park(continuationReference);
+      return ServiceFunctionOutput.waitForFunctionEndCallback();
+    }
+
+    HttpClient http = input.getHttp();
+    RemoteServiceFunctionBatcher batcher = engine.getRemoteServiceFunctionBatcher();
+    BatchSettings batchSettings = batcher.getBatchSettings(serviceName, functionName);
+    if (batchSettings!=null) {
+      batcher.add(toString(), batchSettings, new BatchedInvocation(continuationReference, inputJson),
+        invocations -> sendBatch(engine, http, invocations, circuitBreaker));
+    } else {
+      send(engine, http, Collections.singletonList(new BatchedInvocation(continuationReference, inputJson)), false, circuitBreaker);
+    }
+
+    return ServiceFunctionOutput.waitForFunctionEndCallback();
+  }
+
+  /** When the batch can't be sent, each of its functions fails with a retry.
+   * An exception would only reach the batcher's scheduler thread or the
+   * invocation that filled the batch, while the functions keep waiting. */
+  void sendBatch(Engine engine, HttpClient http, List<BatchedInvocation> invocations, CircuitBreaker circuitBreaker) {
+    try {
+      send(engine, http, invocations, true, circuitBreaker);
+    } catch (Exception e) {
+      log.debug("Couldn't send batch of "+invocations.size()+" to remote service function "+this+": "+e.getMessage(), e);
+      ServiceFunctionOutput output = ServiceFunctionOutput.error(
+        "Couldn't send batch: "+e.getMessage(),
+        Time.now().plus(BATCH_SEND_RETRY_DELAY));
+      handleOutputs(engine, invocations, Collections.nCopies(invocations.size(), output), circuitBreaker);
+    }
+  }
+
+  /** A batched request has a json array of inputs as body and
+   * expects a json array with an output for each input. */
+  void send(Engine engine, HttpClient http, List<BatchedInvocation> invocations, boolean batched, CircuitBreaker circuitBreaker) {
+    String body = batched
+      ? invocations.stream().map(invocation->invocation.inputJson).collect(Collectors.joining(",", "[", "]"))
+      : invocations.get(0).inputJson;
+    ClientRequest request = http
       .newPost(url + "/" + functionName)
       .header(CONTENT_TYPE, APPLICATION_JSON)
-      .body(inputJson);
+      .body(body);
 
-    log.debug(request.toString(logPrefix));
+    OutboundLimiter outboundLimiter = engine.getOutboundLimiter();
+    if (outboundLimiter!=null) {
+      outboundLimiter.execute(serviceName, permit->invokeRemote(engine, invocations, batched, request, permit, circuitBreaker));
+    } else {
+      engine
+        .getIoExecutor()
+        .execute(()->invokeRemote(engine, invocations, batched, request, null, circuitBreaker));
+    }
+  }
 
-    ClientResponse response = request.execute();
+  void invokeRemote(Engine engine, List<BatchedInvocation> invocations, boolean batched, ClientRequest request, Permit permit, CircuitBreaker circuitBreaker) {
+    ContinuationReference firstContinuationReference = invocations.get(0).continuationReference;
+    String logPrefix = "["+firstContinuationReference.getScriptExecutionId()+"|"+firstContinuationReference.getExecutionId()+"]"
+                       + (batched ? "[batch of "+invocations.size()+"]" : "");
+    List<ServiceFunctionOutput> outputs;
+    boolean success = false;
+    try {
+      log.debug(request.toString(logPrefix));
 
-    log.debug(response.toString(logPrefix));
+      ClientResponse response = request.execute();
 
-    int status = response.getStatus();
-    if (status<200 || 300<status) {
-      throw new EngineException("Remote HTTP serviceFunction did not return a status in the 200 range: "+status);
+      log.debug(response.toString(logPrefix));
+
+      int status = response.getStatus();
+      success = status<500 && status!=Http.ResponseCodes.TOO_MANY_REQUESTS_429;
+      if (status<200 || 300<status) {
+        throw new EngineException("Remote HTTP serviceFunction did not return a status in the 200 range: "+status);
+      }
+
+      try {
+        if (batched) {
+          ServiceFunctionOutput[] batchOutputs = response.getBodyAs(ServiceFunctionOutput[].class);
+          if (batchOutputs!=null && batchOutputs.length!=invocations.size()) {
+            throw new EngineException("Remote HTTP serviceFunction returned "+batchOutputs.length+" outputs for a batch of "+invocations.size()+" inputs");
+          }
+          outputs = batchOutputs!=null
+            ? Arrays.asList(batchOutputs)
+            : Collections.nCopies(invocations.size(), null);
+        } else {
+          outputs = Collections.singletonList(response.getBodyAs(ServiceFunctionOutput.class));
+        }
+      } catch (EngineException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new EngineException("Couldn't parse remote HTTP serviceFunction response as ServiceFunctionOutput: " + e.getMessage(), e);
+      }
+    } catch (Exception e) {
+      log.debug(logPrefix+" Remote service function "+this+" failed: "+e.getMessage(), e);
+      outputs = Collections.nCopies(invocations.size(), ServiceFunctionOutput.error(e.getMessage()));
     }
 
-    ServiceFunctionOutput output = null;
+    if (permit!=null) {
+      permit.release(success);
+    }
+    if (circuitBreaker!=null) {
+      if (success) {
+        circuitBreaker.onSuccess();
+      } else {
+        circuitBreaker.onFailure();
+      }
+    }
+
+    handleOutputs(engine, invocations, outputs, circuitBreaker);
+  }
+
+  /** An invocation of which the output can't be applied, for example because its
+   * script execution doesn't exist any more, fails on its own and doesn't keep
+   * the other invocations of the batch waiting. */
+  void handleOutputs(Engine engine, List<BatchedInvocation> invocations, List<ServiceFunctionOutput> outputs, CircuitBreaker circuitBreaker) {
+    for (int i=0; i<invocations.size(); i++) {
+      ContinuationReference continuationReference = invocations.get(i).continuationReference;
+      try {
+        handleOutput(engine, continuationReference, outputs.get(i), circuitBreaker);
+      } catch (Exception e) {
+        log.debug("Couldn't handle output of remote service function "+this+" for execution "+continuationReference.getExecutionId()
+                  +" in script execution "+continuationReference.getScriptExecutionId()+": "+e.getMessage(), e);
+        failInvocation(engine, continuationReference, e);
+      }
+    }
+  }
+
+  void failInvocation(Engine engine, ContinuationReference continuationReference, Exception exception) {
     try {
-      output = response.getBodyAs(ServiceFunctionOutput.class);
+      new ServiceFunctionFailureCommand()
+        .continuationReference(continuationReference)
+        .error("Couldn't handle output: "+exception.getMessage())
+        .execute(engine);
     } catch (Exception e) {
-      throw new EngineException("Couldn't parse remote HTTP serviceFunction response as ServiceFunctionOutput: " + e.getMessage(), e);
+      log.debug("Couldn't fail execution "+continuationReference.getExecutionId()
+                +" in script execution "+continuationReference.getScriptExecutionId()+": "+e.getMessage(), e);
     }
+  }
 
-    if (output!=null) {
-      return output;
-    } else {
+  void handleOutput(Engine engine, ContinuationReference continuationReference, ServiceFunctionOutput output, CircuitBreaker circuitBreaker) {
+    if (output==null) {
       // The default async serviceFunction output is returned when the HTTP response is empty.
-      return ServiceFunctionOutput.waitForFunctionEndCallback();
+      // The remote service will send the end function callback later.
+    } else if (output.isEnded()) {
+      engine
+        .getLockOperationExecutor()
+        .executeInLock(new LockOperationEnd(continuationReference, output.getResult()));
+    } else if (output.isError()) {
+      Instant retryTime = output.getRetryTime();
+      if (retryTime!=null
+          && circuitBreaker!=null
+          && circuitBreaker.parkInsteadOfRetry(continuationReference)) {
+        // the circuit breaker's probe job replaces the retry job
+        retryTime = null;
+      }
+      new ServiceFunctionFailureCommand()
+        .continuationReference(continuationReference)
+        .error(output.getError())
+        .retry(retryTime)
+        .execute(engine);
+    }
+  }
+
+  static class BatchedInvocation {
+    ContinuationReference continuationReference;
+    String inputJson;
+    BatchedInvocation(ContinuationReference continuationReference, String inputJson) {
+      this.continuationReference = continuationReference;
+      this.inputJson = inputJson;
     }
   }
 
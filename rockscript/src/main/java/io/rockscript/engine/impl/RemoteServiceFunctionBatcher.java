@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.Engine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/** Coalesces concurrent invocations of the same {@link RemoteServiceFunction}
+ * into a single batched request.
+ *
+ * Batching is opt-in per endpoint, because the remote service must accept a
+ * json array of inputs and respond with a json array of outputs in the same
+ * order.  The endpoint is the import url followed by the function name, eg
+ * <code>localhost:4000/addresses/validate</code>, or only the import url
+ * to batch all functions of the remote service.
+ *
+ * A batch is sent when it reaches its maxSize or when the window passed
+ * after the first invocation was added, whichever comes first. */
+public class RemoteServiceFunctionBatcher {
+
+  static Logger log = LoggerFactory.getLogger(RemoteServiceFunctionBatcher.class);
+
+  Engine engine;
+  Map<String,BatchSettings> batchSettings = new ConcurrentHashMap<>();
+  /** batches that are collecting invocations, by endpoint */
+  Map<String,Batch<?>> batches = new HashMap<>();
+  ReentrantLock lock = new ReentrantLock();
+  volatile ScheduledExecutorService scheduler;
+
+  public RemoteServiceFunctionBatcher(Engine engine) {
+    this.engine = engine;
+  }
+
+  public RemoteServiceFunctionBatcher batchSettings(String endpoint, BatchSettings batchSettings) {
+    this.batchSettings.put(endpoint, batchSettings);
+    return this;
+  }
+
+  /** @return the settings of the function or of its service or null if the function is not batched */
+  public BatchSettings getBatchSettings(String serviceName, String functionName) {
+    BatchSettings functionBatchSettings = batchSettings.get(serviceName+"/"+functionName);
+    return functionBatchSettings!=null ? functionBatchSettings : batchSettings.get(serviceName);
+  }
+
+  public Map<String,BatchSettings> getBatchSettings() {
+    return batchSettings;
+  }
+
+  /** Adds the item to the batch of the endpoint.  The sender gets the items
+   * of a full batch on the calling thread and the items of a batch for which
+   * the window passed on the batcher's scheduler thread. */
+  @SuppressWarnings("unchecked")
+  public <T> void add(String endpoint, BatchSettings batchSettings, T item, Consumer<List<T>> sender) {
+    List<T> fullBatch = null;
+    lock.lock();
+    try {
+      Batch<T> batch = (Batch<T>) batches.get(endpoint);
+      if (batch==null) {
+        batch = new Batch<>(sender);
+        batches.put(endpoint, batch);
+        Batch<T> windowBatch = batch;
+        getScheduler().schedule(
+          () -> sendWhenWindowPassed(endpoint, windowBatch),
+          batchSettings.window.toNanos(),
+          TimeUnit.NANOSECONDS);
+      }
+      batch.items.add(item);
+      if (batch.items.size()>=batchSettings.maxSize) {
+        batches.remove(endpoint);
+        fullBatch = batch.items;
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (fullBatch!=null) {
+      log.debug("Sending full batch of "+fullBatch.size()+" to "+endpoint);
+      sender.accept(fullBatch);
+    }
+  }
+
+  <T> void sendWhenWindowPassed(String endpoint, Batch<T> batch) {
+    lock.lock();
+    try {
+      // the batch might already be sent because it was full
+      if (batches.get(endpoint)!=batch) {
+        return;
+      }
+      batches.remove(endpoint);
+    } finally {
+      lock.unlock();
+    }
+    log.debug("Sending batch of "+batch.items.size()+" to "+endpoint);
+    try {
+      batch.sender.accept(batch.items);
+    } catch (Exception e) {
+      log.error("Couldn't send batch to "+endpoint+": "+e.getMessage(), e);
+    }
+  }
+
+  ScheduledExecutorService getScheduler() {
+    if (scheduler==null) {
+      synchronized (this) {
+        if (scheduler==null) {
+          scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rockscript-remote-batcher");
+            thread.setDaemon(true);
+            return thread;
+          });
+        }
+      }
+    }
+    return scheduler;
+  }
+
+  static class Batch<T> {
+    List<T> items = new ArrayList<>();
+    Consumer<List<T>> sender;
+    Batch(Consumer<List<T>> sender) {
+      this.sender = sender;
+    }
+  }
+
+  public static class BatchSettings {
+
+    Duration window;
+    int maxSize;
+
+    public BatchSettings(Duration window, int maxSize) {
+      this.window = window;
+      this.maxSize = maxSize;
+    }
+
+    /** parses windowMillis/maxSize like eg 10/50 */
+    public static BatchSettings parse(String text) {
+      String[] settings = text.split("/");
+      if (settings.length!=2) {
+        throw new IllegalArgumentException("Expected windowMillis/maxSize, but was "+text);
+      }
+      return new BatchSettings(
+        Duration.ofMillis(Long.parseLong(settings[0].trim())),
+        Integer.parseInt(settings[1].trim()));
+    }
+
+    public Duration getWindow() {
+      return window;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    @Override
+    public String toString() {
+      return window.toMillis()+"/"+maxSize;
+    }
+  }
+}
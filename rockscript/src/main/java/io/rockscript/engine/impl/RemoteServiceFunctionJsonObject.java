@@ -17,8 +17,14 @@ package io.rockscript.engine.impl;
 
 import io.rockscript.service.ImportObject;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class RemoteServiceFunctionJsonObject extends ImportObject {
 
+  /** function handles by name, created on first dereference */
+  Map<String,RemoteServiceFunction> remoteServiceFunctions = new ConcurrentHashMap<>();
+
   public RemoteServiceFunctionJsonObject(String url) {
     super(url);
   }
@@ -27,7 +33,7 @@ public class RemoteServiceFunctionJsonObject extends ImportObject {
   public Object get(String propertyName) {
     Object remoteServiceFunction = super.get(propertyName);
     if (remoteServiceFunction==null) {
-      remoteServiceFunction = new RemoteServiceFunction(serviceName, propertyName);
+      remoteServiceFunction = remoteServiceFunctions.computeIfAbsent(propertyName, functionName->new RemoteServiceFunction(serviceName, functionName));
     }
     return remoteServiceFunction;
   }
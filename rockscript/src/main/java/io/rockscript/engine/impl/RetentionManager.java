@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.Engine;
+import io.rockscript.EngineListener;
+import io.rockscript.api.events.ExecutionEvent;
+import io.rockscript.api.events.ScriptEndedEvent;
+import io.rockscript.api.events.ScriptStartedEvent;
+import io.rockscript.engine.EngineException;
+import io.rockscript.util.Io;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.rockscript.util.Lists.getLast;
+
+/** Compacts ended script executions in the {@link ScriptExecutionStore}
+ * into a {@link ScriptExecutionSummary} once their time to live has
+ * passed.  The time to live is counted from the end of the script
+ * execution and can be configured per script name.
+ *
+ * If an archive directory is configured, the event segments are
+ * written to a file per script execution.  Otherwise the deflated
+ * segment is kept in the summary. */
+public class RetentionManager implements EngineListener {
+
+  static Logger log = LoggerFactory.getLogger(RetentionManager.class);
+
+  Engine engine;
+  /** null means ended script executions are never compacted */
+  Duration defaultTimeToLive;
+  /** maps script names to their time to live */
+  Map<String,Duration> scriptTimeToLives = new ConcurrentHashMap<>();
+  File archiveDirectory;
+  /** null means that compaction is only done when {@link #compact()} is invoked */
+  Duration compactionInterval;
+  Timer timer;
+
+  public RetentionManager(Engine engine) {
+    this.engine = engine;
+  }
+
+  @Override
+  public void engineStarts(Engine engine) {
+    if (compactionInterval!=null
+        && (defaultTimeToLive!=null || !scriptTimeToLives.isEmpty())) {
+      long intervalMillis = compactionInterval.toMillis();
+      timer = new Timer("rockscript-retention", true);
+      timer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          try {
+            compact();
+          } catch (Exception e) {
+            log.error("Compaction of ended script executions failed: "+e.getMessage(), e);
+          }
+        }
+      }, intervalMillis, intervalMillis);
+    }
+  }
+
+  @Override
+  public void engineStops(Engine engine) {
+    if (timer!=null) {
+      timer.cancel();
+      timer = null;
+    }
+  }
+
+  /** compacts all ended script executions for which the time to live has passed.
+   * @return the number of compacted script executions */
+  public int compact() {
+    ScriptExecutionStore scriptExecutionStore = engine.getScriptExecutionStore();
+    Instant now = Time.now();
+    int compactedCount = 0;
+    for (String scriptExecutionId: new ArrayList<>(scriptExecutionStore.getEndedScriptExecutionIds())) {
+      List<ExecutionEvent> events = scriptExecutionStore.findInMemoryEvents(scriptExecutionId);
+      if (events!=null && isExpired(events, now)) {
+        ScriptExecutionSummary summary = createSummary(scriptExecutionId, events);
+        scriptExecutionStore.replaceEventsBySummary(summary);
+        compactedCount++;
+      }
+    }
+    if (compactedCount>0) {
+      log.debug("Compacted "+compactedCount+" ended script executions");
+    }
+    return compactedCount;
+  }
+
+  private boolean isExpired(List<ExecutionEvent> events, Instant now) {
+    ExecutionEvent lastEvent = getLast(events);
+    if (!(lastEvent instanceof ScriptEndedEvent) || lastEvent.getTime()==null) {
+      return false;
+    }
+    ExecutionEvent firstEvent = events.get(0);
+    String scriptName = firstEvent instanceof ScriptStartedEvent ? ((ScriptStartedEvent)firstEvent).getScriptName() : null;
+    Duration timeToLive = getTimeToLive(scriptName);
+    return timeToLive!=null
+           && !lastEvent.getTime().plus(timeToLive).isAfter(now);
+  }
+
+  protected ScriptExecutionSummary createSummary(String scriptExecutionId, List<ExecutionEvent> events) {
+    ScriptExecutionSummary summary = new ScriptExecutionSummary(scriptExecutionId, events);
+    byte[] segment = Io.deflate(engine.getEventCodec().encode(events));
+    if (archiveDirectory!=null) {
+      File archiveFile = new File(archiveDirectory, scriptExecutionId+".events");
+      try {
+        Files.write(archiveFile.toPath(), segment);
+      } catch (IOException e) {
+        throw new EngineException("Couldn't archive events of script execution "+scriptExecutionId+" to "+archiveFile+": "+e.getMessage(), e);
+      }
+      summary.archiveFile = archiveFile.getAbsolutePath();
+    } else {
+      summary.eventSegment = segment;
+    }
+    return summary;
+  }
+
+  public Duration getTimeToLive(String scriptName) {
+    Duration scriptTimeToLive = scriptName!=null ? scriptTimeToLives.get(scriptName) : null;
+    return scriptTimeToLive!=null ? scriptTimeToLive : defaultTimeToLive;
+  }
+
+  public Duration getDefaultTimeToLive() {
+    return this.defaultTimeToLive;
+  }
+  public void setDefaultTimeToLive(Duration defaultTimeToLive) {
+    this.defaultTimeToLive = defaultTimeToLive;
+  }
+  public RetentionManager defaultTimeToLive(Duration defaultTimeToLive) {
+    this.defaultTimeToLive = defaultTimeToLive;
+    return this;
+  }
+
+  public Map<String, Duration> getScriptTimeToLives() {
+    return this.scriptTimeToLives;
+  }
+  public RetentionManager scriptTimeToLive(String scriptName, Duration timeToLive) {
+    this.scriptTimeToLives.put(scriptName, timeToLive);
+    return this;
+  }
+
+  public File getArchiveDirectory() {
+    return this.archiveDirectory;
+  }
+  public void setArchiveDirectory(File archiveDirectory) {
+    this.archiveDirectory = archiveDirectory;
+  }
+  public RetentionManager archiveDirectory(File archiveDirectory) {
+    if (archiveDirectory!=null) {
+      archiveDirectory.mkdirs();
+    }
+    this.archiveDirectory = archiveDirectory;
+    return this;
+  }
+
+  public Duration getCompactionInterval() {
+    return this.compactionInterval;
+  }
+  public void setCompactionInterval(Duration compactionInterval) {
+    this.compactionInterval = compactionInterval;
+  }
+  public RetentionManager compactionInterval(Duration compactionInterval) {
+    this.compactionInterval = compactionInterval;
+    return this;
+  }
+}
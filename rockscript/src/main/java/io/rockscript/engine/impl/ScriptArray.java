@@ -0,0 +1,147 @@
+/*
+ * Copyright ©2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.util.PersistentVector;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.RandomAccess;
+
+/** Mutable script array backed by a {@link PersistentVector}.
+ * See {@link ScriptObject} for how snapshots work. */
+public class ScriptArray extends AbstractList<Object> implements RandomAccess {
+
+  PersistentVector<Object> elements;
+  /** indexes of elements that are a {@link ScriptObject} or {@link ScriptArray} */
+  BitSet containerIndexes;
+  PersistentVector<Object> snapshot;
+
+  public ScriptArray() {
+    this(PersistentVector.empty());
+  }
+
+  public ScriptArray(PersistentVector<Object> elements) {
+    this.elements = elements;
+  }
+
+  @Override
+  public Object get(int index) {
+    Object element = elements.get(index);
+    if (ScriptValues.isPersistentContainer(element)) {
+      // nested persistent values become mutable when they are accessed
+      element = ScriptValues.toScriptValue(element);
+      elements = elements.with(index, element);
+      addContainerIndex(index);
+    }
+    return element;
+  }
+
+  @Override
+  public Object set(int index, Object element) {
+    Object oldElement = elements.get(index);
+    elements = elements.with(index, element);
+    updateContainerIndex(index, element);
+    snapshot = null;
+    return oldElement;
+  }
+
+  @Override
+  public void add(int index, Object element) {
+    if (index==elements.size()) {
+      elements = elements.plus(element);
+      updateContainerIndex(index, element);
+      modCount++;
+      snapshot = null;
+    } else {
+      rebuild(index, element, false);
+    }
+  }
+
+  @Override
+  public Object remove(int index) {
+    Object oldElement = elements.get(index);
+    rebuild(index, null, true);
+    return oldElement;
+  }
+
+  @Override
+  public int size() {
+    return elements.size();
+  }
+
+  /** inserts or removes in the middle, which is O(n) */
+  void rebuild(int index, Object element, boolean remove) {
+    if (index<0 || index>elements.size() || (remove && index==elements.size())) {
+      throw new IndexOutOfBoundsException("Index "+index+", size "+elements.size());
+    }
+    PersistentVector<Object> oldElements = elements;
+    elements = PersistentVector.empty();
+    containerIndexes = null;
+    for (int i=0; i<=oldElements.size(); i++) {
+      if (i==index && !remove) {
+        add(elements.size(), element);
+      }
+      if (i<oldElements.size() && !(i==index && remove)) {
+        add(elements.size(), oldElements.get(i));
+      }
+    }
+    modCount++;
+    snapshot = null;
+  }
+
+  /** @return an immutable version of this array that shares
+   * its structure with this array.  O(1) if none of the nested
+   * objects and arrays changed since the previous snapshot. */
+  public PersistentVector<Object> snapshot() {
+    if (containerIndexes==null || containerIndexes.isEmpty()) {
+      return elements;
+    }
+    if (snapshot!=null && isSnapshotUpToDate()) {
+      return snapshot;
+    }
+    PersistentVector<Object> newSnapshot = elements;
+    for (int i=containerIndexes.nextSetBit(0); i>=0; i=containerIndexes.nextSetBit(i+1)) {
+      newSnapshot = newSnapshot.with(i, ScriptValues.snapshot(elements.get(i)));
+    }
+    snapshot = newSnapshot;
+    return newSnapshot;
+  }
+
+  boolean isSnapshotUpToDate() {
+    for (int i=containerIndexes.nextSetBit(0); i>=0; i=containerIndexes.nextSetBit(i+1)) {
+      if (ScriptValues.snapshot(elements.get(i))!=snapshot.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  void updateContainerIndex(int index, Object element) {
+    if (ScriptValues.isScriptContainer(element)) {
+      addContainerIndex(index);
+    } else if (containerIndexes!=null) {
+      containerIndexes.clear(index);
+    }
+  }
+
+  void addContainerIndex(int index) {
+    if (containerIndexes==null) {
+      containerIndexes = new BitSet();
+    }
+    containerIndexes.set(index);
+  }
+}
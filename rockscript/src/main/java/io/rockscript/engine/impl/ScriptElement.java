@@ -24,7 +24,9 @@ public abstract class ScriptElement {
 
   protected Integer index;
   protected Location location;
-  protected String text;
+  /** the text of the whole script, shared by all elements of the script.
+   * {@link #getText()} is derived from it with the location offsets. */
+  protected String scriptText;
 
   public ScriptElement(Integer index, Location location) {
     this.index = index;
@@ -52,12 +54,19 @@ public abstract class ScriptElement {
     this.location = location;
   }
 
+  /** the script text of this element on a single line */
   public String getText() {
-    return text;
+    return scriptText!=null && location!=null
+           ? EngineScript.toSingleLine(scriptText, location.getStart(), location.getEnd()+1)
+           : null;
   }
 
-  public void setText(String text) {
-    this.text = text;
+  public String getScriptText() {
+    return scriptText;
+  }
+
+  public void setScriptText(String scriptText) {
+    this.scriptText = scriptText;
   }
 
   public ScriptElementJson toJson() {
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Progress and outcome of {@link ScriptExecutionStore#recoverCrashedScriptExecutions()}.
+ * It's updated concurrently by the recovery threads. */
+public class ScriptExecutionRecovery {
+
+  Instant start = Time.now();
+  Instant end;
+  int openScriptExecutionCount;
+  AtomicInteger processedCount = new AtomicInteger();
+  AtomicInteger lockedCount = new AtomicInteger();
+  List<EngineScriptExecution> recoveredScriptExecutions = Collections.synchronizedList(new ArrayList<>());
+  /** error messages by script execution id */
+  Map<String,String> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+  public ScriptExecutionRecovery(int openScriptExecutionCount) {
+    this.openScriptExecutionCount = openScriptExecutionCount;
+  }
+
+  void recovered(EngineScriptExecution scriptExecution) {
+    recoveredScriptExecutions.add(scriptExecution);
+    processedCount.incrementAndGet();
+  }
+
+  /** the script execution is still locked by a lock owner that didn't crash */
+  void locked(String scriptExecutionId) {
+    lockedCount.incrementAndGet();
+    processedCount.incrementAndGet();
+  }
+
+  void failed(String scriptExecutionId, Exception exception) {
+    failures.put(scriptExecutionId, exception.getMessage()!=null ? exception.getMessage() : exception.toString());
+    processedCount.incrementAndGet();
+  }
+
+  void end() {
+    end = Time.now();
+  }
+
+  /** number of script executions that didn't end with an unlocking event or of
+   * which the lock expired on a failure when the recovery started, these are
+   * the candidates for recovery */
+  public int getOpenScriptExecutionCount() {
+    return openScriptExecutionCount;
+  }
+
+  /** number of candidates that are recovered, skipped or failed so far */
+  public int getProcessedCount() {
+    return processedCount.get();
+  }
+
+  public int getLockedCount() {
+    return lockedCount.get();
+  }
+
+  public List<EngineScriptExecution> getRecoveredScriptExecutions() {
+    synchronized (recoveredScriptExecutions) {
+      return new ArrayList<>(recoveredScriptExecutions);
+    }
+  }
+
+  public Map<String,String> getFailures() {
+    synchronized (failures) {
+      return new LinkedHashMap<>(failures);
+    }
+  }
+
+  public boolean isEnded() {
+    return end!=null;
+  }
+
+  public Duration getDuration() {
+    return Duration.between(start, end!=null ? end : Time.now());
+  }
+
+  @Override
+  public String toString() {
+    return "Recovery "+getProcessedCount()+"/"+openScriptExecutionCount+" processed: "
+           +recoveredScriptExecutions.size()+" recovered, "
+           +lockedCount.get()+" locked, "
+           +failures.size()+" failed";
+  }
+}
@@ -28,6 +28,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import static io.rockscript.util.Lists.getLast;
@@ -39,6 +43,19 @@ public class ScriptExecutionStore implements EventListener {
   Engine engine;
   /** maps script execution ids to ordered list of execution events for that script execution */
   Map<String,List<ExecutionEvent>> events;
+  /** ended script executions that still have their events in {@link #events} */
+  Set<String> endedScriptExecutionIds;
+  /** script executions compacted by the {@link RetentionManager}, their events are not in {@link #events} */
+  Map<String,ScriptExecutionSummary> summaries;
+  /** script executions of which the last event is not {@link ExecutionEvent#isUnlocking() unlocking}.
+   * Those are either executing or crashed and they are the only candidates for recovery. */
+  Set<String> openScriptExecutionIds;
+  /** script executions of which the lock owner expired the lock with a {@link ScriptExecutionErrorEvent}.
+   * The expired lock and the unlock listeners that didn't run wait for the recovery to take them over. */
+  Set<String> failedScriptExecutionIds;
+  /** futures of callers that wait for script executions to end, see {@link #whenEnded(String)} */
+  Map<String,CompletableFuture<EngineScriptExecution>> endFutures;
+  int recoveryParallelism = Runtime.getRuntime().availableProcessors();
 
   public ScriptExecutionStore(Engine engine) {
     this.engine = engine;
@@ -46,7 +63,21 @@ public class ScriptExecutionStore implements EventListener {
   }
 
   public void reset() {
-    events = new HashMap<>();
+    if (endFutures!=null) {
+      new ArrayList<>(endFutures.keySet()).forEach(scriptExecutionId->failEndFuture(scriptExecutionId, "was removed by a reset of the store before it ended"));
+    }
+    events = new ConcurrentHashMap<>();
+    endedScriptExecutionIds = ConcurrentHashMap.newKeySet();
+    summaries = new ConcurrentHashMap<>();
+    openScriptExecutionIds = ConcurrentHashMap.newKeySet();
+    failedScriptExecutionIds = ConcurrentHashMap.newKeySet();
+    endFutures = new ConcurrentHashMap<>();
+  }
+
+  /** max number of threads that replay crashed script executions */
+  public ScriptExecutionStore recoveryParallelism(int recoveryParallelism) {
+    this.recoveryParallelism = recoveryParallelism;
+    return this;
   }
 
   @Override
@@ -57,20 +88,131 @@ public class ScriptExecutionStore implements EventListener {
       events
         .computeIfAbsent(scriptExecutionId,id->new ArrayList<ExecutionEvent>())
         .add(executionEvent);
+      if (executionEvent instanceof ScriptEndedEvent) {
+        endedScriptExecutionIds.add(scriptExecutionId);
+      }
+      if (executionEvent.isUnlocking()) {
+        openScriptExecutionIds.remove(scriptExecutionId);
+      } else {
+        openScriptExecutionIds.add(scriptExecutionId);
+      }
+      if (executionEvent instanceof ScriptExecutionErrorEvent) {
+        failedScriptExecutionIds.add(scriptExecutionId);
+        failEndFuture(scriptExecutionId, "failed: "+((ScriptExecutionErrorEvent)executionEvent).getError());
+      } else {
+        failedScriptExecutionIds.remove(scriptExecutionId);
+      }
+    }
+  }
+
+  /** @return a future that completes with the ended script execution.  The future
+   * completes exceptionally when the script execution fails with a {@link ScriptExecutionErrorEvent}
+   * or when the store is reset before the script execution ended. */
+  public CompletableFuture<EngineScriptExecution> whenEnded(String scriptExecutionId) {
+    CompletableFuture<EngineScriptExecution> endFuture = endFutures.computeIfAbsent(scriptExecutionId, id->new CompletableFuture<>());
+    // the ScriptEndedEvent is handled before it's executed so an execution that
+    // ended before the future was registered is found here
+    if (isEnded(scriptExecutionId)) {
+      endFutures.remove(scriptExecutionId);
+      endFuture.complete(findScriptExecutionById(scriptExecutionId));
+    } else if (failedScriptExecutionIds.contains(scriptExecutionId)) {
+      failEndFuture(scriptExecutionId, "failed");
     }
+    return endFuture;
+  }
+
+  private void failEndFuture(String scriptExecutionId, String reason) {
+    CompletableFuture<EngineScriptExecution> endFuture = endFutures.remove(scriptExecutionId);
+    if (endFuture!=null) {
+      endFuture.completeExceptionally(new EngineException("Script execution "+scriptExecutionId+" "+reason));
+    }
+  }
+
+  /** invoked by the executing script execution when it executes its {@link ScriptEndedEvent} */
+  void scriptExecutionEnded(EngineScriptExecution scriptExecution) {
+    CompletableFuture<EngineScriptExecution> endFuture = endFutures.remove(scriptExecution.getId());
+    if (endFuture!=null) {
+      endFuture.complete(scriptExecution);
+    }
+  }
+
+  public boolean isEnded(String scriptExecutionId) {
+    return endedScriptExecutionIds.contains(scriptExecutionId)
+           || summaries.containsKey(scriptExecutionId);
+  }
+
+  /** @return the id of the script of which the script execution is an instance or null if the script execution doesn't exist */
+  public String findScriptId(String scriptExecutionId) {
+    if (scriptExecutionId==null) {
+      return null;
+    }
+    List<ExecutionEvent> executionEvents = events.get(scriptExecutionId);
+    if (executionEvents!=null && !executionEvents.isEmpty()) {
+      ExecutionEvent firstEvent = executionEvents.get(0);
+      return firstEvent instanceof ScriptStartedEvent ? ((ScriptStartedEvent)firstEvent).getScriptId() : null;
+    }
+    ScriptExecutionSummary summary = summaries.get(scriptExecutionId);
+    return summary!=null ? summary.getScriptId() : null;
   }
 
   public List<String> findAllScriptExecutionIds() {
-    return new ArrayList<>(events.keySet());
+    List<String> scriptExecutionIds = new ArrayList<>(events.keySet());
+    scriptExecutionIds.addAll(summaries.keySet());
+    return scriptExecutionIds;
   }
 
   public EngineScriptExecution findScriptExecutionById(String scriptExecutionId) {
     List<ExecutionEvent> executionEvents = findEventsByScriptExecutionId(scriptExecutionId);
-    return replayScriptExecution(executionEvents, scriptExecutionId, false);
+    return replayScriptExecution(executionEvents, scriptExecutionId, false, null);
   }
 
+  /** loads the events from the archive if the script execution was compacted */
   public List<ExecutionEvent> findEventsByScriptExecutionId(String scriptExecutionId) {
-    return new ArrayList(events.get(scriptExecutionId));
+    List<ExecutionEvent> scriptExecutionEvents = events.get(scriptExecutionId);
+    if (scriptExecutionEvents!=null) {
+      return new ArrayList(scriptExecutionEvents);
+    }
+    ScriptExecutionSummary summary = summaries.get(scriptExecutionId);
+    if (summary!=null) {
+      return summary.loadEvents(engine.getEventCodec());
+    }
+    throw new EngineException("Script execution "+scriptExecutionId+" does not exist");
+  }
+
+  /** the live list of events or null if the script execution is not in memory */
+  List<ExecutionEvent> findInMemoryEvents(String scriptExecutionId) {
+    return events.get(scriptExecutionId);
+  }
+
+  /** @return the summary if the script execution was compacted, null otherwise */
+  public ScriptExecutionSummary findScriptExecutionSummary(String scriptExecutionId) {
+    return summaries.get(scriptExecutionId);
+  }
+
+  Set<String> getEndedScriptExecutionIds() {
+    return endedScriptExecutionIds;
+  }
+
+  /** invoked by the {@link RetentionManager} to free the in-memory events */
+  void replaceEventsBySummary(ScriptExecutionSummary summary) {
+    String scriptExecutionId = summary.getId();
+    summaries.put(scriptExecutionId, summary);
+    events.remove(scriptExecutionId);
+    endedScriptExecutionIds.remove(scriptExecutionId);
+    openScriptExecutionIds.remove(scriptExecutionId);
+    failedScriptExecutionIds.remove(scriptExecutionId);
+    // only ended script executions are compacted, a future that is still
+    // registered completes with the script execution loaded from the summary
+    CompletableFuture<EngineScriptExecution> endFuture = endFutures.remove(scriptExecutionId);
+    if (endFuture!=null) {
+      endFuture.complete(findScriptExecutionById(scriptExecutionId));
+    }
+  }
+
+  /** ids of the script executions of which the last event didn't
+   * release the lock, which are the candidates for crash recovery. */
+  public Set<String> getOpenScriptExecutionIds() {
+    return Collections.unmodifiableSet(openScriptExecutionIds);
   }
 
   private boolean isLastEventUnlocking(List<ExecutionEvent> executionEvents) {
@@ -99,7 +241,8 @@ public class ScriptExecutionStore implements EventListener {
     return eventClass==ScriptStartedEvent.class || eventClass==ServiceFunctionStartedEvent.class;
   }
 
-  private EngineScriptExecution replayScriptExecution(List<ExecutionEvent> executionEvents, String scriptExecutionId, boolean recovering) {
+  /** @param lock the lock under which the recovered script execution dispatches its events */
+  private EngineScriptExecution replayScriptExecution(List<ExecutionEvent> executionEvents, String scriptExecutionId, boolean recovering, Lock lock) {
     if (executionEvents==null || executionEvents.isEmpty()) {
       throw new RuntimeException("Inconsistent event stream. No events.");
     }
@@ -135,9 +278,10 @@ public class ScriptExecutionStore implements EventListener {
     EngineScript engineScript = engine
       .getScriptStore()
       .findScriptAstByScriptVersionId(scriptId);
-    EngineException.throwIfNull(scriptId, "Script not found for scriptId %s in engineScript execution %s", scriptId, scriptExecutionId);
+    EngineException.throwIfNull(engineScript, "Script not found for scriptId %s in engineScript execution %s", scriptId, scriptExecutionId);
 
     EngineScriptExecution scriptExecution = new EngineScriptExecution(scriptExecutionId, engine, engineScript);
+    scriptExecution.setLock(lock);
     scriptExecution.setExecutionMode(ExecutionMode.REPLAYING);
 
     log.info("Replaying script execution from events:");
@@ -168,32 +312,70 @@ public class ScriptExecutionStore implements EventListener {
       .orElse(null);
   }
 
-  public List<EngineScriptExecution> recoverCrashedScriptExecutions() {
-    List<EngineScriptExecution> scriptExecutions = new ArrayList<>();
-    Map<String,List<ExecutionEvent>> groupedEvents = findCrashedScriptExecutionEvents();
-    for (String scriptExecutionId: groupedEvents.keySet()) {
-      List<ExecutionEvent> executionEvents = groupedEvents.get(scriptExecutionId);
-      EngineScriptExecution scriptExecution = replayScriptExecution(executionEvents, scriptExecutionId, true);
-      scriptExecutions.add(scriptExecution);
+  /** Replays the open script executions that are not locked or of
+   * which the lock expired and takes over the expired locks of failed
+   * script executions so that their waiting unlock listeners run.  The script executions are recovered in
+   * parallel on a fork join pool and each one in its own lock, so a
+   * recovery that fails doesn't affect the others. */
+  public ScriptExecutionRecovery recoverCrashedScriptExecutions() {
+    Set<String> candidateIds = new LinkedHashSet<>(openScriptExecutionIds);
+    candidateIds.addAll(failedScriptExecutionIds);
+    List<String> scriptExecutionIds = new ArrayList<>(candidateIds);
+    ScriptExecutionRecovery recovery = new ScriptExecutionRecovery(scriptExecutionIds.size());
+    if (!scriptExecutionIds.isEmpty()) {
+      int progressInterval = Math.max(1, scriptExecutionIds.size()/10);
+      List<Callable<Void>> recoveryTasks = scriptExecutionIds.stream()
+        .map(scriptExecutionId->(Callable<Void>) ()->{
+          recoverCrashedScriptExecution(scriptExecutionId, recovery);
+          if (recovery.getProcessedCount() % progressInterval == 0) {
+            log.debug(recovery.toString());
+          }
+          return null;
+        })
+        .collect(Collectors.toList());
+      ForkJoinPool recoveryPool = new ForkJoinPool(Math.max(1, Math.min(recoveryParallelism, scriptExecutionIds.size())));
+      try {
+        recoveryPool.invokeAll(recoveryTasks);
+      } finally {
+        recoveryPool.shutdown();
+      }
     }
-    return scriptExecutions;
+    recovery.end();
+    log.debug(recovery+" in "+recovery.getDuration().toMillis()+" millis");
+    return recovery;
   }
 
-  /** @return a list of events grouped by engineScript execution. */
-  private Map<String,List<ExecutionEvent>> findCrashedScriptExecutionEvents() {
-
-    // TODO only scan for the script executions that have an expired lock
-
-    Map<String,List<ExecutionEvent>> scriptExecutionsToRecover = new HashMap<>();
-    for (String scriptExecutionId: new ArrayList<>(events.keySet())) {
-      List<ExecutionEvent> scriptExecutionEvents = events.get(scriptExecutionId);
-      ExecutionEvent lastEvent = scriptExecutionEvents.get(scriptExecutionEvents.size()-1);
-      if (!lastEvent.isUnlocking()) {
-        scriptExecutionsToRecover.put(scriptExecutionId, scriptExecutionEvents);
+  void recoverCrashedScriptExecution(String scriptExecutionId, ScriptExecutionRecovery recovery) {
+    LockService lockService = engine.getLockService();
+    Lock lock = lockService.acquireExpiredLock(scriptExecutionId);
+    if (lock==null) {
+      recovery.locked(scriptExecutionId);
+      return;
+    }
+    try {
+      if (!openScriptExecutionIds.contains(scriptExecutionId)) {
+        // the lock owner either failed and expired the lock or it unlocked the script execution after
+        // the candidates were collected. It's loaded as usual for the lock operations that might be
+        // waiting for the lock.  A failure of those is recorded again with a ScriptExecutionErrorEvent.
+        boolean failed = failedScriptExecutionIds.remove(scriptExecutionId);
+        EngineScriptExecution scriptExecution = findScriptExecutionById(scriptExecutionId);
+        lockService.releaseLock(lock, scriptExecution);
+        if (failed) {
+          recovery.recovered(scriptExecution);
+        } else {
+          recovery.locked(scriptExecutionId);
+        }
+        return;
       }
+      List<ExecutionEvent> executionEvents = events.get(scriptExecutionId);
+      EngineScriptExecution scriptExecution = replayScriptExecution(executionEvents, scriptExecutionId, true, lock);
+      lockService.releaseLock(lock, scriptExecution);
+      recovery.recovered(scriptExecution);
+    } catch (Exception e) {
+      log.debug("Recovery of script execution "+scriptExecutionId+" failed: "+e.getMessage(), e);
+      lock.expire();
+      recovery.failed(scriptExecutionId, e);
     }
-
-    return scriptExecutionsToRecover;
   }
 
   public Object valueToJson(Object value) {
@@ -221,6 +403,7 @@ public class ScriptExecutionStore implements EventListener {
   }
 
   public boolean hasScriptExecution(String scriptExecutionId) {
-    return events.containsKey(scriptExecutionId);
+    return events.containsKey(scriptExecutionId)
+           || summaries.containsKey(scriptExecutionId);
   }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.api.events.EventCodec;
+import io.rockscript.api.events.ExecutionEvent;
+import io.rockscript.api.events.ScriptEndedEvent;
+import io.rockscript.api.events.ScriptStartedEvent;
+import io.rockscript.api.model.EventRetention;
+import io.rockscript.engine.EngineException;
+import io.rockscript.util.Io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+
+/** What remains in memory of an ended script execution after
+ * the {@link RetentionManager} compacted it.
+ *
+ * The events are kept as a deflated {@link EventCodec} segment,
+ * either in memory or in an archive file. They are only loaded
+ * when a query asks for them. */
+public class ScriptExecutionSummary {
+
+  String id;
+  String scriptId;
+  String scriptVersionId;
+  String scriptName;
+  Integer scriptVersion;
+  Instant start;
+  Instant end;
+  EventRetention eventRetention;
+  int eventCount;
+  Instant compacted;
+  /** deflated event segment, null if the segment is in the {@link #archiveFile} */
+  transient byte[] eventSegment;
+  String archiveFile;
+
+  public ScriptExecutionSummary() {
+  }
+
+  public ScriptExecutionSummary(String scriptExecutionId, List<ExecutionEvent> events) {
+    this.id = scriptExecutionId;
+    this.eventCount = events.size();
+    this.compacted = Time.now();
+    for (ExecutionEvent event: events) {
+      if (event instanceof ScriptStartedEvent) {
+        ScriptStartedEvent scriptStartedEvent = (ScriptStartedEvent) event;
+        this.scriptId = scriptStartedEvent.getScriptId();
+        this.scriptVersionId = scriptStartedEvent.getScriptVersionId();
+        this.scriptName = scriptStartedEvent.getScriptName();
+        this.scriptVersion = scriptStartedEvent.getScriptVersion();
+        this.eventRetention = scriptStartedEvent.getEventRetention();
+        this.start = event.getTime();
+      } else if (event instanceof ScriptEndedEvent) {
+        this.end = event.getTime();
+      }
+    }
+  }
+
+  public List<ExecutionEvent> loadEvents(EventCodec eventCodec) {
+    byte[] segment = eventSegment;
+    if (segment==null) {
+      EngineException.throwIfNull(archiveFile, "Script execution %s has no events", id);
+      try {
+        segment = Files.readAllBytes(Paths.get(archiveFile));
+      } catch (IOException e) {
+        throw new EngineException("Couldn't read archived events of script execution "+id+" from "+archiveFile+": "+e.getMessage(), e);
+      }
+    }
+    return eventCodec.decode(Io.inflate(segment));
+  }
+
+  public boolean isArchived() {
+    return archiveFile!=null;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getScriptId() {
+    return scriptId;
+  }
+
+  public String getScriptVersionId() {
+    return scriptVersionId;
+  }
+
+  public String getScriptName() {
+    return scriptName;
+  }
+
+  public Integer getScriptVersion() {
+    return scriptVersion;
+  }
+
+  public Instant getStart() {
+    return start;
+  }
+
+  public Instant getEnd() {
+    return end;
+  }
+
+  public EventRetention getEventRetention() {
+    return eventRetention;
+  }
+
+  public int getEventCount() {
+    return eventCount;
+  }
+
+  public Instant getCompacted() {
+    return compacted;
+  }
+
+  public String getArchiveFile() {
+    return archiveFile;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.engine.antlr.ECMAScriptLexer;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Lexer simulator that caches the DFA start state.
+ *
+ * The ECMAScript lexer rules start with semantic predicates
+ * (regular expression literals and the strict mode keywords).
+ * Because of that, ANTLR doesn't cache the DFA start state and
+ * computes the full start state closure for every single token,
+ * which is where most of the parse time went.
+ *
+ * Those predicates only depend on {@link ECMAScriptLexer#getStrictMode()}
+ * and on whether a regular expression literal is possible after the
+ * previous token.  So this simulator caches one start state per
+ * mode for each combination of those 2 predicate values. */
+class ScriptLexerATNSimulator extends LexerATNSimulator {
+
+  static final int REGULAR_EXPRESSION_LITERAL_RULE = Arrays.asList(ECMAScriptLexer.ruleNames).indexOf("RegularExpressionLiteral");
+
+  /** shared by all lexers, just like the DFA itself */
+  static final AtomicReferenceArray<DFAState> startStates = new AtomicReferenceArray<>(ECMAScriptLexer.modeNames.length * 4);
+  static final PredictionContextCache sharedContextCache = new PredictionContextCache();
+
+  ECMAScriptLexer lexer;
+
+  ScriptLexerATNSimulator(ECMAScriptLexer lexer) {
+    super(lexer, lexer.getATN(), lexer.getInterpreter().decisionToDFA, sharedContextCache);
+    this.lexer = lexer;
+  }
+
+  @Override
+  protected int matchATN(CharStream input) {
+    int startStateIndex = mode * 4
+      + (lexer.getStrictMode() ? 2 : 0)
+      + (lexer.sempred(null, REGULAR_EXPRESSION_LITERAL_RULE, 0) ? 1 : 0);
+    DFAState startState = startStates.get(startStateIndex);
+    if (startState==null) {
+      ATNConfigSet startStateClosure = computeStartState(input, atn.modeToStartState.get(mode));
+      // the predicates are already evaluated for this combination
+      startStateClosure.hasSemanticContext = false;
+      startState = addDFAState(startStateClosure);
+      startStates.set(startStateIndex, startState);
+    }
+    return execATN(input, startState);
+  }
+}
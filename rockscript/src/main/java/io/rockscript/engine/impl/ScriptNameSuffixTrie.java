@@ -0,0 +1,79 @@
+/*
+ * Copyright ©2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.engine.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Immutable trie of the reversed script names for finding
+ * scripts by the end of their name in O(length of the suffix).
+ *
+ * Each node keeps the id of the most recently added script
+ * with a name that ends with the reversed path to that node.
+ * {@link #with(String, String)} copies the path to the new
+ * leaf and shares all other nodes. */
+public class ScriptNameSuffixTrie {
+
+  static final ScriptNameSuffixTrie EMPTY = new ScriptNameSuffixTrie(new Node(null, new HashMap<>()));
+
+  final Node root;
+
+  private ScriptNameSuffixTrie(Node root) {
+    this.root = root;
+  }
+
+  public static ScriptNameSuffixTrie empty() {
+    return EMPTY;
+  }
+
+  /** @return the id of the most recently added script
+   * whose name ends with the suffix or null if there is none */
+  public String findScriptIdByNameEnd(String nameSuffix) {
+    Node node = root;
+    for (int i=nameSuffix.length()-1; i>=0 && node!=null; i--) {
+      node = node.children.get(nameSuffix.charAt(i));
+    }
+    return node!=null ? node.newestScriptId : null;
+  }
+
+  public ScriptNameSuffixTrie with(String scriptName, String scriptId) {
+    return new ScriptNameSuffixTrie(root.with(scriptName, scriptName.length()-1, scriptId));
+  }
+
+  static class Node {
+    final String newestScriptId;
+    final Map<Character,Node> children;
+
+    Node(String newestScriptId, Map<Character,Node> children) {
+      this.newestScriptId = newestScriptId;
+      this.children = children;
+    }
+
+    Node with(String scriptName, int index, String scriptId) {
+      Map<Character,Node> newChildren = children;
+      if (index>=0) {
+        char c = scriptName.charAt(index);
+        Node child = children.get(c);
+        if (child==null) {
+          child = new Node(null, new HashMap<>());
+        }
+        newChildren = new HashMap<>(children);
+        newChildren.put(c, child.with(scriptName, index-1, scriptId));
+      }
+      return new Node(scriptId, newChildren);
+    }
+  }
+}
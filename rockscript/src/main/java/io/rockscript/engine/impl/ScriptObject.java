@@ -0,0 +1,160 @@
+/*
+ * Copyright ©2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.util.PersistentMap;
+
+import java.util.*;
+
+/** Mutable script object backed by a {@link PersistentMap}.
+ *
+ * Each update replaces the persistent root so that {@link #snapshot()}
+ * can hand out the current version without copying.  Nested
+ * objects and arrays are tracked so that only those have to be
+ * snapshotted recursively, see {@link ScriptValues}. */
+public class ScriptObject extends AbstractMap<String,Object> {
+
+  PersistentMap<Object> properties;
+  /** properties that have a {@link ScriptObject} or {@link ScriptArray} value */
+  Set<String> containerProperties;
+  PersistentMap<Object> snapshot;
+
+  public ScriptObject() {
+    this(PersistentMap.empty());
+  }
+
+  public ScriptObject(PersistentMap<Object> properties) {
+    this.properties = properties;
+  }
+
+  @Override
+  public Object get(Object propertyName) {
+    Object value = properties.get(propertyName);
+    if (ScriptValues.isPersistentContainer(value)) {
+      // nested persistent values become mutable when they are accessed
+      value = ScriptValues.toScriptValue(value);
+      properties = properties.with((String) propertyName, value);
+      addContainerProperty((String) propertyName);
+    }
+    return value;
+  }
+
+  @Override
+  public Object put(String propertyName, Object value) {
+    Object oldValue = properties.get(propertyName);
+    properties = properties.with(propertyName, value);
+    if (ScriptValues.isScriptContainer(value)) {
+      addContainerProperty(propertyName);
+    } else if (containerProperties!=null) {
+      containerProperties.remove(propertyName);
+    }
+    snapshot = null;
+    return oldValue;
+  }
+
+  @Override
+  public Object remove(Object propertyName) {
+    Object oldValue = properties.get(propertyName);
+    if (propertyName instanceof String) {
+      properties = properties.without((String) propertyName);
+      if (containerProperties!=null) {
+        containerProperties.remove(propertyName);
+      }
+      snapshot = null;
+    }
+    return oldValue;
+  }
+
+  @Override
+  public boolean containsKey(Object propertyName) {
+    return properties.containsKey(propertyName);
+  }
+
+  @Override
+  public int size() {
+    return properties.size();
+  }
+
+  @Override
+  public Set<Entry<String,Object>> entrySet() {
+    return new AbstractSet<Entry<String,Object>>() {
+      @Override
+      public Iterator<Entry<String,Object>> iterator() {
+        Iterator<String> propertyNames = new ArrayList<>(properties.keySet()).iterator();
+        return new Iterator<Entry<String,Object>>() {
+          String propertyName;
+          @Override
+          public boolean hasNext() {
+            return propertyNames.hasNext();
+          }
+          @Override
+          public Entry<String,Object> next() {
+            propertyName = propertyNames.next();
+            return new SimpleEntry<String,Object>(propertyName, get(propertyName)) {
+              @Override
+              public Object setValue(Object value) {
+                put(propertyName, value);
+                return super.setValue(value);
+              }
+            };
+          }
+          @Override
+          public void remove() {
+            ScriptObject.this.remove(propertyName);
+          }
+        };
+      }
+      @Override
+      public int size() {
+        return properties.size();
+      }
+    };
+  }
+
+  /** @return an immutable version of this object that shares
+   * its structure with this object.  O(1) if none of the nested
+   * objects and arrays changed since the previous snapshot. */
+  public PersistentMap<Object> snapshot() {
+    if (containerProperties==null || containerProperties.isEmpty()) {
+      return properties;
+    }
+    if (snapshot!=null && isSnapshotUpToDate()) {
+      return snapshot;
+    }
+    PersistentMap<Object> newSnapshot = properties;
+    for (String propertyName: containerProperties) {
+      newSnapshot = newSnapshot.with(propertyName, ScriptValues.snapshot(properties.get(propertyName)));
+    }
+    snapshot = newSnapshot;
+    return newSnapshot;
+  }
+
+  boolean isSnapshotUpToDate() {
+    for (String propertyName: containerProperties) {
+      if (ScriptValues.snapshot(properties.get(propertyName))!=snapshot.get(propertyName)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  void addContainerProperty(String propertyName) {
+    if (containerProperties==null) {
+      containerProperties = new HashSet<>();
+    }
+    containerProperties.add(propertyName);
+  }
+}
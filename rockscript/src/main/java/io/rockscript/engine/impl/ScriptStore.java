@@ -23,130 +23,193 @@ import io.rockscript.api.model.Script;
 import io.rockscript.api.model.ScriptVersion;
 import io.rockscript.engine.EngineException;
 import io.rockscript.http.servlet.BadRequestException;
+import io.rockscript.util.PersistentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
+/** Scripts and their versions are published as an immutable
+ * {@link ScriptIndex}: lookups don't lock and see a consistent
+ * state, updates copy the changed script and the index paths to it.
+ * Updates are serialized on the index reference. */
 public class ScriptStore {
 
+  static Logger log = LoggerFactory.getLogger(ScriptStore.class);
+
   Engine engine;
 
-  /** all stored scripts */
-  List<Script> scripts;
+  /** shared with the stores of test run engines */
+  AtomicReference<ScriptIndex> index;
 
-  /** maps script version ids to parsed EngineScript's */
-  public Map<String, EngineScript> parsedScriptAsts = new HashMap<>();
+  /** parsed EngineScript's by script version id */
+  EngineScriptCache engineScriptCache;
 
   public ScriptStore(Engine engine) {
     this.engine = engine;
-    reset();
+    this.index = new AtomicReference<>(ScriptIndex.EMPTY);
+    this.engineScriptCache = new EngineScriptCache(EngineScriptCache.DEFAULT_MAX_WEIGHT);
   }
 
   public ScriptStore(Engine engine, ScriptStore other) {
     this.engine = engine;
-    this.scripts = other.scripts;
-    this.parsedScriptAsts = new HashMap<>();
+    this.index = other.index;
+    this.engineScriptCache = new EngineScriptCache(other.engineScriptCache.getMaxWeight());
+  }
+
+  /** max total length of the script texts of the parsed scripts in the cache */
+  public ScriptStore engineScriptCacheMaxWeight(long maxWeight) {
+    this.engineScriptCache = new EngineScriptCache(maxWeight);
+    return this;
   }
 
   public void reset() {
-    this.scripts = new ArrayList<>();
-    this.parsedScriptAsts = new HashMap<>();
+    this.index.set(ScriptIndex.EMPTY);
+    this.engineScriptCache.clear();
   }
 
-  /** Finds the first script for which the name ends with the given scriptNameSuffix */
+  /** Finds the most recently inserted script for which the name ends with the given scriptNameSuffix */
   public Script findScriptByNameEnd(String scriptNameSuffix) {
     if (scriptNameSuffix==null) {
       return null;
     }
-    return scripts.stream()
-      .filter(script->script.getName()!=null && script.getName().endsWith(scriptNameSuffix))
-      .findFirst()
-      .orElse(null);
+    ScriptIndex index = this.index.get();
+    String scriptId = index.scriptNameSuffixes.findScriptIdByNameEnd(scriptNameSuffix);
+    return scriptId!=null ? index.scriptsById.get(scriptId) : null;
   }
 
   public Script findScriptByName(String scriptName) {
     if (scriptName==null) {
       return null;
     }
-    return scripts.stream()
-      .filter(script->scriptName.equals(script.getName()))
-      .findFirst()
-      .orElse(null);
+    return index.get().scriptsByName.get(scriptName);
   }
 
   public Script findScriptById(String scriptId) {
     if (scriptId==null) {
       return null;
     }
-    return scripts.stream()
-      .filter(script->scriptId.equals(script.getId()))
-      .findFirst()
-      .orElse(null);
+    return index.get().scriptsById.get(scriptId);
   }
 
   public void insertScript(Script script) {
+    synchronized (index) {
+      index.set(insertScript(index.get(), script));
+    }
+  }
+
+  ScriptIndex insertScript(ScriptIndex index, Script script) {
     EngineException.throwIfNull(script.getName(), "Scripts must have a name");
-    if (findScriptByName(script.getName())!=null) {
+    if (index.scriptsByName.containsKey(script.getName())) {
       throw new BadRequestException("Script with name '" + script.getName() + "' already exists");
     }
     if (script.getId()==null) {
       String scriptId = engine.getScriptIdGenerator().createId();
       script.setId(scriptId);
     }
-    if (findScriptById(script.getId())!=null) {
+    if (index.scriptsById.containsKey(script.getId())) {
       throw new BadRequestException("Script with id '"+script.getId()+"' already exists");
     }
-    scripts.add(0, script);
+    return index.withScript(script);
   }
 
   public void addParsedScriptAstToCache(String scriptVersionId, EngineScript parsedScriptAst) {
-    parsedScriptAsts.put(scriptVersionId, parsedScriptAst);
-  }
-
-  private ScriptVersion findScriptVersion(Script script, String scriptVersionId) {
-    if (scriptVersionId!=null && script!=null && script.getScriptVersions()!=null) {
-      return script.getScriptVersions().stream()
-        .filter(scriptVersion->scriptVersionId.equals(scriptVersion.getId()))
-        .findFirst()
-        .orElse(null);
-    }
-    return null;
+    engineScriptCache.put(scriptVersionId, parsedScriptAst);
   }
 
   public void addParsedScriptAstToCache(Parse parse, ScriptVersion scriptVersion) {
     EngineScript parsedScriptAst = parse.getEngineScript();
     if (parsedScriptAst!=null) {
       parsedScriptAst.setScriptVersion(scriptVersion);
-      parsedScriptAsts.put(scriptVersion.getId(), parsedScriptAst);
+      engineScriptCache.put(scriptVersion.getId(), parsedScriptAst);
     }
   }
 
   public EngineScript findScriptAstByScriptVersionId(String scriptVersionId) {
-    EngineScript engineScript = parsedScriptAsts.get(scriptVersionId);
-    if (engineScript == null) {
-      ScriptVersion scriptVersion = findScriptVersionById(scriptVersionId);
-      if (scriptVersion!=null) {
-        Parse parse = engine
-          .getScriptParser()
-          .parseScriptText(scriptVersion.getText());
-        if (!parse.hasErrors()) {
-          addParsedScriptAstToCache(parse, scriptVersion);
-          engineScript = parse.getEngineScript();
-        }
-      }
+    if (scriptVersionId==null) {
+      return null;
     }
+    return engineScriptCache.get(scriptVersionId, this::parseScriptVersion);
+  }
+
+  /** @return an unbound copy of the engine script of another script
+   * version with exactly the same script text, which shares the syntax
+   * tree of that version, or null if there is no such version without
+   * parse errors.  The engine script of the other version is parsed if
+   * it isn't cached. */
+  public EngineScript findEngineScriptByText(String scriptText) {
+    ScriptVersion identicalScriptVersion = findScriptVersionByText(scriptText);
+    EngineScript identicalEngineScript = identicalScriptVersion!=null
+      ? findScriptAstByScriptVersionId(identicalScriptVersion.getId())
+      : null;
+    return identicalEngineScript!=null
+      ? shareEngineScript(identicalEngineScript)
+      : null;
+  }
+
+  EngineScript shareEngineScript(EngineScript identicalEngineScript) {
+    EngineScript engineScript = new EngineScript(identicalEngineScript);
+    engineScript.setEngine(engine);
     return engineScript;
   }
 
+  ScriptVersion findScriptVersionByText(String scriptText) {
+    if (scriptText==null) {
+      return null;
+    }
+    ScriptIndex index = this.index.get();
+    String scriptVersionId = index.scriptVersionIdsByText.get(scriptText);
+    return scriptVersionId!=null
+      ? index.scriptVersionsById.get(scriptVersionId)
+      : null;
+  }
+
+  EngineScript parseScriptVersion(String scriptVersionId) {
+    ScriptVersion scriptVersion = findScriptVersionById(scriptVersionId);
+    ScriptVersion identicalScriptVersion = scriptVersion!=null ? findScriptVersionByText(scriptVersion.getText()) : null;
+    if (identicalScriptVersion!=null && !identicalScriptVersion.getId().equals(scriptVersionId)) {
+      // only the cache is checked, loading the other version from within this
+      // loader could deadlock with a concurrent load of that other version
+      EngineScript identicalEngineScript = engineScriptCache.get(identicalScriptVersion.getId());
+      if (identicalEngineScript!=null) {
+        EngineScript engineScript = shareEngineScript(identicalEngineScript);
+        engineScript.setScriptVersion(scriptVersion);
+        return engineScript;
+      }
+    }
+    if (scriptVersion!=null && scriptVersion.getCompiledScript()!=null) {
+      try {
+        EngineScript engineScript = EngineScriptCodec.decode(scriptVersion.getCompiledScript(), scriptVersion.getText(), engine);
+        engineScript.setScriptVersion(scriptVersion);
+        return engineScript;
+      } catch (EngineException e) {
+        log.debug("Parsing script version "+scriptVersionId+" because its compiled script can't be used: "+e.getMessage());
+      }
+    }
+    if (scriptVersion!=null) {
+      Parse parse = engine
+        .getScriptParser()
+        .parseScriptText(scriptVersion.getText());
+      if (!parse.hasErrors()) {
+        EngineScript engineScript = parse.getEngineScript();
+        engineScript.setScriptVersion(scriptVersion);
+        return engineScript;
+      }
+    }
+    return null;
+  }
+
   /** Collects the latest version of each scriptVersion that has a matching name.
    * @param namePatternRegex is a {@link Pattern regex}*/
   public List<ScriptVersion> findLatestScriptVersionsByNamePattern(String namePatternRegex) {
+    Pattern namePattern = Pattern.compile(namePatternRegex);
     List<ScriptVersion> matchingScriptVersions = new ArrayList<>();
-    for (Script script: scripts) {
-      if (Pattern.matches(namePatternRegex, script.getName())) {
+    for (Script script: getScripts()) {
+      if (namePattern.matcher(script.getName()).matches()) {
         List<ScriptVersion> scriptVersions = script.getScriptVersions();
         if (!scriptVersions.isEmpty()) {
           matchingScriptVersions.add(scriptVersions.get(scriptVersions.size() - 1));
@@ -156,21 +219,20 @@ public class ScriptStore {
     return matchingScriptVersions;
   }
 
-  ScriptVersion findScriptVersionById(String scriptId) {
-    if (scriptId!=null && scripts!=null) {
-      for (Script script: scripts) {
-        for (ScriptVersion scriptVersion: script.getScriptVersions()) {
-          if (scriptId.equals(scriptVersion.getId())) {
-            return scriptVersion;
-          }
-        }
-      }
+  ScriptVersion findScriptVersionById(String scriptVersionId) {
+    if (scriptVersionId==null) {
+      return null;
     }
-    return null;
+    return index.get().scriptVersionsById.get(scriptVersionId);
   }
 
+  /** the scripts with the most recently inserted script first */
   public List<Script> getScripts() {
-    return scripts;
+    return index.get().getScripts();
+  }
+
+  public EngineScriptCache getEngineScriptCache() {
+    return engineScriptCache;
   }
 
   public void handle(ScriptEvent event) {
@@ -180,34 +242,41 @@ public class ScriptStore {
   }
 
   public void handleScriptVersionSavedEvent(ScriptVersionSavedEvent event) {
-    ScriptVersion scriptVersion = event.getScriptVersion();
+    synchronized (index) {
+      index.set(saveScriptVersion(index.get(), event.getScriptVersion()));
+    }
+  }
+
+  ScriptIndex saveScriptVersion(ScriptIndex index, ScriptVersion scriptVersion) {
     Script script = null;
 
     String scriptId = scriptVersion.getScriptId();
     if (scriptId!=null) {
-      script = findScriptById(scriptId);
+      script = index.scriptsById.get(scriptId);
       BadRequestException.throwIfNull(script, "Script %s does not exist", scriptId);
 
     } else {
       String scriptName = scriptVersion.getScriptName();
-      script = findScriptByName(scriptName);
+      script = index.scriptsByName.get(scriptName);
       if (script==null) {
         script = new Script();
         script.setName(scriptName);
         // insertScript will assign the id of the script
-        insertScript(script);
+        index = insertScript(index, script);
       }
       scriptVersion.setScriptId(script.getId());
     }
 
-    List<ScriptVersion> scriptVersions = script.getScriptVersions();
+    // the published script is never modified
+    Script updatedScript = copy(script);
+    List<ScriptVersion> scriptVersions = updatedScript.getScriptVersions();
 
     if (Boolean.TRUE.equals(scriptVersion.getActive())) {
-      ScriptVersion scriptVersionToInactivate = findScriptVersionById(script.getActiveScriptVersionId());
+      ScriptVersion scriptVersionToInactivate = index.scriptVersionsById.get(script.getActiveScriptVersionId());
       if (scriptVersionToInactivate!=null) {
         scriptVersionToInactivate.setActive(null);
       }
-      script.setActiveScriptVersionId(scriptVersion.getId());
+      updatedScript.setActiveScriptVersionId(scriptVersion.getId());
 
     } else {
       // Find the latest script version id (if there is one)
@@ -216,12 +285,94 @@ public class ScriptStore {
       // If the latest version was not the active version
       if (latestScriptVersionId!=null && !latestScriptVersionId.equals(script.getActiveScriptVersionId())) {
         // Remove the latest version because it becomes irrelevant
-        // Only one non-active version should be maintained
+        // Only one non-active version should be maintained.  The removed version remains
+        // resolvable by id because running script executions might still replay it.
         scriptVersions.remove(scriptVersions.size()-1);
       }
     }
 
     scriptVersions.add(scriptVersion);
     scriptVersion.setVersion(scriptVersions.size());
+
+    return index.withScriptVersion(updatedScript, scriptVersion);
+  }
+
+  static Script copy(Script script) {
+    Script copy = new Script();
+    copy.setId(script.getId());
+    copy.setName(script.getName());
+    copy.setActiveScriptVersionId(script.getActiveScriptVersionId());
+    copy.setScriptVersions(new ArrayList<>(script.getScriptVersions()));
+    return copy;
+  }
+
+  /** immutable hash indexes of the scripts and script versions */
+  static class ScriptIndex {
+
+    static final ScriptIndex EMPTY = new ScriptIndex(
+      PersistentMap.empty(),
+      PersistentMap.empty(),
+      PersistentMap.empty(),
+      PersistentMap.empty(),
+      ScriptNameSuffixTrie.empty());
+
+    /** in insertion order */
+    final PersistentMap<Script> scriptsById;
+    final PersistentMap<Script> scriptsByName;
+    /** also contains the non-active versions that were replaced by a later save */
+    final PersistentMap<ScriptVersion> scriptVersionsById;
+    /** by script text, the id of the first script version with that
+     * text, which is the version whose syntax tree is shared by the
+     * later versions with the same text. */
+    final PersistentMap<String> scriptVersionIdsByText;
+    final ScriptNameSuffixTrie scriptNameSuffixes;
+    /** lazily created, most recently inserted script first */
+    volatile List<Script> scripts;
+
+    ScriptIndex(PersistentMap<Script> scriptsById, PersistentMap<Script> scriptsByName, PersistentMap<ScriptVersion> scriptVersionsById, PersistentMap<String> scriptVersionIdsByText, ScriptNameSuffixTrie scriptNameSuffixes) {
+      this.scriptsById = scriptsById;
+      this.scriptsByName = scriptsByName;
+      this.scriptVersionsById = scriptVersionsById;
+      this.scriptVersionIdsByText = scriptVersionIdsByText;
+      this.scriptNameSuffixes = scriptNameSuffixes;
+    }
+
+    ScriptIndex withScript(Script script) {
+      return new ScriptIndex(
+        scriptsById.with(script.getId(), script),
+        scriptsByName.with(script.getName(), script),
+        scriptVersionsById,
+        scriptVersionIdsByText,
+        scriptNameSuffixes.with(script.getName(), script.getId()));
+    }
+
+    ScriptIndex withScriptVersion(Script script, ScriptVersion scriptVersion) {
+      PersistentMap<ScriptVersion> newScriptVersionsById = scriptVersionsById.with(scriptVersion.getId(), scriptVersion);
+      PersistentMap<String> newScriptVersionIdsByText = scriptVersionIdsByText;
+      String scriptText = scriptVersion.getText();
+      if (scriptText!=null) {
+        String identicalScriptVersionId = scriptVersionIdsByText.get(scriptText);
+        if (identicalScriptVersionId==null) {
+          newScriptVersionIdsByText = scriptVersionIdsByText.with(scriptText, scriptVersion.getId());
+        }
+      }
+      return new ScriptIndex(
+        scriptsById.with(script.getId(), script),
+        scriptsByName.with(script.getName(), script),
+        newScriptVersionsById,
+        newScriptVersionIdsByText,
+        scriptNameSuffixes);
+    }
+
+    List<Script> getScripts() {
+      List<Script> scripts = this.scripts;
+      if (scripts==null) {
+        scripts = new ArrayList<>(scriptsById.values());
+        Collections.reverse(scripts);
+        scripts = Collections.unmodifiableList(scripts);
+        this.scripts = scripts;
+      }
+      return scripts;
+    }
   }
 }
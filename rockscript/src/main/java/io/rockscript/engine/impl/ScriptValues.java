@@ -0,0 +1,118 @@
+/*
+ * Copyright ©2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.engine.impl;
+
+import io.rockscript.util.PersistentMap;
+import io.rockscript.util.PersistentVector;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Conversions between the mutable script values ({@link ScriptObject}
+ * and {@link ScriptArray}) and their immutable snapshots
+ * ({@link PersistentMap} and {@link PersistentVector}).
+ *
+ * Values enter the script as script values and events capture
+ * snapshots, so that later updates by the script don't change
+ * the events and no deep copy is needed. */
+public class ScriptValues {
+
+  /** @return the immutable version of a script value,
+   * other values are returned as is. */
+  public static Object snapshot(Object value) {
+    if (value instanceof ScriptObject) {
+      return ((ScriptObject)value).snapshot();
+    } else if (value instanceof ScriptArray) {
+      return ((ScriptArray)value).snapshot();
+    }
+    return value;
+  }
+
+  /** @return a mutable script value for json-like values coming
+   * from outside the script like service function results.
+   * Plain maps and lists are converted once, preserving their
+   * identity: a map that occurs twice becomes a single object. */
+  public static Object toScriptValue(Object value) {
+    return toScriptValue(value, new IdentityHashMap<>());
+  }
+
+  @SuppressWarnings("unchecked")
+  static Object toScriptValue(Object value, Map<Object,Object> converted) {
+    if (isScriptContainer(value) || value instanceof Dereferencable) {
+      return value;
+    } else if (value instanceof PersistentMap) {
+      return new ScriptObject((PersistentMap<Object>) value);
+    } else if (value instanceof PersistentVector) {
+      return new ScriptArray((PersistentVector<Object>) value);
+    } else if (value instanceof Map) {
+      Object scriptObject = converted.get(value);
+      if (scriptObject==null) {
+        ScriptObject newScriptObject = new ScriptObject();
+        converted.put(value, newScriptObject);
+        for (Map.Entry<Object,Object> entry: ((Map<Object,Object>)value).entrySet()) {
+          newScriptObject.put(String.valueOf(entry.getKey()), toScriptValue(entry.getValue(), converted));
+        }
+        scriptObject = newScriptObject;
+      }
+      return scriptObject;
+    } else if (value instanceof List) {
+      Object scriptArray = converted.get(value);
+      if (scriptArray==null) {
+        ScriptArray newScriptArray = new ScriptArray();
+        converted.put(value, newScriptArray);
+        for (Object element: (List<Object>)value) {
+          newScriptArray.add(toScriptValue(element, converted));
+        }
+        scriptArray = newScriptArray;
+      }
+      return scriptArray;
+    }
+    return value;
+  }
+
+  /** deep conversion of plain maps and lists to their persistent versions.
+   * {@link Dereferencable}s like import objects are left as is. */
+  @SuppressWarnings("unchecked")
+  public static Object toPersistentValue(Object value) {
+    if (isScriptContainer(value)) {
+      return snapshot(value);
+    } else if (isPersistentContainer(value) || value instanceof Dereferencable) {
+      return value;
+    } else if (value instanceof Map) {
+      PersistentMap<Object> map = PersistentMap.empty();
+      for (Map.Entry<Object,Object> entry: ((Map<Object,Object>)value).entrySet()) {
+        map = map.with(String.valueOf(entry.getKey()), toPersistentValue(entry.getValue()));
+      }
+      return map;
+    } else if (value instanceof List) {
+      PersistentVector<Object> vector = PersistentVector.empty();
+      for (Object element: (List<Object>)value) {
+        vector = vector.plus(toPersistentValue(element));
+      }
+      return vector;
+    }
+    return value;
+  }
+
+  static boolean isScriptContainer(Object value) {
+    return value instanceof ScriptObject || value instanceof ScriptArray;
+  }
+
+  static boolean isPersistentContainer(Object value) {
+    return value instanceof PersistentMap || value instanceof PersistentVector;
+  }
+}
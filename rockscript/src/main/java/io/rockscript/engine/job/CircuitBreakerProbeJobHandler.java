@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.job;
+
+import io.rockscript.Engine;
+
+/** Turns an open circuit breaker half open and retries one of its parked
+ * service functions, see {@link io.rockscript.engine.impl.CircuitBreakers} */
+public class CircuitBreakerProbeJobHandler implements JobHandler {
+
+  String target;
+
+  public CircuitBreakerProbeJobHandler(String target) {
+    this.target = target;
+  }
+
+  @Override
+  public void execute(Engine engine) {
+    engine
+      .getCircuitBreakers()
+      .probe(target);
+  }
+
+  public String getTarget() {
+    return target;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.job;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Retries after a random delay between baseDelay and an upper bound that is
+ * 3 times larger for every next attempt, capped at maxDelay.
+ *
+ * Decorrelated jitter derives the bound from the previous delay.  Because
+ * policies don't keep state per job, the bound is derived from the number of
+ * failed attempts, which gives the same envelope.
+ *
+ * json type name <code>decorrelatedJitter</code>, eg
+ * <code>{ decorrelatedJitter: { baseDelay: 1000, maxDelay: 60000, maxAttempts: 5 } }</code> */
+public class DecorrelatedJitterRetryPolicy extends RetryPolicy {
+
+  /** milliseconds */
+  long baseDelay = 1000;
+  /** milliseconds */
+  long maxDelay = Duration.ofHours(1).toMillis();
+  int maxAttempts = 5;
+
+  /** for gson */
+  DecorrelatedJitterRetryPolicy() {
+  }
+
+  public DecorrelatedJitterRetryPolicy(Duration baseDelay, Duration maxDelay, int maxAttempts) {
+    this.baseDelay = baseDelay.toMillis();
+    this.maxDelay = maxDelay.toMillis();
+    this.maxAttempts = maxAttempts;
+  }
+
+  @Override
+  public Duration getRetryDelay(int failedAttemptsCount) {
+    if (failedAttemptsCount<1 || failedAttemptsCount>maxAttempts) {
+      return null;
+    }
+    long upperBound = capped(baseDelay * Math.pow(3, failedAttemptsCount-1), maxDelay);
+    long lowerBound = Math.min(baseDelay, upperBound);
+    long delay = upperBound>lowerBound
+                 ? ThreadLocalRandom.current().nextLong(lowerBound, upperBound+1)
+                 : upperBound;
+    return Duration.ofMillis(delay);
+  }
+
+  @Override
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public Duration getBaseDelay() {
+    return Duration.ofMillis(baseDelay);
+  }
+
+  public Duration getMaxDelay() {
+    return Duration.ofMillis(maxDelay);
+  }
+}
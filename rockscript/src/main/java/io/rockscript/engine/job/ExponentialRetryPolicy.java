@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.job;
+
+import java.time.Duration;
+
+/** Retries after initialDelay, multiplied by multiplier for each next attempt
+ * and capped at maxDelay.
+ * json type name <code>exponential</code>, eg
+ * <code>{ exponential: { initialDelay: 1000, multiplier: 2, maxDelay: 60000, maxAttempts: 5 } }</code> */
+public class ExponentialRetryPolicy extends RetryPolicy {
+
+  /** milliseconds */
+  long initialDelay = 1000;
+  double multiplier = 2;
+  /** milliseconds */
+  long maxDelay = Duration.ofHours(1).toMillis();
+  int maxAttempts = 5;
+
+  /** for gson */
+  ExponentialRetryPolicy() {
+  }
+
+  public ExponentialRetryPolicy(Duration initialDelay, double multiplier, Duration maxDelay, int maxAttempts) {
+    this.initialDelay = initialDelay.toMillis();
+    this.multiplier = multiplier;
+    this.maxDelay = maxDelay.toMillis();
+    this.maxAttempts = maxAttempts;
+  }
+
+  @Override
+  public Duration getRetryDelay(int failedAttemptsCount) {
+    if (failedAttemptsCount<1 || failedAttemptsCount>maxAttempts) {
+      return null;
+    }
+    double delay = initialDelay * Math.pow(multiplier, failedAttemptsCount-1);
+    return Duration.ofMillis(capped(delay, maxDelay));
+  }
+
+  @Override
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public Duration getInitialDelay() {
+    return Duration.ofMillis(initialDelay);
+  }
+
+  public double getMultiplier() {
+    return multiplier;
+  }
+
+  public Duration getMaxDelay() {
+    return Duration.ofMillis(maxDelay);
+  }
+}
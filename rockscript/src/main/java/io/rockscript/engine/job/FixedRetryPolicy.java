@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.engine.job;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Retries after each of a fixed list of delays.
+ * json type name <code>fixed</code>, eg
+ * <code>{ fixed: { delays: [5000, 600000] } }</code> */
+public class FixedRetryPolicy extends RetryPolicy {
+
+  /** delays in milliseconds */
+  List<Long> delays;
+
+  /** for gson */
+  FixedRetryPolicy() {
+  }
+
+  public FixedRetryPolicy(Duration... delays) {
+    List<Long> delayMillis = new ArrayList<>();
+    for (Duration delay: delays) {
+      delayMillis.add(delay.toMillis());
+    }
+    this.delays = Collections.unmodifiableList(delayMillis);
+  }
+
+  @Override
+  public Duration getRetryDelay(int failedAttemptsCount) {
+    if (delays==null || failedAttemptsCount<1 || failedAttemptsCount>delays.size()) {
+      return null;
+    }
+    return Duration.ofMillis(delays.get(failedAttemptsCount-1));
+  }
+
+  @Override
+  public int getMaxAttempts() {
+    return delays!=null ? delays.size() : 0;
+  }
+
+  public List<Long> getDelays() {
+    return delays!=null ? Collections.unmodifiableList(delays) : Collections.emptyList();
+  }
+}
@@ -32,6 +32,8 @@ public class Job {
   JobHandler jobHandler;
   Instant executionTime;
   RetryPolicy retryPolicy;
+  /** the retry policy is shared between jobs, so the attempts are counted here */
+  int failedAttemptsCount;
   List<JobRun> jobRuns;
 
   public Job() {
@@ -83,7 +85,18 @@ public class Job {
     jobRuns.add(jobRun);
   }
 
+  public int getFailedAttemptsCount() {
+    return failedAttemptsCount;
+  }
+
+  /** counts a failed attempt and returns the delay before the
+   * next attempt or null if the job should not be retried */
   public TemporalAmount getNextRetryDuration() {
-    return retryPolicy!=null && !retryPolicy.isEmpty()? retryPolicy.removeFirst() : null;
+    failedAttemptsCount++;
+    return retryPolicy!=null ? retryPolicy.getRetryDelay(failedAttemptsCount) : null;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
   }
 }
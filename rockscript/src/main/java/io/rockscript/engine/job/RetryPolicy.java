@@ -20,16 +20,53 @@
 package io.rockscript.engine.job;
 
 import java.time.Duration;
-import java.time.temporal.TemporalAmount;
-import java.util.LinkedList;
 
-public class RetryPolicy extends LinkedList<TemporalAmount> {
+/** Immutable definition of the delays between the attempts of a job or
+ * a service function.  One instance can be shared by all jobs and requests:
+ * the number of failed attempts is kept by the {@link Job} or passed in by
+ * the service function, never in the policy.
+ *
+ * In a script request object, a retry policy is specified as a wrapper
+ * object with the policy type name, eg
+ * <code>retryPolicy: { exponential: { initialDelay: 1000, maxDelay: 60000, maxAttempts: 5 } }</code>.
+ * Delays in json are in milliseconds. */
+public abstract class RetryPolicy {
 
   public static RetryPolicy createDefaultRetryPolicy() {
-    RetryPolicy retryPolicy = new RetryPolicy();
-    retryPolicy.add(Duration.ofSeconds(5));
-    retryPolicy.add(Duration.ofMinutes(10));
-    retryPolicy.add(Duration.ofHours(4));
-    return retryPolicy;
+    return fixed(
+      Duration.ofSeconds(5),
+      Duration.ofMinutes(10),
+      Duration.ofHours(4));
+  }
+
+  /** retries after each of the given delays */
+  public static FixedRetryPolicy fixed(Duration... delays) {
+    return new FixedRetryPolicy(delays);
+  }
+
+  /** retries after initialDelay, multiplied by multiplier for each next
+   * attempt, but never longer than maxDelay */
+  public static ExponentialRetryPolicy exponential(Duration initialDelay, double multiplier, Duration maxDelay, int maxAttempts) {
+    return new ExponentialRetryPolicy(initialDelay, multiplier, maxDelay, maxAttempts);
+  }
+
+  /** retries after a random delay between baseDelay and a bound that grows
+   * 3 times with every attempt up to maxDelay, so that failures that happened
+   * at the same time don't retry in lockstep */
+  public static DecorrelatedJitterRetryPolicy decorrelatedJitter(Duration baseDelay, Duration maxDelay, int maxAttempts) {
+    return new DecorrelatedJitterRetryPolicy(baseDelay, maxDelay, maxAttempts);
+  }
+
+  /** @param failedAttemptsCount is 1 after the first failure.
+   * @return the delay before the next attempt or null if
+   * the next attempt should not be made. */
+  public abstract Duration getRetryDelay(int failedAttemptsCount);
+
+  /** @return the maximum number of retries */
+  public abstract int getMaxAttempts();
+
+  /** caps a computed delay at maxMillis, also when the computation went to infinity */
+  static long capped(double millis, long maxMillis) {
+    return millis>=maxMillis ? maxMillis : (long) millis;
   }
 }
@@ -51,11 +51,17 @@ public class Http {
   public interface Headers {
     String CONTENT_TYPE = "Content-Type";
     String CONTENT_LENGTH = "Content-Length";
+    String CACHE_CONTROL = "Cache-Control";
+    String ETAG = "ETag";
+    String LAST_MODIFIED = "Last-Modified";
+    String IF_NONE_MATCH = "If-None-Match";
+    String IF_MODIFIED_SINCE = "If-Modified-Since";
   }
 
   public interface ContentTypes {
     String APPLICATION_JSON = "application/json";
     String APPLICATION_LD_JSON = "application/ld+json";
+    String APPLICATION_NDJSON = "application/x-ndjson";
     String TEXT_PLAIN = "text/plain";
     String TEXT_HTML = "text/html";
   }
@@ -88,6 +94,7 @@ public class Http {
     int REQUEST_TIMEOUT_408 = 408;
     int CONFLICT_409 = 409;
     int GONE_410 = 410;
+    int TOO_MANY_REQUESTS_429 = 429;
 
     int INTERNAL_SERVER_ERROR_500 = 500;
     int NOT_IMPLEMENTED_501 = 501;
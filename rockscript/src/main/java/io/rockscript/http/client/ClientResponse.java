@@ -20,7 +20,6 @@
 package io.rockscript.http.client;
 
 import io.rockscript.http.Http;
-import io.rockscript.util.Io;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
@@ -28,9 +27,12 @@ import org.apache.http.NameValuePair;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.message.BasicHeaderValueParser;
 import org.apache.http.message.HeaderValueParser;
+import org.apache.http.util.EntityUtils;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -64,9 +66,7 @@ public class ClientResponse {
       HttpEntity entity = apacheResponse.getEntity();
       if (entity != null) {
         try {
-          String charset = getContentTypeCharset("UTF-8");
-          InputStream content = entity.getContent();
-          this.body = Io.getString(content, charset);
+          readBody(entity);
         } catch (Exception e) {
           throw new RuntimeException("Couldn't ready body/entity from http request " + toString(), e);
         }
@@ -76,6 +76,15 @@ public class ClientResponse {
     }
   }
 
+  /** Invoked from the constructor to read the response entity.  Reads the
+   * body bytes once and decodes them with the charset of the content type.
+   * Subclasses can override to stream the entity.  Note that subclass field
+   * initializers run after this method. */
+  protected void readBody(HttpEntity entity) throws IOException {
+    Charset charset = getContentTypeCharset(StandardCharsets.UTF_8);
+    this.body = new String(EntityUtils.toByteArray(entity), charset);
+  }
+
   static Map<String, List<String>> extractHeaders(org.apache.http.HttpResponse apacheResponse) {
     Map<String, List<String>> headers = new LinkedHashMap<>();
     Header[] allHeaders = apacheResponse.getAllHeaders();
@@ -233,7 +242,7 @@ public class ClientResponse {
 
   public List<String> getHeader(String headerName) {
     if (headers!=null) {
-      return headers.get(Http.Headers.CONTENT_TYPE);
+      return headers.get(headerName);
     }
     return null;
   }
@@ -254,6 +263,20 @@ public class ClientResponse {
     return defaultCharset;
   }
 
+  /** the content type charset or the defaultCharset if the content type
+   * has no charset or if the charset is not supported. */
+  public Charset getContentTypeCharset(Charset defaultCharset) {
+    String charsetName = getContentTypeCharset((String)null);
+    if (charsetName!=null) {
+      try {
+        return Charset.forName(charsetName);
+      } catch (IllegalArgumentException e) {
+        // IllegalCharsetNameException and UnsupportedCharsetException
+      }
+    }
+    return defaultCharset;
+  }
+
   public void setBody(String body) {
     this.body = body;
   }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.http.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Fails the read when more than maxBodySize bytes are read
+ * so that huge responses don't get buffered in memory. */
+public class MaxBodySizeInputStream extends FilterInputStream {
+
+  long maxBodySize;
+  long bytesRead;
+
+  public MaxBodySizeInputStream(InputStream inputStream, long maxBodySize) {
+    super(inputStream);
+    this.maxBodySize = maxBodySize;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b!=-1) {
+      count(1);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    int n = super.read(buffer, offset, length);
+    if (n>0) {
+      count(n);
+    }
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = super.skip(n);
+    count(skipped);
+    return skipped;
+  }
+
+  private void count(long n) throws IOException {
+    bytesRead += n;
+    if (bytesRead>maxBodySize) {
+      throw new IOException("Response body is larger than the maximum of "+maxBodySize+" bytes");
+    }
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+}
@@ -48,4 +48,8 @@ public abstract class HttpException extends RuntimeException {
   }
 
   public abstract int getStatusCode();
+
+  /** adds the headers that go with this status to the error response */
+  public void addHeaders(ServerResponse response) {
+  }
 }
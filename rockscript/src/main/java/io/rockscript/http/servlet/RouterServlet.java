@@ -60,6 +60,7 @@ public class RouterServlet extends HttpServlet {
         requestHandler.handle(request, response);
       } catch (HttpException e) {
         response.status(e.getStatusCode());
+        e.addHeaders(response);
         response.bodyString("{\"message\":\"" + e.getMessage() + "\"}");
         if (exceptionListener!=null) {
           exceptionListener.exception(request, response, e);
@@ -25,6 +25,8 @@ import org.slf4j.Logger;
 import javax.servlet.http.HttpServletRequest;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
 import java.lang.reflect.Type;
 import java.util.Collections;
@@ -119,6 +121,16 @@ public class ServerRequest {
     return bodyString;
   }
 
+  /** for streaming the body instead of reading it in memory with
+   * {@link #getBodyAsString()}.  The body is not logged. */
+  public Reader getBodyReader() {
+    try {
+      return new BufferedReader(new InputStreamReader(request.getInputStream(), getCharset()));
+    } catch (IOException e) {
+      throw new RuntimeException("Couldn't read request body: "+e.getMessage(), e);
+    }
+  }
+
   public <T> T getBodyAs(Type type) {
     return getBodyAs(type, getCharset());
   }
@@ -26,10 +26,9 @@ import org.slf4j.Logger;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
+import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 public class ServerResponse {
 
@@ -108,6 +107,17 @@ public class ServerResponse {
     return bodyJsonString(gson.toJson(object));
   }
 
+  /** for streaming the body in UTF-8 without a content length.
+   * Headers have to be set before this is invoked. */
+  public Writer bodyWriter(String bodyLog) {
+    try {
+      setBodyLog(bodyLog);
+      return new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new RuntimeException("Couldn't send body: "+e.getMessage(), e);
+    }
+  }
+
   /** sets the string that will be logged by {@link #logTo(Logger)} as the body. */
   public void setBodyLog(String bodyLog) {
     this.bodyLog = bodyLog;
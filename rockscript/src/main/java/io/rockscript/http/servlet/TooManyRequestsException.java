@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.http.servlet;
+
+import java.time.Duration;
+
+/** Rejects a request because the server is at capacity.  The response
+ * gets a Retry-After header with the number of seconds to back off. */
+public class TooManyRequestsException extends HttpException {
+
+  private static final long serialVersionUID = 1L;
+
+  Duration retryAfter;
+
+  public TooManyRequestsException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+
+  /** Retry-After header value in whole seconds, at least 1 */
+  public long getRetryAfterSeconds() {
+    return retryAfter!=null ? Math.max(1, (retryAfter.toMillis()+999)/1000) : 1;
+  }
+
+  @Override
+  public void addHeaders(ServerResponse response) {
+    response.header("Retry-After", Long.toString(getRetryAfterSeconds()));
+  }
+
+  @Override
+  public int getStatusCode() {
+    return 429;
+  }
+}
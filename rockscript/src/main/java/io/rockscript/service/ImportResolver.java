@@ -19,33 +19,51 @@ package io.rockscript.service;
 import io.rockscript.Engine;
 import io.rockscript.engine.impl.RemoteServiceFunctionJsonObject;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/** Resolves the urls of <code>system.import</code>.  Urls without an
+ * {@link ImportProvider} are remote services.  Their import objects are
+ * cached per url, so that their service function handles are reused too. */
 public class ImportResolver {
 
+  public static final int MAX_REMOTE_IMPORT_OBJECTS = 1000;
+
   /** importProviders by name */
   Map<String,ImportProvider> importProviders = new HashMap<>();
+  /** least recently used remote import objects by url */
+  Map<String,RemoteServiceFunctionJsonObject> remoteImportObjects = Collections.synchronizedMap(
+    new LinkedHashMap<String,RemoteServiceFunctionJsonObject>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,RemoteServiceFunctionJsonObject> eldest) {
+        return size()>MAX_REMOTE_IMPORT_OBJECTS;
+      }
+    });
+  /** incremented when an import provider is added, which
+   * invalidates the static imports that were resolved before */
+  volatile int version;
 
   public ImportResolver(Engine engine, List<ImportProvider> importProviders) {
     importProviders.forEach(importProvider -> add(importProvider));
   }
 
   public ImportResolver add(ImportProvider importProvider) {
-    importProviders.put(importProvider.getImportObject().getServiceName(), importProvider);
+    String url = importProvider.getImportObject().getServiceName();
+    importProviders.put(url, importProvider);
+    remoteImportObjects.remove(url);
+    version++;
     return this;
   }
 
   public Object get(String url) {
-    Object importObject;
     ImportProvider importProvider = importProviders.get(url);
     if (importProvider!=null) {
-      importObject = importProvider.getImportObject();
-    } else {
-      importObject = new RemoteServiceFunctionJsonObject(url);
+      return importProvider.getImportObject();
     }
-    return importObject;
+    return remoteImportObjects.computeIfAbsent(url, RemoteServiceFunctionJsonObject::new);
   }
 
   public ImportObject createImport(String url) {
@@ -54,4 +72,7 @@ public class ImportResolver {
     return importObject;
   }
 
+  public int getVersion() {
+    return version;
+  }
 }
@@ -99,6 +99,11 @@ public class ServiceFunctionInput {
     return getEngine().getExecutor();
   }
 
+  /** use this executor for service functions that block on I/O */
+  public Executor getIoExecutor() {
+    return getEngine().getIoExecutor();
+  }
+
   public Execution<?> getExecution() {
     return execution;
   }
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.service.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import io.rockscript.Engine;
+import io.rockscript.api.commands.ServiceFunctionFailureCommand;
+import io.rockscript.engine.impl.ContinuationReference;
+import io.rockscript.engine.impl.LockOperationEnd;
+import io.rockscript.engine.impl.Time;
+import io.rockscript.http.Http;
+import io.rockscript.http.servlet.BadRequestException;
+import io.rockscript.service.AbstractServiceFunction;
+import io.rockscript.service.ImportObject;
+import io.rockscript.service.ImportProvider;
+import io.rockscript.service.ServiceFunctionInput;
+import io.rockscript.service.ServiceFunctionOutput;
+import io.rockscript.service.http.HttpServiceClientRequest;
+import io.rockscript.service.http.HttpServiceFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Key/value cache that is shared by all script executions, eg for
+ * access tokens or configuration that is fetched from a service.
+ *
+ * <code>var cache = system.import('rockscript.io/cache');</code>
+ * <ul>
+ *   <li><code>cache.get('key')</code> returns the value or undefined</li>
+ *   <li><code>cache.put({key: 'key', value: ..., ttl: seconds})</code></li>
+ *   <li><code>cache.computeIfAbsent({key: 'key', ttl: seconds, http: {url: ...}})</code>
+ *     returns the cached value or else performs the http request and caches
+ *     the response, which has the same format as the response of <code>http.get</code>.
+ *     Concurrent misses for the same key share one http request.</li>
+ * </ul>
+ * Without ttl, entries stay until they are evicted as least recently used.
+ *
+ * Values are copied in and out as json, so executions never share
+ * mutable objects.  Like all service functions, the results are recorded
+ * in a ServiceFunctionEndedEvent, so replay never consults the cache. */
+public class CacheService extends ImportObject implements ImportProvider {
+
+  static Logger log = LoggerFactory.getLogger(CacheService.class);
+
+  public static final String SERVICE_NAME = "rockscript.io/cache";
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  int maxEntries = DEFAULT_MAX_ENTRIES;
+  /** access ordered, guarded by this */
+  LinkedHashMap<String,CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  Map<String,CompletableFuture<JsonElement>> computations = new ConcurrentHashMap<>();
+  AtomicLong hitCount = new AtomicLong();
+  AtomicLong missCount = new AtomicLong();
+
+  public CacheService() {
+    super(SERVICE_NAME);
+    put("get", this::invokeGet);
+    put("put", this::invokePut);
+    put(new ComputeIfAbsentFunction());
+  }
+
+  public CacheService maxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+    return this;
+  }
+
+  static class CacheEntry {
+    JsonElement value;
+    /** null means the entry doesn't expire */
+    Instant expireTime;
+
+    CacheEntry(JsonElement value, Instant expireTime) {
+      this.value = value;
+      this.expireTime = expireTime;
+    }
+
+    boolean isExpired(Instant now) {
+      return expireTime!=null && !now.isBefore(expireTime);
+    }
+  }
+
+  ServiceFunctionOutput invokeGet(ServiceFunctionInput input) {
+    Object arg = input.getArg(0);
+    String key = arg instanceof String ? (String) arg : getKey(input);
+    JsonElement value = getValue(key);
+    return ServiceFunctionOutput.endFunction(value!=null ? input.getGson().fromJson(value, Object.class) : null);
+  }
+
+  ServiceFunctionOutput invokePut(ServiceFunctionInput input) {
+    String key = getKey(input);
+    Object value = input.getArgProperty("value");
+    putValue(key, input.getGson().toJsonTree(value), getTtl(input));
+    return ServiceFunctionOutput.endFunction();
+  }
+
+  /** On a miss, the http request is performed on the I/O executor, outside the script execution lock */
+  class ComputeIfAbsentFunction extends AbstractServiceFunction {
+
+    ComputeIfAbsentFunction() {
+      super("computeIfAbsent");
+    }
+
+    @Override
+    public List<String> getArgNames() {
+      return null;
+    }
+
+    @Override
+    public ServiceFunctionOutput invoke(ServiceFunctionInput input) {
+      String key = getKey(input);
+      Gson gson = input.getGson();
+      JsonElement value = getValue(key);
+      if (value!=null) {
+        return ServiceFunctionOutput.endFunction(gson.fromJson(value, Object.class));
+      }
+
+      Object requestObject = input.getArgProperty("http");
+      BadRequestException.throwIfNull(requestObject, "computeIfAbsent requires an http request object");
+      HttpServiceClientRequest request = HttpServiceFunction.createClientRequest(requestObject, input);
+      if (request.getMethod()==null) {
+        request.setMethod(Http.Methods.GET);
+      }
+      Duration ttl = getTtl(input);
+      Engine engine = input.getEngine();
+      ContinuationReference continuationReference = input.getContinuationReference();
+
+      CompletableFuture<JsonElement> computation = new CompletableFuture<>();
+      CompletableFuture<JsonElement> existingComputation = computations.putIfAbsent(key, computation);
+      if (existingComputation!=null) {
+        computation = existingComputation;
+      } else {
+        CompletableFuture<JsonElement> leaderComputation = computation;
+        input.getIoExecutor().execute(()->compute(key, request, ttl, gson, leaderComputation));
+      }
+      computation.whenComplete((computedValue, exception) -> {
+        if (exception==null) {
+          engine
+            .getLockOperationExecutor()
+            .executeInLock(new LockOperationEnd(continuationReference, gson.fromJson(computedValue, Object.class)));
+        } else {
+          new ServiceFunctionFailureCommand()
+            .continuationReference(continuationReference)
+            .error(exception.getMessage())
+            .execute(engine);
+        }
+      });
+      return ServiceFunctionOutput.waitForFunctionEndCallback();
+    }
+  }
+
+  void compute(String key, HttpServiceClientRequest request, Duration ttl, Gson gson, CompletableFuture<JsonElement> computation) {
+    try {
+      Map<String,Object> responseObject = request.execute().toResponseObject();
+      int status = ((Number)responseObject.get("status")).intValue();
+      boolean expected = request.getExpectedStatus()!=null
+        ? status==request.getExpectedStatus()
+        : 200<=status && status<300;
+      if (!expected) {
+        throw new RuntimeException("Not caching "+key+": response status was "+status);
+      }
+      JsonElement value = gson.toJsonTree(responseObject);
+      putValue(key, value, ttl);
+      computation.complete(value);
+    } catch (Exception e) {
+      log.debug("Couldn't compute cache value "+key+": "+e.getMessage(), e);
+      computation.completeExceptionally(e);
+    } finally {
+      computations.remove(key, computation);
+    }
+  }
+
+  synchronized JsonElement getValue(String key) {
+    CacheEntry entry = entries.get(key);
+    if (entry==null || entry.isExpired(Time.now())) {
+      if (entry!=null) {
+        entries.remove(key);
+      }
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    return entry.value;
+  }
+
+  synchronized void putValue(String key, JsonElement value, Duration ttl) {
+    entries.put(key, new CacheEntry(value, ttl!=null ? Time.now().plus(ttl) : null));
+    evict();
+  }
+
+  /** removes expired entries first and then the least recently used ones */
+  private void evict() {
+    if (entries.size()>maxEntries) {
+      Instant now = Time.now();
+      entries.values().removeIf(entry -> entry.isExpired(now));
+    }
+    Iterator<String> keys = entries.keySet().iterator();
+    while (entries.size()>maxEntries && keys.hasNext()) {
+      keys.next();
+      keys.remove();
+    }
+  }
+
+  private static String getKey(ServiceFunctionInput input) {
+    Object key = input.getArgProperty("key");
+    BadRequestException.throwIfNull(key, "key is required");
+    return key.toString();
+  }
+
+  /** ttl in seconds */
+  private static Duration getTtl(ServiceFunctionInput input) {
+    Object ttl = input.getArgProperty("ttl");
+    return ttl instanceof Number
+      ? Duration.ofMillis((long) (((Number)ttl).doubleValue()*1000))
+      : null;
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  @Override
+  public ImportObject getImportObject() {
+    return this;
+  }
+}
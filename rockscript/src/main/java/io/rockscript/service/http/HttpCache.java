@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.service.http;
+
+import io.rockscript.engine.impl.Time;
+import io.rockscript.http.Http;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Least recently used cache of http GET responses for the requests
+ * that opt in with <code>cache: true</code> or <code>cacheMaxAge: seconds</code>.
+ *
+ * Freshness comes from the request's cacheMaxAge or else from the
+ * response's Cache-Control max-age.  Stale entries with an ETag or
+ * Last-Modified header are revalidated with a conditional request.
+ * Concurrent requests for the same key share one upstream request.
+ *
+ * The cache sits in front of the upstream request only: hits are still
+ * passed to the script as a normal function end, so they are recorded in
+ * a ServiceFunctionEndedEvent and replay never consults the cache. */
+public class HttpCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  /** headers that differ between attempts and are not part of the cache key */
+  static final String FAILED_ATTEMPTS_COUNT = "Failed-Attempts-Count";
+
+  int maxEntries;
+  /** access ordered, guarded by this */
+  LinkedHashMap<String,HttpCacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  Map<String,CompletableFuture<Map<String,Object>>> requests = new ConcurrentHashMap<>();
+  AtomicLong hitCount = new AtomicLong();
+  AtomicLong missCount = new AtomicLong();
+  AtomicLong revalidatedCount = new AtomicLong();
+  AtomicLong sharedCount = new AtomicLong();
+
+  public HttpCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  public HttpCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  public static class HttpCacheEntry {
+    Map<String,Object> responseObject;
+    String etag;
+    String lastModified;
+    /** null means the entry has to be revalidated before it is used */
+    Instant expireTime;
+
+    boolean isFresh(Instant now) {
+      return expireTime!=null && now.isBefore(expireTime);
+    }
+
+    boolean canRevalidate() {
+      return etag!=null || lastModified!=null;
+    }
+  }
+
+  public boolean isCacheable(HttpServiceClientRequest request) {
+    return Http.Methods.GET.equals(request.getMethod())
+           && (Boolean.TRUE.equals(request.getCache()) || request.getCacheMaxAge()!=null);
+  }
+
+  public boolean isFresh(HttpServiceClientRequest request) {
+    HttpCacheEntry entry = getEntry(getKey(request));
+    return entry!=null && entry.isFresh(Time.now());
+  }
+
+  /** @return a future for the response object of the request.  The future
+   * is completed when the upstream request that this request waits for
+   * is done.  The leading request is executed on the calling thread. */
+  public CompletableFuture<Map<String,Object>> get(HttpServiceClientRequest request) {
+    String key = getKey(request);
+    HttpCacheEntry entry = getEntry(key);
+    if (entry!=null && entry.isFresh(Time.now())) {
+      hitCount.incrementAndGet();
+      return CompletableFuture.completedFuture(entry.responseObject);
+    }
+    CompletableFuture<Map<String,Object>> response = new CompletableFuture<>();
+    CompletableFuture<Map<String,Object>> existingResponse = requests.putIfAbsent(key, response);
+    if (existingResponse!=null) {
+      sharedCount.incrementAndGet();
+      return existingResponse;
+    }
+    try {
+      response.complete(fetch(key, request, entry));
+    } catch (Exception e) {
+      response.completeExceptionally(e);
+    } finally {
+      requests.remove(key, response);
+    }
+    return response;
+  }
+
+  Map<String,Object> fetch(String key, HttpServiceClientRequest request, HttpCacheEntry staleEntry) {
+    if (staleEntry!=null) {
+      if (staleEntry.etag!=null) {
+        request.header(Http.Headers.IF_NONE_MATCH, staleEntry.etag);
+      }
+      if (staleEntry.lastModified!=null) {
+        request.header(Http.Headers.IF_MODIFIED_SINCE, staleEntry.lastModified);
+      }
+    }
+
+    HttpServiceClientResponse response = request.execute();
+
+    if (staleEntry!=null && response.getStatus()==Http.ResponseCodes.NOT_MODIFIED_304) {
+      revalidatedCount.incrementAndGet();
+      HttpCacheEntry revalidatedEntry = new HttpCacheEntry();
+      revalidatedEntry.responseObject = staleEntry.responseObject;
+      revalidatedEntry.etag = staleEntry.etag;
+      revalidatedEntry.lastModified = staleEntry.lastModified;
+      revalidatedEntry.expireTime = getExpireTime(request, response);
+      put(key, revalidatedEntry);
+      return staleEntry.responseObject;
+    }
+
+    missCount.incrementAndGet();
+    Map<String,Object> responseObject = response.toResponseObject();
+    if (response.getStatus()==Http.ResponseCodes.OK_200
+        && !getCacheControlDirectives(response).contains("no-store")) {
+      HttpCacheEntry entry = new HttpCacheEntry();
+      entry.responseObject = responseObject;
+      entry.etag = getHeader(response, Http.Headers.ETAG);
+      entry.lastModified = getHeader(response, Http.Headers.LAST_MODIFIED);
+      entry.expireTime = getExpireTime(request, response);
+      if (entry.isFresh(Time.now()) || entry.canRevalidate()) {
+        put(key, entry);
+      } else {
+        remove(key);
+      }
+    }
+    return responseObject;
+  }
+
+  /** the request's cacheMaxAge overrides the response's Cache-Control max-age.
+   * @return null if the response has to be revalidated on every request. */
+  Instant getExpireTime(HttpServiceClientRequest request, HttpServiceClientResponse response) {
+    Long maxAge = request.getCacheMaxAge();
+    if (maxAge==null) {
+      List<String> directives = getCacheControlDirectives(response);
+      if (directives.contains("no-cache")) {
+        return null;
+      }
+      for (String directive: directives) {
+        if (directive.startsWith("max-age=")) {
+          try {
+            maxAge = Long.parseLong(directive.substring("max-age=".length()).trim());
+          } catch (NumberFormatException e) {
+            return null;
+          }
+        }
+      }
+    }
+    return maxAge!=null ? Time.now().plusSeconds(maxAge) : null;
+  }
+
+  static List<String> getCacheControlDirectives(HttpServiceClientResponse response) {
+    String cacheControl = getHeader(response, Http.Headers.CACHE_CONTROL);
+    if (cacheControl==null) {
+      return Collections.emptyList();
+    }
+    List<String> directives = new ArrayList<>();
+    for (String directive: cacheControl.split(",")) {
+      directives.add(directive.trim().toLowerCase());
+    }
+    return directives;
+  }
+
+  /** header names are matched case insensitive */
+  static String getHeader(HttpServiceClientResponse response, String headerName) {
+    Map<String,List<String>> headers = response.getHeaders();
+    if (headers!=null) {
+      for (Map.Entry<String,List<String>> header: headers.entrySet()) {
+        if (headerName.equalsIgnoreCase(header.getKey())
+            && header.getValue()!=null
+            && !header.getValue().isEmpty()) {
+          return String.join(",", header.getValue());
+        }
+      }
+    }
+    return null;
+  }
+
+  /** the url, the options that shape the response object and the
+   * request headers, sorted by name */
+  static String getKey(HttpServiceClientRequest request) {
+    StringBuilder key = new StringBuilder();
+    key.append(request.getUrl());
+    if (request.getFields()!=null) {
+      key.append("\nfields: ");
+      key.append(request.getFields());
+    }
+    if (request.getMaxBodySize()!=null) {
+      key.append("\nmaxBodySize: ");
+      key.append(request.getMaxBodySize());
+    }
+    Map<String,List<String>> headers = request.getHeaders();
+    if (headers!=null) {
+      new TreeMap<>(headers).forEach((name, values)->{
+        if (!FAILED_ATTEMPTS_COUNT.equals(name)) {
+          key.append('\n');
+          key.append(name);
+          key.append(": ");
+          key.append(values);
+        }
+      });
+    }
+    return key.toString();
+  }
+
+  synchronized HttpCacheEntry getEntry(String key) {
+    return entries.get(key);
+  }
+
+  synchronized void put(String key, HttpCacheEntry entry) {
+    entries.put(key, entry);
+    Iterator<HttpCacheEntry> leastRecentlyUsed = entries.values().iterator();
+    while (entries.size()>maxEntries) {
+      leastRecentlyUsed.next();
+      leastRecentlyUsed.remove();
+    }
+  }
+
+  synchronized void remove(String key) {
+    entries.remove(key);
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getRevalidatedCount() {
+    return revalidatedCount.get();
+  }
+
+  /** number of requests that waited for the upstream request of another request */
+  public long getSharedCount() {
+    return sharedCount.get();
+  }
+}
@@ -16,22 +16,24 @@
 
 package io.rockscript.service.http;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import io.rockscript.Engine;
 import io.rockscript.api.commands.ServiceFunctionFailureCommand;
+import io.rockscript.engine.impl.CircuitBreakers.CircuitBreaker;
 import io.rockscript.engine.impl.ContinuationReference;
 import io.rockscript.engine.impl.LockOperationEnd;
+import io.rockscript.engine.impl.OutboundLimiter.Permit;
 import io.rockscript.engine.impl.Time;
 import io.rockscript.engine.job.RetryPolicy;
-import io.rockscript.http.client.ClientResponse;
+import io.rockscript.http.Http;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.TemporalAmount;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 public class HttpRequestRunnable implements Runnable {
 
@@ -42,6 +44,12 @@ public class HttpRequestRunnable implements Runnable {
   HttpServiceClientRequest request;
   Integer failedAttemptsCount;
   RetryPolicy retryPolicy;
+  HttpCache httpCache;
+  /** permit of the {@link io.rockscript.engine.impl.OutboundLimiter}, null if the request is not limited */
+  Permit permit;
+  /** null if the request is not guarded by a circuit breaker */
+  CircuitBreaker circuitBreaker;
+  boolean outcomeReported;
 
   public HttpRequestRunnable(Engine engine, ContinuationReference continuationReference, HttpServiceClientRequest request, Integer failedAttemptsCount, RetryPolicy retryPolicy) {
     this.engine = engine;
@@ -51,23 +59,71 @@ public class HttpRequestRunnable implements Runnable {
     this.retryPolicy = retryPolicy;
   }
 
-  @Override
-  public void run() {
-    ClientResponse response = null;
+  public HttpRequestRunnable httpCache(HttpCache httpCache) {
+    this.httpCache = httpCache;
+    return this;
+  }
+
+  public HttpRequestRunnable permit(Permit permit) {
+    this.permit = permit;
+    return this;
+  }
+
+  public HttpRequestRunnable circuitBreaker(CircuitBreaker circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+    return this;
+  }
+
+  /** true if the response will be served from the cache without an upstream request */
+  public boolean isCacheHit() {
+    return httpCache!=null
+           && httpCache.isCacheable(request)
+           && httpCache.isFresh(request);
+  }
+
+  /** the host and port of the request url, which is the key for the
+   * {@link io.rockscript.engine.impl.OutboundLimiter} and the
+   * {@link io.rockscript.engine.impl.CircuitBreakers} */
+  public String getHost() {
     try {
-      response = request.execute();
+      String host = new URI(request.getUrl()).getAuthority();
+      return host!=null ? host : request.getUrl();
+    } catch (URISyntaxException e) {
+      return request.getUrl();
+    }
+  }
 
-      Object responseObject = null;
-      if (response.isContentTypeApplicationJson()) {
-        responseObject = getResponseObjectWithParsedJsonBody(response);
-      } else {
-        responseObject = getResponseObjectWithOtherBody(response);
+  @Override
+  public void run() {
+    if (httpCache!=null && httpCache.isCacheable(request)) {
+      httpCache
+        .get(request)
+        .whenComplete((responseObject, exception) -> {
+          if (exception!=null) {
+            handleException(exception instanceof CompletionException ? exception.getCause() : exception);
+          } else {
+            handleResponse(responseObject);
+          }
+        });
+    } else {
+      Map<String,Object> responseObject;
+      try {
+        responseObject = request.execute().toResponseObject();
+      } catch (Exception e) {
+        handleException(e);
+        return;
       }
+      handleResponse(responseObject);
+    }
+  }
 
+  void handleResponse(Map<String,Object> responseObject) {
+    int status = ((Number)responseObject.get("status")).intValue();
+    reportOutcome(status<500 && status!=Http.ResponseCodes.TOO_MANY_REQUESTS_429);
+    try {
       if (request.getExpectedStatus()!=null) {
-        int status = response.getStatus();
         if (status!=request.getExpectedStatus()) {
-          throw new RuntimeException("Expected response status " + request.getExpectedStatus() + ", but was " + status + "\n" + response.toString());
+          throw new RuntimeException("Expected response status " + request.getExpectedStatus() + ", but was " + status + "\n" + responseObject);
         }
       }
 
@@ -76,44 +132,56 @@ public class HttpRequestRunnable implements Runnable {
         .executeInLock(new LockOperationEnd(continuationReference, responseObject));
 
     } catch (Exception e) {
-      log.debug("Exception while executing HTTP "+request.getMethod()+" "+request.getUrl()+": "+e.getMessage(), e);
-
-      Instant retry = null;
-      if (retryPolicy!=null) {
-        failedAttemptsCount = failedAttemptsCount!=null ? failedAttemptsCount+1 : 1;
-        if (failedAttemptsCount<=retryPolicy.size()) {
-          TemporalAmount timeBeforeRetry = retryPolicy.get(failedAttemptsCount-1);
-          retry = Time.now().plus(timeBeforeRetry);
-        } else {
-          engine.getEngineLogStore()
-            .error("HTTP function failed ater "+failedAttemptsCount+" attempts: "+e.getMessage()+"\n"+request.toString(), e);
-
-          // TODO add some operator interface to find stuck instances and retry manually later
-        }
-      }
-
-      new ServiceFunctionFailureCommand()
-        .continuationReference(continuationReference)
-        .error(e.getMessage())
-        .retry(retry)
-        .execute(engine);
+      handleException(e);
     }
   }
 
-  private Object getResponseObjectWithParsedJsonBody(ClientResponse response) {
-    Gson gson = engine.getGson();
-    String bodyString = response.getBody();
-    JsonParser parser = new JsonParser();
-    JsonElement bodyObject = parser.parse(bodyString).getAsJsonObject();
-    response.setBody(null);
-    JsonObject responseJsonObject = gson.toJsonTree(response).getAsJsonObject();
-    responseJsonObject.add("body", bodyObject);
-    return gson.fromJson(responseJsonObject, Object.class);
+  void handleException(Throwable e) {
+    reportOutcome(false);
+    log.debug("Exception while executing HTTP "+request.getMethod()+" "+request.getUrl()+": "+e.getMessage(), e);
+
+    Instant retry = null;
+    if (retryPolicy!=null) {
+      failedAttemptsCount = failedAttemptsCount!=null ? failedAttemptsCount+1 : 1;
+      Duration timeBeforeRetry = retryPolicy.getRetryDelay(failedAttemptsCount);
+      if (timeBeforeRetry!=null) {
+        retry = Time.now().plus(timeBeforeRetry);
+      } else {
+        engine.getEngineLogStore()
+          .error("HTTP function failed ater "+failedAttemptsCount+" attempts: "+e.getMessage()+"\n"+request.toString(), e);
+
+        // TODO add some operator interface to find stuck instances and retry manually later
+      }
+    }
+    if (retry!=null
+        && circuitBreaker!=null
+        && circuitBreaker.parkInsteadOfRetry(continuationReference)) {
+      // the circuit breaker's probe job replaces the retry job
+      retry = null;
+    }
+
+    new ServiceFunctionFailureCommand()
+      .continuationReference(continuationReference)
+      .error(e.getMessage())
+      .retry(retry)
+      .execute(engine);
   }
 
-  private Object getResponseObjectWithOtherBody(ClientResponse response) {
-    Gson gson = engine.getGson();
-    JsonObject responseJsonObject = gson.toJsonTree(response).getAsJsonObject();
-    return gson.fromJson(responseJsonObject, Object.class);
+  /** reports the outcome of the upstream request once to the limiter and the circuit breaker */
+  void reportOutcome(boolean success) {
+    if (outcomeReported) {
+      return;
+    }
+    outcomeReported = true;
+    if (permit!=null) {
+      permit.release(success);
+    }
+    if (circuitBreaker!=null) {
+      if (success) {
+        circuitBreaker.onSuccess();
+      } else {
+        circuitBreaker.onFailure();
+      }
+    }
   }
 }
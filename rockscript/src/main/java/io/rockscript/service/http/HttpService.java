@@ -22,7 +22,11 @@ import io.rockscript.service.ImportProvider;
 
 public class HttpService extends ImportObject implements ImportProvider {
 
+  public static final long DEFAULT_MAX_BODY_SIZE = 10*1024*1024;
+
   private RetryPolicy defaultRetryPolicy = RetryPolicy.createDefaultRetryPolicy();
+  private Long defaultMaxBodySize = DEFAULT_MAX_BODY_SIZE;
+  private HttpCache httpCache = new HttpCache();
 
   public HttpService() {
     super("rockscript.io/http");
@@ -40,4 +44,32 @@ public class HttpService extends ImportObject implements ImportProvider {
   public RetryPolicy getDefaultRetryPolicy() {
     return defaultRetryPolicy;
   }
+
+  /** retry policy for requests that don't specify a retryPolicy.
+   * null means that failed requests are not retried. */
+  public HttpService defaultRetryPolicy(RetryPolicy defaultRetryPolicy) {
+    this.defaultRetryPolicy = defaultRetryPolicy;
+    return this;
+  }
+
+  public Long getDefaultMaxBodySize() {
+    return defaultMaxBodySize;
+  }
+
+  /** maximum response body size in bytes for requests that don't
+   * specify a maxBodySize.  null means no maximum. */
+  public HttpService defaultMaxBodySize(Long defaultMaxBodySize) {
+    this.defaultMaxBodySize = defaultMaxBodySize;
+    return this;
+  }
+
+  public HttpCache getHttpCache() {
+    return httpCache;
+  }
+
+  /** null disables caching, also for requests that opt in */
+  public HttpService httpCache(HttpCache httpCache) {
+    this.httpCache = httpCache;
+    return this;
+  }
 }
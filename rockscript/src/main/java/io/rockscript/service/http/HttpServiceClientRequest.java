@@ -22,16 +22,102 @@ package io.rockscript.service.http;
 import io.rockscript.engine.job.RetryPolicy;
 import io.rockscript.http.client.ClientRequest;
 
+import java.io.IOException;
+import java.util.List;
+
 public class HttpServiceClientRequest extends ClientRequest {
 
   Integer expectedStatus;
+  /** overrides the {@link HttpService#getDefaultRetryPolicy()},
+   * see {@link RetryPolicy} for the json format */
   RetryPolicy retryPolicy;
+  /** responses with a larger body fail.  null means no maximum. */
+  Long maxBodySize;
+  /** dot separated field paths of a json response body that are kept,
+   * see {@link JsonBodyReader}.  null means all fields are kept. */
+  List<String> fields;
+  /** opts in to the {@link HttpCache} for GET requests */
+  Boolean cache;
+  /** opts in to the {@link HttpCache} for GET requests and overrides the
+   * freshness of the response in seconds */
+  Long cacheMaxAge;
+
+  @Override
+  public HttpServiceClientResponse execute() {
+    return (HttpServiceClientResponse) super.execute();
+  }
+
+  @Override
+  protected HttpServiceClientResponse createHttpResponse() throws IOException {
+    return new HttpServiceClientResponse(this);
+  }
 
   public RetryPolicy getRetryPolicy() {
     return retryPolicy;
   }
 
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  public HttpServiceClientRequest retryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+    return this;
+  }
+
   public Integer getExpectedStatus() {
     return expectedStatus;
   }
+
+  public Long getMaxBodySize() {
+    return maxBodySize;
+  }
+
+  public void setMaxBodySize(Long maxBodySize) {
+    this.maxBodySize = maxBodySize;
+  }
+
+  public HttpServiceClientRequest maxBodySize(Long maxBodySize) {
+    this.maxBodySize = maxBodySize;
+    return this;
+  }
+
+  public List<String> getFields() {
+    return fields;
+  }
+
+  public void setFields(List<String> fields) {
+    this.fields = fields;
+  }
+
+  public HttpServiceClientRequest fields(List<String> fields) {
+    this.fields = fields;
+    return this;
+  }
+
+  public Boolean getCache() {
+    return cache;
+  }
+
+  public void setCache(Boolean cache) {
+    this.cache = cache;
+  }
+
+  public HttpServiceClientRequest cache(Boolean cache) {
+    this.cache = cache;
+    return this;
+  }
+
+  public Long getCacheMaxAge() {
+    return cacheMaxAge;
+  }
+
+  public void setCacheMaxAge(Long cacheMaxAge) {
+    this.cacheMaxAge = cacheMaxAge;
+  }
+
+  public HttpServiceClientRequest cacheMaxAge(Long cacheMaxAge) {
+    this.cacheMaxAge = cacheMaxAge;
+    return this;
+  }
 }
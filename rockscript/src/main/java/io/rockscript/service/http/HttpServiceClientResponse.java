@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.service.http;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.rockscript.http.client.ClientResponse;
+import io.rockscript.http.client.MaxBodySizeInputStream;
+import io.rockscript.util.Io;
+import org.apache.http.HttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Response of the http service functions.  Json bodies are streamed
+ * straight into the response object with the {@link JsonBodyReader}.
+ * Other bodies are read once as bytes and decoded with the content
+ * type charset. */
+public class HttpServiceClientResponse extends ClientResponse {
+
+  /** the parsed json body.  No field initializer because it's set
+   * in {@link #readBody(HttpEntity)} during the super constructor. */
+  transient Object bodyObject;
+
+  protected HttpServiceClientResponse(HttpServiceClientRequest request) throws IOException {
+    super(request);
+  }
+
+  @Override
+  protected void readBody(HttpEntity entity) throws IOException {
+    HttpServiceClientRequest request = getRequest();
+    InputStream content = entity.getContent();
+    if (content==null) {
+      return;
+    }
+    Long maxBodySize = request.getMaxBodySize();
+    if (maxBodySize!=null) {
+      if (entity.getContentLength()>maxBodySize) {
+        throw new IOException("Response body of "+entity.getContentLength()+" bytes is larger than the maximum of "+maxBodySize+" bytes");
+      }
+      content = new MaxBodySizeInputStream(content, maxBodySize);
+    }
+    Charset charset = getContentTypeCharset(StandardCharsets.UTF_8);
+    if (isContentTypeApplicationJson()) {
+      try (Reader reader = new InputStreamReader(content, charset)) {
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+        if (jsonReader.peek()!=JsonToken.END_DOCUMENT) {
+          this.bodyObject = JsonBodyReader
+            .projection(request.getFields())
+            .read(jsonReader);
+        }
+      }
+    } else {
+      try (InputStream bytes = content) {
+        this.body = new String(Io.getBytes(bytes), charset);
+      }
+    }
+  }
+
+  /** the plain object that is passed to the script as the function result */
+  public Map<String,Object> toResponseObject() {
+    Map<String,Object> responseObject = new LinkedHashMap<>();
+    // numbers are doubles, like all numbers that are read from json
+    responseObject.put("status", (double) status);
+    responseObject.put("headers", headers);
+    Object responseBody = bodyObject!=null ? bodyObject : body;
+    if (responseBody!=null) {
+      responseObject.put("body", responseBody);
+    }
+    return responseObject;
+  }
+
+  public Object getBodyObject() {
+    return bodyObject;
+  }
+
+  @Override
+  public HttpServiceClientRequest getRequest() {
+    return (HttpServiceClientRequest) super.getRequest();
+  }
+}
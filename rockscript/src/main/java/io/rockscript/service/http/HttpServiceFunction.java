@@ -18,6 +18,8 @@ package io.rockscript.service.http;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import io.rockscript.Engine;
+import io.rockscript.engine.impl.CircuitBreakers.CircuitBreaker;
+import io.rockscript.engine.impl.OutboundLimiter;
 import io.rockscript.engine.job.RetryPolicy;
 import io.rockscript.service.AbstractServiceFunction;
 import io.rockscript.service.ServiceFunctionInput;
@@ -47,17 +49,11 @@ public class HttpServiceFunction extends AbstractServiceFunction {
 
   @Override
   public ServiceFunctionOutput invoke(ServiceFunctionInput input) {
-    // Parse the ClientRequest object
-    Object requestObject = input.getArg(0);
-
-    wrapSingleHeadersInList(requestObject);
-
-    Gson gson = input.getGson();
-    JsonElement requestElement = gson.toJsonTree(requestObject);
-
-    HttpServiceClientRequest clientRequest = gson.fromJson(requestElement, HttpServiceClientRequest.class);
-    clientRequest.setHttpClient(input.getHttp());
+    HttpServiceClientRequest clientRequest = createClientRequest(input.getArg(0), input);
     clientRequest.setMethod(this.method);
+    if (clientRequest.getMaxBodySize()==null) {
+      clientRequest.setMaxBodySize(httpService.getDefaultMaxBodySize());
+    }
 
     // Maybe this should be optional and configurable with a property in the requestObject?
     Integer failedAttemptsCount = input.getFailedAttemptsCount();
@@ -70,15 +66,53 @@ public class HttpServiceFunction extends AbstractServiceFunction {
     RetryPolicy retryPolicy = getRetryPolicy(clientRequest);
 
     // Schedule the HttpRequestRunnable command for execution asynchronously
-    input
-      .getExecutor()
-      .execute(new HttpRequestRunnable(engine, input.getContinuationReference(), clientRequest, input.getFailedAttemptsCount(), retryPolicy));
+    HttpRequestRunnable httpRequestRunnable = new HttpRequestRunnable(engine, input.getContinuationReference(), clientRequest, input.getFailedAttemptsCount(), retryPolicy)
+      .httpCache(httpService.getHttpCache());
+    if (httpRequestRunnable.isCacheHit()) {
+      input
+        .getIoExecutor()
+        .execute(httpRequestRunnable);
+      return ServiceFunctionOutput.waitForFunctionEndCallback();
+    }
+
+    String host = httpRequestRunnable.getHost();
+    CircuitBreaker circuitBreaker = engine.getCircuitBreakers().get(host);
+    if (circuitBreaker!=null) {
+      if (!circuitBreaker.allowRequest()) {
+        // Fail fast: the host is down, the breaker retries this function when the host recovers
+        circuitBreaker.park(input.getContinuationReference());
+        return ServiceFunctionOutput.waitForFunctionEndCallback();
+      }
+      httpRequestRunnable.circuitBreaker(circuitBreaker);
+    }
+
+    OutboundLimiter outboundLimiter = engine.getOutboundLimiter();
+    if (outboundLimiter!=null) {
+      // Requests over the limits of the host wait in the limiter, outside the script execution lock
+      outboundLimiter.execute(host, permit -> httpRequestRunnable.permit(permit).run());
+    } else {
+      input
+        .getIoExecutor()
+        .execute(httpRequestRunnable);
+    }
 
     return ServiceFunctionOutput.waitForFunctionEndCallback();
   }
 
+  /** parses a script request object like the argument of <code>http.get</code> */
+  public static HttpServiceClientRequest createClientRequest(Object requestObject, ServiceFunctionInput input) {
+    wrapSingleHeadersInList(requestObject);
+
+    Gson gson = input.getGson();
+    JsonElement requestElement = gson.toJsonTree(requestObject);
+
+    HttpServiceClientRequest clientRequest = gson.fromJson(requestElement, HttpServiceClientRequest.class);
+    clientRequest.setHttpClient(input.getHttp());
+    return clientRequest;
+  }
+
   @SuppressWarnings("unchecked")
-  private void wrapSingleHeadersInList(Object requestObject) {
+  private static void wrapSingleHeadersInList(Object requestObject) {
     if (requestObject instanceof Map) {
       Object headersObject = ((Map<String,Object>)requestObject).get("headers");
       if (headersObject instanceof Map) {
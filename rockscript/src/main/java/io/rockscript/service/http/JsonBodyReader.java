@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.service.http;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Streams a json document into plain maps, lists, strings, doubles and
+ * booleans, the same values as gson produces for Object.class, without
+ * an intermediate String or JsonElement tree.
+ *
+ * An optional projection keeps only the given field paths like
+ * <code>['id', 'owner.name']</code>.  The other fields are skipped
+ * without being materialized.  A projection on an array applies to
+ * its elements. */
+public class JsonBodyReader {
+
+  /** maps field names to the projection of their value.
+   * An empty projection for a field means the whole value is kept. */
+  Map<String,JsonBodyReader> fields;
+
+  /** @param fieldPaths dot separated field paths, null or empty keeps all fields */
+  public static JsonBodyReader projection(List<String> fieldPaths) {
+    JsonBodyReader jsonBodyReader = new JsonBodyReader();
+    if (fieldPaths!=null) {
+      for (String fieldPath: fieldPaths) {
+        jsonBodyReader.addFieldPath(fieldPath);
+      }
+    }
+    return jsonBodyReader;
+  }
+
+  private void addFieldPath(String fieldPath) {
+    if (fields==null) {
+      fields = new LinkedHashMap<>();
+    }
+    int dotIndex = fieldPath.indexOf('.');
+    String fieldName = dotIndex!=-1 ? fieldPath.substring(0, dotIndex) : fieldPath;
+    JsonBodyReader fieldReader = fields.computeIfAbsent(fieldName, name->new JsonBodyReader());
+    if (dotIndex!=-1) {
+      fieldReader.addFieldPath(fieldPath.substring(dotIndex+1));
+    }
+  }
+
+  public Object read(JsonReader in) throws IOException {
+    switch (in.peek()) {
+      case BEGIN_OBJECT:
+        Map<String,Object> object = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+          String name = in.nextName();
+          JsonBodyReader fieldReader = fields!=null ? fields.get(name) : this;
+          if (fieldReader!=null) {
+            object.put(name, fieldReader.read(in));
+          } else {
+            in.skipValue();
+          }
+        }
+        in.endObject();
+        return object;
+      case BEGIN_ARRAY:
+        List<Object> array = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+          array.add(read(in));
+        }
+        in.endArray();
+        return array;
+      case STRING:
+        return in.nextString();
+      case NUMBER:
+        return in.nextDouble();
+      case BOOLEAN:
+        return in.nextBoolean();
+      case NULL:
+        in.nextNull();
+        return null;
+      default:
+        throw new IllegalStateException("Unexpected json token "+in.peek());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.service.task;
+
+import io.rockscript.engine.impl.ContinuationReference;
+
+import java.time.Instant;
+import java.util.List;
+
+/** A service function invocation that waits in the {@link ExternalTaskService}
+ * until a worker fetches it with a {@link io.rockscript.api.commands.FetchAndLockCommand}
+ * and completes it with a {@link io.rockscript.api.commands.CompleteExternalTasksCommand}. */
+public class ExternalTask {
+
+  String id;
+  String topic;
+  String scriptExecutionId;
+  String executionId;
+  List<Object> args;
+  Instant createTime;
+  /** the worker that fetched the task, null if the task is available */
+  String workerId;
+  /** time after which the task becomes available for other workers again */
+  Instant lockExpirationTime;
+
+  /** for gson */
+  ExternalTask() {
+  }
+
+  ExternalTask(String id, String topic, ContinuationReference continuationReference, List<Object> args, Instant createTime) {
+    this.id = id;
+    this.topic = topic;
+    this.scriptExecutionId = continuationReference.getScriptExecutionId();
+    this.executionId = continuationReference.getExecutionId();
+    this.args = args;
+    this.createTime = createTime;
+  }
+
+  public boolean isLocked(Instant now) {
+    return workerId!=null && lockExpirationTime.isAfter(now);
+  }
+
+  public ContinuationReference getContinuationReference() {
+    return new ContinuationReference(scriptExecutionId, executionId);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public String getScriptExecutionId() {
+    return scriptExecutionId;
+  }
+
+  public String getExecutionId() {
+    return executionId;
+  }
+
+  public List<Object> getArgs() {
+    return args;
+  }
+
+  public Instant getCreateTime() {
+    return createTime;
+  }
+
+  public String getWorkerId() {
+    return workerId;
+  }
+
+  public Instant getLockExpirationTime() {
+    return lockExpirationTime;
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.service.task;
+
+import io.rockscript.engine.impl.ContinuationReference;
+import io.rockscript.engine.impl.Time;
+import io.rockscript.http.servlet.BadRequestException;
+import io.rockscript.service.ImportObject;
+import io.rockscript.service.ImportProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Pull based alternative for remote service functions.
+ *
+ * <code>var tasks = system.import('rockscript.io/task'); tasks.invoice({...});</code>
+ * registers an {@link ExternalTask} with topic <code>invoice</code> and the
+ * script waits like for an asynchronous service function.  Workers long poll
+ * for tasks of their topics with {@link #fetchAndLock(String, Collection, int, Duration, Duration)}
+ * and complete them in batches, so the engine never connects to the workers.
+ *
+ * Tasks that are not completed before their lock expires become available
+ * for other workers again.  Tasks are kept in memory, like the jobs of the
+ * {@link io.rockscript.engine.job.InMemoryJobStore}. */
+public class ExternalTaskService extends ImportObject implements ImportProvider {
+
+  static Logger log = LoggerFactory.getLogger(ExternalTaskService.class);
+
+  public static final String SERVICE_NAME = "rockscript.io/task";
+  public static final Duration DEFAULT_LOCK_DURATION = Duration.ofMinutes(5);
+  public static final Duration DEFAULT_MAX_ASYNC_RESPONSE_TIMEOUT = Duration.ofMinutes(1);
+
+  /** guards all the task collections.  A ReentrantLock instead of synchronized
+   * so that long polling workers can wait on {@link #tasksAdded}. */
+  ReentrantLock lock = new ReentrantLock();
+  Condition tasksAdded = lock.newCondition();
+  /** all tasks by id */
+  Map<String,ExternalTask> tasks = new HashMap<>();
+  /** tasks that are not locked by a worker, by topic in order of creation */
+  Map<String,Deque<ExternalTask>> availableTasks = new HashMap<>();
+  /** tasks that are locked by a worker */
+  Set<ExternalTask> lockedTasks = new HashSet<>();
+  long nextTaskId = 1;
+  Duration maxAsyncResponseTimeout = DEFAULT_MAX_ASYNC_RESPONSE_TIMEOUT;
+
+  public ExternalTaskService() {
+    super(SERVICE_NAME);
+  }
+
+  /** longer asyncResponseTimeouts of fetchAndLock are reduced to this maximum */
+  public ExternalTaskService maxAsyncResponseTimeout(Duration maxAsyncResponseTimeout) {
+    this.maxAsyncResponseTimeout = maxAsyncResponseTimeout;
+    return this;
+  }
+
+  public Duration getMaxAsyncResponseTimeout() {
+    return maxAsyncResponseTimeout;
+  }
+
+  @Override
+  public Object get(String propertyName) {
+    Object serviceFunction = super.get(propertyName);
+    if (serviceFunction==null) {
+      serviceFunction = new ExternalTaskServiceFunction(this, propertyName);
+    }
+    return serviceFunction;
+  }
+
+  public ExternalTask add(String topic, ContinuationReference continuationReference, List<Object> args) {
+    lock.lock();
+    try {
+      ExternalTask externalTask = new ExternalTask("t"+(nextTaskId++), topic, continuationReference, args, Time.now());
+      log.debug("Adding external task "+externalTask.getId()+" for topic "+topic);
+      tasks.put(externalTask.getId(), externalTask);
+      availableTasks
+        .computeIfAbsent(topic, t->new ArrayDeque<>())
+        .add(externalTask);
+      tasksAdded.signalAll();
+      return externalTask;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Locks up to maxTasks available tasks of the given topics for the worker.
+   * If there are no tasks available, waits for at most asyncResponseTimeout,
+   * limited to the {@link #maxAsyncResponseTimeout(Duration)}, for tasks to be
+   * added or for the lock of another worker to expire.
+   * @return the locked tasks, an empty list if the timeout passed without tasks. */
+  public List<ExternalTask> fetchAndLock(String workerId, Collection<String> topics, int maxTasks, Duration lockDuration, Duration asyncResponseTimeout) {
+    if (asyncResponseTimeout!=null && maxAsyncResponseTimeout!=null && asyncResponseTimeout.compareTo(maxAsyncResponseTimeout)>0) {
+      asyncResponseTimeout = maxAsyncResponseTimeout;
+    }
+    long remainingNanos = asyncResponseTimeout!=null ? asyncResponseTimeout.toNanos() : 0;
+    lock.lock();
+    try {
+      while (true) {
+        List<ExternalTask> fetchedTasks = lockAvailableTasks(workerId, topics, maxTasks, lockDuration);
+        if (!fetchedTasks.isEmpty() || remainingNanos<=0) {
+          return fetchedTasks;
+        }
+        // wakes up when the first lock expires as its task then becomes available again
+        long waitNanos = Math.min(remainingNanos, getNanosUntilFirstLockExpiration());
+        long waitedNanos = waitNanos - tasksAdded.awaitNanos(waitNanos);
+        remainingNanos -= Math.max(0, waitedNanos);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Collections.emptyList();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private List<ExternalTask> lockAvailableTasks(String workerId, Collection<String> topics, int maxTasks, Duration lockDuration) {
+    Instant now = Time.now();
+    releaseExpiredLocks(now);
+    Instant lockExpirationTime = now.plus(lockDuration!=null ? lockDuration : DEFAULT_LOCK_DURATION);
+    List<ExternalTask> fetchedTasks = new ArrayList<>();
+    for (String topic: topics) {
+      Deque<ExternalTask> topicTasks = availableTasks.get(topic);
+      while (topicTasks!=null && !topicTasks.isEmpty() && fetchedTasks.size()<maxTasks) {
+        ExternalTask externalTask = topicTasks.poll();
+        externalTask.workerId = workerId;
+        externalTask.lockExpirationTime = lockExpirationTime;
+        lockedTasks.add(externalTask);
+        fetchedTasks.add(externalTask);
+      }
+    }
+    return fetchedTasks;
+  }
+
+  private long getNanosUntilFirstLockExpiration() {
+    Instant now = Time.now();
+    return lockedTasks.stream()
+      .map(externalTask->Math.max(0, Duration.between(now, externalTask.getLockExpirationTime()).toNanos()))
+      .min(Long::compare)
+      .orElse(Long.MAX_VALUE);
+  }
+
+  private void releaseExpiredLocks(Instant now) {
+    Iterator<ExternalTask> iterator = lockedTasks.iterator();
+    while (iterator.hasNext()) {
+      ExternalTask externalTask = iterator.next();
+      if (!externalTask.isLocked(now)) {
+        log.debug("Lock of worker "+externalTask.workerId+" on external task "+externalTask.getId()+" expired");
+        iterator.remove();
+        externalTask.workerId = null;
+        externalTask.lockExpirationTime = null;
+        // expired tasks go first as they are the oldest
+        availableTasks
+          .computeIfAbsent(externalTask.getTopic(), t->new ArrayDeque<>())
+          .addFirst(externalTask);
+      }
+    }
+  }
+
+  /** Removes a task that is locked by the worker.
+   * @throws BadRequestException if the task doesn't exist, is not locked by the
+   * worker or if the lock of the worker expired */
+  public ExternalTask complete(String workerId, String taskId) {
+    lock.lock();
+    try {
+      ExternalTask externalTask = tasks.get(taskId);
+      BadRequestException.throwIfNull(externalTask, "External task %s does not exist", taskId);
+      if (!Objects.equals(workerId, externalTask.getWorkerId())) {
+        throw new BadRequestException("External task "+taskId+" is not locked by worker "+workerId);
+      }
+      if (!externalTask.isLocked(Time.now())) {
+        throw new BadRequestException("Lock of worker "+workerId+" on external task "+taskId+" expired");
+      }
+      tasks.remove(taskId);
+      lockedTasks.remove(externalTask);
+      return externalTask;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public ExternalTask findTaskById(String taskId) {
+    lock.lock();
+    try {
+      return tasks.get(taskId);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getTaskCount() {
+    lock.lock();
+    try {
+      return tasks.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public ImportObject getImportObject() {
+    return this;
+  }
+}
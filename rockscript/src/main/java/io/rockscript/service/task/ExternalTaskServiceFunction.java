@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.service.task;
+
+import io.rockscript.service.AbstractServiceFunction;
+import io.rockscript.service.ServiceFunctionInput;
+import io.rockscript.service.ServiceFunctionOutput;
+
+import java.util.List;
+
+/** Registers an {@link ExternalTask} for the function name as topic and
+ * waits until a worker completes it. */
+public class ExternalTaskServiceFunction extends AbstractServiceFunction {
+
+  ExternalTaskService externalTaskService;
+
+  public ExternalTaskServiceFunction(ExternalTaskService externalTaskService, String topic) {
+    super(topic);
+    this.externalTaskService = externalTaskService;
+    this.serviceName = externalTaskService.getServiceName();
+  }
+
+  @Override
+  public List<String> getArgNames() {
+    return null;
+  }
+
+  @Override
+  public ServiceFunctionOutput invoke(ServiceFunctionInput input) {
+    externalTaskService.add(functionName, input.getContinuationReference(), input.getArgs());
+    return ServiceFunctionOutput.waitForFunctionEndCallback();
+  }
+}
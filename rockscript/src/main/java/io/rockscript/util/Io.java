@@ -15,10 +15,13 @@
  */
 package io.rockscript.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Scanner;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 public class Io {
 
@@ -32,12 +35,10 @@ public class Io {
     if (inputStream==null) {
       return null;
     }
-    Scanner scanner = new Scanner(inputStream, charset)
-      .useDelimiter("\\A");
-    if (scanner.hasNext()) {
-      return scanner.next();
-    } else {
-      return "";
+    try {
+      return new String(getBytes(inputStream), charset);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException("Unsupported charset "+charset, e);
     }
   }
 
@@ -81,6 +82,20 @@ public class Io {
     }
   }
 
+  public static byte[] deflate(byte[] bytes) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(buffer)) {
+      deflaterStream.write(bytes);
+    } catch (IOException e) {
+      throw new RuntimeException("Couldn't deflate bytes: "+e.getMessage(), e);
+    }
+    return buffer.toByteArray();
+  }
+
+  public static byte[] inflate(byte[] bytes) {
+    return getBytes(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+  }
+
   public static InputStream getResourceAsStream(String resource) {
     return Io.class.getClassLoader().getResourceAsStream(resource);
   }
@@ -0,0 +1,360 @@
+/*
+ * Copyright ©2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.util;
+
+import java.util.*;
+
+/** Immutable map with string keys implemented as a compressed
+ * hash array mapped trie (CHAMP).
+ *
+ * {@link #with(String, Object)} and {@link #without(String)} return
+ * a new version in O(log32 n) that shares all untouched nodes with
+ * this version.  Iteration follows the insertion order of the keys,
+ * like a LinkedHashMap.  Removed keys leave a null in the key order,
+ * which is compacted once the removed keys outnumber the remaining
+ * ones, so removing is amortized O(log32 n) as well.  The java.util.Map mutators throw
+ * {@link UnsupportedOperationException}. */
+public final class PersistentMap<V> extends AbstractMap<String,V> {
+
+  static final int BITS = 5;
+  static final int MASK = (1 << BITS) - 1;
+  /** below this shift, keys with equal hashes are kept in a collision node */
+  static final int MAX_SHIFT = 30;
+  static final Object NOT_FOUND = new Object();
+
+  static final Node EMPTY_NODE = new Node(0, 0, new Object[0]);
+  static final PersistentMap<?> EMPTY = new PersistentMap<>(EMPTY_NODE, 0, PersistentVector.empty());
+
+  final Node root;
+  final int size;
+  /** insertion order of the keys, with null for removed keys.
+   * The trie maps each key to a {@link Slot} that has its position. */
+  final PersistentVector<String> keys;
+
+  private PersistentMap(Node root, int size, PersistentVector<String> keys) {
+    this.root = root;
+    this.size = size;
+    this.keys = keys;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <V> PersistentMap<V> empty() {
+    return (PersistentMap<V>) EMPTY;
+  }
+
+  public static <V> PersistentMap<V> of(Map<String,? extends V> map) {
+    PersistentMap<V> persistentMap = empty();
+    for (Map.Entry<String,? extends V> entry: map.entrySet()) {
+      persistentMap = persistentMap.with(entry.getKey(), entry.getValue());
+    }
+    return persistentMap;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    Object value = find(key);
+    return value!=NOT_FOUND ? (V) value : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return find(key)!=NOT_FOUND;
+  }
+
+  Object find(Object key) {
+    Object slot = findSlot(key);
+    return slot!=NOT_FOUND ? ((Slot) slot).value : NOT_FOUND;
+  }
+
+  Object findSlot(Object key) {
+    if (!(key instanceof String)) {
+      return NOT_FOUND;
+    }
+    return root.find((String) key, hash(key), 0);
+  }
+
+  /** @return a new version with the key mapped to the value, or
+   * this map if the key is already mapped to the same value */
+  public PersistentMap<V> with(String key, V value) {
+    Object existingSlot = findSlot(key);
+    if (existingSlot!=NOT_FOUND) {
+      Slot slot = (Slot) existingSlot;
+      if (slot.value==value) {
+        return this;
+      }
+      Node newRoot = root.with(key, new Slot(value, slot.position), hash(key), 0);
+      return new PersistentMap<>(newRoot, size, keys);
+    }
+    Node newRoot = root.with(key, new Slot(value, keys.size()), hash(key), 0);
+    return new PersistentMap<>(newRoot, size + 1, keys.plus(key));
+  }
+
+  /** @return a new version without the key */
+  public PersistentMap<V> without(String key) {
+    Object existingSlot = findSlot(key);
+    if (existingSlot==NOT_FOUND) {
+      return this;
+    }
+    Node newRoot = root.without(key, hash(key), 0);
+    PersistentVector<String> newKeys = keys.with(((Slot) existingSlot).position, null);
+    PersistentMap<V> newMap = new PersistentMap<>(newRoot, size - 1, newKeys);
+    int removedCount = newKeys.size() - newMap.size;
+    return removedCount > newMap.size
+           ? newMap.compact()
+           : newMap;
+  }
+
+  /** rebuilds the map without the nulls of removed keys in the key order */
+  PersistentMap<V> compact() {
+    PersistentMap<V> compacted = empty();
+    for (Entry<String,V> entry: entrySet()) {
+      compacted = compacted.with(entry.getKey(), entry.getValue());
+    }
+    return compacted;
+  }
+
+  @Override
+  public Set<Entry<String,V>> entrySet() {
+    return new AbstractSet<Entry<String,V>>() {
+      @Override
+      public Iterator<Entry<String,V>> iterator() {
+        Iterator<String> keyIterator = keys.iterator();
+        return new Iterator<Entry<String,V>>() {
+          String nextKey = findNextKey();
+          String findNextKey() {
+            while (keyIterator.hasNext()) {
+              String key = keyIterator.next();
+              if (key!=null) {
+                return key;
+              }
+            }
+            return null;
+          }
+          @Override
+          public boolean hasNext() {
+            return nextKey!=null;
+          }
+          @Override
+          public Entry<String,V> next() {
+            if (nextKey==null) {
+              throw new NoSuchElementException();
+            }
+            String key = nextKey;
+            nextKey = findNextKey();
+            return new SimpleImmutableEntry<>(key, get(key));
+          }
+        };
+      }
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /** the value of a key and the position of the key in the key order */
+  static final class Slot {
+    final Object value;
+    final int position;
+
+    Slot(Object value, int position) {
+      this.value = value;
+      this.position = position;
+    }
+  }
+
+  /** Entries are stored inline as key/value pairs at the start of
+   * the content array, sub nodes are stored at the end in reverse order.
+   * Beyond {@link #MAX_SHIFT} a node is a collision node that only
+   * has inline entries and is searched linearly. */
+  static final class Node {
+
+    final int dataMap;
+    final int nodeMap;
+    final Object[] content;
+
+    Node(int dataMap, int nodeMap, Object[] content) {
+      this.dataMap = dataMap;
+      this.nodeMap = nodeMap;
+      this.content = content;
+    }
+
+    int entryCount() {
+      return (content.length - Integer.bitCount(nodeMap)) / 2;
+    }
+
+    Object find(String key, int hash, int shift) {
+      if (shift > MAX_SHIFT) {
+        for (int i = 0; i < content.length; i += 2) {
+          if (key.equals(content[i])) {
+            return content[i + 1];
+          }
+        }
+        return NOT_FOUND;
+      }
+      int bit = bit(hash, shift);
+      if ((dataMap & bit) != 0) {
+        int index = 2 * index(dataMap, bit);
+        return key.equals(content[index]) ? content[index + 1] : NOT_FOUND;
+      }
+      if ((nodeMap & bit) != 0) {
+        return subNode(bit).find(key, hash, shift + BITS);
+      }
+      return NOT_FOUND;
+    }
+
+    Node with(String key, Object value, int hash, int shift) {
+      if (shift > MAX_SHIFT) {
+        for (int i = 0; i < content.length; i += 2) {
+          if (key.equals(content[i])) {
+            return content[i + 1] == value ? this : new Node(0, 0, replace(content, i + 1, value));
+          }
+        }
+        return new Node(0, 0, insert(content, content.length, key, value));
+      }
+      int bit = bit(hash, shift);
+      if ((dataMap & bit) != 0) {
+        int index = 2 * index(dataMap, bit);
+        String existingKey = (String) content[index];
+        if (key.equals(existingKey)) {
+          return content[index + 1] == value ? this : new Node(dataMap, nodeMap, replace(content, index + 1, value));
+        }
+        Node subNode = merge(existingKey, content[index + 1], hash(existingKey), key, value, hash, shift + BITS);
+        return migrateEntryToNode(bit, index, subNode);
+      }
+      if ((nodeMap & bit) != 0) {
+        Node subNode = subNode(bit);
+        Node newSubNode = subNode.with(key, value, hash, shift + BITS);
+        return newSubNode == subNode ? this : new Node(dataMap, nodeMap, replace(content, nodeIndex(bit), newSubNode));
+      }
+      int index = 2 * index(dataMap, bit);
+      return new Node(dataMap | bit, nodeMap, insert(content, index, key, value));
+    }
+
+    Node without(String key, int hash, int shift) {
+      if (shift > MAX_SHIFT) {
+        for (int i = 0; i < content.length; i += 2) {
+          if (key.equals(content[i])) {
+            return new Node(0, 0, remove(content, i, 2));
+          }
+        }
+        return this;
+      }
+      int bit = bit(hash, shift);
+      if ((dataMap & bit) != 0) {
+        int index = 2 * index(dataMap, bit);
+        return new Node(dataMap ^ bit, nodeMap, remove(content, index, 2));
+      }
+      if ((nodeMap & bit) != 0) {
+        Node newSubNode = subNode(bit).without(key, hash, shift + BITS);
+        if (newSubNode.nodeMap == 0 && newSubNode.entryCount() == 1) {
+          // keep the trie canonical by inlining sub nodes with a single entry
+          return migrateNodeToEntry(bit, newSubNode.content[0], newSubNode.content[1]);
+        }
+        return new Node(dataMap, nodeMap, replace(content, nodeIndex(bit), newSubNode));
+      }
+      return this;
+    }
+
+    Node subNode(int bit) {
+      return (Node) content[nodeIndex(bit)];
+    }
+
+    int nodeIndex(int bit) {
+      return content.length - 1 - index(nodeMap, bit);
+    }
+
+    Node migrateEntryToNode(int bit, int entryIndex, Node subNode) {
+      int newNodeMap = nodeMap | bit;
+      Object[] newContent = new Object[content.length - 1];
+      // entries before and after the migrated entry
+      System.arraycopy(content, 0, newContent, 0, entryIndex);
+      int nodeIndexInNew = newContent.length - 1 - index(newNodeMap, bit);
+      System.arraycopy(content, entryIndex + 2, newContent, entryIndex, nodeIndexInNew - entryIndex);
+      newContent[nodeIndexInNew] = subNode;
+      System.arraycopy(content, nodeIndexInNew + 2, newContent, nodeIndexInNew + 1, content.length - nodeIndexInNew - 2);
+      return new Node(dataMap ^ bit, newNodeMap, newContent);
+    }
+
+    Node migrateNodeToEntry(int bit, Object key, Object value) {
+      int oldNodeIndex = nodeIndex(bit);
+      int entryIndex = 2 * index(dataMap, bit);
+      Object[] newContent = new Object[content.length + 1];
+      System.arraycopy(content, 0, newContent, 0, entryIndex);
+      newContent[entryIndex] = key;
+      newContent[entryIndex + 1] = value;
+      System.arraycopy(content, entryIndex, newContent, entryIndex + 2, oldNodeIndex - entryIndex);
+      System.arraycopy(content, oldNodeIndex + 1, newContent, oldNodeIndex + 2, content.length - oldNodeIndex - 1);
+      return new Node(dataMap | bit, nodeMap ^ bit, newContent);
+    }
+
+    static Node merge(String key1, Object value1, int hash1, String key2, Object value2, int hash2, int shift) {
+      if (shift > MAX_SHIFT) {
+        return new Node(0, 0, new Object[]{key1, value1, key2, value2});
+      }
+      int bit1 = bit(hash1, shift);
+      int bit2 = bit(hash2, shift);
+      if (bit1 == bit2) {
+        return new Node(0, bit1, new Object[]{merge(key1, value1, hash1, key2, value2, hash2, shift + BITS)});
+      }
+      // unsigned because the bit for position 31 is negative
+      return Integer.compareUnsigned(bit1, bit2) < 0
+             ? new Node(bit1 | bit2, 0, new Object[]{key1, value1, key2, value2})
+             : new Node(bit1 | bit2, 0, new Object[]{key2, value2, key1, value1});
+    }
+
+    static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & MASK);
+    }
+
+    static int index(int bitmap, int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    static Object[] replace(Object[] array, int index, Object value) {
+      Object[] copy = array.clone();
+      copy[index] = value;
+      return copy;
+    }
+
+    static Object[] insert(Object[] array, int index, Object key, Object value) {
+      Object[] copy = new Object[array.length + 2];
+      System.arraycopy(array, 0, copy, 0, index);
+      copy[index] = key;
+      copy[index + 1] = value;
+      System.arraycopy(array, index, copy, index + 2, array.length - index);
+      return copy;
+    }
+
+    static Object[] remove(Object[] array, int index, int length) {
+      Object[] copy = new Object[array.length - length];
+      System.arraycopy(array, 0, copy, 0, index);
+      System.arraycopy(array, index + length, copy, index, array.length - index - length);
+      return copy;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright ©2017, RockScript.io. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.rockscript.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/** Immutable list implemented as a 32-way trie with a tail.
+ *
+ * {@link #plus(Object)} and {@link #with(int, Object)} return a
+ * new version in O(log32 n) that shares all untouched nodes
+ * with this version.  The java.util.List mutators throw
+ * {@link UnsupportedOperationException}. */
+public final class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+
+  static final int BITS = 5;
+  static final int WIDTH = 1 << BITS;
+  static final int MASK = WIDTH - 1;
+
+  static final Object[] EMPTY_NODE = new Object[WIDTH];
+  static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, new Object[0]);
+
+  final int count;
+  final int shift;
+  final Object[] root;
+  final Object[] tail;
+
+  private PersistentVector(int count, int shift, Object[] root, Object[] tail) {
+    this.count = count;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <E> PersistentVector<E> empty() {
+    return (PersistentVector<E>) EMPTY;
+  }
+
+  public static <E> PersistentVector<E> of(Iterable<? extends E> elements) {
+    PersistentVector<E> vector = empty();
+    for (E element: elements) {
+      vector = vector.plus(element);
+    }
+    return vector;
+  }
+
+  @Override
+  public int size() {
+    return count;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E get(int index) {
+    checkIndex(index);
+    return (E) nodeFor(index)[index & MASK];
+  }
+
+  /** @return a new version with the element appended */
+  public PersistentVector<E> plus(E element) {
+    if (count - tailOffset() < WIDTH) {
+      Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+      newTail[tail.length] = element;
+      return new PersistentVector<>(count + 1, shift, root, newTail);
+    }
+    // the tail is full and moves into the trie
+    Object[] newRoot;
+    int newShift = shift;
+    if ((count >>> BITS) > (1 << shift)) {
+      newRoot = new Object[WIDTH];
+      newRoot[0] = root;
+      newRoot[1] = newPath(shift, tail);
+      newShift += BITS;
+    } else {
+      newRoot = pushTail(shift, root, tail);
+    }
+    return new PersistentVector<>(count + 1, newShift, newRoot, new Object[]{element});
+  }
+
+  /** @return a new version with the element at the index replaced.
+   * An index equal to the size appends the element. */
+  public PersistentVector<E> with(int index, E element) {
+    if (index == count) {
+      return plus(element);
+    }
+    checkIndex(index);
+    if (index >= tailOffset()) {
+      Object[] newTail = tail.clone();
+      newTail[index & MASK] = element;
+      return new PersistentVector<>(count, shift, root, newTail);
+    }
+    return new PersistentVector<>(count, shift, replaceInNode(shift, root, index, element), tail);
+  }
+
+  int tailOffset() {
+    return count < WIDTH ? 0 : ((count - 1) >>> BITS) << BITS;
+  }
+
+  Object[] nodeFor(int index) {
+    if (index >= tailOffset()) {
+      return tail;
+    }
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Object[]) node[(index >>> level) & MASK];
+    }
+    return node;
+  }
+
+  Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+    int subIndex = ((count - 1) >>> level) & MASK;
+    Object[] newParent = parent.clone();
+    Object[] nodeToInsert;
+    if (level == BITS) {
+      nodeToInsert = tailNode;
+    } else {
+      Object[] child = (Object[]) parent[subIndex];
+      nodeToInsert = child != null
+                     ? pushTail(level - BITS, child, tailNode)
+                     : newPath(level - BITS, tailNode);
+    }
+    newParent[subIndex] = nodeToInsert;
+    return newParent;
+  }
+
+  static Object[] newPath(int level, Object[] node) {
+    if (level == 0) {
+      return node;
+    }
+    Object[] path = new Object[WIDTH];
+    path[0] = newPath(level - BITS, node);
+    return path;
+  }
+
+  static Object[] replaceInNode(int level, Object[] node, int index, Object element) {
+    Object[] newNode = node.clone();
+    if (level == 0) {
+      newNode[index & MASK] = element;
+    } else {
+      int subIndex = (index >>> level) & MASK;
+      newNode[subIndex] = replaceInNode(level - BITS, (Object[]) node[subIndex], index, element);
+    }
+    return newNode;
+  }
+
+  void checkIndex(int index) {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Index "+index+", size "+count);
+    }
+  }
+}
@@ -31,6 +31,7 @@ public class ScriptExecutionComparator extends DeepComparator {
 
   public ScriptExecutionComparator() {
     ignoreField(EngineScriptExecution.class, "eventDispatcher");
+    ignoreField(EngineScriptExecution.class, "lock");
     ignoreField(Execution.class, "element");
     ignoreField(EngineScript.class, "elements");
     ignoreField(EngineScript.class, "engine");
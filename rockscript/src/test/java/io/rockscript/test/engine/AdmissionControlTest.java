@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.commands.DeployScriptVersionCommand;
+import io.rockscript.api.commands.StartScriptExecutionCommand;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.AdmissionControl;
+import io.rockscript.engine.impl.AdmissionControl.Admission;
+import io.rockscript.engine.impl.AdmissionControl.AdmissionLimit;
+import io.rockscript.http.servlet.TooManyRequestsException;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControlTest extends AbstractEngineTest {
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration()
+      .configureTest()
+      .configureCommandLimit("startScript", new AdmissionLimit(2, 0))
+      .configureScriptLimit(new AdmissionLimit(1, 0))
+      .configureAdmissionQueueTimeout(Duration.ofMillis(10))
+      .configureAdmissionRetryAfter(Duration.ofSeconds(3))
+      .build()
+      .start();
+  }
+
+  @Test
+  public void testLimitsPerCommandTypeAndPerScript() {
+    ScriptVersion scriptOne = deployScript("one", "var a = 1;");
+    ScriptVersion scriptTwo = deployScript("two", "var b = 2;");
+    ScriptVersion scriptThree = deployScript("three", "var c = 3;");
+    AdmissionControl admissionControl = engine.getAdmissionControl();
+    assertFalse(admissionControl.isOverloaded());
+
+    Admission admissionOne = admissionControl.admit(startCommand(scriptOne));
+
+    // the same script is over its limit
+    TooManyRequestsException e = assertRejected(admissionControl, startCommand(scriptOne));
+    assertEquals(429, e.getStatusCode());
+    assertEquals(3, e.getRetryAfterSeconds());
+    assertTrue(admissionControl.isOverloaded());
+
+    // another script is admitted until the command type limit is reached
+    Admission admissionTwo = admissionControl.admit(startCommand(scriptTwo));
+    assertRejected(admissionControl, startCommand(scriptThree));
+    assertEquals(2, admissionControl.getRejectedCount());
+
+    admissionOne.close();
+    admissionTwo.close();
+    admissionControl.admit(startCommand(scriptThree)).close();
+    admissionControl.admit(startCommand(scriptOne)).close();
+  }
+
+  @Test
+  public void testAsyncStartKeepsItsAdmissionUntilTheScriptRan() {
+    // the engine executor only runs the queued work when the test does so
+    List<Runnable> executorQueue = new ArrayList<>();
+    Engine engine = new Configuration() {
+        @Override
+        protected Engine createEngine() {
+          return new Engine() {
+            @Override
+            public Executor getExecutor() {
+              return executorQueue::add;
+            }
+          };
+        }
+      }
+      .configureTest()
+      .configureCommandLimit("startScript", new AdmissionLimit(1, 0))
+      .configureAdmissionQueueTimeout(Duration.ofMillis(10))
+      .build()
+      .start();
+    ScriptVersion scriptVersion = new DeployScriptVersionCommand()
+      .scriptText("var a = 1;")
+      .execute(engine)
+      .throwIfErrors();
+    AdmissionControl admissionControl = engine.getAdmissionControl();
+
+    admissionControl.execute(startCommand(scriptVersion).async(true));
+    assertEquals(1, executorQueue.size());
+
+    // the first script execution still has to run on the engine executor
+    try {
+      admissionControl.execute(startCommand(scriptVersion).async(true));
+      fail("expected TooManyRequestsException");
+    } catch (TooManyRequestsException e) {
+      assertEquals(429, e.getStatusCode());
+    }
+
+    executorQueue.remove(0).run();
+    admissionControl.execute(startCommand(scriptVersion).async(true));
+    executorQueue.remove(0).run();
+  }
+
+  private ScriptVersion deployScript(String scriptName, String scriptText) {
+    return new DeployScriptVersionCommand()
+      .scriptName(scriptName)
+      .scriptText(scriptText)
+      .execute(engine)
+      .throwIfErrors();
+  }
+
+  private StartScriptExecutionCommand startCommand(ScriptVersion scriptVersion) {
+    return new StartScriptExecutionCommand()
+      .scriptVersionId(scriptVersion.getId());
+  }
+
+  private TooManyRequestsException assertRejected(AdmissionControl admissionControl, StartScriptExecutionCommand command) {
+    try {
+      admissionControl.admit(command);
+      fail("expected TooManyRequestsException");
+      return null;
+    } catch (TooManyRequestsException e) {
+      return e;
+    }
+  }
+}
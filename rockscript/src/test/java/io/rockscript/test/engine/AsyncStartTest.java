@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.commands.ScriptExecutionResponse;
+import io.rockscript.api.commands.StartScriptExecutionCommand;
+import io.rockscript.api.events.ExecutionEvent;
+import io.rockscript.api.events.ScriptStartedEvent;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.ContinuationReference;
+import io.rockscript.engine.impl.Lock;
+import io.rockscript.engine.impl.LockService;
+import io.rockscript.service.ServiceFunctionOutput;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class AsyncStartTest extends AbstractEngineTest {
+
+  ExecutorService executorService = Executors.newSingleThreadExecutor();
+  /** blocks the executor thread until the test releases it */
+  CountDownLatch executorGate;
+  BlockingQueue<ContinuationReference> continuationReferences = new LinkedBlockingQueue<>();
+
+  @Override
+  protected Engine initializeEngine() {
+    Engine engine = new Configuration() {
+        @Override
+        protected Engine createEngine() {
+          return new Engine() {
+            @Override
+            public Executor getExecutor() {
+              return executorService;
+            }
+          };
+        }
+      }
+      .configureTest()
+      .build()
+      .start();
+    engine.getImportResolver().createImport("approvalService")
+      .put("approve", input -> {
+        continuationReferences.add(input.getContinuationReference());
+        return ServiceFunctionOutput.waitForFunctionEndCallback();
+      });
+    return engine;
+  }
+
+  @After
+  public void shutdownExecutor() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testAsyncStartReturnsBeforeTheScriptRuns() throws Exception {
+    ScriptVersion scriptVersion = deployScript(
+      "var approvalService = system.import('approvalService'); \n" +
+      "approvalService.approve('primus'); ");
+
+    executorGate = new CountDownLatch(1);
+    executorService.execute(()->awaitGate());
+
+    ScriptExecutionResponse response = new StartScriptExecutionCommand()
+      .scriptVersionId(scriptVersion.getId())
+      .async(true)
+      .execute(engine);
+
+    String scriptExecutionId = response.getScriptExecutionId();
+    assertNotNull(scriptExecutionId);
+    assertNull(response.getScriptExecution());
+    List<ExecutionEvent> events = engine.getScriptExecutionStore().findEventsByScriptExecutionId(scriptExecutionId);
+    assertEquals(1, events.size());
+    assertTrue(events.get(0) instanceof ScriptStartedEvent);
+    assertTrue(continuationReferences.isEmpty());
+
+    executorGate.countDown();
+    assertNotNull(continuationReferences.poll(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testWaitForTheFirstAndTheFinalState() throws Exception {
+    ScriptVersion scriptVersion = deployScript(
+      "var approvalService = system.import('approvalService'); \n" +
+      "approvalService.approve('primus'); ");
+
+    ScriptExecution scriptExecution = new StartScriptExecutionCommand()
+      .scriptVersionId(scriptVersion.getId())
+      .async(true)
+      .waitMillis(10000L)
+      .execute(engine)
+      .getScriptExecution();
+    assertNotNull(scriptExecution);
+    assertFalse(scriptExecution.isEnded());
+
+    CompletableFuture<ScriptExecution> endFuture = engine.whenScriptExecutionEnded(scriptExecution.getId());
+    assertFalse(endFuture.isDone());
+
+    endFunction(continuationReferences.poll(10, TimeUnit.SECONDS));
+    assertTrue(endFuture.get(10, TimeUnit.SECONDS).isEnded());
+
+    // registering after the end completes right away
+    assertTrue(engine.whenScriptExecutionEnded(scriptExecution.getId()).isDone());
+  }
+
+  @Test
+  public void testEndFutureFailsWhenTheScriptExecutionFails() throws Exception {
+    ScriptVersion scriptVersion = deployScript(
+      "var approvalService = system.import('approvalService'); \n" +
+      "approvalService.approve('primus'); ");
+    ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+    CompletableFuture<ScriptExecution> endFuture = engine.whenScriptExecutionEnded(scriptExecution.getId());
+
+    // a failing lock operation expires the lock with a ScriptExecutionErrorEvent
+    LockService lockService = engine.getLockService();
+    Lock lock = lockService.acquireLock(scriptExecution.getId());
+    lockService.addUnlockListener(scriptExecution.getId(), (engine, l, lockedScriptExecution) -> {
+      throw new RuntimeException("failing on purpose");
+    });
+    lockService.releaseLock(lock, null);
+
+    try {
+      endFuture.get(10, TimeUnit.SECONDS);
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause().getMessage().contains("failing on purpose"));
+    }
+    // registering after the failure completes right away
+    assertTrue(engine.whenScriptExecutionEnded(scriptExecution.getId()).isCompletedExceptionally());
+  }
+
+  @Test
+  public void testWaitTimesOut() throws Exception {
+    ScriptVersion scriptVersion = deployScript(
+      "var approvalService = system.import('approvalService'); \n" +
+      "approvalService.approve('primus'); ");
+
+    ScriptExecutionResponse response = new StartScriptExecutionCommand()
+      .scriptVersionId(scriptVersion.getId())
+      .async(true)
+      .waitMillis(50L)
+      .waitForEnd(true)
+      .execute(engine);
+    assertNotNull(response.getScriptExecutionId());
+    assertNull(response.getScriptExecution());
+  }
+
+  @Test
+  public void testEngineFuture() throws Exception {
+    ScriptVersion scriptVersion = deployScript(
+      "var approvalService = system.import('approvalService'); \n" +
+      "approvalService.approve('primus'); ");
+
+    ScriptExecution scriptExecution = engine
+      .startScriptExecutionAsync(new StartScriptExecutionCommand()
+        .scriptVersionId(scriptVersion.getId()))
+      .get(10, TimeUnit.SECONDS);
+    assertNotNull(scriptExecution.getId());
+    assertNotNull(continuationReferences.poll(10, TimeUnit.SECONDS));
+  }
+
+  private void awaitGate() {
+    try {
+      executorGate.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
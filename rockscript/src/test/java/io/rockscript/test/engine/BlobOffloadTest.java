@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.events.ExecutionEvent;
+import io.rockscript.api.events.ServiceFunctionEndedEvent;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.blob.BlobReference;
+import io.rockscript.engine.blob.InMemoryBlobStore;
+import io.rockscript.service.ServiceFunctionOutput;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BlobOffloadTest extends AbstractEngineTest {
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration()
+      .configureTest()
+      .configurePayloadOffloadThreshold(1024)
+      .build()
+      .start();
+  }
+
+  @Test
+  public void testLargeResultIsOffloaded() {
+    engine.getImportResolver().createImport("dataService")
+      .put("load", input -> ServiceFunctionOutput.endFunction(createLargeResult()))
+      .put("small", input -> ServiceFunctionOutput.endFunction("small"));
+
+    ScriptVersion scriptVersion = deployScript(
+      "var dataService = system.import('dataService'); \n" +
+      "var data = dataService.load(); \n" +
+      "var again = dataService.load(); \n" +
+      "var small = dataService.small(); \n" +
+      "var name = data.items[3].name; \n" +
+      "data.extra = 'updated'; \n" +
+      "var extra = data.extra;");
+    ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+
+    assertEquals("item3", scriptExecution.getVariable("name"));
+    assertEquals("updated", scriptExecution.getVariable("extra"));
+
+    List<ExecutionEvent> events = engine
+      .getScriptExecutionStore()
+      .findEventsByScriptExecutionId(scriptExecution.getId());
+    List<Object> results = events.stream()
+      .filter(event -> event instanceof ServiceFunctionEndedEvent)
+      .map(event -> ((ServiceFunctionEndedEvent)event).getResult())
+      .collect(Collectors.toList());
+    assertEquals(3, results.size());
+    BlobReference blobReference = (BlobReference) results.get(0);
+    assertTrue(blobReference.getSize()>1024);
+    assertEquals(blobReference.getBlobId(), ((BlobReference)results.get(1)).getBlobId());
+    assertEquals("small", results.get(2));
+
+    // identical payloads are stored once
+    InMemoryBlobStore blobStore = (InMemoryBlobStore) engine.getBlobStore();
+    assertEquals(1, blobStore.size());
+    assertNotNull(blobStore.get(blobReference.getBlobId()));
+
+    // the events only contain the reference
+    String eventsJson = engine.getGson().toJson(events);
+    assertTrue(eventsJson.length()<blobReference.getSize());
+
+    List<ExecutionEvent> decodedEvents = engine.getEventCodec().decode(engine.getEventCodec().encode(events));
+    BlobReference decodedReference = (BlobReference) decodedEvents.stream()
+      .filter(event -> event instanceof ServiceFunctionEndedEvent)
+      .map(event -> ((ServiceFunctionEndedEvent)event).getResult())
+      .findFirst()
+      .get();
+    assertEquals(blobReference.getBlobId(), decodedReference.getBlobId());
+    assertEquals(blobReference.getSize(), decodedReference.getSize());
+  }
+
+  static Map<String,Object> createLargeResult() {
+    List<Object> items = new ArrayList<>();
+    for (int i=0; i<100; i++) {
+      Map<String,Object> item = new LinkedHashMap<>();
+      item.put("name", "item"+i);
+      item.put("description", "description of item "+i);
+      items.add(item);
+    }
+    Map<String,Object> result = new LinkedHashMap<>();
+    result.put("items", items);
+    return result;
+  }
+}
@@ -28,6 +28,7 @@ import io.rockscript.api.commands.StartScriptExecutionCommand;
 import io.rockscript.api.events.Event;
 import io.rockscript.api.model.ScriptExecution;
 import io.rockscript.engine.impl.EventDispatcher;
+import io.rockscript.engine.impl.Lock;
 import io.rockscript.service.ImportObject;
 import io.rockscript.service.ImportProvider;
 import io.rockscript.service.ServiceFunctionOutput;
@@ -38,6 +39,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
 
 
 public class CrashTest extends AbstractEngineTest {
@@ -177,6 +181,53 @@ public class CrashTest extends AbstractEngineTest {
     } while (crashOccurred);
   }
 
+  @Test
+  public void testRecoverySkipsScriptExecutionsWithALiveLock() {
+    Engine crashEngine = createCrashEngine();
+    CrashEventDispatcher eventDispatcher = (CrashEventDispatcher) crashEngine.getEventDispatcher();
+
+    String scriptVersionId = new DeployScriptVersionCommand()
+      .scriptText(
+        "var helloService = system.import('example.com/hello'); \n" +
+        "helloService.aSyncFunction('hello'); \n" +
+        "helloService.anAsyncFunction();")
+      .execute(crashEngine)
+      .getId();
+
+    eventDispatcher.throwAfterEventCount(2);
+    try {
+      new StartScriptExecutionCommand()
+        .scriptVersionId(scriptVersionId)
+        .execute(crashEngine);
+      fail("expected crash");
+    } catch (CrashException e) {
+      eventDispatcher.stopThrowing();
+    }
+
+    Set<String> openScriptExecutionIds = crashEngine.getScriptExecutionStore().getOpenScriptExecutionIds();
+    assertEquals(1, openScriptExecutionIds.size());
+    String scriptExecutionId = openScriptExecutionIds.iterator().next();
+
+    // another engine node took over the crashed script execution
+    Lock lock = crashEngine.getLockService().acquireExpiredLock(scriptExecutionId);
+    assertNotNull(lock);
+
+    RecoverExecutionsResponse response = new RecoverExecutionsCommand().execute(crashEngine);
+    assertEquals(1, response.getOpenScriptExecutions());
+    assertEquals(1, response.getLockedScriptExecutions());
+    assertEquals(0, response.getScriptExecutions().size());
+
+    // the lease of the other node runs out
+    lock.expire();
+
+    response = new RecoverExecutionsCommand().execute(crashEngine);
+    assertEquals(1, response.getOpenScriptExecutions());
+    assertEquals(0, response.getLockedScriptExecutions());
+    assertEquals(1, response.getScriptExecutions().size());
+    assertTrue(response.getFailures().isEmpty());
+    assertTrue(crashEngine.getScriptExecutionStore().getOpenScriptExecutionIds().isEmpty());
+  }
+
   private ScriptExecution createExpectedScriptExecutionState(String scriptText) {
     String scriptVersionId = new DeployScriptVersionCommand()
         .scriptText(scriptText)
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.commands.DeployScriptVersionCommand;
+import io.rockscript.api.commands.StartScriptExecutionCommand;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.EngineException;
+import io.rockscript.engine.impl.EngineScript;
+import io.rockscript.engine.impl.EngineScriptCodec;
+import io.rockscript.engine.impl.Parse;
+import io.rockscript.engine.impl.ScriptElement;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EngineScriptCodecTest extends AbstractEngineTest {
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration()
+      .configureTest()
+      .configureTrustCompiledScripts()
+      .build()
+      .start();
+  }
+
+  static final String SCRIPT_TEXT =
+    "var o = {a: 1, b: 'two', c: [true, false, null]}; \n" +
+    "var total = 0; \n" +
+    "for (var i = 0; i < 3; i++) { \n" +
+    "  if (i == 1 && o.a >= 1) { total = total + o['a']; } else { total = total - 1; } \n" +
+    "} \n" +
+    "var text = o.b + '!'; \n" +
+    "var notEqual = !(total !== 1) || total != 2;";
+
+  @Test
+  public void testDecodedScriptEqualsParsedScript() {
+    EngineScript parsed = Parse.parse(SCRIPT_TEXT, engine).getEngineScript();
+    byte[] compiledScript = EngineScriptCodec.encode(parsed, SCRIPT_TEXT);
+    EngineScript decoded = EngineScriptCodec.decode(compiledScript, SCRIPT_TEXT, engine);
+
+    List<ScriptElement> parsedElements = parsed.getElements();
+    List<ScriptElement> decodedElements = decoded.getElements();
+    assertEquals(parsedElements.size(), decodedElements.size());
+    for (int i=0; i<parsedElements.size(); i++) {
+      ScriptElement parsedElement = parsedElements.get(i);
+      ScriptElement decodedElement = decodedElements.get(i);
+      assertEquals(parsedElement.getClass(), decodedElement.getClass());
+      assertEquals(parsedElement.getIndex(), decodedElement.getIndex());
+      assertEquals(parsedElement.getText(), decodedElement.getText());
+      assertEquals(parsedElement.getLocation().getLine(), decodedElement.getLocation().getLine());
+    }
+  }
+
+  @Test
+  public void testCompiledScriptMustMatchText() {
+    EngineScript parsed = Parse.parse(SCRIPT_TEXT, engine).getEngineScript();
+    byte[] compiledScript = EngineScriptCodec.encode(parsed, SCRIPT_TEXT);
+    try {
+      EngineScriptCodec.decode(compiledScript, SCRIPT_TEXT+" ", engine);
+      fail("expected exception");
+    } catch (EngineException e) {
+      assertTrue(e.getMessage().contains("doesn't match"));
+    }
+  }
+
+  @Test
+  public void testDeployPrecompiledScript() {
+    EngineScript parsed = Parse.parse(SCRIPT_TEXT, null).getEngineScript();
+    ScriptVersion scriptVersion = new DeployScriptVersionCommand()
+      .scriptText(SCRIPT_TEXT)
+      .compiledScript(EngineScriptCodec.encode(parsed, SCRIPT_TEXT))
+      .execute(engine)
+      .throwIfErrors();
+    assertNotNull(scriptVersion.getCompiledScript());
+
+    // the cached script is loaded from the compiled form
+    engine.getScriptStore().getEngineScriptCache().clear();
+
+    ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+    assertEquals(-1d, scriptExecution.getVariable("total"));
+    assertEquals("two!", scriptExecution.getVariable("text"));
+    assertEquals(true, scriptExecution.getVariable("notEqual"));
+  }
+
+  @Test
+  public void testCompiledScriptOfUntrustedClientIsIgnored() {
+    Engine untrustingEngine = new Configuration()
+      .configureTest()
+      .build()
+      .start();
+    // a compiled script with the header of the text but the syntax tree of other code
+    EngineScript otherCode = Parse.parse("var total = 42;", null).getEngineScript();
+    byte[] forgedCompiledScript = EngineScriptCodec.encode(otherCode, SCRIPT_TEXT);
+
+    ScriptVersion scriptVersion = new DeployScriptVersionCommand()
+      .scriptText(SCRIPT_TEXT)
+      .compiledScript(forgedCompiledScript)
+      .execute(untrustingEngine)
+      .throwIfErrors();
+    untrustingEngine.getScriptStore().getEngineScriptCache().clear();
+
+    ScriptExecution scriptExecution = new StartScriptExecutionCommand()
+      .scriptVersionId(scriptVersion.getId())
+      .execute(untrustingEngine)
+      .getScriptExecution();
+    assertEquals(-1d, scriptExecution.getVariable("total"));
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.events.EventCodec;
+import io.rockscript.api.events.ExecutionEvent;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Compares the {@link EventCodec} with the Gson event serialization.
+ * Prints bytes/event and decode ns/event for both.
+ * Run the main method from the IDE or with
+ * mvn -pl rockscript test-compile exec:java -Dexec.mainClass=io.rockscript.test.engine.EventCodecBenchmark -Dexec.classpathScope=test */
+public class EventCodecBenchmark {
+
+  static final int EVENT_COPIES = 200;
+  static final int WARMUP_ITERATIONS = 2000;
+  static final int ITERATIONS = 5000;
+
+  public static void main(String[] args) {
+    Engine engine = new Configuration()
+      .configureTest()
+      .build()
+      .start();
+
+    List<ExecutionEvent> events = new ArrayList<>();
+    for (int i=0; i<EVENT_COPIES; i++) {
+      events.addAll(EventCodecTest.createEvents(engine));
+    }
+    int eventCount = events.size();
+
+    Gson gson = engine.getGson();
+    Type eventListType = new TypeToken<List<ExecutionEvent>>(){}.getType();
+    byte[] json = gson.toJson(events, eventListType).getBytes(StandardCharsets.UTF_8);
+    EventCodec eventCodec = engine.getEventCodec();
+    byte[] binary = eventCodec.encode(events);
+
+    for (int i=0; i<WARMUP_ITERATIONS; i++) {
+      gson.fromJson(new String(json, StandardCharsets.UTF_8), eventListType);
+      eventCodec.decode(binary);
+    }
+
+    long gsonNanos = System.nanoTime();
+    for (int i=0; i<ITERATIONS; i++) {
+      gson.fromJson(new String(json, StandardCharsets.UTF_8), eventListType);
+    }
+    gsonNanos = System.nanoTime() - gsonNanos;
+
+    long codecNanos = System.nanoTime();
+    for (int i=0; i<ITERATIONS; i++) {
+      eventCodec.decode(binary);
+    }
+    codecNanos = System.nanoTime() - codecNanos;
+
+    System.out.println(String.format("%-6s %12s %16s", "", "bytes/event", "decode ns/event"));
+    System.out.println(String.format("%-6s %12d %16d", "gson", json.length/eventCount, gsonNanos/ITERATIONS/eventCount));
+    System.out.println(String.format("%-6s %12d %16d", "codec", binary.length/eventCount, codecNanos/ITERATIONS/eventCount));
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import com.google.gson.JsonParser;
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.commands.DeployScriptVersionCommand;
+import io.rockscript.api.commands.StartScriptExecutionCommand;
+import io.rockscript.api.events.EncodedPayload;
+import io.rockscript.api.events.EventCodec;
+import io.rockscript.api.events.ExecutionEvent;
+import io.rockscript.api.events.ScriptStartedEvent;
+import io.rockscript.api.events.ServiceFunctionEndedEvent;
+import io.rockscript.api.events.ServiceFunctionStartedEvent;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.service.ServiceFunctionOutput;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static io.rockscript.util.Maps.entry;
+import static io.rockscript.util.Maps.hashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventCodecTest extends AbstractEngineTest {
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration()
+      .configureTest()
+      .build()
+      .start();
+  }
+
+  @Test
+  public void testEncodeDecodeRoundTrip() {
+    List<ExecutionEvent> events = createEvents(engine);
+
+    EventCodec eventCodec = engine.getEventCodec();
+    byte[] bytes = eventCodec.encode(events);
+    List<ExecutionEvent> decodedEvents = eventCodec.decode(bytes);
+
+    assertEquals(events.size(), decodedEvents.size());
+    JsonParser jsonParser = new JsonParser();
+    for (int i=0; i<events.size(); i++) {
+      ExecutionEvent event = events.get(i);
+      ExecutionEvent decodedEvent = decodedEvents.get(i);
+      assertEquals(event.getClass(), decodedEvent.getClass());
+      assertEquals(event.getTime(), decodedEvent.getTime());
+      assertEquals(event.getExecutionId(), decodedEvent.getExecutionId());
+      assertEquals(
+        jsonParser.parse(gson.toJson(event, ExecutionEvent.class)),
+        jsonParser.parse(gson.toJson(decodedEvent, ExecutionEvent.class)));
+    }
+
+    // Re-encoding copies the payload bytes without decoding them
+    assertEquals(bytes.length, eventCodec.encode(decodedEvents).length);
+
+    assertTrue(bytes.length < gson.toJson(events).length());
+  }
+
+  @Test
+  public void testPayloadIsDecodedOnAccess() {
+    List<ExecutionEvent> events = createEvents(engine);
+    List<ExecutionEvent> decodedEvents = engine.getEventCodec().decode(engine.getEventCodec().encode(events));
+
+    ServiceFunctionStartedEvent startedEvent = (ServiceFunctionStartedEvent) decodedEvents.stream()
+      .filter(event -> event instanceof ServiceFunctionStartedEvent)
+      .findFirst()
+      .get();
+    Map<String,Object> args = (Map<String,Object>) startedEvent.getArgs();
+    Map<String,Object> arg0 = (Map<String,Object>) args.get("arg0");
+    assertEquals("hello", arg0.get("message"));
+
+    ServiceFunctionEndedEvent endedEvent = (ServiceFunctionEndedEvent) decodedEvents.stream()
+      .filter(event -> event instanceof ServiceFunctionEndedEvent)
+      .findFirst()
+      .get();
+    assertEquals("hello world", endedEvent.getResult());
+    assertTrue(!(endedEvent.getResult() instanceof EncodedPayload));
+  }
+
+  @Test
+  public void testEncodedPayloadJsonRoundTrip() {
+    EncodedPayload payload = gson.fromJson("{ \"message\": \"hello\", \"count\": 2 }", EncodedPayload.class);
+
+    assertEquals("{\"message\":\"hello\",\"count\":2}", payload.getJson());
+    Map<String,Object> decoded = (Map<String,Object>) payload.decode();
+    assertEquals("hello", decoded.get("message"));
+    assertEquals(payload.getJson(), gson.fromJson(gson.toJson(payload), EncodedPayload.class).getJson());
+    assertNull(gson.fromJson("null", EncodedPayload.class));
+  }
+
+  @Test
+  public void testDecodeVersion1() {
+    // bytes as written by version 1: execution ids "e"+n as 2n+2,
+    // no retention in the script started event and payload length+1
+    Version1Bytes v1 = new Version1Bytes();
+    v1.out.write(1);
+    v1.writeVarint(3);
+
+    v1.out.write(1); // script started
+    v1.writeTime(1000);
+    v1.writeNewName("se1");
+    v1.writeVarint(2*0+2);
+    v1.writeVarint(0);
+    v1.writeNewName("s1");
+    v1.writeNewName("sv1");
+    v1.writeNewName("hello.rs");
+    v1.writeVarint(1+1);
+    v1.writeJson("{\"message\":\"hello\"}");
+
+    v1.out.write(3); // service function started
+    v1.writeTime(5);
+    v1.writeVarint(0+2);
+    v1.writeVarint(2*7+2);
+    v1.writeVarint(2+1);
+    v1.writeNewName("helloService");
+    v1.writeNewName("hi");
+    v1.writeJson("[\"hello\"]");
+
+    v1.out.write(5); // service function ended
+    v1.writeTime(0);
+    v1.writeVarint(0+2);
+    v1.writeVarint(2*7+2);
+    v1.writeVarint(2+1);
+    v1.writeJson("\"hello world\"");
+
+    List<ExecutionEvent> events = engine.getEventCodec().decode(v1.out.toByteArray());
+    assertEquals(3, events.size());
+
+    ScriptStartedEvent scriptStartedEvent = (ScriptStartedEvent) events.get(0);
+    assertEquals(Instant.ofEpochMilli(1000), scriptStartedEvent.getTime());
+    assertEquals("se1", scriptStartedEvent.getScriptExecutionId());
+    assertEquals("e0", scriptStartedEvent.getExecutionId());
+    assertNull(scriptStartedEvent.getLine());
+    assertEquals("s1", scriptStartedEvent.getScriptId());
+    assertEquals("sv1", scriptStartedEvent.getScriptVersionId());
+    assertEquals("hello.rs", scriptStartedEvent.getScriptName());
+    assertEquals(1, (int) scriptStartedEvent.getScriptVersion());
+    assertEquals("hello", ((Map<String,Object>)scriptStartedEvent.getInput()).get("message"));
+    assertNull(scriptStartedEvent.getEventRetention());
+
+    ServiceFunctionStartedEvent startedEvent = (ServiceFunctionStartedEvent) events.get(1);
+    assertEquals(Instant.ofEpochMilli(1005), startedEvent.getTime());
+    assertEquals("se1", startedEvent.getScriptExecutionId());
+    assertEquals("e7", startedEvent.getExecutionId());
+    assertEquals(2, (int) startedEvent.getLine());
+    assertEquals("helloService", startedEvent.getServiceName());
+    assertEquals("hi", startedEvent.getFunctionName());
+    assertEquals("hello", ((List<Object>)startedEvent.getArgs()).get(0));
+
+    ServiceFunctionEndedEvent endedEvent = (ServiceFunctionEndedEvent) events.get(2);
+    assertEquals(Instant.ofEpochMilli(1005), endedEvent.getTime());
+    assertEquals("e7", endedEvent.getExecutionId());
+    assertEquals("hello world", endedEvent.getResult());
+
+    // re-encoding writes the current version
+    byte[] bytes = engine.getEventCodec().encode(events);
+    assertEquals(EventCodec.VERSION, bytes[0]);
+    List<ExecutionEvent> reencodedEvents = engine.getEventCodec().decode(bytes);
+    assertEquals("e7", reencodedEvents.get(2).getExecutionId());
+    assertEquals("hello world", ((ServiceFunctionEndedEvent)reencodedEvents.get(2)).getResult());
+  }
+
+  static class Version1Bytes {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    void writeTime(long millisDelta) {
+      writeVarint(1);
+      writeVarint((int) (millisDelta << 1));
+      writeVarint(0);
+    }
+
+    void writeNewName(String name) {
+      writeVarint(1);
+      writeBytes(name);
+    }
+
+    void writeJson(String json) {
+      writeBytes(json);
+    }
+
+    void writeBytes(String text) {
+      byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      writeVarint(bytes.length+1);
+      out.write(bytes, 0, bytes.length);
+    }
+
+    void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        out.write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      out.write(value);
+    }
+  }
+
+  /** events of a script execution that covers the most common event types */
+  static List<ExecutionEvent> createEvents(Engine engine) {
+    engine.getImportResolver().createImport("helloService")
+      .put("hi", input -> ServiceFunctionOutput.endFunction(((Map<String,Object>)input.getArg(0)).get("message") + " world"))
+      .put("fail", input -> { throw new RuntimeException("failing on purpose"); });
+
+    ScriptVersion scriptVersion = new DeployScriptVersionCommand()
+      .scriptText(
+        "var helloService = system.import('helloService'); \n" +
+        "var response = helloService.hi({message: system.input.message}); \n" +
+        "helloService.fail(response);")
+      .execute(engine)
+      .throwIfErrors();
+
+    ScriptExecution scriptExecution = new StartScriptExecutionCommand()
+      .scriptVersionId(scriptVersion.getId())
+      .input(hashMap(entry("message", "hello")))
+      .execute(engine)
+      .getScriptExecution();
+
+    return engine
+      .getScriptExecutionStore()
+      .findEventsByScriptExecutionId(scriptExecution.getId());
+  }
+}
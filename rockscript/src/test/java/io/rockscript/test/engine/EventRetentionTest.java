@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.commands.DeployScriptVersionCommand;
+import io.rockscript.api.events.Event;
+import io.rockscript.api.events.ExecutionEvent;
+import io.rockscript.api.events.VariableCreatedEvent;
+import io.rockscript.api.model.EventRetention;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.api.queries.ScriptExecutionQuery;
+import io.rockscript.api.queries.ScriptExecutionQuery.ScriptExecutionDetails;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventRetentionTest extends AbstractEngineTest {
+
+  static final String SCRIPT_TEXT =
+    "var a = 1; \n" +
+    "var b = a + 1;";
+
+  List<Event> listenedEvents = new ArrayList<>();
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration()
+      .configureTest()
+      .configureEventRetention(EventRetention.REPLAY_ONLY)
+      .configureEventSampleRate(1.0)
+      .addEventListener(event -> listenedEvents.add(event))
+      .build()
+      .start();
+  }
+
+  @Test
+  public void testEngineDefaultReplayOnly() {
+    ScriptVersion scriptVersion = deployScript(SCRIPT_TEXT);
+    ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+
+    List<ExecutionEvent> storedEvents = engine
+      .getScriptExecutionStore()
+      .findEventsByScriptExecutionId(scriptExecution.getId());
+    assertFalse(storedEvents.stream().anyMatch(event -> event instanceof VariableCreatedEvent));
+    // the in-memory listeners still get all events
+    assertEquals(2, listenedEvents.stream().filter(event -> event instanceof VariableCreatedEvent).count());
+
+    ScriptExecutionDetails details = new ScriptExecutionQuery()
+      .id(scriptExecution.getId())
+      .execute(engine);
+    assertEquals(EventRetention.REPLAY_ONLY, details.getEventRetention());
+    assertEquals(2d, details.getVariable("b"));
+  }
+
+  @Test
+  public void testScriptOverridesEngineDefault() {
+    ScriptVersion scriptVersion = new DeployScriptVersionCommand()
+      .scriptText(SCRIPT_TEXT)
+      .eventRetention(EventRetention.SAMPLED)
+      .execute(engine)
+      .throwIfErrors();
+    ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+
+    List<ExecutionEvent> storedEvents = engine
+      .getScriptExecutionStore()
+      .findEventsByScriptExecutionId(scriptExecution.getId());
+    // the sample rate is 1.0 so this execution is sampled
+    assertTrue(storedEvents.stream().anyMatch(event -> event instanceof VariableCreatedEvent));
+
+    ScriptExecution reloaded = engine
+      .getScriptExecutionStore()
+      .findScriptExecutionById(scriptExecution.getId())
+      .toScriptExecution();
+    assertEquals(EventRetention.SAMPLED, reloaded.getEventRetention());
+  }
+}
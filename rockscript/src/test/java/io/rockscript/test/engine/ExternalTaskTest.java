@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.Command;
+import io.rockscript.api.commands.CompleteExternalTasksCommand;
+import io.rockscript.api.commands.CompleteExternalTasksResponse;
+import io.rockscript.api.commands.FetchAndLockCommand;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.EngineScriptExecution;
+import io.rockscript.engine.impl.Time;
+import io.rockscript.service.task.ExternalTask;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.rockscript.util.Maps.entry;
+import static io.rockscript.util.Maps.hashMap;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class ExternalTaskTest extends AbstractEngineTest {
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration()
+      .configureTest()
+      .build()
+      .start();
+  }
+
+  ScriptVersion deployInvoiceScript() {
+    return deployScript(
+      "var tasks = system.import('rockscript.io/task'); \n" +
+      "var invoice = tasks.invoice({amount: system.input.amount}); \n" +
+      "var mail = tasks.mail({invoiceId: invoice.id});");
+  }
+
+  @Test
+  public void testFetchAndCompleteInBatches() {
+    ScriptVersion scriptVersion = deployInvoiceScript();
+    ScriptExecution first = startScriptExecution(scriptVersion, hashMap(entry("amount", 5)));
+    ScriptExecution second = startScriptExecution(scriptVersion, hashMap(entry("amount", 7)));
+
+    List<ExternalTask> invoiceTasks = fetchAndLock("worker1", "invoice");
+    assertEquals(2, invoiceTasks.size());
+    assertEquals(first.getId(), invoiceTasks.get(0).getScriptExecutionId());
+    Map<String,Object> arg = (Map<String,Object>) invoiceTasks.get(0).getArgs().get(0);
+    assertEquals(5, ((Number)arg.get("amount")).intValue());
+    assertTrue(fetchAndLock("worker2", "invoice").isEmpty());
+
+    CompleteExternalTasksResponse response = new CompleteExternalTasksCommand()
+      .workerId("worker1")
+      .complete(invoiceTasks.get(0).getId(), hashMap(entry("id", "inv1")))
+      .complete(invoiceTasks.get(1).getId(), hashMap(entry("id", "inv2")))
+      .execute(engine);
+    assertEquals(2, response.getCompletedTaskIds().size());
+    assertTrue(response.getErrors().isEmpty());
+
+    List<ExternalTask> mailTasks = fetchAndLock("worker1", "invoice", "mail");
+    assertEquals(2, mailTasks.size());
+    assertEquals("inv1", ((Map<String,Object>)mailTasks.get(0).getArgs().get(0)).get("invoiceId"));
+
+    CompleteExternalTasksCommand completeMails = new CompleteExternalTasksCommand().workerId("worker1");
+    mailTasks.forEach(task->completeMails.complete(task.getId(), "sent"));
+    completeMails.execute(engine);
+
+    assertTrue(findScriptExecution(first).isEnded());
+    assertTrue(findScriptExecution(second).isEnded());
+    assertEquals(0, engine.getExternalTaskService().getTaskCount());
+  }
+
+  @Test
+  public void testExpiredLockIsFetchedByAnotherWorker() {
+    setNow(Time.now());
+    ScriptExecution scriptExecution = startScriptExecution(deployInvoiceScript(), hashMap(entry("amount", 5)));
+
+    List<ExternalTask> tasks = new FetchAndLockCommand()
+      .workerId("worker1")
+      .topics(asList("invoice"))
+      .lockDuration(1000L)
+      .execute(engine);
+    assertEquals(1, tasks.size());
+    String taskId = tasks.get(0).getId();
+
+    setNow(Time.now().plus(Duration.ofSeconds(2)));
+    assertEquals(taskId, fetchAndLock("worker2", "invoice").get(0).getId());
+
+    CompleteExternalTasksResponse response = new CompleteExternalTasksCommand()
+      .workerId("worker1")
+      .complete(taskId, hashMap(entry("id", "inv1")))
+      .execute(engine);
+    assertTrue(response.getCompletedTaskIds().isEmpty());
+    assertNotNull(response.getErrors().get(taskId));
+
+    response = new CompleteExternalTasksCommand()
+      .workerId("worker2")
+      .complete(taskId, hashMap(entry("id", "inv1")))
+      .execute(engine);
+    assertEquals(asList(taskId), response.getCompletedTaskIds());
+    assertEquals(1, fetchAndLock("worker2", "mail").size());
+    assertFalse(findScriptExecution(scriptExecution).isEnded());
+  }
+
+  @Test
+  public void testExpiredLockCantBeCompleted() {
+    setNow(Time.now());
+    startScriptExecution(deployInvoiceScript(), hashMap(entry("amount", 5)));
+
+    String taskId = new FetchAndLockCommand()
+      .workerId("worker1")
+      .topics(asList("invoice"))
+      .lockDuration(1000L)
+      .execute(engine)
+      .get(0)
+      .getId();
+
+    // nobody fetched the task after the lock expired
+    setNow(Time.now().plus(Duration.ofSeconds(2)));
+    CompleteExternalTasksResponse response = new CompleteExternalTasksCommand()
+      .workerId("worker1")
+      .complete(taskId, hashMap(entry("id", "inv1")))
+      .execute(engine);
+    assertTrue(response.getCompletedTaskIds().isEmpty());
+    assertTrue(response.getErrors().get(taskId).contains("expired"));
+    assertEquals(taskId, fetchAndLock("worker2", "invoice").get(0).getId());
+  }
+
+  @Test
+  public void testFailingCompletionIsReported() {
+    startScriptExecution(deployInvoiceScript(), hashMap(entry("amount", 5)));
+    String taskId = fetchAndLock("worker1", "invoice").get(0).getId();
+
+    // the script dereferences the id of the result, which fails on a null result
+    CompleteExternalTasksResponse response = new CompleteExternalTasksCommand()
+      .workerId("worker1")
+      .complete(taskId, null)
+      .execute(engine);
+    assertTrue(response.getCompletedTaskIds().isEmpty());
+    assertNotNull(response.getErrors().get(taskId));
+  }
+
+  @Test
+  public void testLongPollingWakesUpWhenALockExpires() throws Exception {
+    startScriptExecution(deployInvoiceScript(), hashMap(entry("amount", 5)));
+    String taskId = new FetchAndLockCommand()
+      .workerId("worker1")
+      .topics(asList("invoice"))
+      .lockDuration(200L)
+      .execute(engine)
+      .get(0)
+      .getId();
+
+    CompletableFuture<List<ExternalTask>> fetch = CompletableFuture.supplyAsync(()->new FetchAndLockCommand()
+      .workerId("worker2")
+      .topics(asList("invoice"))
+      .asyncResponseTimeout(30000L)
+      .execute(engine));
+
+    assertEquals(taskId, fetch.get(5, TimeUnit.SECONDS).get(0).getId());
+  }
+
+  @Test
+  public void testAsyncResponseTimeoutIsLimited() throws Exception {
+    engine.getExternalTaskService().maxAsyncResponseTimeout(Duration.ofMillis(100));
+
+    CompletableFuture<List<ExternalTask>> fetch = CompletableFuture.supplyAsync(()->new FetchAndLockCommand()
+      .workerId("worker1")
+      .topics(asList("invoice"))
+      .asyncResponseTimeout(60000L)
+      .execute(engine));
+
+    assertTrue(fetch.get(5, TimeUnit.SECONDS).isEmpty());
+  }
+
+  @Test
+  public void testLongPolling() throws Exception {
+    ScriptVersion scriptVersion = deployInvoiceScript();
+
+    CompletableFuture<List<ExternalTask>> fetch = CompletableFuture.supplyAsync(()->new FetchAndLockCommand()
+      .workerId("worker1")
+      .topics(asList("invoice"))
+      .asyncResponseTimeout(10000L)
+      .execute(engine));
+    // give the worker time to start waiting
+    Thread.sleep(100);
+    assertFalse(fetch.isDone());
+
+    startScriptExecution(scriptVersion, hashMap(entry("amount", 5)));
+
+    assertEquals(1, fetch.get(5, TimeUnit.SECONDS).size());
+  }
+
+  @Test
+  public void testCommandsFromJson() {
+    Command fetch = gson.fromJson(
+      "{'fetchAndLock': {'workerId':'w', 'topics':['invoice'], 'maxTasks':5}}",
+      Command.class);
+    assertEquals(5, (int)((FetchAndLockCommand)fetch).getMaxTasks());
+
+    CompleteExternalTasksCommand complete = (CompleteExternalTasksCommand) gson.fromJson(
+      "{'completeExternalTasks': {'workerId':'w', 'completions':[{'taskId':'t1', 'result':{'id':'inv1'}}, {'taskId':'t2', 'error':'oops'}]}}",
+      Command.class);
+    assertEquals(2, complete.getCompletions().size());
+    assertEquals("t1", complete.getCompletions().get(0).getTaskId());
+    assertEquals("oops", complete.getCompletions().get(1).getError());
+  }
+
+  List<ExternalTask> fetchAndLock(String workerId, String... topics) {
+    return new FetchAndLockCommand()
+      .workerId(workerId)
+      .topics(asList(topics))
+      .execute(engine);
+  }
+
+  EngineScriptExecution findScriptExecution(ScriptExecution scriptExecution) {
+    return engine.getScriptExecutionStore().findScriptExecutionById(scriptExecution.getId());
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.api.commands.RecoverExecutionsCommand;
+import io.rockscript.api.commands.RecoverExecutionsResponse;
+import io.rockscript.api.events.ServiceFunctionEndedEvent;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.EngineException;
+import io.rockscript.engine.impl.EngineScriptExecution;
+import io.rockscript.engine.impl.Lock;
+import io.rockscript.engine.impl.LockService;
+import io.rockscript.engine.impl.LockServiceImpl;
+import io.rockscript.engine.impl.Time;
+import io.rockscript.service.ServiceFunctionOutput;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class LockServiceTest extends AbstractEngineTest {
+
+  @Test
+  public void testUnlockListenersAreRunInOneBatch() {
+    engine.getImportResolver().createImport("waitService")
+      .put("waitForIt", input -> ServiceFunctionOutput.waitForFunctionEndCallback());
+
+    ScriptVersion scriptVersion = deployScript(
+      "var waitService = system.import('waitService'); \n" +
+      "waitService.waitForIt(); ");
+    ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+    String scriptExecutionId = scriptExecution.getId();
+
+    LockService lockService = engine.getLockService();
+    Lock lock = lockService.acquireLock(scriptExecutionId);
+    assertNotNull(lock);
+
+    List<EngineScriptExecution> lockedScriptExecutions = new ArrayList<>();
+    lockService.addUnlockListener(scriptExecutionId, (engine, l, lockedScriptExecution) -> lockedScriptExecutions.add(lockedScriptExecution));
+    lockService.addUnlockListener(scriptExecutionId, (engine, l, lockedScriptExecution) -> {
+      lockedScriptExecutions.add(lockedScriptExecution);
+      // added while the batch is running, taken in the next batch on the same script execution
+      lockService.addUnlockListener(scriptExecutionId, (engine2, l2, lse) -> lockedScriptExecutions.add(lse));
+    });
+    assertNull(lockService.acquireLockOrAddUnlockListener(scriptExecutionId, (engine, l, lockedScriptExecution) -> lockedScriptExecutions.add(lockedScriptExecution)));
+
+    // no script execution is passed so the batch loads it from the store
+    lockService.releaseLock(lock, null);
+
+    assertEquals(4, lockedScriptExecutions.size());
+    EngineScriptExecution loadedScriptExecution = lockedScriptExecutions.get(0);
+    assertNotNull(loadedScriptExecution);
+    lockedScriptExecutions.forEach(lockedScriptExecution -> assertSame(loadedScriptExecution, lockedScriptExecution));
+
+    Lock nextLock = lockService.acquireLock(scriptExecutionId);
+    assertNotNull(nextLock);
+    lockService.releaseLock(nextLock, null);
+  }
+
+  @Test
+  public void testLateUnlockAfterTheLeaseExpiredFails() {
+    String scriptExecutionId = startWaitingScriptExecution();
+    LockServiceImpl lockService = (LockServiceImpl) engine.getLockService();
+    Lock staleLock = lockService.acquireLock(scriptExecutionId);
+    assertNotNull(staleLock);
+
+    setNow(Time.now().plus(lockService.getLockLeaseDuration()).plusSeconds(1));
+    Lock recoveryLock = lockService.acquireExpiredLock(scriptExecutionId);
+    assertNotNull(recoveryLock);
+    assertTrue(staleLock.isRevoked());
+
+    try {
+      lockService.releaseLock(staleLock, null);
+      fail("expected exception");
+    } catch (EngineException e) {
+      assertTrue(e.getMessage().contains("taken over"));
+    }
+
+    // the late unlock didn't remove the lock of the recovery
+    assertNull(lockService.acquireLock(scriptExecutionId));
+    lockService.releaseLock(recoveryLock, null);
+
+    Lock nextLock = lockService.acquireLock(scriptExecutionId);
+    assertNotNull(nextLock);
+    lockService.releaseLock(nextLock, null);
+  }
+
+  @Test
+  public void testStaleLockOwnerDoesntWriteEvents() {
+    LockServiceImpl lockService = (LockServiceImpl) engine.getLockService();
+    Duration lockLeaseDuration = lockService.getLockLeaseDuration();
+    List<Lock> recoveryLocks = new ArrayList<>();
+    engine.getImportResolver().createImport("slowService")
+      .put("takeOver", input -> {
+        // while this lock owner is still running, its lease runs out and the recovery takes over
+        setNow(Time.now().plus(lockLeaseDuration).plusSeconds(1));
+        recoveryLocks.add(lockService.acquireExpiredLock(input.getScriptExecutionId()));
+        return ServiceFunctionOutput.endFunction("late");
+      });
+
+    ScriptVersion scriptVersion = deployScript(
+      "var slowService = system.import('slowService'); \n" +
+      "slowService.takeOver(); ");
+    setNow(Time.now());
+    String scriptExecutionId = startScriptExecution(scriptVersion).getId();
+
+    assertEquals(1, recoveryLocks.size());
+    Lock recoveryLock = recoveryLocks.get(0);
+    assertNotNull(recoveryLock);
+    assertTrue(engine.getScriptExecutionStore()
+      .findEventsByScriptExecutionId(scriptExecutionId)
+      .stream()
+      .noneMatch(event -> event instanceof ServiceFunctionEndedEvent));
+
+    // the stale lock owner left the lock of the recovery in place
+    assertNull(lockService.acquireLock(scriptExecutionId));
+    lockService.releaseLock(recoveryLock, null);
+  }
+
+  @Test
+  public void testLeaseIsRenewedWhileTheLockIsHeld() {
+    String scriptExecutionId = startWaitingScriptExecution();
+    LockServiceImpl lockService = (LockServiceImpl) engine.getLockService();
+    Duration halfLease = lockService.getLockLeaseDuration().dividedBy(2);
+    setNow(Time.now());
+    Lock lock = lockService.acquireLock(scriptExecutionId);
+
+    setNow(Time.now().plus(halfLease));
+    lockService.renewLeases();
+    setNow(Time.now().plus(halfLease).plusSeconds(1));
+
+    // without the renewal, the lease would have expired by now
+    assertFalse(lock.isExpired(Time.now()));
+    assertNull(lockService.acquireExpiredLock(scriptExecutionId));
+    lockService.releaseLock(lock, null);
+  }
+
+  @Test
+  public void testFailingUnlockListenerIsRunAgainByTheRecovery() {
+    String scriptExecutionId = startWaitingScriptExecution();
+    LockService lockService = engine.getLockService();
+    Lock lock = lockService.acquireLock(scriptExecutionId);
+
+    List<String> listenerRuns = new ArrayList<>();
+    AtomicBoolean failing = new AtomicBoolean(true);
+    lockService.addUnlockListener(scriptExecutionId, (engine, l, lockedScriptExecution) -> listenerRuns.add("first"));
+    lockService.addUnlockListener(scriptExecutionId, (engine, l, lockedScriptExecution) -> {
+      listenerRuns.add("failing");
+      if (failing.getAndSet(false)) {
+        throw new RuntimeException("failing on purpose");
+      }
+    });
+    lockService.addUnlockListener(scriptExecutionId, (engine, l, lockedScriptExecution) -> listenerRuns.add("last"));
+
+    lockService.releaseLock(lock, null);
+    assertEquals(asList("first", "failing"), listenerRuns);
+
+    // the failed batch expired the lock and left the failing listener queued for the recovery
+    assertNull(lockService.acquireLock(scriptExecutionId));
+    RecoverExecutionsResponse response = new RecoverExecutionsCommand().execute(engine);
+    assertEquals(1, response.getScriptExecutions().size());
+    assertEquals(asList("first", "failing", "failing", "last"), listenerRuns);
+
+    // the recovered script execution is no longer a candidate
+    response = new RecoverExecutionsCommand().execute(engine);
+    assertEquals(0, response.getScriptExecutions().size());
+
+    Lock nextLock = lockService.acquireLock(scriptExecutionId);
+    assertNotNull(nextLock);
+    lockService.releaseLock(nextLock, null);
+  }
+
+  private String startWaitingScriptExecution() {
+    engine.getImportResolver().createImport("waitService")
+      .put("waitForIt", input -> ServiceFunctionOutput.waitForFunctionEndCallback());
+    ScriptVersion scriptVersion = deployScript(
+      "var waitService = system.import('waitService'); \n" +
+      "waitService.waitForIt(); ");
+    return startScriptExecution(scriptVersion).getId();
+  }
+}
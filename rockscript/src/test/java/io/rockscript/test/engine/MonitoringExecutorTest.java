@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.engine.impl.MonitoringExecutor;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+/** The virtual thread executor is looked up reflectively,
+ * so which of these tests runs depends on the Java runtime. */
+public class MonitoringExecutorTest extends AbstractEngineTest {
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    assumeTrue("Virtual threads require Java 21", isVirtualThreadsAvailable());
+
+    Thread thread = getExecutingThread(MonitoringExecutor.createVirtualThreads(engine.getEngineLogStore(), "rockscript-cpu-"));
+
+    assertEquals("rockscript-cpu-1", thread.getName());
+    assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+  }
+
+  @Test
+  public void testThreadPerTaskWithoutVirtualThreads() {
+    assumeFalse("Java 21 runtimes use virtual threads", isVirtualThreadsAvailable());
+
+    Thread thread = getExecutingThread(MonitoringExecutor.createVirtualThreads(engine.getEngineLogStore(), "rockscript-cpu-"));
+
+    assertEquals("rockscript-cpu-1", thread.getName());
+    assertTrue(thread.isDaemon());
+  }
+
+  static Thread getExecutingThread(MonitoringExecutor executor) {
+    CompletableFuture<Thread> executingThread = new CompletableFuture<>();
+    executor.execute(() -> executingThread.complete(Thread.currentThread()));
+    return executingThread.join();
+  }
+
+  static boolean isVirtualThreadsAvailable() {
+    try {
+      Thread.class.getMethod("ofVirtual");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.engine.impl.OutboundLimiter;
+import io.rockscript.engine.impl.OutboundLimiter.ConcurrencyLimit;
+import io.rockscript.engine.impl.OutboundLimiter.Permit;
+import io.rockscript.engine.impl.OutboundLimiter.RateLimit;
+import io.rockscript.engine.impl.OutboundLimiter.TargetMetrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundLimiterTest extends AbstractEngineTest {
+
+  @Test
+  public void testCallsOverTheConcurrencyLimitWait() {
+    OutboundLimiter outboundLimiter = new OutboundLimiter(engine)
+      .concurrencyLimit(new ConcurrencyLimit(2, 1, 10));
+    List<Permit> permits = new ArrayList<>();
+    for (int i=0; i<3; i++) {
+      outboundLimiter.execute("slow.example.com", permits::add);
+    }
+
+    TargetMetrics metrics = outboundLimiter.getMetrics().get("slow.example.com");
+    assertEquals(2, permits.size());
+    assertEquals(2, metrics.getInFlight());
+    assertEquals(1, metrics.getQueued());
+
+    permits.get(0).release(true);
+    assertEquals(3, permits.size());
+    assertEquals(0, outboundLimiter.getMetrics().get("slow.example.com").getQueued());
+  }
+
+  @Test
+  public void testLimitGrowsOnSuccessAndShrinksOnFailure() {
+    OutboundLimiter outboundLimiter = new OutboundLimiter(engine)
+      .concurrencyLimit(new ConcurrencyLimit(4, 1, 10).backoffRatio(0.5));
+    List<Permit> permits = new ArrayList<>();
+    for (int i=0; i<4; i++) {
+      outboundLimiter.execute("api.example.com", permits::add);
+    }
+    permits.get(0).release(true);
+    permits.get(1).release(true);
+    // 4 + 1/4, the second success has too few calls in flight to grow the limit
+    assertEquals(4, outboundLimiter.getMetrics().get("api.example.com").getLimit().intValue());
+
+    permits.get(2).release(false);
+    assertEquals(2, outboundLimiter.getMetrics().get("api.example.com").getLimit().intValue());
+    permits.get(3).release(false);
+    permits.get(3).release(false); // a permit is only released once
+    assertEquals(1, outboundLimiter.getMetrics().get("api.example.com").getLimit().intValue());
+    assertEquals(2, outboundLimiter.getMetrics().get("api.example.com").getFailureCount());
+  }
+
+  @Test
+  public void testRateLimitDelaysCallsOverTheBurst() throws Exception {
+    OutboundLimiter outboundLimiter = new OutboundLimiter(engine)
+      .rateLimit("fx.example.com", new RateLimit(20, 2));
+    AtomicInteger started = new AtomicInteger();
+    CountDownLatch allStarted = new CountDownLatch(3);
+    for (int i=0; i<3; i++) {
+      outboundLimiter.execute("fx.example.com", permit -> {
+        started.incrementAndGet();
+        allStarted.countDown();
+        permit.release(true);
+      });
+    }
+    assertEquals(2, started.get());
+    assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.engine.impl.Parse;
+import io.rockscript.util.Io;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Measures {@link Parse} for the example scripts and for
+ * a synthetic script of {@link #SYNTHETIC_LINES} lines.
+ * Prints ms/parse and lines/s for each script.
+ * Run the main method from the IDE or with
+ * mvn -pl rockscript test-compile exec:java -Dexec.mainClass=io.rockscript.test.engine.ParseBenchmark -Dexec.classpathScope=test */
+public class ParseBenchmark {
+
+  static final int SYNTHETIC_LINES = 10000;
+  static final int WARMUP_ITERATIONS = 200;
+  static final int ITERATIONS = 500;
+  static final int SYNTHETIC_WARMUP_ITERATIONS = 3;
+  static final int SYNTHETIC_ITERATIONS = 5;
+
+  public static void main(String[] args) {
+    Map<String,String> scripts = new LinkedHashMap<>();
+    scripts.put("local-error.rs", Io.getResourceAsString("examples/local-error.rs"));
+    scripts.put("local-retry.rs", Io.getResourceAsString("examples/local-retry.rs"));
+    scripts.put("star-wars.rs", Io.getResourceAsString("examples/star-wars.rs"));
+    scripts.put("chuck-norris.rs", Io.getResourceAsString("examples/chuck-norris.rs"));
+
+    System.out.println(String.format("%-22s %8s %10s %12s", "", "lines", "ms/parse", "lines/s"));
+    scripts.forEach((name, scriptText) -> benchmark(name, scriptText, WARMUP_ITERATIONS, ITERATIONS));
+    benchmark("synthetic-"+SYNTHETIC_LINES+".rs", createSyntheticScript(SYNTHETIC_LINES), SYNTHETIC_WARMUP_ITERATIONS, SYNTHETIC_ITERATIONS);
+  }
+
+  static void benchmark(String name, String scriptText, int warmupIterations, int iterations) {
+    for (int i=0; i<warmupIterations; i++) {
+      Parse.parse(scriptText, null).throwIfError();
+    }
+    long nanos = System.nanoTime();
+    for (int i=0; i<iterations; i++) {
+      Parse.parse(scriptText, null);
+    }
+    nanos = System.nanoTime() - nanos;
+    int lines = scriptText.split("\n").length;
+    double msPerParse = nanos / 1000000d / iterations;
+    System.out.println(String.format("%-22s %8d %10.3f %12.0f", name, lines, msPerParse, lines * 1000d / msPerParse));
+  }
+
+  static String createSyntheticScript(int lines) {
+    StringBuilder scriptText = new StringBuilder();
+    scriptText.append("var http = system.import('rockscript.io/http'); \n");
+    scriptText.append("var total = 0; \n");
+    for (int i=0; i<(lines-2)/5; i++) {
+      scriptText.append("var response"+i+" = http.get({url: 'http://localhost/items/"+i+"', headers: {Accept: 'application/json'}}); \n");
+      scriptText.append("var items"+i+" = [response"+i+".body.items[0], {a: "+i+", b: 'two', c: [true, false, null]}]; \n");
+      scriptText.append("for (var i"+i+" = 0; i"+i+" < items"+i+".length; i"+i+"++) { \n");
+      scriptText.append("  if (i"+i+" == 1 && items"+i+"[i"+i+"].a >= 1) { total = total + items"+i+"[i"+i+"].a * 2; } else { total = total - 1; } \n");
+      scriptText.append("} \n");
+    }
+    return scriptText.toString();
+  }
+}
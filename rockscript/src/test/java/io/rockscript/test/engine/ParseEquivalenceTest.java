@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.engine.antlr.ECMAScriptLexer;
+import io.rockscript.engine.antlr.ECMAScriptParser;
+import io.rockscript.engine.impl.Parse;
+import io.rockscript.util.Io;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/** The lexer of {@link Parse} uses a ScriptLexerATNSimulator and the parser
+ * first tries SLL prediction before it falls back to LL.  Both are only
+ * optimizations: the tokens, the parse trees and the syntax errors must be
+ * the same as with the stock ANTLR lexer and a plain LL parse. */
+public class ParseEquivalenceTest {
+
+  /** valid, but SLL prediction can't parse the for in statement */
+  static final String LL_FALLBACK_SCRIPT =
+    "var o = {a: 1, b: 2}; \n" +
+    "for (k in o) total = total + o[k]; \n";
+
+  @Test
+  public void testScriptsParseTheSameAsWithStockAntlr() {
+    Map<String,String> scripts = new LinkedHashMap<>();
+    scripts.put("local-error.rs", Io.getResourceAsString("examples/local-error.rs"));
+    scripts.put("local-retry.rs", Io.getResourceAsString("examples/local-retry.rs"));
+    scripts.put("star-wars.rs", Io.getResourceAsString("examples/star-wars.rs"));
+    scripts.put("chuck-norris.rs", Io.getResourceAsString("examples/chuck-norris.rs"));
+    scripts.put("short-script.rs", Io.getResourceAsString("testscripts/short-script.rs"));
+    scripts.put("synthetic", ParseBenchmark.createSyntheticScript(100));
+    scripts.put("regular expressions",
+      "var r = /ab+c/g.test(s); \n" +
+      "var d = a / b / c; \n" +
+      "var e = b \n" +
+      "/hi/g.exec(c); \n");
+    scripts.put("automatic semicolons",
+      "a = b \n" +
+      "++c \n" +
+      "var f = function() { return \n 1; } \n" +
+      "x = a ? b : c ? d : e");
+    scripts.put("ll fallback", LL_FALLBACK_SCRIPT);
+    scripts.put("syntax error", "var a = ; \nvar b = 1;");
+
+    scripts.forEach(this::assertParsesTheSameAsWithStockAntlr);
+  }
+
+  @Test
+  public void testLlFallbackScriptFailsWithSll() {
+    ECMAScriptParser parser = new ECMAScriptParser(new CommonTokenStream(createStockLexer(LL_FALLBACK_SCRIPT)));
+    parser.removeErrorListeners();
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    parser.setErrorHandler(new BailErrorStrategy());
+    try {
+      parser.program();
+      fail("Expected SLL parsing to fail so that the equivalence test covers the LL fallback");
+    } catch (ParseCancellationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testStrictModeTokens() {
+    String scriptText =
+      "var implements = 1; \n" +
+      "var r = /ab+c/g.test(implements) / 2; \n" +
+      "let = package + private; ";
+    for (boolean strictMode: new boolean[]{false, true}) {
+      ECMAScriptLexer stockLexer = createStockLexer(scriptText);
+      stockLexer.setStrictMode(strictMode);
+      ECMAScriptLexer lexer = Parse.createLexer(scriptText);
+      lexer.setStrictMode(strictMode);
+      assertEquals(toStrings(stockLexer.getAllTokens()), toStrings(lexer.getAllTokens()));
+    }
+  }
+
+  void assertParsesTheSameAsWithStockAntlr(String name, String scriptText) {
+    assertEquals(name, toStrings(createStockLexer(scriptText).getAllTokens()), toStrings(Parse.createLexer(scriptText).getAllTokens()));
+
+    List<String> stockErrors = new ArrayList<>();
+    ECMAScriptParser stockParser = new ECMAScriptParser(new CommonTokenStream(createStockLexer(scriptText)));
+    stockParser.removeErrorListeners();
+    stockParser.addErrorListener(new CollectingErrorListener(stockErrors));
+    String stockTree = stockParser.program().toStringTree(stockParser);
+
+    List<String> errors = new ArrayList<>();
+    String tree = Parse
+      .parseProgram(new CommonTokenStream(Parse.createLexer(scriptText)), new CollectingErrorListener(errors))
+      .toStringTree(Arrays.asList(ECMAScriptParser.ruleNames));
+
+    assertEquals(name, stockTree, tree);
+    assertEquals(name, stockErrors, errors);
+  }
+
+  static ECMAScriptLexer createStockLexer(String scriptText) {
+    ECMAScriptLexer lexer = new ECMAScriptLexer(new ANTLRInputStream(scriptText));
+    lexer.removeErrorListeners();
+    return lexer;
+  }
+
+  static List<String> toStrings(List<? extends Token> tokens) {
+    return tokens.stream()
+      .map(Token::toString)
+      .collect(Collectors.toList());
+  }
+
+  static class CollectingErrorListener extends BaseErrorListener {
+    List<String> errors;
+    CollectingErrorListener(List<String> errors) {
+      this.errors = errors;
+    }
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+      errors.add(line+":"+charPositionInLine+" "+msg);
+    }
+  }
+}
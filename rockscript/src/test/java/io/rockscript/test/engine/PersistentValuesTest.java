@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.api.events.ExecutionEvent;
+import io.rockscript.api.events.VariableCreatedEvent;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.util.PersistentMap;
+import io.rockscript.util.PersistentVector;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentValuesTest extends AbstractEngineTest {
+
+  @Test
+  public void testPersistentMap() {
+    Random random = new Random(42);
+    Map<String,Object> expected = new LinkedHashMap<>();
+    PersistentMap<Object> map = PersistentMap.empty();
+    List<PersistentMap<Object>> versions = new ArrayList<>();
+    List<Map<String,Object>> expectedVersions = new ArrayList<>();
+    // "Aa" and "BB" have the same hash code
+    String[] collidingKeys = {"Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa"};
+    for (int i=0; i<5000; i++) {
+      String key = i%7==0
+                   ? collidingKeys[random.nextInt(collidingKeys.length)]
+                   : "k"+random.nextInt(1000);
+      if (random.nextInt(5)==0) {
+        expected.remove(key);
+        map = map.without(key);
+      } else {
+        expected.put(key, i);
+        map = map.with(key, i);
+      }
+      if (i%500==0) {
+        versions.add(map);
+        expectedVersions.add(new LinkedHashMap<>(expected));
+      }
+    }
+    assertEquals(expected, map);
+    assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(map.keySet()));
+    // older versions are not affected by later updates
+    for (int i=0; i<versions.size(); i++) {
+      assertEquals(expectedVersions.get(i), versions.get(i));
+    }
+  }
+
+  @Test
+  public void testPersistentMapKeyOrderAfterRemoves() {
+    PersistentMap<Object> map = PersistentMap.empty();
+    for (int i=0; i<100; i++) {
+      map = map.with("k"+i, i);
+    }
+    // removing most keys compacts the key order
+    for (int i=0; i<90; i++) {
+      map = map.without("k"+i);
+    }
+    map = map.with("k0", 0).with("k95", 95);
+    List<String> expectedKeys = new ArrayList<>();
+    for (int i=90; i<100; i++) {
+      expectedKeys.add("k"+i);
+    }
+    expectedKeys.add("k0");
+    assertEquals(expectedKeys, new ArrayList<>(map.keySet()));
+    assertEquals(11, map.size());
+    assertEquals(95, map.get("k95"));
+  }
+
+  @Test
+  public void testPersistentVector() {
+    List<Object> expected = new ArrayList<>();
+    PersistentVector<Object> vector = PersistentVector.empty();
+    for (int i=0; i<40000; i++) {
+      expected.add(i);
+      vector = vector.plus(i);
+    }
+    PersistentVector<Object> before = vector;
+    for (int i=0; i<40000; i+=37) {
+      expected.set(i, "updated"+i);
+      vector = vector.with(i, "updated"+i);
+    }
+    assertEquals(expected, vector);
+    assertEquals(7400, before.get(7400));
+  }
+
+  @Test
+  public void testEventsCaptureSnapshots() {
+    ScriptVersion scriptVersion = deployScript(
+      "var o = {a: 1, nested: {b: 2}}; \n" +
+      "var p = o; \n" +
+      "o.a = 3; \n" +
+      "p.nested.b = 4; \n" +
+      "var q = o;");
+    ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+
+    Map<String,Object> o = (Map<String,Object>) scriptExecution.getVariable("o");
+    assertEquals(3d, o.get("a"));
+    assertEquals(4d, ((Map<String,Object>)o.get("nested")).get("b"));
+    assertSame(o, scriptExecution.getVariable("p"));
+
+    Map<String,Map<String,Object>> eventValues = new HashMap<>();
+    List<ExecutionEvent> events = engine
+      .getScriptExecutionStore()
+      .findEventsByScriptExecutionId(scriptExecution.getId());
+    for (ExecutionEvent event: events) {
+      if (event instanceof VariableCreatedEvent) {
+        VariableCreatedEvent variableCreatedEvent = (VariableCreatedEvent) event;
+        eventValues.put(variableCreatedEvent.getVariableName(), (Map<String,Object>) variableCreatedEvent.getValue());
+      }
+    }
+    // the events keep the values as they were when the variables were created
+    assertTrue(eventValues.get("o") instanceof PersistentMap);
+    assertEquals(1d, eventValues.get("o").get("a"));
+    assertEquals(2d, ((Map<String,Object>)eventValues.get("o").get("nested")).get("b"));
+    assertSame(eventValues.get("o"), eventValues.get("p"));
+    assertEquals(3d, eventValues.get("q").get("a"));
+    assertEquals(4d, ((Map<String,Object>)eventValues.get("q").get("nested")).get("b"));
+  }
+}
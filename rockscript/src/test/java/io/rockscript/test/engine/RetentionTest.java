@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.commands.DeployScriptVersionCommand;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.api.queries.ScriptExecutionQuery;
+import io.rockscript.api.queries.ScriptExecutionQuery.ScriptExecutionDetails;
+import io.rockscript.api.queries.ScriptExecutionsQuery;
+import io.rockscript.engine.impl.ScriptExecutionSummary;
+import io.rockscript.engine.impl.Time;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class RetentionTest extends AbstractEngineTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File archiveDirectory;
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration()
+      .configureTest()
+      .configureRetentionTimeToLive(Duration.ofHours(1))
+      .configureScriptRetentionTimeToLive("kept", Duration.ofDays(1))
+      .build()
+      .start();
+  }
+
+  @Test
+  public void testCompactionInMemory() {
+    ScriptExecution scriptExecution = startScriptExecution(deployScript("var a = 'hello';"));
+    String scriptExecutionId = scriptExecution.getId();
+
+    assertEquals(0, engine.getRetentionManager().compact());
+
+    setNow(Time.now().plus(Duration.ofHours(2)));
+    assertEquals(1, engine.getRetentionManager().compact());
+
+    ScriptExecutionSummary summary = engine
+      .getScriptExecutionStore()
+      .findScriptExecutionSummary(scriptExecutionId);
+    assertNotNull(summary);
+    assertFalse(summary.isArchived());
+
+    assertCompactedExecutionCanBeQueried(scriptExecutionId);
+  }
+
+  @Test
+  public void testCompactionToArchive() throws Exception {
+    archiveDirectory = temporaryFolder.newFolder("archive");
+    engine.getRetentionManager().archiveDirectory(archiveDirectory);
+
+    ScriptExecution scriptExecution = startScriptExecution(deployScript("var a = 'hello';"));
+    String scriptExecutionId = scriptExecution.getId();
+
+    setNow(Instant.now().plus(Duration.ofHours(2)));
+    assertEquals(1, engine.getRetentionManager().compact());
+
+    ScriptExecutionSummary summary = engine
+      .getScriptExecutionStore()
+      .findScriptExecutionSummary(scriptExecutionId);
+    assertTrue(summary.isArchived());
+    assertTrue(new File(summary.getArchiveFile()).exists());
+
+    assertCompactedExecutionCanBeQueried(scriptExecutionId);
+  }
+
+  @Test
+  public void testScriptTimeToLive() {
+    ScriptVersion scriptVersion = new DeployScriptVersionCommand()
+      .scriptName("kept")
+      .scriptText("var a = 'hello';")
+      .execute(engine)
+      .throwIfErrors();
+    startScriptExecution(scriptVersion);
+
+    setNow(Instant.now().plus(Duration.ofHours(2)));
+    assertEquals(0, engine.getRetentionManager().compact());
+
+    setNow(Instant.now().plus(Duration.ofDays(2)));
+    assertEquals(1, engine.getRetentionManager().compact());
+  }
+
+  private void assertCompactedExecutionCanBeQueried(String scriptExecutionId) {
+    ScriptExecutionDetails details = new ScriptExecutionQuery()
+      .id(scriptExecutionId)
+      .execute(engine);
+    assertEquals("hello", details.getVariable("a"));
+    assertTrue(details.isEnded());
+
+    ScriptExecutionsQuery.ScriptExecution listed = new ScriptExecutionsQuery()
+      .execute(engine)
+      .iterator()
+      .next();
+    assertEquals(scriptExecutionId, listed.id);
+    assertNotNull(listed.end);
+  }
+}
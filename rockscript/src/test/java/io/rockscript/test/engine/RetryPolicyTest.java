@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.engine.impl.Time;
+import io.rockscript.engine.job.ExponentialRetryPolicy;
+import io.rockscript.engine.job.Job;
+import io.rockscript.engine.job.JobService;
+import io.rockscript.engine.job.RetryPolicy;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest extends AbstractEngineTest {
+
+  @Test
+  public void testSharedPolicyKeepsAttemptsPerJob() {
+    RetryPolicy retryPolicy = RetryPolicy.createDefaultRetryPolicy();
+    Job first = new Job("1", null, Instant.now(), retryPolicy);
+    Job second = new Job("2", null, Instant.now(), retryPolicy);
+
+    assertEquals(Duration.ofSeconds(5), first.getNextRetryDuration());
+    assertEquals(Duration.ofMinutes(10), first.getNextRetryDuration());
+    // the attempts of the first job don't use up the retries of the second job
+    assertEquals(Duration.ofSeconds(5), second.getNextRetryDuration());
+    assertEquals(Duration.ofHours(4), first.getNextRetryDuration());
+    assertNull(first.getNextRetryDuration());
+    assertEquals(4, first.getFailedAttemptsCount());
+  }
+
+  @Test
+  public void testExponential() {
+    RetryPolicy retryPolicy = RetryPolicy.exponential(Duration.ofSeconds(1), 2, Duration.ofSeconds(5), 4);
+    assertEquals(Duration.ofSeconds(1), retryPolicy.getRetryDelay(1));
+    assertEquals(Duration.ofSeconds(2), retryPolicy.getRetryDelay(2));
+    assertEquals(Duration.ofSeconds(4), retryPolicy.getRetryDelay(3));
+    assertEquals(Duration.ofSeconds(5), retryPolicy.getRetryDelay(4));
+    assertNull(retryPolicy.getRetryDelay(5));
+  }
+
+  @Test
+  public void testDecorrelatedJitter() {
+    RetryPolicy retryPolicy = RetryPolicy.decorrelatedJitter(Duration.ofSeconds(1), Duration.ofSeconds(20), 5);
+    assertEquals(Duration.ofSeconds(1), retryPolicy.getRetryDelay(1));
+    for (int i=0; i<100; i++) {
+      Duration delay = retryPolicy.getRetryDelay(3);
+      assertTrue(delay.compareTo(Duration.ofSeconds(1))>=0);
+      assertTrue(delay.compareTo(Duration.ofSeconds(9))<=0);
+      assertTrue(retryPolicy.getRetryDelay(5).compareTo(Duration.ofSeconds(20))<=0);
+    }
+    assertNull(retryPolicy.getRetryDelay(6));
+  }
+
+  @Test
+  public void testJsonRetryPolicy() {
+    RetryPolicy retryPolicy = gson.fromJson(
+      "{ 'exponential': { 'initialDelay': 500, 'maxAttempts': 2 } }",
+      RetryPolicy.class);
+    assertTrue(retryPolicy instanceof ExponentialRetryPolicy);
+    assertEquals(Duration.ofMillis(500), retryPolicy.getRetryDelay(1));
+    assertEquals(Duration.ofMillis(1000), retryPolicy.getRetryDelay(2));
+    assertNull(retryPolicy.getRetryDelay(3));
+
+    RetryPolicy fixed = gson.fromJson(gson.toJson(RetryPolicy.createDefaultRetryPolicy(), RetryPolicy.class), RetryPolicy.class);
+    assertEquals(Duration.ofMinutes(10), fixed.getRetryDelay(2));
+  }
+
+  @Test
+  public void testFailingJobIsRetriedWithItsPolicy() {
+    JobService jobService = engine.getJobService();
+    setNow(Time.now());
+    Job job = jobService.schedule(e -> { throw new RuntimeException("failing on purpose"); },
+      Time.now(),
+      RetryPolicy.fixed(Duration.ofSeconds(7)));
+
+    jobService.executeJob(job);
+    assertEquals(Time.now().plus(Duration.ofSeconds(7)), job.getExecutionTime());
+    assertEquals(1, job.getFailedAttemptsCount());
+
+    jobService.executeJob(job);
+    assertEquals(2, job.getFailedAttemptsCount());
+    assertNull(engine.getJobStore().findJobById(job.getId()));
+  }
+}
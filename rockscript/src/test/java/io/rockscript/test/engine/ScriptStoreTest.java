@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.api.commands.DeployScriptVersionCommand;
+import io.rockscript.api.commands.EndServiceFunctionCommand;
+import io.rockscript.api.commands.SaveScriptVersionCommand;
+import io.rockscript.api.commands.StartScriptExecutionCommand;
+import io.rockscript.api.model.Script;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.EngineScript;
+import io.rockscript.engine.impl.EngineScriptCache;
+import io.rockscript.engine.impl.ScriptElement;
+import io.rockscript.engine.impl.ScriptStore;
+import io.rockscript.service.ServiceFunctionInput;
+import io.rockscript.service.ServiceFunctionOutput;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ScriptStoreTest extends AbstractEngineTest {
+
+  @Test
+  public void testIndexes() {
+    ScriptVersion first = new DeployScriptVersionCommand()
+      .scriptName("orders/create.rs")
+      .scriptText("var a = 1;")
+      .execute(engine);
+    ScriptVersion second = new DeployScriptVersionCommand()
+      .scriptName("invoices/create.rs")
+      .scriptText("var b = 2;")
+      .execute(engine);
+    ScriptVersion secondV2 = new SaveScriptVersionCommand()
+      .scriptName("invoices/create.rs")
+      .scriptText("var b = 3;")
+      .execute(engine);
+
+    ScriptStore scriptStore = engine.getScriptStore();
+    Script invoices = scriptStore.findScriptByName("invoices/create.rs");
+    assertEquals(invoices.getId(), scriptStore.findScriptById(second.getScriptId()).getId());
+    assertEquals(2, invoices.getScriptVersions().size());
+    assertEquals(second.getId(), invoices.getActiveScriptVersionId());
+
+    // the most recently inserted script wins
+    assertEquals("invoices/create.rs", scriptStore.findScriptByNameEnd("create.rs").getName());
+    assertEquals("orders/create.rs", scriptStore.findScriptByNameEnd("orders/create.rs").getName());
+    assertEquals("orders/create.rs", scriptStore.findScriptByNameEnd("rs/create.rs").getName());
+    assertNull(scriptStore.findScriptByNameEnd("update.rs"));
+
+    assertEquals(2, scriptStore.getScripts().size());
+    assertEquals("invoices/create.rs", scriptStore.getScripts().get(0).getName());
+    assertNotNull(scriptStore.findScriptAstByScriptVersionId(first.getId()));
+    assertNotNull(scriptStore.findScriptAstByScriptVersionId(secondV2.getId()));
+  }
+
+  @Test
+  public void testIdenticalScriptTextsShareTheSyntaxTree() {
+    String scriptText =
+      "var a = 1; \n" +
+      "var b = a + \n" +
+      "  2;";
+    ScriptVersion first = new DeployScriptVersionCommand()
+      .scriptName("orders/create.rs")
+      .scriptText(scriptText)
+      .execute(engine);
+    ScriptVersion second = new DeployScriptVersionCommand()
+      .scriptName("invoices/create.rs")
+      .scriptText(new String(scriptText))
+      .execute(engine);
+
+    ScriptStore scriptStore = engine.getScriptStore();
+    EngineScript firstEngineScript = scriptStore.findScriptAstByScriptVersionId(first.getId());
+    EngineScript secondEngineScript = scriptStore.findScriptAstByScriptVersionId(second.getId());
+    assertNotSame(firstEngineScript, secondEngineScript);
+    assertSame(first, firstEngineScript.getScriptVersion());
+    assertSame(second, secondEngineScript.getScriptVersion());
+    assertSame(firstEngineScript.getSourceElements(), secondEngineScript.getSourceElements());
+    assertSame(secondEngineScript, secondEngineScript.findScriptElement(0));
+
+    // element texts are derived from the locations in the one shared script text
+    ScriptElement addition = secondEngineScript.getElements().stream()
+      .filter(element -> element.getText().equals("a +    2"))
+      .findFirst()
+      .get();
+    assertSame(firstEngineScript.getScriptText(), addition.getScriptText());
+
+    // after a cache miss, the syntax tree is still shared
+    EngineScript cached = scriptStore.getEngineScriptCache().get(first.getId());
+    scriptStore.getEngineScriptCache().clear();
+    scriptStore.getEngineScriptCache().put(first.getId(), cached);
+    assertSame(firstEngineScript.getSourceElements(), scriptStore.findScriptAstByScriptVersionId(second.getId()).getSourceElements());
+  }
+
+  @Test
+  public void testReplacedScriptVersionRemainsResolvableForItsScriptExecutions() {
+    List<ServiceFunctionInput> waitingInputs = new ArrayList<>();
+    engine.getImportResolver().createImport("waitService")
+      .put("waitForIt", input -> {
+        waitingInputs.add(input);
+        return ServiceFunctionOutput.waitForFunctionEndCallback();
+      });
+    new DeployScriptVersionCommand()
+      .scriptName("orders/create.rs")
+      .scriptText("var a = 1;")
+      .execute(engine);
+    ScriptVersion draft = new SaveScriptVersionCommand()
+      .scriptName("orders/create.rs")
+      .scriptText(
+        "var waitService = system.import('waitService'); \n" +
+        "waitService.waitForIt(); ")
+      .execute(engine);
+    String scriptExecutionId = new StartScriptExecutionCommand()
+      .scriptVersionId(draft.getId())
+      .execute(engine)
+      .getScriptExecutionId();
+
+    // only one non active version is kept, so the next one replaces the draft
+    ScriptVersion nextDraft = new SaveScriptVersionCommand()
+      .scriptName("orders/create.rs")
+      .scriptText("var a = 3;")
+      .execute(engine);
+    ScriptStore scriptStore = engine.getScriptStore();
+    assertEquals(2, scriptStore.findScriptByName("orders/create.rs").getScriptVersions().size());
+    assertNotNull(scriptStore.findScriptAstByScriptVersionId(nextDraft.getId()));
+
+    // the running script execution of the replaced draft still replays, also when it's reparsed
+    scriptStore.getEngineScriptCache().clear();
+    assertNotNull(scriptStore.findScriptAstByScriptVersionId(draft.getId()));
+    new EndServiceFunctionCommand()
+      .continuationReference(waitingInputs.get(0).getContinuationReference())
+      .execute(engine);
+    assertTrue(engine.getScriptExecutionStore().isEnded(scriptExecutionId));
+  }
+
+  @Test
+  public void testEngineScriptCacheEvictsLeastRecentlyUsed() {
+    EngineScriptCache cache = new EngineScriptCache(25);
+    cache.put("a", createEngineScript("0123456789"));
+    cache.put("b", createEngineScript("0123456789"));
+    cache.get("a");
+    cache.put("c", createEngineScript("0123456789"));
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("c"));
+    assertEquals(20, cache.getWeight());
+  }
+
+  @Test
+  public void testEngineScriptCacheLoadsOnce() throws Exception {
+    EngineScriptCache cache = new EngineScriptCache(1000);
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    List<EngineScript> results = new ArrayList<>();
+    for (int i=0; i<8; i++) {
+      Thread thread = new Thread(() -> {
+        EngineScript engineScript = cache.get("sv", scriptVersionId -> {
+          loads.incrementAndGet();
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          return createEngineScript("var a = 1;");
+        });
+        synchronized (results) {
+          results.add(engineScript);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    started.await();
+    Thread.sleep(50);
+    release.countDown();
+    for (Thread thread: threads) {
+      thread.join();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(8, results.size());
+    results.forEach(result -> assertSame(results.get(0), result));
+  }
+
+  static EngineScript createEngineScript(String scriptText) {
+    ScriptVersion scriptVersion = new ScriptVersion();
+    scriptVersion.setText(scriptText);
+    EngineScript engineScript = new EngineScript(0, null);
+    engineScript.setScriptVersion(scriptVersion);
+    return engineScript;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.commands.DeployScriptVersionCommand;
+import io.rockscript.api.commands.EndServiceFunctionCommand;
+import io.rockscript.api.commands.StartScriptExecutionCommand;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.ContinuationReference;
+import io.rockscript.service.ServiceFunctionOutput;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/** Measures script executions that each make a slow, blocking service call.
+ *
+ * In the "io" runs, 10k service functions hand the blocking call to the
+ * engine's I/O executor and end asynchronously.  In the "cpu" runs, 1k script
+ * executions are started on the engine's cpu executor and the service
+ * functions block on that executor itself, which is what virtual threads are
+ * meant to make cheap.  Prints the wall time for the default thread pools and
+ * for the virtual thread executors.  Virtual threads require running on Java
+ * 21 or later.  Run the main method from the IDE or with
+ * mvn -pl rockscript test-compile exec:java -Dexec.mainClass=io.rockscript.test.engine.SlowServiceCallBenchmark -Dexec.classpathScope=test */
+public class SlowServiceCallBenchmark {
+
+  static final int IO_SCRIPT_EXECUTIONS = 10000;
+  static final int CPU_SCRIPT_EXECUTIONS = 1000;
+  static final long SERVICE_CALL_MILLIS = 100;
+
+  public static void main(String[] args) {
+    System.out.println(String.format("%-16s %10s %16s", "", "millis", "executions/sec"));
+    runOnIoExecutor("platform io", new Configuration());
+    runOnIoExecutor("virtual io", new Configuration().configureVirtualThreads());
+    runOnCpuExecutor("platform cpu", new Configuration());
+    runOnCpuExecutor("virtual cpu", new Configuration().configureVirtualThreads());
+  }
+
+  static void runOnIoExecutor(String name, Configuration configuration) {
+    Engine engine = configuration
+      .build()
+      .start();
+
+    engine.getImportResolver().createImport("slowService")
+      .put("call", input -> {
+        ContinuationReference continuationReference = input.getContinuationReference();
+        input.getIoExecutor().execute(() -> {
+          sleep(SERVICE_CALL_MILLIS);
+          new EndServiceFunctionCommand()
+            .continuationReference(continuationReference)
+            .result("done")
+            .execute(engine);
+        });
+        return ServiceFunctionOutput.waitForFunctionEndCallback();
+      });
+    ScriptVersion scriptVersion = deploySlowServiceScript(engine);
+
+    long start = System.currentTimeMillis();
+    List<CompletableFuture<?>> endFutures = new ArrayList<>();
+    for (int i=0; i<IO_SCRIPT_EXECUTIONS; i++) {
+      String scriptExecutionId = new StartScriptExecutionCommand()
+        .scriptVersionId(scriptVersion.getId())
+        .execute(engine)
+        .getScriptExecutionId();
+      endFutures.add(engine.whenScriptExecutionEnded(scriptExecutionId));
+    }
+    printMillis(name, start, IO_SCRIPT_EXECUTIONS, endFutures);
+    engine.stop();
+  }
+
+  static void runOnCpuExecutor(String name, Configuration configuration) {
+    Engine engine = configuration
+      .build()
+      .start();
+
+    engine.getImportResolver().createImport("slowService")
+      .put("call", input -> {
+        sleep(SERVICE_CALL_MILLIS);
+        return ServiceFunctionOutput.endFunction("done");
+      });
+    ScriptVersion scriptVersion = deploySlowServiceScript(engine);
+
+    long start = System.currentTimeMillis();
+    List<CompletableFuture<?>> endFutures = new ArrayList<>();
+    for (int i=0; i<CPU_SCRIPT_EXECUTIONS; i++) {
+      endFutures.add(CompletableFuture.runAsync(() -> new StartScriptExecutionCommand()
+        .scriptVersionId(scriptVersion.getId())
+        .execute(engine), engine.getExecutor()));
+    }
+    printMillis(name, start, CPU_SCRIPT_EXECUTIONS, endFutures);
+    engine.stop();
+  }
+
+  static ScriptVersion deploySlowServiceScript(Engine engine) {
+    return new DeployScriptVersionCommand()
+      .scriptText(
+        "var slowService = system.import('slowService'); \n" +
+        "slowService.call(); ")
+      .execute(engine)
+      .throwIfErrors();
+  }
+
+  static void printMillis(String name, long start, int scriptExecutions, List<CompletableFuture<?>> endFutures) {
+    CompletableFuture
+      .allOf(endFutures.toArray(new CompletableFuture[endFutures.size()]))
+      .join();
+    long millis = System.currentTimeMillis() - start;
+    System.out.println(String.format("%-16s %10d %16d", name, millis, scriptExecutions*1000L/millis));
+  }
+
+  static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
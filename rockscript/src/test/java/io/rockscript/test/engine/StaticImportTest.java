@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.ScriptStore;
+import io.rockscript.service.ImportObject;
+import io.rockscript.service.ImportProvider;
+import io.rockscript.service.ImportResolver;
+import io.rockscript.service.ServiceFunctionOutput;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class StaticImportTest extends AbstractEngineTest {
+
+  AtomicInteger resolveCount = new AtomicInteger();
+  ImportObject greetings = new ImportObject("greetings")
+    .put("hello", input -> ServiceFunctionOutput.endFunction("hello world"));
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration()
+      .configureTest()
+      .addImportProvider(new ImportProvider() {
+        @Override
+        public ImportObject getImportObject() {
+          resolveCount.incrementAndGet();
+          return greetings;
+        }
+      })
+      .build()
+      .start();
+  }
+
+  @Test
+  public void testStaticImportIsResolvedOnceWhenParsed() {
+    ScriptVersion scriptVersion = deployScript(
+      "var greetings = system.import('greetings'); \n" +
+      "var greeting = greetings.hello(); ");
+    int resolveCountAfterDeploy = resolveCount.get();
+
+    ScriptExecution first = startScriptExecution(scriptVersion);
+    ScriptExecution second = startScriptExecution(scriptVersion);
+
+    assertEquals("hello world", first.getVariable("greeting"));
+    assertEquals("hello world", second.getVariable("greeting"));
+    assertEquals(resolveCountAfterDeploy, resolveCount.get());
+
+    // adding an import provider invalidates the resolved static imports
+    engine.getImportResolver().createImport("other");
+    startScriptExecution(scriptVersion);
+    assertEquals(resolveCountAfterDeploy+1, resolveCount.get());
+  }
+
+  @Test
+  public void testStaticImportIsResolvedOnceWhenLoadedFromTheCompiledScript() {
+    ScriptVersion scriptVersion = deployScript(
+      "var greetings = system.import('greetings'); \n" +
+      "var greeting = greetings.hello(); ");
+    assertNotNull(scriptVersion.getCompiledScript());
+
+    // without the cached engine script, the script is decoded from its compiled form
+    ScriptStore scriptStore = engine.getScriptStore();
+    scriptStore.getEngineScriptCache().clear();
+    scriptStore.findScriptAstByScriptVersionId(scriptVersion.getId());
+    int resolveCountAfterLoad = resolveCount.get();
+
+    ScriptExecution first = startScriptExecution(scriptVersion);
+    ScriptExecution second = startScriptExecution(scriptVersion);
+
+    assertEquals("hello world", first.getVariable("greeting"));
+    assertEquals("hello world", second.getVariable("greeting"));
+    assertEquals(resolveCountAfterLoad, resolveCount.get());
+  }
+
+  @Test
+  public void testDynamicImportIsResolvedInEveryExecution() {
+    ScriptVersion scriptVersion = deployScript(
+      "var greetings = system.import('greet' + 'ings'); \n" +
+      "var greeting = greetings.hello(); ");
+    int resolveCountAfterDeploy = resolveCount.get();
+
+    ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+    startScriptExecution(scriptVersion);
+
+    assertEquals("hello world", scriptExecution.getVariable("greeting"));
+    assertEquals(resolveCountAfterDeploy+2, resolveCount.get());
+  }
+
+  @Test
+  public void testRemoteImportObjectsAndFunctionsAreCached() {
+    ImportResolver importResolver = engine.getImportResolver();
+    ImportObject remoteImportObject = (ImportObject) importResolver.get("localhost:9999/approvals");
+
+    assertSame(remoteImportObject, importResolver.get("localhost:9999/approvals"));
+    assertSame(remoteImportObject.get("approve"), remoteImportObject.get("approve"));
+  }
+}
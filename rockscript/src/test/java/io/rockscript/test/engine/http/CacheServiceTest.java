@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine.http;
+
+import io.rockscript.api.events.ServiceFunctionEndedEvent;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.Time;
+import io.rockscript.http.servlet.PathRequestHandler;
+import io.rockscript.http.servlet.RouterServlet;
+import io.rockscript.http.servlet.ServerRequest;
+import io.rockscript.http.servlet.ServerResponse;
+import io.rockscript.service.cache.CacheService;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.rockscript.http.servlet.PathRequestHandler.GET;
+import static io.rockscript.util.Maps.entry;
+import static io.rockscript.util.Maps.hashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CacheServiceTest extends AbstractHttpTest {
+
+  AtomicInteger tokenRequests = new AtomicInteger();
+
+  @Override
+  protected void configure(RouterServlet serviceServlet) {
+    getCacheService().clear();
+    serviceServlet
+      .requestHandler(new PathRequestHandler(GET, "/token") {
+        @Override
+        public void handle(ServerRequest request, ServerResponse response) {
+          response.status(200);
+          response.bodyJsonString("{\"access_token\":\"token" + tokenRequests.incrementAndGet() + "\"}");
+        }
+      });
+  }
+
+  CacheService getCacheService() {
+    return (CacheService) engine.getImportResolver().get("rockscript.io/cache");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testValuesAreSharedBetweenExecutions() {
+    setNow(Time.now());
+    ScriptVersion put = deployScript(
+      "var cache = system.import('rockscript.io/cache'); \n" +
+      "cache.put({key: 'config', value: {region: system.input.region}, ttl: 60}); ");
+    ScriptVersion get = deployScript(
+      "var cache = system.import('rockscript.io/cache'); \n" +
+      "var config = cache.get('config'); ");
+
+    startScriptExecution(put, hashMap(entry("region", "eu")));
+    ScriptExecution hit = startScriptExecution(get);
+    assertEquals("eu", ((Map<String,Object>)hit.getVariable("config")).get("region"));
+    // the hit is recorded so that replay doesn't depend on the cache
+    assertEquals(hit.getVariable("config"), getLastFunctionResult(hit));
+
+    setNow(Time.now().plusSeconds(61));
+    assertNull(startScriptExecution(get).getVariable("config"));
+  }
+
+  @Test
+  public void testComputeIfAbsentPerformsTheRequestOnce() {
+    setNow(Time.now());
+    ScriptVersion scriptVersion = deployScript(
+      "var cache = system.import('rockscript.io/cache'); \n" +
+      "var token = cache.computeIfAbsent({ \n" +
+      "  key: 'token', \n" +
+      "  ttl: 60, \n" +
+      "  http: { url: 'http://localhost:" + SERVICE_PORT + "/token' } \n" +
+      "}).body.access_token; ");
+
+    assertEquals("token1", startScriptExecution(scriptVersion).getVariable("token"));
+    assertEquals("token1", startScriptExecution(scriptVersion).getVariable("token"));
+    assertEquals(1, tokenRequests.get());
+
+    setNow(Time.now().plusSeconds(61));
+    assertEquals("token2", startScriptExecution(scriptVersion).getVariable("token"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntriesAreEvicted() {
+    CacheService cacheService = getCacheService().maxEntries(2);
+    try {
+      ScriptVersion scriptVersion = deployScript(
+        "var cache = system.import('rockscript.io/cache'); \n" +
+        "cache.put({key: 'a', value: 1}); \n" +
+        "cache.put({key: 'b', value: 2}); \n" +
+        "cache.get('a'); \n" +
+        "cache.put({key: 'c', value: 3}); \n" +
+        "var a = cache.get('a'); \n" +
+        "var b = cache.get('b'); ");
+
+      ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+      assertEquals(1d, scriptExecution.getVariable("a"));
+      assertNull(scriptExecution.getVariable("b"));
+      assertEquals(2, cacheService.size());
+    } finally {
+      cacheService.maxEntries(CacheService.DEFAULT_MAX_ENTRIES);
+    }
+  }
+
+  Object getLastFunctionResult(ScriptExecution scriptExecution) {
+    return engine
+      .getScriptExecutionStore()
+      .findEventsByScriptExecutionId(scriptExecution.getId())
+      .stream()
+      .filter(event -> event instanceof ServiceFunctionEndedEvent)
+      .reduce((first, second) -> second)
+      .map(event -> ((ServiceFunctionEndedEvent)event).getResult())
+      .get();
+  }
+}
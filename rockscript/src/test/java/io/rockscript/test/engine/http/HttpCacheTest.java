@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine.http;
+
+import io.rockscript.api.events.ServiceFunctionEndedEvent;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.Time;
+import io.rockscript.http.Http;
+import io.rockscript.http.servlet.PathRequestHandler;
+import io.rockscript.http.servlet.RouterServlet;
+import io.rockscript.http.servlet.ServerRequest;
+import io.rockscript.http.servlet.ServerResponse;
+import io.rockscript.service.http.HttpCache;
+import io.rockscript.service.http.HttpService;
+import io.rockscript.service.http.HttpServiceClientRequest;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.rockscript.http.servlet.PathRequestHandler.GET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpCacheTest extends AbstractHttpTest {
+
+  AtomicInteger upstreamRequests = new AtomicInteger();
+  CountDownLatch slowRequestStarted = new CountDownLatch(1);
+  CountDownLatch slowRequestRelease = new CountDownLatch(1);
+
+  @Override
+  protected void configure(RouterServlet serviceServlet) {
+    getHttpCache().clear();
+    serviceServlet
+      .requestHandler(new PathRequestHandler(GET, "/rates") {
+        @Override
+        public void handle(ServerRequest request, ServerResponse response) {
+          upstreamRequests.incrementAndGet();
+          response.status(200);
+          response.header(Http.Headers.CACHE_CONTROL, "max-age=60");
+          response.bodyJsonString("{\"EUR\":1.1}");
+        }
+      })
+      .requestHandler(new PathRequestHandler(GET, "/quotes") {
+        @Override
+        public void handle(ServerRequest request, ServerResponse response) {
+          upstreamRequests.incrementAndGet();
+          response.status(200);
+          response.header(Http.Headers.CACHE_CONTROL, "max-age=60");
+          response.bodyJsonString("{\"EUR\":1.1,\"USD\":1.0}");
+        }
+      })
+      .requestHandler(new PathRequestHandler(GET, "/catalog") {
+        @Override
+        public void handle(ServerRequest request, ServerResponse response) {
+          upstreamRequests.incrementAndGet();
+          if ("\"v1\"".equals(request.getHeader(Http.Headers.IF_NONE_MATCH))) {
+            response.status(304);
+          } else {
+            response.status(200);
+            response.header(Http.Headers.CACHE_CONTROL, "no-cache");
+            response.header(Http.Headers.ETAG, "\"v1\"");
+            response.bodyJsonString("{\"products\":[\"rock\"]}");
+          }
+        }
+      })
+      .requestHandler(new PathRequestHandler(GET, "/slow") {
+        @Override
+        public void handle(ServerRequest request, ServerResponse response) {
+          upstreamRequests.incrementAndGet();
+          slowRequestStarted.countDown();
+          try {
+            slowRequestRelease.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          response.status(200);
+          response.bodyJsonString("{\"slow\":true}");
+        }
+      });
+  }
+
+  HttpCache getHttpCache() {
+    return ((HttpService)engine.getImportResolver().get("rockscript.io/http")).getHttpCache();
+  }
+
+  @Test
+  public void testFreshResponseIsServedFromTheCache() {
+    setNow(Time.now());
+    ScriptVersion scriptVersion = deployScript(
+      "var http = system.import('rockscript.io/http'); \n" +
+      "var response = http.get({" +
+      "  url: 'http://localhost:" + SERVICE_PORT + "/rates'," +
+      "  cache: true" +
+      "}); ");
+
+    ScriptExecution first = startScriptExecution(scriptVersion);
+    ScriptExecution second = startScriptExecution(scriptVersion);
+
+    assertEquals(1, upstreamRequests.get());
+    assertEquals(1, getHttpCache().getHitCount());
+    assertEquals(1.1d, getBody(second).get("EUR"));
+    // the cache hit is recorded like any other response so that replay doesn't need the cache
+    assertTrue(hasServiceFunctionEndedEvent(first));
+    assertTrue(hasServiceFunctionEndedEvent(second));
+
+    setNow(Time.now().plusSeconds(61));
+    startScriptExecution(scriptVersion);
+    assertEquals(2, upstreamRequests.get());
+  }
+
+  @Test
+  public void testRequestsWithDifferentFieldsAreCachedSeparately() {
+    ScriptVersion projected = deployScript(
+      "var http = system.import('rockscript.io/http'); \n" +
+      "var response = http.get({" +
+      "  url: 'http://localhost:" + SERVICE_PORT + "/quotes'," +
+      "  fields: ['EUR']," +
+      "  cache: true" +
+      "}); ");
+    ScriptVersion complete = deployScript(
+      "var http = system.import('rockscript.io/http'); \n" +
+      "var response = http.get({" +
+      "  url: 'http://localhost:" + SERVICE_PORT + "/quotes'," +
+      "  cache: true" +
+      "}); ");
+
+    assertFalse(getBody(startScriptExecution(projected)).containsKey("USD"));
+    assertEquals(1.0d, getBody(startScriptExecution(complete)).get("USD"));
+    assertEquals(2, upstreamRequests.get());
+
+    assertFalse(getBody(startScriptExecution(projected)).containsKey("USD"));
+    assertEquals(1.0d, getBody(startScriptExecution(complete)).get("USD"));
+    assertEquals(2, upstreamRequests.get());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testStaleResponseIsRevalidated() {
+    ScriptVersion scriptVersion = deployScript(
+      "var http = system.import('rockscript.io/http'); \n" +
+      "var response = http.get({" +
+      "  url: 'http://localhost:" + SERVICE_PORT + "/catalog'," +
+      "  cache: true" +
+      "}); ");
+
+    startScriptExecution(scriptVersion);
+    ScriptExecution revalidated = startScriptExecution(scriptVersion);
+
+    assertEquals(2, upstreamRequests.get());
+    assertEquals(1, getHttpCache().getRevalidatedCount());
+    assertEquals("rock", ((List<Object>)getBody(revalidated).get("products")).get(0));
+  }
+
+  @Test
+  public void testConcurrentRequestsShareOneUpstreamRequest() throws Exception {
+    HttpCache httpCache = new HttpCache();
+    CompletableFuture<CompletableFuture<Map<String,Object>>> leader = CompletableFuture
+      .supplyAsync(() -> httpCache.get(createSlowRequest()));
+    assertTrue(slowRequestStarted.await(10, TimeUnit.SECONDS));
+
+    CompletableFuture<Map<String,Object>> follower = httpCache.get(createSlowRequest());
+    assertFalse(follower.isDone());
+    assertEquals(1, httpCache.getSharedCount());
+
+    slowRequestRelease.countDown();
+    assertSame(leader.get(10, TimeUnit.SECONDS).get(), follower.get(10, TimeUnit.SECONDS));
+    assertEquals(1, upstreamRequests.get());
+  }
+
+  HttpServiceClientRequest createSlowRequest() {
+    HttpServiceClientRequest request = new HttpServiceClientRequest()
+      .cache(true);
+    request.setHttpClient(engine.getHttpClient());
+    request.setMethod(Http.Methods.GET);
+    request.setUrl("http://localhost:" + SERVICE_PORT + "/slow");
+    return request;
+  }
+
+  @SuppressWarnings("unchecked")
+  static Map<String,Object> getBody(ScriptExecution scriptExecution) {
+    Map<String,Object> response = (Map<String,Object>) scriptExecution.getVariable("response");
+    return (Map<String,Object>) response.get("body");
+  }
+
+  boolean hasServiceFunctionEndedEvent(ScriptExecution scriptExecution) {
+    return engine
+      .getScriptExecutionStore()
+      .findEventsByScriptExecutionId(scriptExecution.getId())
+      .stream()
+      .anyMatch(event -> event instanceof ServiceFunctionEndedEvent);
+  }
+}
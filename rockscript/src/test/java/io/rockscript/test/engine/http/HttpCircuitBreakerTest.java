@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine.http;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.CircuitBreakers.CircuitBreaker;
+import io.rockscript.engine.impl.CircuitBreakers.State;
+import io.rockscript.engine.impl.Time;
+import io.rockscript.engine.job.CircuitBreakerProbeJobHandler;
+import io.rockscript.engine.job.Job;
+import io.rockscript.engine.job.RetryServiceFunctionJobHandler;
+import io.rockscript.http.servlet.PathRequestHandler;
+import io.rockscript.http.servlet.RouterServlet;
+import io.rockscript.http.servlet.ServerRequest;
+import io.rockscript.http.servlet.ServerResponse;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.rockscript.http.servlet.PathRequestHandler.GET;
+import static org.junit.Assert.*;
+
+public class HttpCircuitBreakerTest extends AbstractHttpTest {
+
+  AtomicInteger upstreamRequests = new AtomicInteger();
+  /** the Failed-Attempts-Count header of each upstream request */
+  List<String> failedAttemptsCounts = new CopyOnWriteArrayList<>();
+  volatile int status = 503;
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration()
+      .configureTest()
+      .configureCircuitBreakerFailureThreshold(2)
+      .build()
+      .start();
+  }
+
+  @Override
+  protected void configure(RouterServlet serviceServlet) {
+    serviceServlet
+      .requestHandler(new PathRequestHandler(GET, "/down") {
+        @Override
+        public void handle(ServerRequest request, ServerResponse response) {
+          upstreamRequests.incrementAndGet();
+          failedAttemptsCounts.add(request.getHeader("Failed-Attempts-Count"));
+          response.status(status);
+          response.bodyJsonString("{}");
+        }
+      });
+  }
+
+  @Test
+  public void testOpenBreakerParksServiceFunctionsUntilTheProbeSucceeds() {
+    setNow(Time.now());
+    ScriptVersion scriptVersion = deployScript(
+      "var http = system.import('rockscript.io/http'); \n" +
+      "var response = http.get({ \n" +
+      "  url:'http://localhost:" + SERVICE_PORT + "/down', \n" +
+      "  expectedStatus: 200 \n" +
+      "}); ");
+
+    // The first failure schedules a retry job like before
+    ScriptExecution first = startScriptExecution(scriptVersion);
+    Job retryJob = engine.getJobStore().findNextJob();
+    assertTrue(retryJob.getJobHandler() instanceof RetryServiceFunctionJobHandler);
+
+    // The second failure opens the breaker and parks the service function instead of scheduling a retry
+    ScriptExecution second = startScriptExecution(scriptVersion);
+    CircuitBreaker circuitBreaker = engine.getCircuitBreakers().get("localhost:" + SERVICE_PORT);
+    assertEquals(State.OPEN, circuitBreaker.getState());
+    assertEquals(1, circuitBreaker.getParkedCount());
+
+    // While the breaker is open, calls fail fast without reaching the service
+    ScriptExecution third = startScriptExecution(scriptVersion);
+    engine.getJobService().executeJob(retryJob);
+    assertEquals(2, upstreamRequests.get());
+    assertEquals(3, circuitBreaker.getParkedCount());
+
+    // One probe job replaces the retry jobs of the parked service functions
+    Job probeJob = engine.getJobStore().findNextJob();
+    assertTrue(probeJob.getJobHandler() instanceof CircuitBreakerProbeJobHandler);
+
+    status = 200;
+    setNow(Time.now().plus(Duration.ofSeconds(31)));
+    engine.getJobService().executeJob(probeJob);
+
+    assertEquals(State.CLOSED, circuitBreaker.getState());
+    assertEquals(0, circuitBreaker.getParkedCount());
+    assertEquals(5, upstreamRequests.get());
+    assertTrue(isEnded(first));
+    assertTrue(isEnded(second));
+    assertTrue(isEnded(third));
+    assertNull(engine.getJobStore().findNextJob());
+    // releasing a parked service function doesn't count as a failed attempt:
+    // the first and second failed once, the third never reached the service
+    assertEquals(Arrays.asList(null, null, "1", null, "1"), failedAttemptsCounts);
+  }
+
+  boolean isEnded(ScriptExecution scriptExecution) {
+    return engine.getScriptExecutionStore()
+      .findScriptExecutionById(scriptExecution.getId())
+      .isEnded();
+  }
+}
@@ -122,4 +122,25 @@ public class HttpRetryTest extends AbstractHttpTest {
     assertFalse(scriptExecution.isEnded());
   }
 
+  @Test
+  public void testHttpRetryPolicyPerRequest() {
+    setNow(Time.now());
+    ScriptVersion scriptVersion = deployScript(
+      "var http = system.import('rockscript.io/http'); \n" +
+      "var response = http.get({ \n" +
+      "  url:'http://unexisting-retry-policy-host/', \n" +
+      "  retryPolicy: { fixed: { delays: [7000] } } \n" +
+      "}); ");
+
+    new StartScriptExecutionCommand()
+      .scriptVersionId(scriptVersion.getId())
+      .execute(engine);
+
+    // The request's retry policy overrides the 3 retries of the default policy
+    Job nextJob = engine.getJobStore().findNextJob();
+    assertEquals(Time.now().plusSeconds(7), nextJob.getExecutionTime());
+    engine.getJobService().executeJob(nextJob);
+
+    assertNull(engine.getJobStore().findNextJob());
+  }
 }
@@ -40,6 +40,7 @@ import java.util.Map;
 
 import static io.rockscript.http.servlet.PathRequestHandler.GET;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
 public class HttpServiceTest extends AbstractHttpTest {
@@ -98,6 +99,71 @@ public class HttpServiceTest extends AbstractHttpTest {
     assertEquals("text/plain", ((List)headers.get("Content-Type")).get(0));
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testHttpGetJsonWithFieldProjection() {
+    testRequestHandler = new TestRequestHandler() {
+      public void handle(ServerRequest request, ServerResponse response) {
+        response.status(200);
+        response.bodyJsonString(
+          "{\"id\":\"o1\"," +
+          " \"owner\":{\"name\":\"Tom\",\"address\":\"Brussels\"}," +
+          " \"lines\":[{\"sku\":\"a\",\"note\":\"x\"},{\"sku\":\"b\"}]," +
+          " \"audit\":[1,2,3]}");
+      }
+    };
+
+    ScriptVersion scriptVersion = deployScript(
+      "var http = system.import('rockscript.io/http'); \n" +
+      "var response = http.get({" +
+      "  url: 'http://localhost:" + SERVICE_PORT + "'," +
+      "  fields: ['id', 'owner.name', 'lines.sku']" +
+      "}); ");
+
+    EngineScriptExecution engineScriptExecution = new StartScriptExecutionCommand()
+      .scriptVersionId(scriptVersion.getId())
+      .execute(engine)
+      .getEngineScriptExecution();
+
+    Map<String,Object> response = (Map<String, Object>) engineScriptExecution.getVariable("response").getValue();
+    assertEquals(200d, response.get("status"));
+    Map<String,Object> body = (Map<String, Object>) response.get("body");
+    assertEquals("o1", body.get("id"));
+    assertEquals("Tom", ((Map<String,Object>)body.get("owner")).get("name"));
+    assertFalse(((Map<String,Object>)body.get("owner")).containsKey("address"));
+    List<Object> lines = (List<Object>) body.get("lines");
+    assertEquals("b", ((Map<String,Object>)lines.get(1)).get("sku"));
+    assertFalse(((Map<String,Object>)lines.get(0)).containsKey("note"));
+    assertFalse(body.containsKey("audit"));
+  }
+
+  @Test
+  public void testHttpGetMaxBodySize() {
+    testRequestHandler = new TestRequestHandler() {
+      public void handle(ServerRequest request, ServerResponse response) {
+        response.headerContentTypeTextPlain();
+        response.status(200);
+        response.bodyString("this body is longer than 10 bytes");
+      }
+    };
+
+    ScriptVersion scriptVersion = deployScript(
+      "var http = system.import('rockscript.io/http'); \n" +
+      "var response = http.get({" +
+      "  url: 'http://localhost:" + SERVICE_PORT + "'," +
+      "  maxBodySize: 10" +
+      "}); ");
+
+    EngineScriptExecution engineScriptExecution = new StartScriptExecutionCommand()
+      .scriptVersionId(scriptVersion.getId())
+      .execute(engine)
+      .getEngineScriptExecution();
+
+    // the oversized response is handled as a failed attempt that is retried
+    assertFalse(engineScriptExecution.isEnded());
+    assertEquals(1, ((InMemoryJobStore) engine.getJobStore()).getJobCount());
+  }
+
   @SuppressWarnings("unchecked")
   @Test
   public void testHttpGetError() {
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2017 RockScript.io.
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.rockscript.test.engine.http;
+
+import io.rockscript.Configuration;
+import io.rockscript.Engine;
+import io.rockscript.api.events.ServiceFunctionFailedEvent;
+import io.rockscript.api.model.ScriptExecution;
+import io.rockscript.api.model.ScriptVersion;
+import io.rockscript.engine.impl.EngineScriptExecution;
+import io.rockscript.engine.impl.LockOperation;
+import io.rockscript.engine.impl.LockOperationExecutor;
+import io.rockscript.engine.impl.RemoteServiceFunctionBatcher.BatchSettings;
+import io.rockscript.http.Http;
+import io.rockscript.http.servlet.BadRequestException;
+import io.rockscript.http.servlet.PathRequestHandler;
+import io.rockscript.http.servlet.RouterServlet;
+import io.rockscript.http.servlet.ServerRequest;
+import io.rockscript.http.servlet.ServerResponse;
+import io.rockscript.service.ServiceFunctionInput;
+import io.rockscript.service.ServiceFunctionOutput;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.rockscript.util.Maps.entry;
+import static io.rockscript.util.Maps.hashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteServiceFunctionBatchTest extends AbstractHttpTest {
+
+  AtomicInteger batchRequests = new AtomicInteger();
+  /** makes the I/O executor reject the batch requests */
+  volatile boolean rejectIo;
+  /** the lock operations on this script execution fail as if it doesn't exist */
+  volatile String missingScriptExecutionId;
+
+  @Override
+  protected Engine initializeEngine() {
+    return new Configuration() {
+        @Override
+        protected Engine createEngine() {
+          return new Engine() {
+            @Override
+            public Executor getIoExecutor() {
+              Executor ioExecutor = super.getIoExecutor();
+              return command -> {
+                if (rejectIo) {
+                  throw new RejectedExecutionException("I/O executor is shut down");
+                }
+                ioExecutor.execute(command);
+              };
+            }
+            @Override
+            public LockOperationExecutor getLockOperationExecutor() {
+              LockOperationExecutor lockOperationExecutor = super.getLockOperationExecutor();
+              return new LockOperationExecutor() {
+                @Override
+                public EngineScriptExecution executeInLock(LockOperation lockOperation) {
+                  throwIfMissing(lockOperation);
+                  return lockOperationExecutor.executeInLock(lockOperation);
+                }
+                @Override
+                public CompletableFuture<EngineScriptExecution> executeInLockAsync(LockOperation lockOperation) {
+                  throwIfMissing(lockOperation);
+                  return lockOperationExecutor.executeInLockAsync(lockOperation);
+                }
+              };
+            }
+          };
+        }
+      }
+      .configureTest()
+      .configureRemoteBatch("localhost:" + SERVICE_PORT + "/validate", new BatchSettings(Duration.ofMillis(200), 3))
+      .build()
+      .start();
+  }
+
+  @Override
+  protected void configure(RouterServlet routerServlet) {
+    routerServlet
+      .requestHandler(new PathRequestHandler(Http.Methods.POST, "/validate") {
+        @Override
+        public void handle(ServerRequest request, ServerResponse response) {
+          batchRequests.incrementAndGet();
+          ServiceFunctionInput[] inputs = request.getBodyAs(ServiceFunctionInput[].class);
+          List<ServiceFunctionOutput> outputs = new ArrayList<>();
+          for (ServiceFunctionInput input: inputs) {
+            Map<String,Object> address = input.getArg(0);
+            outputs.add(ServiceFunctionOutput.endFunction(address.get("street") + " is valid"));
+          }
+          response
+            .status(200)
+            .bodyJson(outputs);
+        }
+      });
+  }
+
+  void throwIfMissing(LockOperation lockOperation) {
+    if (lockOperation.getScriptExecutionId().equals(missingScriptExecutionId)) {
+      throw new BadRequestException("Script execution "+missingScriptExecutionId+" does not exist");
+    }
+  }
+
+  ScriptVersion deployValidationScript() {
+    return deployScript(
+      "var addresses = system.import('localhost:" + SERVICE_PORT + "'); \n" +
+      "var validation = addresses.validate({street: system.input.street}); ");
+  }
+
+  @Test
+  public void testFullBatchIsSentAtOnce() {
+    ScriptVersion scriptVersion = deployValidationScript();
+
+    ScriptExecution first = startScriptExecution(scriptVersion, hashMap(entry("street", "Main street")));
+    ScriptExecution second = startScriptExecution(scriptVersion, hashMap(entry("street", "Church street")));
+    assertEquals(0, batchRequests.get());
+    ScriptExecution third = startScriptExecution(scriptVersion, hashMap(entry("street", "High street")));
+
+    assertEquals(1, batchRequests.get());
+    assertEquals("Main street is valid", findScriptExecution(first).getVariable("validation").getValue());
+    assertEquals("Church street is valid", findScriptExecution(second).getVariable("validation").getValue());
+    assertTrue(findScriptExecution(third).isEnded());
+  }
+
+  @Test
+  public void testBatchIsSentWhenTheWindowPassed() throws Exception {
+    ScriptExecution scriptExecution = startScriptExecution(deployValidationScript(), hashMap(entry("street", "Main street")));
+    assertFalse(findScriptExecution(scriptExecution).isEnded());
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!findScriptExecution(scriptExecution).isEnded() && System.currentTimeMillis()<deadline) {
+      Thread.sleep(20);
+    }
+
+    assertEquals(1, batchRequests.get());
+    assertEquals("Main street is valid", findScriptExecution(scriptExecution).getVariable("validation").getValue());
+  }
+
+  @Test
+  public void testBatchThatCantBeSentFailsEachFunctionWithARetry() throws Exception {
+    rejectIo = true;
+    ScriptVersion scriptVersion = deployValidationScript();
+    ScriptExecution first = startScriptExecution(scriptVersion, hashMap(entry("street", "Main street")));
+    ScriptExecution second = startScriptExecution(scriptVersion, hashMap(entry("street", "Church street")));
+
+    // the batch is sent on the batcher's scheduler thread when the window passed
+    ServiceFunctionFailedEvent firstFailure = waitForFailure(first);
+    ServiceFunctionFailedEvent secondFailure = waitForFailure(second);
+
+    assertEquals(0, batchRequests.get());
+    assertTrue(firstFailure.getError().startsWith("Couldn't send batch"));
+    assertNotNull(firstFailure.getRetryTime());
+    assertNotNull(secondFailure.getRetryTime());
+    assertFalse(findScriptExecution(first).isEnded());
+  }
+
+  @Test
+  public void testInvocationThatCantBeAppliedDoesntAffectTheRestOfTheBatch() {
+    ScriptVersion scriptVersion = deployValidationScript();
+    ScriptExecution missing = startScriptExecution(scriptVersion, hashMap(entry("street", "Main street")));
+    missingScriptExecutionId = missing.getId();
+    ScriptExecution second = startScriptExecution(scriptVersion, hashMap(entry("street", "Church street")));
+    ScriptExecution third = startScriptExecution(scriptVersion, hashMap(entry("street", "High street")));
+
+    assertEquals(1, batchRequests.get());
+    assertEquals("Church street is valid", findScriptExecution(second).getVariable("validation").getValue());
+    assertEquals("High street is valid", findScriptExecution(third).getVariable("validation").getValue());
+    assertFalse(findScriptExecution(missing).isEnded());
+  }
+
+  ServiceFunctionFailedEvent waitForFailure(ScriptExecution scriptExecution) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis()<deadline) {
+      Optional<ServiceFunctionFailedEvent> failure = engine
+        .getScriptExecutionStore()
+        .findEventsByScriptExecutionId(scriptExecution.getId())
+        .stream()
+        .filter(event -> event instanceof ServiceFunctionFailedEvent)
+        .map(event -> (ServiceFunctionFailedEvent) event)
+        .findFirst();
+      if (failure.isPresent()) {
+        return failure.get();
+      }
+      Thread.sleep(20);
+    }
+    throw new AssertionError("Service function of script execution "+scriptExecution.getId()+" didn't fail");
+  }
+
+  EngineScriptExecution findScriptExecution(ScriptExecution scriptExecution) {
+    return engine.getScriptExecutionStore().findScriptExecutionById(scriptExecution.getId());
+  }
+}
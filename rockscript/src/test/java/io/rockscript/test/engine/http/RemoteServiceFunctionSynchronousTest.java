@@ -19,6 +19,7 @@
  */
 package io.rockscript.test.engine.http;
 
+import io.rockscript.api.events.ServiceFunctionFailedEvent;
 import io.rockscript.http.Http;
 import io.rockscript.service.ServiceFunctionInput;
 import io.rockscript.service.ServiceFunctionOutput;
@@ -38,6 +39,7 @@ import java.util.List;
 import static io.rockscript.util.Maps.entry;
 import static io.rockscript.util.Maps.hashMap;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class RemoteServiceFunctionSynchronousTest extends AbstractHttpTest {
@@ -65,6 +67,12 @@ public class RemoteServiceFunctionSynchronousTest extends AbstractHttpTest {
             .status(200)
             .bodyJson(serviceFunctionOutput);
         }
+      })
+      .requestHandler(new PathRequestHandler(Http.Methods.POST, "/reject") {
+        @Override
+        public void handle(ServerRequest request, ServerResponse response) {
+          response.status(500);
+        }
       });
   }
 
@@ -80,4 +88,23 @@ public class RemoteServiceFunctionSynchronousTest extends AbstractHttpTest {
     assertEquals("EUR", scriptExecution.getVariable("currency"));
     assertTrue(scriptExecution.isEnded());
   }
+
+  @Test
+  public void testRemoteServiceFunctionErrorStatus() {
+    ScriptVersion scriptVersion = deployScript(
+      "var approvals = system.import('localhost:" + SERVICE_PORT + "'); \n" +
+      "approvals.reject('oo',7); ");
+
+    ScriptExecution scriptExecution = startScriptExecution(scriptVersion);
+
+    assertFalse(scriptExecution.isEnded());
+    ServiceFunctionFailedEvent failedEvent = (ServiceFunctionFailedEvent) engine
+      .getScriptExecutionStore()
+      .findEventsByScriptExecutionId(scriptExecution.getId())
+      .stream()
+      .filter(event -> event instanceof ServiceFunctionFailedEvent)
+      .findFirst()
+      .get();
+    assertTrue(failedEvent.getError().contains("500"));
+  }
 }